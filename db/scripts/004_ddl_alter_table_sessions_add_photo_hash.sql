@@ -0,0 +1,5 @@
+ALTER TABLE sessions ADD COLUMN photo_hash VARCHAR(64);
+ALTER TABLE sessions ADD COLUMN photo_type VARCHAR(100);
+
+comment on column sessions.photo_hash is 'SHA-256 постера в шестнадцатеричном виде';
+comment on column sessions.photo_type is 'MIME-тип постера';
@@ -0,0 +1,15 @@
+CREATE TABLE posters (
+    session_id INT NOT NULL REFERENCES sessions(id),
+    variant VARCHAR(16) NOT NULL,
+    photo bytea NOT NULL,
+    photo_hash VARCHAR(64) NOT NULL,
+    photo_type VARCHAR(100) NOT NULL,
+    PRIMARY KEY (session_id, variant)
+);
+
+comment on table posters is 'Уменьшенные копии постеров';
+comment on column posters.session_id is 'Идентификатор сеанса';
+comment on column posters.variant is 'Вариант постера: THUMB, CARD или FULL';
+comment on column posters.photo is 'Изображение';
+comment on column posters.photo_hash is 'SHA-256 изображения в шестнадцатеричном виде';
+comment on column posters.photo_type is 'MIME-тип изображения';
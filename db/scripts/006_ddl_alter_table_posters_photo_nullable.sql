@@ -0,0 +1,3 @@
+ALTER TABLE posters ALTER COLUMN photo DROP NOT NULL;
+
+comment on column posters.photo is 'Изображение или NULL, если изображение хранится в файловом хранилище';
@@ -1,9 +1,20 @@
 package ru.job4j.cinema;
 
-import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.coyote.ProtocolHandler;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import ru.job4j.cinema.utility.BoundedDataSource;
+import ru.job4j.cinema.utility.InstrumentedDataSource;
+import ru.job4j.cinema.utility.MonitoredDataSource;
+import ru.job4j.cinema.utility.VirtualThreads;
+
+import javax.sql.DataSource;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -32,20 +43,73 @@ public class Main {
         return cfg;
     }
 
+    /**
+     * Создание пула соединений. Настройки подключения берутся из db.properties,
+     * а одноименные свойства окружения Spring, например --jdbc.url=..., их переопределяют.
+     * Размер пула задается свойствами cinema.pool.*, а свойства cinema.pool.adaptive.* включают
+     * адаптивный режим, в котором maxTotal меняется по времени ожидания соединения
+     * @param env Окружение Spring
+     * @return Объект типа MonitoredDataSource
+     */
     @Bean
-    public BasicDataSource loadPool() {
+    public MonitoredDataSource loadPool(Environment env) {
         Properties cfg = loadDbProperties();
-        BasicDataSource pool = new BasicDataSource();
-        pool.setDriverClassName(cfg.getProperty("jdbc.driver"));
-        pool.setUrl(cfg.getProperty("jdbc.url"));
-        pool.setUsername(cfg.getProperty("jdbc.username"));
-        pool.setPassword(cfg.getProperty("jdbc.password"));
-        pool.setMinIdle(5);
-        pool.setMaxIdle(10);
-        pool.setMaxOpenPreparedStatements(100);
+        MonitoredDataSource pool = new MonitoredDataSource();
+        pool.setDriverClassName(env.getProperty("jdbc.driver", cfg.getProperty("jdbc.driver")));
+        pool.setUrl(env.getProperty("jdbc.url", cfg.getProperty("jdbc.url")));
+        pool.setUsername(env.getProperty("jdbc.username", cfg.getProperty("jdbc.username")));
+        pool.setPassword(env.getProperty("jdbc.password", cfg.getProperty("jdbc.password")));
+        pool.setInitialSize(env.getProperty("cinema.pool.initial-size", Integer.class, 0));
+        pool.setMinIdle(env.getProperty("cinema.pool.min-idle", Integer.class, 5));
+        pool.setMaxIdle(env.getProperty("cinema.pool.max-idle", Integer.class, 10));
+        pool.setMaxTotal(env.getProperty("cinema.pool.max-total", Integer.class, GenericObjectPoolConfig.DEFAULT_MAX_TOTAL));
+        pool.setMaxWaitMillis(env.getProperty("cinema.pool.max-wait-millis", Long.class, -1L));
+        pool.setMaxOpenPreparedStatements(env.getProperty("cinema.pool.max-open-prepared-statements", Integer.class, 100));
+        if (env.getProperty("cinema.pool.adaptive.enabled", Boolean.class, false)) {
+            pool.startAdaptiveSizing(
+                    env.getProperty("cinema.pool.adaptive.min-total", Integer.class, pool.getMaxTotal()),
+                    env.getProperty("cinema.pool.adaptive.max-total", Integer.class, pool.getMaxTotal() * 2),
+                    env.getProperty("cinema.pool.adaptive.interval-millis", Long.class, 5000L),
+                    env.getProperty("cinema.pool.adaptive.grow-wait-micros", Long.class, 2000L),
+                    env.getProperty("cinema.pool.adaptive.shrink-wait-micros", Long.class, 100L));
+        }
         return pool;
     }
 
+    /**
+     * Источник соединений для хранилищ. С настройкой cinema.jdbc.instrumentation.enabled=true
+     * измеряет каждый SQL запрос, иначе отдает соединения пула без оберток.
+     * С настройкой cinema.jdbc.max-concurrency больше 0 число одновременно занятых соединений
+     * ограничивается семафором BoundedDataSource
+     * @param pool Пул соединений
+     * @param env Окружение Spring
+     * @return Объект типа InstrumentedDataSource
+     */
+    @Bean
+    @Primary
+    public InstrumentedDataSource dataSource(MonitoredDataSource pool, Environment env) {
+        int permits = env.getProperty("cinema.jdbc.max-concurrency", Integer.class, 0);
+        DataSource source = pool;
+        if (permits > 0) {
+            source = new BoundedDataSource(pool, permits,
+                    env.getProperty("cinema.jdbc.max-concurrency-wait-millis", Long.class, -1L));
+        }
+        return new InstrumentedDataSource(source,
+                env.getProperty("cinema.jdbc.instrumentation.enabled", Boolean.class, false),
+                env.getProperty("cinema.jdbc.instrumentation.slow-query-millis", Long.class, 200L));
+    }
+
+    /**
+     * Обслуживание запросов Tomcat виртуальными потоками вместо пула потоков-обработчиков.
+     * Включается настройкой cinema.threads.virtual=true (профиль virtual-threads) и требует Java 21
+     * @return Настройка обработчика протокола Tomcat
+     */
+    @Bean
+    @ConditionalOnProperty(name = "cinema.threads.virtual", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreads() {
+        return handler -> handler.setExecutor(VirtualThreads.executor());
+    }
+
     /**
      * В методе происходит запуск сервера Tomcat, который встроен в Spring Boot
      */
@@ -0,0 +1,126 @@
+package ru.job4j.cinema.controller;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.cinema.service.BookingQueue;
+import ru.job4j.cinema.service.PosterCache;
+import ru.job4j.cinema.service.SessionCatalog;
+import ru.job4j.cinema.service.TicketService;
+import ru.job4j.cinema.utility.BoundedDataSource;
+import ru.job4j.cinema.utility.HttpSessionMetrics;
+import ru.job4j.cinema.utility.InstrumentedDataSource;
+import ru.job4j.cinema.utility.MonitoredDataSource;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * MetricsController - контроллер, возвращающий метрики приложения в формате JSON
+ *
+ * @author Ilya Kaltygin
+ */
+@RestController
+@ThreadSafe
+public class MetricsController {
+
+    private final TicketService ticketService;
+
+    private final PosterCache posterCache;
+
+    private final SessionCatalog sessionCatalog;
+
+    private final SessionPageCache sessionPageCache;
+
+    private final InstrumentedDataSource dataSource;
+
+    private final HttpSessionMetrics httpSessionMetrics;
+
+    private final BookingQueue bookingQueue;
+
+    public MetricsController(TicketService ticketService, PosterCache posterCache,
+                             SessionCatalog sessionCatalog, SessionPageCache sessionPageCache,
+                             InstrumentedDataSource dataSource, HttpSessionMetrics httpSessionMetrics,
+                             BookingQueue bookingQueue) {
+        this.ticketService = ticketService;
+        this.posterCache = posterCache;
+        this.sessionCatalog = sessionCatalog;
+        this.sessionPageCache = sessionPageCache;
+        this.dataSource = dataSource;
+        this.httpSessionMetrics = httpSessionMetrics;
+        this.bookingQueue = bookingQueue;
+    }
+
+    /**
+     * Метод возвращает метрики конкуренции за полосы блокировок при покупке билетов, метрики очереди покупок
+     * и, в режиме отложенной записи, метрики журнала билетов с числом билетов, отклоненных базой данных
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/booking")
+    public Map<String, Object> booking() {
+        Map<String, Object> result = ticketService.stats();
+        result.put("queue", bookingQueue.stats());
+        return result;
+    }
+
+    /**
+     * Метод возвращает метрики кеша постеров: долю попаданий и занятый объем
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/posters")
+    public Map<String, Object> posters() {
+        return posterCache.stats();
+    }
+
+    /**
+     * Метод возвращает метрики каталога сеансов: версию снимка, его возраст и число перезагрузок
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/catalog")
+    public Map<String, Object> catalog() {
+        return sessionCatalog.stats();
+    }
+
+    /**
+     * Метод возвращает метрики кеша страницы со списком сеансов
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/pages")
+    public Map<String, Object> pages() {
+        return sessionPageCache.stats();
+    }
+
+    /**
+     * Метод возвращает метрики пула соединений: время ожидания соединения, занятые и свободные
+     * соединения, отказы по таймауту и изменения размера в адаптивном режиме. Если число занятых соединений
+     * ограничено семафором, то добавляются показатели семафора
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/pool")
+    public Map<String, Object> pool() throws SQLException {
+        Map<String, Object> result = dataSource.unwrap(MonitoredDataSource.class).stats();
+        if (dataSource.isWrapperFor(BoundedDataSource.class)) {
+            result.put("concurrencyLimit", dataSource.unwrap(BoundedDataSource.class).stats());
+        }
+        return result;
+    }
+
+    /**
+     * Метод возвращает метрики SQL запросов по имени константы запроса: время подготовки, выполнения
+     * и чтения результата, количество строк и медленных выполнений
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/jdbc")
+    public Map<String, Object> jdbc() {
+        return dataSource.stats();
+    }
+
+    /**
+     * Метод возвращает метрики HttpSession: количество сессий и незавершенных заказов,
+     * оценку памяти, которую занимают атрибуты сессий, и ее распределение по завершенным сессиям
+     * @return Набор показателей
+     */
+    @GetMapping("/metrics/sessions")
+    public Map<String, Object> sessions() {
+        return httpSessionMetrics.stats();
+    }
+}
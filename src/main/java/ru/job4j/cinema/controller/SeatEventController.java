@@ -0,0 +1,441 @@
+package ru.job4j.cinema.controller;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.cinema.model.SeatState;
+import ru.job4j.cinema.service.SeatListener;
+import ru.job4j.cinema.service.TicketService;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * SeatEventController - контроллер, рассылающий изменения состояния мест сеанса
+ * открытым страницам выбора места через Server-Sent Events
+ *
+ * Подписчики хранятся по id сеанса. Пока места сеанса не меняются, подписка не стоит ничего:
+ * соединение удерживается контейнером сервлетов в асинхронном режиме без потока и без периодических сообщений,
+ * а очередь событий подписчика пуста и растет только по мере поступления событий.
+ * Событие сериализуется один раз и кладется в очередь каждого подписчика без блокировки,
+ * поэтому покупка билета не ждет клиентов. Очереди подписчиков разбирают потоки рассылки,
+ * каждый подписчик обслуживается не более чем одним потоком одновременно.
+ *
+ * Запись в соединение неблокирующая (Servlet 3.1, WriteListener): если клиент не читает и буфер сокета полон,
+ * то поток рассылки не ждет, а переходит к следующему подписчику, и запись продолжается, когда контейнер
+ * сообщит, что сокет снова доступен. Поэтому зависшие соединения не занимают потоки и не задерживают
+ * события остальных подписчиков, сколько бы их ни было.
+ *
+ * Отстающий подписчик отключается: если в его очереди больше cinema.seat-events.queue-size событий
+ * или соединение не принимает данные дольше cinema.seat-events.send-timeout-millis, то соединение закрывается.
+ * Зависшие соединения находит сторожевой поток, не дожидаясь следующего события.
+ * Страница при переподключении получает актуальный список свободных мест.
+ *
+ * @author Ilya Kaltygin
+ */
+@RestController
+@ThreadSafe
+public class SeatEventController implements SeatListener, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SeatEventController.class.getName());
+
+    /**
+     * Подписчики по id сеанса
+     */
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Потоки рассылки событий
+     */
+    private final ExecutorService senders;
+
+    /**
+     * Сторожевой поток, отключающий подписчиков, соединение которых не принимает данные
+     */
+    private final ScheduledExecutorService watchdog;
+
+    private final TicketService ticketService;
+
+    /**
+     * Время жизни соединения в миллисекундах, после которого браузер переподключается
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Наибольшее число неотправленных событий одного подписчика
+     */
+    private final int queueSize;
+
+    /**
+     * Наибольшее время, которое соединение может не принимать данные, в наносекундах
+     */
+    private final long sendTimeoutNanos;
+
+    public SeatEventController(TicketService ticketService,
+                               @Value("${cinema.seat-events.timeout-millis:1800000}") long timeoutMillis,
+                               @Value("${cinema.seat-events.queue-size:256}") int queueSize,
+                               @Value("${cinema.seat-events.senders:4}") int senders,
+                               @Value("${cinema.seat-events.send-timeout-millis:5000}") long sendTimeoutMillis) {
+        if (queueSize < 1 || senders < 1 || sendTimeoutMillis < 1) {
+            throw new IllegalArgumentException(
+                    "Seat event queue size, number of senders and send timeout must be positive");
+        }
+        this.ticketService = ticketService;
+        this.timeoutMillis = timeoutMillis;
+        this.queueSize = queueSize;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        AtomicInteger number = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, task -> {
+            Thread thread = new Thread(task, "seat-events-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "seat-events-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, sendTimeoutMillis / 2);
+        watchdog.scheduleAtFixedRate(this::closeStalled, period, period, TimeUnit.MILLISECONDS);
+        ticketService.addListener(this);
+    }
+
+    /**
+     * Метод открывает поток событий мест сеанса. Первым событием free отправляется список свободных мест ряда,
+     * затем события seat с изменениями состояния мест всего сеанса
+     * @param sessionId id сеанса
+     * @param row Ряд, свободные места которого отправляются при подключении
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     * @throws IOException если поток ответа не удалось открыть
+     */
+    @GetMapping(value = "/seatEvents/{sessionId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void subscribe(@PathVariable("sessionId") int sessionId, @RequestParam("row") int row,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        AsyncContext async = request.startAsync();
+        async.setTimeout(timeoutMillis);
+        Subscriber subscriber = new Subscriber(sessionId, async, response.getOutputStream());
+        async.addListener(subscriber);
+        subscribers.compute(sessionId, (id, current) -> {
+            Set<Subscriber> result = current == null ? ConcurrentHashMap.newKeySet() : current;
+            result.add(subscriber);
+            return result;
+        });
+        List<Integer> free = ticketService.findFreePlaces(sessionId, row);
+        subscriber.start(event("free", free.stream().map(String::valueOf)
+                .collect(Collectors.joining(",", "[", "]"))));
+    }
+
+    /**
+     * Метод ставит изменение состояния места в очереди подписчиков сеанса
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param state Новое состояние места
+     */
+    @Override
+    public void onSeatChange(int sessionId, int row, int place, SeatState state) {
+        Set<Subscriber> current = subscribers.get(sessionId);
+        if (current != null) {
+            byte[] event = event("seat", "{\"row\":" + row + ",\"place\":" + place + ",\"state\":\"" + state + "\"}");
+            for (Subscriber subscriber : current) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * Количество подписчиков сеанса
+     * @param sessionId id сеанса
+     * @return Количество открытых соединений
+     */
+    public int subscribers(int sessionId) {
+        Set<Subscriber> current = subscribers.get(sessionId);
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Событие в формате text/event-stream
+     * @param name Имя события
+     * @param data Данные события в одну строку
+     * @return Байты события в UTF-8
+     */
+    private static byte[] event(String name, String data) {
+        return ("event:" + name + "\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Удаление подписчика. Пустой набор подписчиков сеанса удаляется,
+     * чтобы изменения мест сеанса без подписчиков не разбирались
+     * @param subscriber Подписчик
+     */
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.sessionId, (id, current) -> {
+            current.remove(subscriber);
+            return current.isEmpty() ? null : current;
+        });
+    }
+
+    /**
+     * Отключение подписчиков, соединение которых не принимает данные дольше времени отправки
+     */
+    private void closeStalled() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> current : subscribers.values()) {
+            for (Subscriber subscriber : current) {
+                long since = subscriber.stalledSince;
+                if (since != 0 && now - since > sendTimeoutNanos) {
+                    LOG.debug("Seat event subscriber of session {} does not read events and is disconnected",
+                            subscriber.sessionId);
+                    subscriber.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Закрытие соединений подписчиков и остановка потоков рассылки
+     */
+    @Override
+    public void destroy() {
+        watchdog.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(current -> current.forEach(Subscriber::close));
+        subscribers.clear();
+    }
+
+    /**
+     * Subscriber - подписчик с собственной очередью событий
+     *
+     * Очередь - это связный список, который не занимает памяти, пока событий нет, а ее длина считается отдельно.
+     * Очередь разбирается задачей в потоке рассылки или в потоке контейнера, когда сокет снова доступен
+     * для записи (onWritePossible). Флаг scheduled гарантирует, что задача подписчика стоит в очереди пула
+     * или выполняется не более чем в одном экземпляре, а запись выполняется под монитором подписчика,
+     * поэтому события подписчику отправляются по порядку. Запись неблокирующая, поэтому монитор занимается
+     * ненадолго, и закрытие соединения из любого потока не ждет клиента.
+     */
+    private final class Subscriber implements Runnable, WriteListener, AsyncListener {
+
+        private final int sessionId;
+
+        private final AsyncContext async;
+
+        private final ServletOutputStream out;
+
+        private final Deque<byte[]> pending = new ConcurrentLinkedDeque<>();
+
+        /**
+         * Число событий в очереди
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * Подписчик начал запись: обработчик записи установлен
+         */
+        private volatile boolean started;
+
+        /**
+         * Подписчик отключен, события ему больше не ставятся в очередь
+         */
+        private volatile boolean closed;
+
+        /**
+         * Соединение закрыто
+         */
+        @GuardedBy("this")
+        private boolean completed;
+
+        /**
+         * Данные записаны в поток ответа после последнего flush()
+         */
+        @GuardedBy("this")
+        private boolean unflushed;
+
+        /**
+         * С какого момента по System.nanoTime() соединение не принимает данные, или 0, если принимает
+         */
+        private volatile long stalledSince;
+
+        private Subscriber(int sessionId, AsyncContext async, ServletOutputStream out) {
+            this.sessionId = sessionId;
+            this.async = async;
+            this.out = out;
+        }
+
+        /**
+         * Начало записи. Первое событие ставится в начало очереди, перед изменениями мест,
+         * пришедшими после регистрации подписчика
+         * @param first Первое событие
+         */
+        private void start(byte[] first) {
+            pending.offerFirst(first);
+            size.incrementAndGet();
+            out.setWriteListener(this);
+            started = true;
+        }
+
+        /**
+         * Постановка события в очередь подписчика без блокировки.
+         * Подписчик, у которого накопилось больше queueSize событий, отключается
+         * @param event Событие
+         */
+        private void offer(byte[] event) {
+            if (closed) {
+                return;
+            }
+            if (size.incrementAndGet() > queueSize) {
+                LOG.debug("Seat event subscriber of session {} is lagging and is disconnected", sessionId);
+                close();
+                return;
+            }
+            pending.offer(event);
+            schedule();
+        }
+
+        /**
+         * Отключение подписчика и закрытие соединения
+         */
+        private void close() {
+            closed = true;
+            unsubscribe(this);
+            pending.clear();
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                LOG.debug("Seat event subscriber of session {} is already closed: {}", sessionId, e.getMessage());
+            }
+        }
+
+        private void schedule() {
+            if (started && scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                write();
+            } finally {
+                scheduled.set(false);
+                if (!closed && !pending.isEmpty() && stalledSince == 0) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Запись событий, пока соединение их принимает. Если соединение перестало принимать данные,
+         * то запись продолжится в onWritePossible()
+         */
+        private synchronized void write() {
+            if (completed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    byte[] event = pending.poll();
+                    if (event == null) {
+                        if (!unflushed) {
+                            stalledSince = 0;
+                            return;
+                        }
+                        unflushed = false;
+                        out.flush();
+                        continue;
+                    }
+                    size.decrementAndGet();
+                    out.write(event);
+                    unflushed = true;
+                }
+                if (stalledSince == 0) {
+                    stalledSince = System.nanoTime();
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOG.debug("Seat event subscriber of session {} is gone: {}", sessionId, e.getMessage());
+                closed = true;
+                unsubscribe(this);
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            stalledSince = 0;
+            write();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            synchronized (this) {
+                completed = true;
+            }
+            closed = true;
+            unsubscribe(this);
+            pending.clear();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -2,19 +2,35 @@ package ru.job4j.cinema.controller;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
 import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.service.PosterCache;
 import ru.job4j.cinema.service.SessionService;
+import ru.job4j.cinema.service.TicketService;
 import ru.job4j.cinema.utility.HttpSessionUtility;
+import ru.job4j.cinema.utility.ZeroCopy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 
 
 /**
@@ -26,39 +42,103 @@ import javax.servlet.http.HttpSession;
 @ThreadSafe
 public class SessionController {
 
+    /**
+     * Постер сеанса и его копии не меняются, поэтому браузер и прокси могут хранить их месяц
+     */
+    /**
+     * Растровые форматы, которые отдаются с типом изображения. SVG и другие активные форматы
+     * отдаются как двоичные данные, чтобы браузер не выполнил загруженный файл от имени приложения
+     */
+    private static final Set<String> POSTER_TYPES = Set.of(MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE,
+            MediaType.IMAGE_GIF_VALUE, "image/webp");
+
+    private static final String POSTER_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(30))
+            .cachePublic().getHeaderValue();
+
+    /**
+     * Размер страницы списка сеансов по умолчанию
+     */
+    private static final int PAGE_SIZE = 12;
+
+    /**
+     * Наибольший размер страницы, который можно запросить
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
     @GuardedBy("this")
     private final SessionService sessionService;
 
-    public SessionController(SessionService sessionService) {
+    @GuardedBy("this")
+    private final TicketService ticketService;
+
+    private final PosterCache posterCache;
+
+    private final SessionPageCache sessionPageCache;
+
+    public SessionController(SessionService sessionService, TicketService ticketService, PosterCache posterCache,
+                             SessionPageCache sessionPageCache) {
         this.sessionService = sessionService;
+        this.ticketService = ticketService;
+        this.posterCache = posterCache;
+        this.sessionPageCache = sessionPageCache;
     }
 
     /**
-     * Метод возвращет представление со списком всех сеансов из базы данных
-     * @param model Модель с данными
-     * @param session объект типа HttpSession
-     * @return представление allFilms
+     * Метод записывает в ответ страницу сеансов. Страница задается id последнего сеанса
+     * предыдущей страницы, поэтому ее стоимость не зависит от номера страницы.
+     * Страница собирается из частей, отрисованных заранее и хранящихся в SessionPageCache.
+     * Страница публичная, поэтому для анонимного запроса HttpSession не создается
+     * @param after id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
      */
     @GetMapping("/allSessions")
-    public String allFilms(Model model, HttpSession session) {
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        model.addAttribute("sessions", sessionService.findAll());
-        return "session/sessions";
+    public void allFilms(@RequestParam(value = "after", defaultValue = "0") int after,
+                         @RequestParam(value = "limit", defaultValue = "" + PAGE_SIZE) int limit,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        sessionPageCache.write(HttpSessionUtility.checkSession(request.getSession(false)), Math.max(after, 0), pageSize(limit),
+                request, response);
     }
 
     /**
-     * Метод возвращает представление с возможностью для редактированием всех сеансов
+     * Метод возвращает представление со страницей сеансов с возможностью их редактирования
      * @param model Модель с данными
      * @param session Объект типа HttpSession
+     * @param after id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
      * @return представление editAllSessions
      */
     @GetMapping("/editAllSessions")
-    public String editAllSessions(Model model, HttpSession session) {
+    public String editAllSessions(Model model, HttpSession session,
+                                  @RequestParam(value = "after", defaultValue = "0") int after,
+                                  @RequestParam(value = "limit", defaultValue = "" + PAGE_SIZE) int limit) {
         model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        model.addAttribute("sessions", sessionService.findAll());
+        addPage(model, after, limit);
         return "session/editAllSessions";
     }
 
+    /**
+     * Добавление в модель страницы сеансов и ее размера, ограниченного MAX_PAGE_SIZE
+     * @param model Модель с данными
+     * @param after id последнего сеанса предыдущей страницы
+     * @param limit Запрошенный размер страницы
+     */
+    private void addPage(Model model, int after, int limit) {
+        int size = pageSize(limit);
+        model.addAttribute("page", sessionService.findPage(Math.max(after, 0), size));
+        model.addAttribute("limit", size);
+    }
+
+    /**
+     * Размер страницы, ограниченный от 1 до MAX_PAGE_SIZE
+     * @param limit Запрошенный размер страницы
+     * @return Размер страницы
+     */
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
     /**
      * Метод возвращает представление с формой добавления нового сеанса
      * @param model Модель данных
@@ -71,15 +151,18 @@ public class SessionController {
     }
 
     /**
-     * Метод добавляет сеанс в базу данных
+     * Метод добавляет сеанс в базу данных. Загруженный постер передается в хранилище потоком
+     * и не загружается в память целиком
      * @param session Объект типа Session из формы по добавление сеанса
      * @return перенаправляет на URL /allSessions
      */
     @PostMapping("/createSession")
     public String createSession(@ModelAttribute Session session,
                                 @RequestParam("file") MultipartFile file) throws Exception {
-        session.setPhoto(file.getBytes());
-        sessionService.add(session);
+        session.setPhotoType(posterType(file.getContentType()));
+        try (InputStream photo = file.getInputStream()) {
+            sessionService.add(session, file.getSize(), photo);
+        }
         return "redirect:/allSessions";
     }
 
@@ -108,30 +191,59 @@ public class SessionController {
     }
 
     /**
-     * Метод преобразует массив байт в строку в кодировке BASE64. В свою очередь браузер преобразует ее в изображение
+     * Метод передает постер сеанса из PosterStore в ответ потоком, не загружая его в память целиком.
+     * Параметр size выбирает уменьшенную копию постера: thumb, card или full. Пока копия не создана,
+     * передается исходный постер, который браузер обязан перепроверять.
+     * ETag постера - его хеш, поэтому на запрос с совпадающим If-None-Match возвращается 304
+     * без чтения постера из базы данных.
+     * Постер из кеша PosterCache передается без обращения к базе данных.
+     * Заголовок X-Content-Type-Options: nosniff запрещает браузеру угадывать тип постера по содержимому
      * @param sessionId id сеанса
+     * @param size Вариант постера
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
      */
     @GetMapping("/posterSession/{sessionId}")
-    public ResponseEntity<Resource> download(@PathVariable("sessionId") Integer sessionId) {
-        Session session = sessionService.findById(sessionId);
-        return ResponseEntity.ok()
-                .headers(new HttpHeaders())
-                .contentLength(session.getPhoto().length)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(new ByteArrayResource(session.getPhoto()));
+    public void download(@PathVariable("sessionId") Integer sessionId,
+                         @RequestParam(value = "size", required = false) String size,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        Optional<PosterVariant> variant = size == null ? Optional.empty() : PosterVariant.of(size);
+        if (variant.isPresent()) {
+            PosterVariant v = variant.get();
+            if (sendCached(posterCache.get(sessionId, v), POSTER_CACHE_CONTROL, request, response)) {
+                return;
+            }
+            Optional<Poster> poster = sessionService.findPoster(sessionId, v);
+            if (poster.isPresent() && sendPoster(poster.get(), POSTER_CACHE_CONTROL, request, response)) {
+                return;
+            }
+        }
+        String cacheControl = variant.isPresent() ? CacheControl.noCache().getHeaderValue() : POSTER_CACHE_CONTROL;
+        if (sendCached(posterCache.get(sessionId, null), cacheControl, request, response)) {
+            return;
+        }
+        Session ses = sessionService.findById(sessionId);
+        if (ses == null || !sendPoster(new Poster(sessionId, null, null, ses.getPhotoHash(), ses.getPhotoType()),
+                cacheControl, request, response)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
     }
 
     /**
-     * Метод возвращает представление с информацией о фильме и формой для выбора ряда
+     * Метод начинает новый заказ на сеанс и возвращает представление с информацией о фильме
+     * и формой для выбора ряда. Брони незавершенного заказа снимаются
      * @param model Модель с данными
      * @param id id сеанса
      * @return представление selectRow в котором пользователь должен выбрать ряд
      */
     @GetMapping("/selectRow/{sessionId}")
     public String selectRow(Model model, @PathVariable("sessionId") int id, HttpSession session) {
+        releaseHolds(session);
         model.addAttribute("ses", sessionService.findById(id));
         model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        session.setAttribute("ses", sessionService.findById(id));
+        model.addAttribute("rows", ticketService.findFreeRows(id));
+        session.setAttribute(BookingState.ATTRIBUTE, BookingState.of(id));
         return "session/selectRow";
     }
 
@@ -145,26 +257,145 @@ public class SessionController {
      */
     @GetMapping("/selectPlace/{sessionId}")
     public String selectPlace(Model model, @PathVariable("sessionId") int id, HttpSession session, @RequestParam("row") int row) {
+        releaseHolds(session);
         model.addAttribute("ses", sessionService.findById(id));
         model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        session.setAttribute("row", row);
+        model.addAttribute("places", ticketService.findFreePlaces(id, row));
+        model.addAttribute("allPlaces", ticketService.findAllPlaces());
+        model.addAttribute("row", row);
+        session.setAttribute(BookingState.ATTRIBUTE, BookingState.of(id).withRow(row));
         return "session/selectPlace";
     }
 
     /**
-     * Метод возвращает представление с информацией о сеансе, номере ряда и номере места
+     * Метод бронирует выбранные места на время оформления заказа и возвращает представление
+     * с информацией о сеансе, номере ряда и номерах мест
      * @param model Модель с данными
      * @param session Объект типа HttpSession
-     * @param place номер места, полученный из метода selectPlace
-     * @return представление aboutSession в котором представлена информация о сеансе
+     * @param places номера мест, полученные из метода selectPlace
+     * @return представление aboutSession в котором представлена информация о сеансе,
+     * переадресация по url /ticketFail, если места уже заняты, или по url /allSessions, если ряд не выбран
      */
     @GetMapping("/aboutSession")
-    public String aboutSession(Model model, HttpSession session, @RequestParam("place") int place) {
-        model.addAttribute("ses", session.getAttribute("ses"));
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        model.addAttribute("place", place);
-        model.addAttribute("row", session.getAttribute("row"));
-        session.setAttribute("place", place);
+    public String aboutSession(Model model, HttpSession session, @RequestParam("place") List<Integer> places) {
+        BookingState booking = HttpSessionUtility.booking(session);
+        if (booking == null || booking.getRow() == 0) {
+            return "redirect:/allSessions";
+        }
+        User user = HttpSessionUtility.checkSession(session);
+        if (!BookingState.fits(places)
+                || !ticketService.hold(booking.getSessionId(), booking.getRow(), places, user.getId())) {
+            return "redirect:/ticketFail";
+        }
+        BookingState held = booking.withPlaces(places);
+        model.addAttribute("ses", sessionService.findById(held.getSessionId()));
+        model.addAttribute("user", user);
+        model.addAttribute("place", held.getPlaces());
+        model.addAttribute("row", held.getRow());
+        session.setAttribute(BookingState.ATTRIBUTE, held);
         return "session/aboutSession";
     }
+
+    /**
+     * Передача постера с ETag и Cache-Control. Постер без хеша передается без заголовков кеширования.
+     * Постер из файла передается в сокет без копирования, а постер из базы данных, который помещается в кеш,
+     * сохраняется в PosterCache
+     * @param poster Постер без изображения; вариант null означает исходный постер
+     * @param cacheControl Значение заголовка Cache-Control
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     * @return false, если изображения постера нет и ответ не отправлен
+     */
+    private boolean sendPoster(Poster poster, String cacheControl,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String hash = poster.getPhotoHash();
+        if (notModified(hash, cacheControl, request, response)) {
+            return true;
+        }
+        String contentType = posterType(poster.getPhotoType());
+        Optional<Path> file = sessionService.posterFile(poster);
+        if (file.isPresent()) {
+            ZeroCopy.sendFile(file.get(), contentType, request, response);
+            return true;
+        }
+        return sessionService.streamPoster(poster, (length, in) -> {
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            if (hash != null && posterCache.accepts(length)) {
+                PosterCache.Entry entry = posterCache.put(poster.getSessionId(), poster.getVariant(),
+                        hash, contentType, in.readAllBytes());
+                ZeroCopy.write(entry.data(), response.getOutputStream());
+            } else {
+                in.transferTo(response.getOutputStream());
+            }
+        });
+    }
+
+    /**
+     * Передача постера из кеша
+     * @param entry Постер из кеша или null
+     * @param cacheControl Значение заголовка Cache-Control
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     * @return true, если постер найден в кеше и ответ отправлен
+     */
+    private static boolean sendCached(PosterCache.Entry entry, String cacheControl,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (entry == null) {
+            return false;
+        }
+        if (!notModified(entry.getHash(), cacheControl, request, response)) {
+            response.setContentType(entry.getType());
+            response.setContentLength(entry.size());
+            ZeroCopy.write(entry.data(), response.getOutputStream());
+        }
+        return true;
+    }
+
+    /**
+     * Установка заголовков кеширования и проверка If-None-Match
+     * @param hash Хеш постера или null
+     * @param cacheControl Значение заголовка Cache-Control
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     * @return true, если браузеру отправлен ответ 304
+     */
+    private static boolean notModified(String hash, String cacheControl,
+                                       HttpServletRequest request, HttpServletResponse response) {
+        if (hash == null) {
+            return false;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        return new ServletWebRequest(request, response).checkNotModified("\"" + hash + "\"");
+    }
+
+    /**
+     * MIME-тип постера по типу загруженного файла. Тип проверяется и при загрузке, и при передаче,
+     * поэтому постеры, сохраненные раньше с другим типом, тоже отдаются как двоичные данные.
+     * Файл не растрового формата из POSTER_TYPES отдается как двоичные данные
+     * @param contentType Тип загруженного или сохраненного файла или null
+     * @return MIME-тип постера
+     */
+    private static String posterType(String contentType) {
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return POSTER_TYPES.contains(type) ? type : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    /**
+     * Метод снимает брони с мест, выбранных в незавершенном заказе, и удаляет заказ из сессии
+     * @param session Объект типа HttpSession
+     */
+    private void releaseHolds(HttpSession session) {
+        BookingState booking = HttpSessionUtility.booking(session);
+        if (booking != null) {
+            if (booking.hasPlaces()) {
+                ticketService.release(booking.getSessionId(), booking.getRow(), booking.getPlaces(),
+                        HttpSessionUtility.checkSession(session).getId());
+            }
+            session.removeAttribute(BookingState.ATTRIBUTE);
+        }
+    }
 }
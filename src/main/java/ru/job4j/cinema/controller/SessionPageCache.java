@@ -0,0 +1,254 @@
+package ru.job4j.cinema.controller;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.service.SessionCatalog;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * SessionPageCache - кеш отрисованной страницы со списком сеансов (/allSessions)
+ *
+ * Шаблон session/sessions разделен на части: каркас страницы, навигационная панель (фрагмент navbar)
+ * и сетка карточек сеансов со ссылками на соседние страницы (фрагмент catalog). Каждая часть
+ * отрисовывается шаблонизатором один раз и хранится в кодировке UTF-8:
+ * - каркас не зависит от данных и хранится все время работы приложения;
+ * - панель зависит только от роли пользователя (администратор, гость, пользователь), поэтому
+ * для пользователя она отрисовывается с заглушкой вместо имени, а имя подставляется при ответе;
+ * - сетка хранится для каждой пары (after, limit) и относится к версии каталога SessionCatalog.
+ * Когда каталог меняется (добавление или изменение сеанса), версия растет и сетки прежней версии отбрасываются.
+ *
+ * Поэтому ответ на повторный запрос страницы собирается из готовых массивов байтов без шаблонизатора
+ * и без запросов в базу данных. Ссылки в частях отрисовываются без jsessionid, иначе идентификатор
+ * сессии одного пользователя попал бы в страницы остальных.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class SessionPageCache {
+
+    private static final String TEMPLATE = "session/sessions";
+
+    /**
+     * Комментарии шаблона, отмечающие места панели и сетки в каркасе
+     */
+    private static final String NAVBAR_MARK = "<!--navbar-->";
+
+    private static final String CATALOG_MARK = "<!--catalog-->";
+
+    /**
+     * Имя, с которым отрисовывается панель пользователя. Заменяется именем пользователя при ответе
+     */
+    private static final String NAME_PLACEHOLDER = "cinema-user-name";
+
+    private static final String ADMIN = "admin";
+
+    private static final String GUEST = "Гость";
+
+    /**
+     * Наибольшее количество сеток одной версии каталога. Сетки для остальных пар (after, limit)
+     * отрисовываются без сохранения
+     */
+    private static final int MAX_PAGES = 256;
+
+    /**
+     * Сетки одной версии каталога по ключу (after, limit)
+     */
+    private static final class Pages {
+
+        private final long version;
+
+        private final ConcurrentMap<Long, byte[]> grids = new ConcurrentHashMap<>();
+
+        private Pages(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Ответ, который не добавляет jsessionid в ссылки
+     */
+    private static final class NoUrlRewriting extends HttpServletResponseWrapper {
+
+        private NoUrlRewriting(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public String encodeURL(String url) {
+            return url;
+        }
+    }
+
+    private final ITemplateEngine templateEngine;
+
+    private final SessionCatalog sessionCatalog;
+
+    /**
+     * Каркас страницы: до панели, между панелью и сеткой, после сетки. Равен null до первого запроса
+     */
+    private volatile byte[][] skeleton;
+
+    /**
+     * Панели по роли пользователя, разделенные в местах имени пользователя
+     */
+    private final ConcurrentMap<String, byte[][]> navbars = new ConcurrentHashMap<>();
+
+    private volatile Pages pages = new Pages(0);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public SessionPageCache(ITemplateEngine templateEngine, SessionCatalog sessionCatalog) {
+        this.templateEngine = templateEngine;
+        this.sessionCatalog = sessionCatalog;
+    }
+
+    /**
+     * Запись страницы со списком сеансов в ответ
+     * @param user Пользователь, которому показывается страница
+     * @param after id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     */
+    public void write(User user, int after, int limit,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        byte[][] frame = skeleton(request, response);
+        byte[][] navbar = navbar(user, request, response);
+        byte[] name = HtmlUtils.htmlEscape(user.getName()).getBytes(StandardCharsets.UTF_8);
+        byte[] grid = grid(after, limit, request, response);
+        long length = frame[0].length + frame[1].length + frame[2].length + grid.length
+                + (long) name.length * (navbar.length - 1);
+        for (byte[] part : navbar) {
+            length += part.length;
+        }
+        response.setContentType(MediaType.TEXT_HTML_VALUE + ";charset=UTF-8");
+        response.setContentLengthLong(length);
+        OutputStream out = response.getOutputStream();
+        out.write(frame[0]);
+        for (int i = 0; i < navbar.length; i++) {
+            if (i > 0) {
+                out.write(name);
+            }
+            out.write(navbar[i]);
+        }
+        out.write(frame[1]);
+        out.write(grid);
+        out.write(frame[2]);
+    }
+
+    /**
+     * Показатели кеша
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Pages current = pages;
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("catalogVersion", current.version);
+        result.put("pages", current.grids.size());
+        result.put("hits", hitCount);
+        result.put("misses", total - hitCount);
+        result.put("hitRatio", total == 0 ? 0.0 : Math.round(hitCount * 10000.0 / total) / 10000.0);
+        return result;
+    }
+
+    private byte[][] skeleton(HttpServletRequest request, HttpServletResponse response) {
+        byte[][] result = skeleton;
+        if (result == null) {
+            String html = render(null, Map.of("skeleton", true), request, response);
+            int navbar = html.indexOf(NAVBAR_MARK) + NAVBAR_MARK.length();
+            int catalog = html.indexOf(CATALOG_MARK, navbar) + CATALOG_MARK.length();
+            result = new byte[][] {
+                    html.substring(0, navbar).getBytes(StandardCharsets.UTF_8),
+                    html.substring(navbar, catalog).getBytes(StandardCharsets.UTF_8),
+                    html.substring(catalog).getBytes(StandardCharsets.UTF_8)
+            };
+            skeleton = result;
+        }
+        return result;
+    }
+
+    /**
+     * Панель для роли пользователя, разделенная в местах, куда подставляется имя пользователя.
+     * Роль администратора определяется признаком пользователя, а не именем
+     */
+    private byte[][] navbar(User current, HttpServletRequest request, HttpServletResponse response) {
+        String role = current.isAdmin() ? ADMIN : GUEST.equals(current.getName()) ? GUEST : NAME_PLACEHOLDER;
+        return navbars.computeIfAbsent(role, key -> {
+            User user = new User();
+            user.setName(GUEST.equals(key) ? GUEST : NAME_PLACEHOLDER);
+            user.setAdmin(ADMIN.equals(key));
+            String[] parts = render("navbar", Map.of("user", user), request, response)
+                    .split(Pattern.quote(NAME_PLACEHOLDER), -1);
+            byte[][] result = new byte[parts.length][];
+            for (int i = 0; i < parts.length; i++) {
+                result[i] = parts[i].getBytes(StandardCharsets.UTF_8);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Сетка карточек для текущей версии каталога
+     */
+    private byte[] grid(int after, int limit, HttpServletRequest request, HttpServletResponse response) {
+        SessionCatalog.Snapshot snapshot = sessionCatalog.snapshot();
+        Pages current = pages;
+        if (current.version < snapshot.getVersion()) {
+            current = new Pages(snapshot.getVersion());
+            pages = current;
+        }
+        long key = (long) after << 32 | limit;
+        byte[] grid = current.version == snapshot.getVersion() ? current.grids.get(key) : null;
+        if (grid != null) {
+            hits.increment();
+            return grid;
+        }
+        misses.increment();
+        grid = render("catalog", Map.of("page", snapshot.page(after, limit), "limit", limit), request, response)
+                .getBytes(StandardCharsets.UTF_8);
+        if (current.version == snapshot.getVersion() && current.grids.size() < MAX_PAGES) {
+            current.grids.put(key, grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Отрисовка шаблона или его фрагмента. WebContext хранит переменные в атрибутах запроса,
+     * поэтому после отрисовки они удаляются, чтобы не попасть в отрисовку следующей части
+     * @param fragment Имя фрагмента или null для всего шаблона
+     */
+    private String render(String fragment, Map<String, Object> variables,
+                          HttpServletRequest request, HttpServletResponse response) {
+        WebContext context = new WebContext(request, new NoUrlRewriting(response), request.getServletContext(),
+                request.getLocale(), variables);
+        try {
+            return fragment == null
+                    ? templateEngine.process(TEMPLATE, context)
+                    : templateEngine.process(TEMPLATE, Set.of(fragment), context);
+        } finally {
+            variables.keySet().forEach(request::removeAttribute);
+        }
+    }
+}
@@ -2,16 +2,29 @@ package ru.job4j.cinema.controller;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
-import ru.job4j.cinema.model.Session;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.View;
+import ru.job4j.cinema.model.BookingState;
 import ru.job4j.cinema.model.Ticket;
 import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.service.BookingQueue;
+import ru.job4j.cinema.service.SessionService;
 import ru.job4j.cinema.service.TicketService;
 import ru.job4j.cinema.utility.HttpSessionUtility;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.util.Optional;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * TicketController - контроллер, обрабатывающий запросы от клиента и возвращающий результаты
@@ -30,69 +43,204 @@ public class TicketController {
     @GuardedBy("this")
     private final TicketService ticketService;
 
-    public TicketController(TicketService ticketService) {
+    private final SessionService sessionService;
+
+    private final BookingQueue bookingQueue;
+
+    /**
+     * Через сколько секунд повторить покупку, если очередь покупок заполнена
+     */
+    private final int retryAfterSeconds;
+
+    /**
+     * Сколько миллисекунд ждать результата покупки из очереди
+     */
+    private final long timeoutMillis;
+
+    public TicketController(TicketService ticketService, SessionService sessionService, BookingQueue bookingQueue,
+                            @Value("${cinema.booking.retry-after-seconds:2}") int retryAfterSeconds,
+                            @Value("${cinema.booking.timeout-millis:10000}") long timeoutMillis) {
         this.ticketService = ticketService;
+        this.sessionService = sessionService;
+        this.bookingQueue = bookingQueue;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.timeoutMillis = timeoutMillis;
     }
 
     /**
-     * Метод сохраняет билет в базу данных
+     * Метод сохраняет в базу данных билеты на все выбранные места.
+     * Билеты сохраняются одной транзакцией: либо покупаются все места, либо ни одного.
+     * Покупка выполняется асинхронно в очереди BookingQueue: поток Tomcat освобождается сразу после постановки
+     * покупки в очередь, а ответ отправляется, когда покупка выполнена. Если очередь заполнена, то клиент сразу
+     * получает 503 с заголовком Retry-After, а заказ остается в сессии, и покупку можно повторить.
+     * Принятый в очередь заказ удаляется из сессии, а купленный заказ передается странице /ticketSuccess
+     * через атрибут сессии PURCHASED. Flash-атрибуты Spring не используются, потому что в режиме входа
+     * по токенам сессия не переживает переадресацию, а атрибут PURCHASED хранится в подписанной cookie.
+     *
+     * Поток очереди только передает результат в DeferredResult. Результат - это представление, которое
+     * отрисовывается в потоке запроса после асинхронной передачи (async dispatch): сессия, cookie токенов
+     * и снятие броней при неудаче меняются в нем, а не в потоке очереди.
+     *
+     * Результат ждется не дольше cinema.booking.timeout-millis. Если к этому времени покупка еще в очереди,
+     * то она отменяется, заказ возвращается в сессию, и клиент получает 503 с Retry-After, как при заполненной
+     * очереди. Начатая покупка не отменяется и не обрывается таймаутом: поток запроса дожидается ее результата
+     * и отправляет клиента на /ticketSuccess или /ticketFail, поэтому купленный заказ не теряется.
+     *
+     * Если покупка завершилась ошибкой, то ни один билет не куплен: брони снимаются, заказ возвращается в сессию,
+     * а ошибка передается обработчику ошибок Spring MVC
      * @param session Объект типа HttpSession
-     * @return Переадресация по url /ticketSuccess если успешно, иначе по url /ticketFail
+     * @param response Объект типа HttpServletResponse
+     * @return Переадресация по url /ticketSuccess если успешно, по url /ticketFail если места заняты,
+     * по url /allSessions если заказа нет, или null, если очередь заполнена и отправлен ответ 503
      */
     @GetMapping("/createTicket")
-    public String createTicket(HttpSession session) {
-        Session ses = (Session) session.getAttribute("ses");
+    public DeferredResult<View> createTicket(HttpSession session, HttpServletResponse response) throws IOException {
+        DeferredResult<View> result = new DeferredResult<>(timeoutMillis);
+        BookingState booking = HttpSessionUtility.booking(session);
         User user = (User) session.getAttribute("user");
-        Ticket ticket = new Ticket();
-        ticket.setSessionId(ses.getId());
-        ticket.setRow((int) session.getAttribute("row"));
-        ticket.setPlace((int) session.getAttribute("place"));
-        ticket.setUserId(user.getId());
-        Optional<Ticket> regTicket = ticketService.add(ticket);
-        if (regTicket.isEmpty()) {
-            return "redirect:/ticketFail";
+        if (booking == null || !booking.hasPlaces() || user == null) {
+            result.setResult(redirect("/allSessions", () -> { }));
+            return result;
+        }
+        List<Ticket> tickets = new ArrayList<>();
+        for (int place : booking.getPlaces()) {
+            tickets.add(new Ticket(0, booking.getSessionId(), booking.getRow(), place, user.getId()));
+        }
+        session.removeAttribute(BookingState.ATTRIBUTE);
+        CompletableFuture<List<Ticket>> purchase;
+        try {
+            purchase = bookingQueue.submit(() -> ticketService.addAll(tickets));
+        } catch (RejectedExecutionException e) {
+            retryLater(session, booking, response, "Booking queue is full");
+            return null;
+        }
+        result.onTimeout(() -> {
+            if (purchase.cancel(false)) {
+                result.setResult((model, request, res) -> retryLater(session, booking, res, "Booking is still queued"));
+            } else {
+                result.setResult((model, request, res) -> awaitOutcome(purchase, session, booking, user)
+                        .render(model, request, res));
+            }
+        });
+        result.onError(error -> purchase.cancel(false));
+        purchase.whenComplete((regTickets, error) -> {
+            if (!purchase.isCancelled()) {
+                result.setResult(outcome(session, booking, user, regTickets, error));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Ожидание начатой покупки в потоке запроса после истечения времени ожидания
+     * @return Представление результата покупки
+     * @throws InterruptedException если поток запроса прерван
+     */
+    private View awaitOutcome(CompletableFuture<List<Ticket>> purchase, HttpSession session,
+                              BookingState booking, User user) throws InterruptedException {
+        try {
+            return outcome(session, booking, user, purchase.get(), null);
+        } catch (ExecutionException e) {
+            return outcome(session, booking, user, null, e.getCause());
         }
-        return "redirect:/ticketSuccess";
     }
 
     /**
-     * Метод возвращает представление с информацией об успешной покупкой(добавлении в базу данных) билета
+     * Представление результата покупки
+     * @param regTickets Купленные билеты или пустой список, если места заняты
+     * @param error Ошибка покупки или null
+     * @return Переадресация на страницу результата или представление, передающее ошибку
+     */
+    private View outcome(HttpSession session, BookingState booking, User user, List<Ticket> regTickets, Throwable error) {
+        if (error != null) {
+            return (model, request, response) -> {
+                ticketService.release(booking.getSessionId(), booking.getRow(), booking.getPlaces(), user.getId());
+                session.setAttribute(BookingState.ATTRIBUTE, booking);
+                if (error instanceof Exception) {
+                    throw (Exception) error;
+                }
+                throw new IllegalStateException("Booking failed", error);
+            };
+        }
+        if (regTickets.isEmpty()) {
+            return redirect("/ticketFail", () -> ticketService.release(
+                    booking.getSessionId(), booking.getRow(), booking.getPlaces(), user.getId()));
+        }
+        return redirect("/ticketSuccess", () -> session.setAttribute(BookingState.PURCHASED, booking));
+    }
+
+    /**
+     * Возврат заказа в сессию и ответ 503 с заголовком Retry-After
+     */
+    private void retryLater(HttpSession session, BookingState booking, HttpServletResponse response,
+                            String message) throws IOException {
+        session.setAttribute(BookingState.ATTRIBUTE, booking);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+    }
+
+    /**
+     * Переадресация, перед которой выполняется действие. Представление отрисовывается в потоке запроса,
+     * поэтому действие может менять сессию и cookie ответа
+     * @param url Адрес внутри приложения
+     * @param action Действие перед переадресацией
+     * @return Представление
+     */
+    private static View redirect(String url, Runnable action) {
+        return (model, request, response) -> {
+            action.run();
+            response.sendRedirect(response.encodeRedirectURL(request.getContextPath() + url));
+        };
+    }
+
+    /**
+     * Метод возвращает представление с информацией об успешной покупкой(добавлении в базу данных) билета.
+     * Купленный заказ удаляется из сессии, поэтому страница показывается один раз
      * @param model Модель с данными
      * @param session Объект типа HttpSession
-     * @return Представление success
+     * @return Представление success или переадресация по url /allSessions, если заказа нет
      */
     @GetMapping("/ticketSuccess")
     public String success(Model model, HttpSession session) {
+        BookingState booking = (BookingState) session.getAttribute(BookingState.PURCHASED);
+        if (booking == null) {
+            return "redirect:/allSessions";
+        }
+        session.removeAttribute(BookingState.PURCHASED);
         model.addAttribute("user", HttpSessionUtility.checkSession(session));
-        model.addAttribute("row", session.getAttribute("row"));
-        model.addAttribute("place", session.getAttribute("place"));
-        model.addAttribute("ses", session.getAttribute("ses"));
+        model.addAttribute("row", booking.getRow());
+        model.addAttribute("place", booking.getPlaces());
+        model.addAttribute("ses", sessionService.findById(booking.getSessionId()));
         return "ticket/ticketSuccess";
     }
 
     /**
-     * Метод возвращает представление с информацией о том, что билет куплен куплен(не добавлен в базу данных)
+     * Метод возвращает представление с информацией о том, что билет куплен куплен(не добавлен в базу данных).
+     * Страница публичная, поэтому для анонимного запроса HttpSession не создается
      * @param model Модель с данными
-     * @param session Объект типа HttpSession
+     * @param request Объект типа HttpServletRequest
      * @return Представление ticketFail
      */
     @GetMapping("/ticketFail")
-    public String fail(Model model, HttpSession session) {
+    public String fail(Model model, HttpServletRequest request) {
         model.addAttribute("message", "Билет с данными посадочными местами уже занят");
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
+        model.addAttribute("user", HttpSessionUtility.checkSession(request.getSession(false)));
         return "error/ticketFail";
     }
 
     /**
-     * Метод удаляет из сессии данные о ряде, месте и id сеанса и
+     * Метод снимает брони с выбранных мест и удаляет заказ из сессии
      * @param session Объект типа HttpSession
      * @return Переадресация по url /allSessions
      */
     @GetMapping("/cancelAnOrder")
     public String cancelAnOrder(HttpSession session) {
-        session.removeAttribute("sessionId");
-        session.removeAttribute("row");
-        session.removeAttribute("place");
+        BookingState booking = HttpSessionUtility.booking(session);
+        if (booking != null && booking.hasPlaces()) {
+            ticketService.release(booking.getSessionId(), booking.getRow(), booking.getPlaces(),
+                    HttpSessionUtility.checkSession(session).getId());
+        }
+        session.removeAttribute(BookingState.ATTRIBUTE);
         return "redirect:/allSessions";
     }
 }
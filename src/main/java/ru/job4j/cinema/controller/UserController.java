@@ -37,14 +37,15 @@ public class UserController {
     }
 
     /**
-     * Метод возвращает представление с формой добавления нового пользователя
+     * Метод возвращает представление с формой добавления нового пользователя.
+     * Страница публичная, поэтому для анонимного запроса HttpSession не создается
      * @param model Модель с данными
-     * @param session Объект типа HttpSession
+     * @param request Объект типа HttpServletRequest
      * @return представление addUser
      */
     @GetMapping("/formAddUser")
-    public String registration(Model model, HttpSession session) {
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
+    public String registration(Model model, HttpServletRequest request) {
+        model.addAttribute("user", HttpSessionUtility.checkSession(request.getSession(false)));
         return "registration/addUser";
     }
 
@@ -63,27 +64,29 @@ public class UserController {
     }
 
     /**
-     * Метод возвращает представление с информацией об успешной регистрации пользователя
+     * Метод возвращает представление с информацией об успешной регистрации пользователя.
+     * Страница публичная, поэтому для анонимного запроса HttpSession не создается
      * @param model Модель с данными
-     * @param session Объект типа HttpSession
+     * @param request Объект типа HttpServletRequest
      * @return Представление success
      */
     @GetMapping("/success")
-    public String success(Model model, HttpSession session) {
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
+    public String success(Model model, HttpServletRequest request) {
+        model.addAttribute("user", HttpSessionUtility.checkSession(request.getSession(false)));
         return "registration/success";
     }
 
     /**
-     * Метод возвращает представление с информацией о неуспешной регистрации пользователя
+     * Метод возвращает представление с информацией о неуспешной регистрации пользователя.
+     * Страница публичная, поэтому для анонимного запроса HttpSession не создается
      * @param model Модель с данными
-     * @param session Объект типа HttpSession
+     * @param request Объект типа HttpServletRequest
      * @return Представление fail
      */
     @GetMapping("/fail")
-    public String fail(Model model, HttpSession session) {
+    public String fail(Model model, HttpServletRequest request) {
         model.addAttribute("message", "Пользователь с такой почтой или номером телефона уже существует");
-        model.addAttribute("user", HttpSessionUtility.checkSession(session));
+        model.addAttribute("user", HttpSessionUtility.checkSession(request.getSession(false)));
         return "error/fail";
     }
 
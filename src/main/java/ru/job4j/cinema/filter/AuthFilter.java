@@ -1,12 +1,15 @@
 package ru.job4j.cinema.filter;
 
 import org.springframework.stereotype.Component;
+import ru.job4j.cinema.filter.RouteTable.Access;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.utility.SessionTokens;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Set;
 
 /**
  * AuthFilter - фильтр с помощью которого осуществляется доступ к ресурсам перед запросом
@@ -16,33 +19,72 @@ import java.util.Set;
 @Component
 public class AuthFilter implements Filter {
 
-    private static final Set<String> URLS = Set.of("posterSession", "allSessions", "login", "loginPage", "fail", "formAddUser", "registration", "success");
+    /**
+     * Правила доступа к адресам контроллеров. Адреса без правила доступны вошедшему пользователю
+     */
+    private static final RouteTable ROUTES = new RouteTable(Access.AUTHENTICATED)
+            .exact("/allSessions", Access.PUBLIC)
+            .exact("/loginPage", Access.PUBLIC)
+            .exact("/login", Access.PUBLIC)
+            .exact("/formAddUser", Access.PUBLIC)
+            .exact("/registration", Access.PUBLIC)
+            .exact("/success", Access.PUBLIC)
+            .exact("/fail", Access.PUBLIC)
+            .exact("/ticketFail", Access.PUBLIC)
+            .exact("/error", Access.PUBLIC)
+            .prefix("/posterSession/", Access.PUBLIC)
+            .exact("/editAllSessions", Access.ADMIN)
+            .exact("/formAddSession", Access.ADMIN)
+            .exact("/createSession", Access.ADMIN)
+            .exact("/updateSession", Access.ADMIN)
+            .prefix("/formUpdateSession/", Access.ADMIN)
+            .prefix("/metrics/", Access.ADMIN);
+
+    private final SessionTokens tokens;
+
+    public AuthFilter(SessionTokens tokens) {
+        this.tokens = tokens;
+    }
 
     /**
      * Через этот метод будут проходить запросы к сервлетам.
-     * Если запрос идет к адресам allSessions, login, allSessions, fail, registration, success то мы их пропускаем сразу.
-     * Если запросы идут к другим адресам, то проверяем наличие пользователя в HttpSession
-     * Если его нет, то мы переходим на страницу авторизации.
+     * Уровень доступа к адресу находится по таблице правил ROUTES. Публичные адреса пропускаются сразу,
+     * без обращения к HttpSession. Для остальных адресов пользователь берется из существующей сессии:
+     * новая сессия для анонимного запроса не создается. Если пользователя нет, то мы переходим на страницу
+     * авторизации, а если адрес только для администратора, а у пользователя нет признака администратора
+     * (колонка users.admin), то отвечаем 403. Имя пользователя для этого не используется: имена не уникальны.
+     * В режиме cinema.auth.mode=token запрос оборачивается в TokenRequest, и сессия восстанавливается
+     * из подписанных cookie без обращения к хранилищу сессий.
      */
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        HttpServletRequest req = (HttpServletRequest) request;
         HttpServletResponse res = (HttpServletResponse) response;
-        String uri = req.getRequestURI();
-        if (checkURL(uri)) {
+        HttpServletRequest req = tokens.isEnabled()
+                ? new TokenRequest((HttpServletRequest) request, res, tokens) : (HttpServletRequest) request;
+        Access access = ROUTES.resolve(path(req));
+        if (access == Access.PUBLIC) {
             chain.doFilter(req, res);
             return;
         }
-        if (req.getSession().getAttribute("user") == null) {
+        HttpSession session = req.getSession(false);
+        User user = session == null ? null : (User) session.getAttribute("user");
+        if (user == null) {
             res.sendRedirect(req.getContextPath() + "/loginPage");
             return;
         }
+        if (access == Access.ADMIN && !user.isAdmin()) {
+            res.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
         chain.doFilter(req, res);
     }
 
-    private boolean checkURL(String uri) {
-        return AuthFilter.URLS.stream()
-                .anyMatch(uri::contains);
+    /**
+     * Путь запроса внутри приложения. Контейнер возвращает его декодированным и без параметров пути (;jsessionid),
+     * поэтому закодированный или дополненный параметрами адрес не обходит правила
+     */
+    private static String path(HttpServletRequest req) {
+        String pathInfo = req.getPathInfo();
+        return pathInfo == null ? req.getServletPath() : req.getServletPath() + pathInfo;
     }
 }
-
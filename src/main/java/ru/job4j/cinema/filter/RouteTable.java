@@ -0,0 +1,151 @@
+package ru.job4j.cinema.filter;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * RouteTable - таблица правил доступа к адресам приложения в виде префиксного дерева по символам пути
+ *
+ * Правило бывает точным (адрес совпадает с путем целиком, допускается завершающий "/", как в Spring MVC)
+ * или префиксным (путь начинается с префикса, который заканчивается "/", то есть правило действует
+ * на целые сегменты пути). Уровень доступа находится за один проход по символам пути без выделения памяти:
+ * точное правило важнее префиксного, более длинный префикс важнее короткого, для остальных путей действует
+ * уровень по умолчанию. Поэтому адреса вида "/allSessionsX" или "/xlogin" не совпадают с публичными правилами.
+ *
+ * Таблица заполняется один раз при создании фильтра и после публикации через final поле не изменяется.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public final class RouteTable {
+
+    /**
+     * Уровень доступа к адресу
+     */
+    public enum Access {
+
+        /**
+         * Доступ без входа
+         */
+        PUBLIC,
+
+        /**
+         * Доступ для вошедшего пользователя
+         */
+        AUTHENTICATED,
+
+        /**
+         * Доступ только для администратора
+         */
+        ADMIN
+    }
+
+    /**
+     * Узел дерева. Дочерние узлы хранятся в массивах, потому что у узла их немного
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private Access exact;
+
+        private Access prefix;
+
+        private Node child(char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node add(char key) {
+            Node result = child(key);
+            if (result == null) {
+                result = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = result;
+            }
+            return result;
+        }
+    }
+
+    private final Node root = new Node();
+
+    private final Access fallback;
+
+    /**
+     * Создание пустой таблицы
+     * @param fallback Уровень доступа для путей без правила
+     */
+    public RouteTable(Access fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Точное правило
+     * @param path Путь, начинающийся с "/"
+     * @param access Уровень доступа
+     * @return Эта таблица
+     */
+    public RouteTable exact(String path, Access access) {
+        node(path).exact = access;
+        return this;
+    }
+
+    /**
+     * Префиксное правило
+     * @param path Префикс, начинающийся и заканчивающийся "/"
+     * @param access Уровень доступа
+     * @return Эта таблица
+     */
+    public RouteTable prefix(String path, Access access) {
+        if (!path.endsWith("/")) {
+            throw new IllegalArgumentException("Prefix must end with /: " + path);
+        }
+        node(path).prefix = access;
+        return this;
+    }
+
+    /**
+     * Уровень доступа к пути
+     * @param path Путь запроса без контекста приложения
+     * @return Уровень доступа по самому точному правилу
+     */
+    public Access resolve(String path) {
+        Access result = fallback;
+        Node node = root;
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == '/' && i == length - 1 && i > 0 && node.exact != null) {
+                return node.exact;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return result;
+            }
+            if (node.prefix != null) {
+                result = node.prefix;
+            }
+        }
+        return node.exact != null ? node.exact : result;
+    }
+
+    private Node node(String path) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with /: " + path);
+        }
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.add(path.charAt(i));
+        }
+        return node;
+    }
+}
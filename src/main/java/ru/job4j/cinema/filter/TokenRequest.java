@@ -0,0 +1,48 @@
+package ru.job4j.cinema.filter;
+
+import ru.job4j.cinema.utility.SessionTokens;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * TokenRequest - запрос, сессия которого восстанавливается из подписанных cookie, а не из хранилища Tomcat
+ *
+ * @author Ilya Kaltygin
+ */
+class TokenRequest extends HttpServletRequestWrapper {
+
+    private final TokenSession session;
+
+    TokenRequest(HttpServletRequest request, HttpServletResponse response, SessionTokens tokens) {
+        super(request);
+        this.session = new TokenSession(request, response, tokens);
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return session;
+    }
+
+    /**
+     * Сессия запроса
+     * @param create Вернуть ли сессию без атрибутов
+     * @return Сессия или null, если create = false и в cookie нет ни пользователя, ни заказа
+     */
+    @Override
+    public HttpSession getSession(boolean create) {
+        return create || !session.isEmpty() ? session : null;
+    }
+
+    @Override
+    public String changeSessionId() {
+        return session.getId();
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return !session.isNew();
+    }
+}
@@ -0,0 +1,263 @@
+package ru.job4j.cinema.filter;
+
+import net.jcip.annotations.NotThreadSafe;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.utility.SessionTokens;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * TokenSession - HttpSession одного запроса, состояние которой хранится в подписанных cookie
+ *
+ * Объект создается фильтром AuthFilter на каждый запрос и не попадает в хранилище сессий Tomcat.
+ * При первом обращении атрибуты восстанавливаются из cookie: пользователь - из токена "cinema-token",
+ * заказы BookingState - из cookie "cinema-" + имя атрибута. Подпись каждой cookie проверяется,
+ * а заказ принимается, только если он выдан тому же пользователю. Запись пользователя или заказа
+ * выдает новую cookie, удаление атрибута и invalidate удаляют cookie. Остальные атрибуты живут
+ * только до конца запроса.
+ *
+ * @author Ilya Kaltygin
+ */
+@NotThreadSafe
+class TokenSession implements HttpSession {
+
+    /**
+     * Имя cookie с токеном пользователя
+     */
+    static final String TOKEN_COOKIE = "cinema-token";
+
+    /**
+     * Префикс cookie с заказами
+     */
+    static final String COOKIE_PREFIX = "cinema-";
+
+    private static final String USER = "user";
+
+    private final HttpServletRequest request;
+
+    private final HttpServletResponse response;
+
+    private final SessionTokens tokens;
+
+    private final long creationTime = System.currentTimeMillis();
+
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+    private boolean loaded;
+
+    private boolean restored;
+
+    TokenSession(HttpServletRequest request, HttpServletResponse response, SessionTokens tokens) {
+        this.request = request;
+        this.response = response;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Есть ли в сессии атрибуты
+     * @return true, если атрибутов нет ни в cookie, ни в запросе
+     */
+    boolean isEmpty() {
+        load();
+        return attributes.isEmpty();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        load();
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        load();
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        load();
+        attributes.put(name, value);
+        if (USER.equals(name) && value instanceof User) {
+            write(TOKEN_COOKIE, tokens.issue((User) value));
+        } else if (value instanceof BookingState) {
+            write(COOKIE_PREFIX + name, tokens.sign(payload((BookingState) value, userId())));
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        load();
+        Object value = attributes.remove(name);
+        if (USER.equals(name) && value instanceof User) {
+            expire(TOKEN_COOKIE);
+        } else if (value instanceof BookingState) {
+            expire(COOKIE_PREFIX + name);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        load();
+        for (String name : attributes.keySet().toArray(new String[0])) {
+            removeAttribute(name);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return Integer.toHexString(System.identityHashCode(this));
+    }
+
+    @Override
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+        return creationTime;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return request.getServletContext();
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+
+    }
+
+    @Override
+    public int getMaxInactiveInterval() {
+        return (int) tokens.getTtlSeconds();
+    }
+
+    @Override
+    public boolean isNew() {
+        load();
+        return !restored;
+    }
+
+    @Override
+    @Deprecated
+    public HttpSessionContext getSessionContext() {
+        return null;
+    }
+
+    @Override
+    @Deprecated
+    public Object getValue(String name) {
+        return getAttribute(name);
+    }
+
+    @Override
+    @Deprecated
+    public String[] getValueNames() {
+        load();
+        return attributes.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    @Deprecated
+    public void putValue(String name, Object value) {
+        setAttribute(name, value);
+    }
+
+    @Override
+    @Deprecated
+    public void removeValue(String name) {
+        removeAttribute(name);
+    }
+
+    /**
+     * Восстановление атрибутов из cookie запроса. Cookie с неверной подписью или чужим заказом пропускаются
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return;
+        }
+        for (Cookie cookie : cookies) {
+            if (TOKEN_COOKIE.equals(cookie.getName())) {
+                tokens.user(cookie.getValue()).ifPresent(user -> attributes.put(USER, user));
+            }
+        }
+        for (Cookie cookie : cookies) {
+            String name = cookie.getName();
+            if (name.startsWith(COOKIE_PREFIX) && !TOKEN_COOKIE.equals(name)) {
+                tokens.verify(cookie.getValue())
+                        .flatMap(payload -> booking(payload, userId()))
+                        .ifPresent(booking -> attributes.put(name.substring(COOKIE_PREFIX.length()), booking));
+            }
+        }
+        restored = !attributes.isEmpty();
+    }
+
+    private int userId() {
+        Object user = attributes.get(USER);
+        return user instanceof User ? ((User) user).getId() : 0;
+    }
+
+    /**
+     * Данные cookie заказа: id сеанса, ряд, маска мест и id пользователя, выдавшего заказ
+     */
+    static String payload(BookingState booking, int userId) {
+        return booking.getSessionId() + "-" + booking.getRow() + "-"
+                + Long.toUnsignedString(booking.getPlaceMask(), 16) + "-" + userId;
+    }
+
+    static Optional<BookingState> booking(String payload, int userId) {
+        String[] parts = payload.split("-");
+        if (parts.length != 4) {
+            return Optional.empty();
+        }
+        try {
+            if (Integer.parseInt(parts[3]) != userId) {
+                return Optional.empty();
+            }
+            return Optional.of(BookingState.fromMask(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Long.parseUnsignedLong(parts[2], 16)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void write(String name, String value) {
+        response.addCookie(cookie(name, value, (int) tokens.getTtlSeconds()));
+    }
+
+    private void expire(String name) {
+        response.addCookie(cookie(name, "", 0));
+    }
+
+    private Cookie cookie(String name, String value, int maxAge) {
+        Cookie cookie = new Cookie(name, value);
+        String path = request.getContextPath();
+        cookie.setPath(path.isEmpty() ? "/" : path);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+}
@@ -0,0 +1,165 @@
+package ru.job4j.cinema.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * BookingState - модель, описывающая незавершенный заказ пользователя, который хранится в HttpSession
+ *
+ * Заказ хранит только id сеанса, номер ряда и битовую маску выбранных мест, поэтому занимает
+ * в сессии несколько десятков байтов вместо сеанса целиком. Объект неизменяемый: каждый шаг
+ * заказа (выбор ряда, бронирование мест) создает новый объект, который заменяет прежний в сессии.
+ * Номера мест в маске - от 1 до MAX_PLACE.
+ *
+ * @author Ilya Kaltygin
+ */
+public final class BookingState {
+
+    /**
+     * Имя атрибута сессии, в котором хранится заказ
+     */
+    public static final String ATTRIBUTE = "booking";
+
+    /**
+     * Имя атрибута сессии, в котором купленный заказ хранится до показа страницы успешной покупки
+     */
+    public static final String PURCHASED = "purchased";
+
+    /**
+     * Наибольший номер места, который помещается в маску
+     */
+    public static final int MAX_PLACE = Long.SIZE;
+
+    /**
+     * Размер объекта в куче: заголовок объекта и три поля
+     */
+    public static final int BYTES = 32;
+
+    private final int sessionId;
+
+    /**
+     * Номер ряда или 0, если ряд еще не выбран
+     */
+    private final int row;
+
+    /**
+     * Бит place - 1 установлен, если место place забронировано
+     */
+    private final long places;
+
+    private BookingState(int sessionId, int row, long places) {
+        this.sessionId = sessionId;
+        this.row = row;
+        this.places = places;
+    }
+
+    /**
+     * Заказ на сеанс без выбранного ряда
+     * @param sessionId id сеанса
+     * @return Объект типа BookingState
+     */
+    public static BookingState of(int sessionId) {
+        return new BookingState(sessionId, 0, 0);
+    }
+
+    /**
+     * Заказ по маске мест, например восстановленный из cookie
+     * @param sessionId id сеанса
+     * @param row Номер ряда или 0
+     * @param placeMask Маска мест, полученная методом getPlaceMask
+     * @return Объект типа BookingState
+     */
+    public static BookingState fromMask(int sessionId, int row, long placeMask) {
+        return new BookingState(sessionId, row, placeMask);
+    }
+
+    /**
+     * Проверка, что номера мест помещаются в заказ
+     * @param places Номера мест
+     * @return true, если все номера от 1 до MAX_PLACE
+     */
+    public static boolean fits(List<Integer> places) {
+        for (int place : places) {
+            if (place < 1 || place > MAX_PLACE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Заказ с выбранным рядом и без мест
+     * @param row Номер ряда
+     * @return Новый объект типа BookingState
+     */
+    public BookingState withRow(int row) {
+        return new BookingState(sessionId, row, 0);
+    }
+
+    /**
+     * Заказ с забронированными местами
+     * @param places Номера мест от 1 до MAX_PLACE
+     * @return Новый объект типа BookingState
+     */
+    public BookingState withPlaces(List<Integer> places) {
+        if (!fits(places)) {
+            throw new IllegalArgumentException("Place number must be from 1 to " + MAX_PLACE);
+        }
+        long mask = 0;
+        for (int place : places) {
+            mask |= 1L << (place - 1);
+        }
+        return new BookingState(sessionId, row, mask);
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Забронированные места
+     * @return Номера мест в порядке возрастания
+     */
+    public List<Integer> getPlaces() {
+        List<Integer> result = new ArrayList<>(Long.bitCount(places));
+        for (long rest = places; rest != 0; rest &= rest - 1) {
+            result.add(Long.numberOfTrailingZeros(rest) + 1);
+        }
+        return result;
+    }
+
+    public long getPlaceMask() {
+        return places;
+    }
+
+    public boolean hasPlaces() {
+        return places != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BookingState that = (BookingState) o;
+        return sessionId == that.sessionId && row == that.row && places == that.places;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sessionId, row, places);
+    }
+
+    @Override
+    public String toString() {
+        return "BookingState{sessionId=" + sessionId + ", row=" + row + ", places=" + getPlaces() + '}';
+    }
+}
@@ -0,0 +1,58 @@
+package ru.job4j.cinema.model;
+
+import java.util.List;
+
+/**
+ * Page - модель, описывающая страницу списка при постраничном выводе по ключу
+ *
+ * Страница задается id последнего элемента предыдущей страницы (after), а не номером страницы,
+ * поэтому ссылки на соседние страницы тоже содержат id: after следующей страницы - id последнего
+ * элемента этой страницы.
+ *
+ * @author Ilya Kaltygin
+ * @param <T> Тип элементов
+ */
+public class Page<T> {
+    /**
+     * Элементы страницы
+     */
+    private final List<T> items;
+
+    /**
+     * Общее количество элементов во всех страницах
+     */
+    private final int total;
+
+    /**
+     * Параметр after предыдущей страницы или null, если это первая страница
+     */
+    private final Integer previous;
+
+    /**
+     * Параметр after следующей страницы или null, если это последняя страница
+     */
+    private final Integer next;
+
+    public Page(List<T> items, int total, Integer previous, Integer next) {
+        this.items = items;
+        this.total = total;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public Integer getPrevious() {
+        return previous;
+    }
+
+    public Integer getNext() {
+        return next;
+    }
+}
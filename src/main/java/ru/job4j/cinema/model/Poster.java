@@ -0,0 +1,105 @@
+package ru.job4j.cinema.model;
+
+import java.util.Objects;
+
+/**
+ * Poster - модель, описывающая уменьшенную копию постера сеанса
+ *
+ * @author Ilya Kaltygin
+ */
+public class Poster {
+
+    /**
+     * id сеанса
+     */
+    private int sessionId;
+
+    /**
+     * Вариант постера
+     */
+    private PosterVariant variant;
+
+    /**
+     * Изображение. Заполняется только при добавлении постера
+     */
+    private byte[] photo;
+
+    /**
+     * SHA-256 изображения в шестнадцатеричном виде
+     */
+    private String photoHash;
+
+    /**
+     * MIME-тип изображения
+     */
+    private String photoType;
+
+    public Poster() {
+
+    }
+
+    public Poster(int sessionId, PosterVariant variant, byte[] photo, String photoHash, String photoType) {
+        this.sessionId = sessionId;
+        this.variant = variant;
+        this.photo = photo;
+        this.photoHash = photoHash;
+        this.photoType = photoType;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(int sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public PosterVariant getVariant() {
+        return variant;
+    }
+
+    public void setVariant(PosterVariant variant) {
+        this.variant = variant;
+    }
+
+    public byte[] getPhoto() {
+        return photo;
+    }
+
+    public void setPhoto(byte[] photo) {
+        this.photo = photo;
+    }
+
+    public String getPhotoHash() {
+        return photoHash;
+    }
+
+    public void setPhotoHash(String photoHash) {
+        this.photoHash = photoHash;
+    }
+
+    public String getPhotoType() {
+        return photoType;
+    }
+
+    public void setPhotoType(String photoType) {
+        this.photoType = photoType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Poster poster = (Poster) o;
+        return sessionId == poster.sessionId && variant == poster.variant;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sessionId, variant);
+    }
+}
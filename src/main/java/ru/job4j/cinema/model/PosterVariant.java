@@ -0,0 +1,63 @@
+package ru.job4j.cinema.model;
+
+import java.util.Optional;
+
+/**
+ * PosterVariant - уменьшенные копии постера сеанса
+ *
+ * @author Ilya Kaltygin
+ */
+public enum PosterVariant {
+
+    /**
+     * Миниатюра для списка сеансов администратора
+     */
+    THUMB(100, 140),
+
+    /**
+     * Карточка сеанса на афише и страницах покупки
+     */
+    CARD(250, 350),
+
+    /**
+     * Постер для полноэкранного просмотра
+     */
+    FULL(1000, 1400);
+
+    /**
+     * Максимальная ширина в пикселях
+     */
+    private final int width;
+
+    /**
+     * Максимальная высота в пикселях
+     */
+    private final int height;
+
+    PosterVariant(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Поиск варианта по значению параметра запроса, например card
+     * @param name Значение параметра без учета регистра
+     * @return Вариант постера или пустой Optional, если такого варианта нет
+     */
+    public static Optional<PosterVariant> of(String name) {
+        for (PosterVariant variant : values()) {
+            if (variant.name().equalsIgnoreCase(name)) {
+                return Optional.of(variant);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,24 @@
+package ru.job4j.cinema.model;
+
+/**
+ * SeatState - изменение состояния места в зале
+ *
+ * @author Ilya Kaltygin
+ */
+public enum SeatState {
+
+    /**
+     * Место продано
+     */
+    BOOKED,
+
+    /**
+     * Место забронировано на время оформления заказа
+     */
+    HELD,
+
+    /**
+     * Бронь места снята или истекла
+     */
+    RELEASED
+}
@@ -19,10 +19,21 @@ public class Session {
     private String title;
 
     /**
-     * Постер для фильма
+     * Постер для фильма. Заполняется только при добавлении сеанса,
+     * сеансы из базы данных загружаются без постера
      */
     private byte[] photo;
 
+    /**
+     * SHA-256 постера в шестнадцатеричном виде. Используется как ETag постера
+     */
+    private String photoHash;
+
+    /**
+     * MIME-тип постера
+     */
+    private String photoType;
+
     /**
      * Описание
      */
@@ -63,6 +74,22 @@ public class Session {
         this.photo = photo;
     }
 
+    public String getPhotoHash() {
+        return photoHash;
+    }
+
+    public void setPhotoHash(String photoHash) {
+        this.photoHash = photoHash;
+    }
+
+    public String getPhotoType() {
+        return photoType;
+    }
+
+    public void setPhotoType(String photoType) {
+        this.photoType = photoType;
+    }
+
     public String getDesc() {
         return desc;
     }
@@ -33,6 +33,11 @@ public class User {
      */
     private String phone;
 
+    /**
+     * Пользователь является администратором: ему доступны управление сеансами и показатели приложения
+     */
+    private boolean admin;
+
     public User() {
 
     }
@@ -85,6 +90,14 @@ public class User {
         this.phone = phone;
     }
 
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(boolean admin) {
+        this.admin = admin;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,157 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.utility.ContentHash;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * FilePosterStore - хранение изображений постеров в каталоге на локальном диске
+ *
+ * Каталог адресуется содержимым: имя файла - хеш SHA-256 изображения, а подкаталог - две первые цифры хеша.
+ * Одинаковые изображения хранятся один раз, а файл после записи никогда не меняется, поэтому его можно
+ * передавать в сокет средствами операционной системы (sendfile) без копирования в память приложения.
+ * Файл сначала записывается во временный файл и переносится на место атомарно, поэтому читатель
+ * никогда не видит недописанный файл.
+ *
+ * Хранилище включается свойством cinema.poster.storage=file, каталог задается свойством cinema.poster.storage-dir.
+ *
+ * @author Ilya Kaltygin
+ */
+@Repository
+@ThreadSafe
+@ConditionalOnProperty(name = "cinema.poster.storage", havingValue = "file")
+public class FilePosterStore implements PosterStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilePosterStore.class.getName());
+
+    /**
+     * Допустимый хеш: защищает от выхода за пределы каталога
+     */
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+
+    @Autowired
+    public FilePosterStore(@Value("${cinema.poster.storage-dir:posters}") String dir) {
+        this(Path.of(dir));
+    }
+
+    public FilePosterStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Сохранение изображения под его хешем. Если такое изображение уже есть, то оно не перезаписывается
+     * @param poster Объект типа Poster с изображением
+     * @return true, если хеш изображения совпал с хешем в описании постера
+     */
+    @Override
+    public boolean save(Poster poster) {
+        try {
+            return write(new ByteArrayInputStream(poster.getPhoto())).equals(poster.getPhotoHash());
+        } catch (IOException e) {
+            LOG.error("Exception in method .save(Poster poster)", e);
+        }
+        return false;
+    }
+
+    /**
+     * Сохранение изображения из потока под его хешем
+     * @param poster Объект типа Poster без изображения и хеша
+     * @param size Размер изображения в байтах
+     * @param in Поток с изображением
+     * @return Хеш SHA-256 изображения
+     */
+    @Override
+    public String save(Poster poster, long size, InputStream in) throws IOException {
+        return write(in);
+    }
+
+    /**
+     * Запись изображения из потока с вычислением его хеша
+     * @param in Поток с изображением
+     * @return Хеш SHA-256 изображения, под которым оно сохранено
+     */
+    public String write(InputStream in) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "poster", ".tmp");
+        try {
+            MessageDigest digest = ContentHash.digest();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                in.transferTo(new DigestOutputStream(Channels.newOutputStream(channel), digest));
+                channel.force(true);
+            }
+            String hash = ContentHash.hex(digest.digest());
+            Path target = path(hash).orElseThrow();
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Передача изображения получателю потоком из файла
+     * @param poster Объект типа Poster без изображения
+     * @param sink Получатель постера
+     * @return true, если файл найден
+     */
+    @Override
+    public boolean stream(Poster poster, PosterSink sink) {
+        Optional<Path> file = file(poster);
+        if (file.isEmpty()) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file.get())) {
+            sink.accept(Files.size(file.get()), in);
+            return true;
+        } catch (IOException e) {
+            LOG.error("Exception in method .stream(Poster poster, PosterSink sink)", e);
+        }
+        return false;
+    }
+
+    /**
+     * Файл с изображением постера
+     * @param poster Объект типа Poster без изображения
+     * @return Путь к файлу или пустой Optional, если изображение еще не сохранено
+     */
+    @Override
+    public Optional<Path> file(Poster poster) {
+        return path(poster.getPhotoHash()).filter(Files::isRegularFile);
+    }
+
+    /**
+     * Путь к файлу изображения по хешу
+     * @param hash Хеш SHA-256
+     * @return Путь или пустой Optional, если хеш некорректен
+     */
+    private Optional<Path> path(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(dir.resolve(hash.substring(0, 2)).resolve(hash));
+    }
+}
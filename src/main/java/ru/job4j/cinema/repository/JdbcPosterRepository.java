@@ -0,0 +1,92 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Optional;
+
+/**
+ * JdbcPosterRepository - логика работы с уменьшенными копиями постеров в базе данных
+ *
+ * @author Ilya Kaltygin
+ */
+@Repository
+@ThreadSafe
+public class JdbcPosterRepository implements PosterRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcPosterRepository.class.getName());
+
+    private static final String ADD_POSTER = """
+            INSERT INTO posters(session_id, variant, photo_hash, photo_type)
+            VALUES(?, ?, ?, ?)
+            """;
+
+    /**
+     * Описание копии постера без изображения
+     */
+    private static final Projection<Poster> POSTER = Projection.of(
+            (rs, c) -> new Poster(rs.getInt(c[0]), PosterVariant.valueOf(rs.getString(c[1])), null,
+                    rs.getString(c[2]), rs.getString(c[3])),
+            "session_id", "variant", "photo_hash", "photo_type");
+
+    private static final String FIND_POSTER = """
+            SELECT %s FROM posters
+            WHERE session_id = ? AND variant = ?
+            """.formatted(POSTER.columns());
+
+    private final DataSource dataSource;
+
+    public JdbcPosterRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Добавление описания копии постера в базу данных
+     * @param poster Объект типа Poster
+     * @return true, если копия добавлена
+     */
+    @Override
+    public boolean add(Poster poster) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(ADD_POSTER)
+        ) {
+            ps.setInt(1, poster.getSessionId());
+            ps.setString(2, poster.getVariant().name());
+            ps.setString(3, poster.getPhotoHash());
+            ps.setString(4, poster.getPhotoType());
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            LOG.error("Exception in method .add(Poster poster)", e);
+        }
+        return false;
+    }
+
+    /**
+     * Поиск копии постера сеанса без изображения
+     * @param sessionId id сеанса
+     * @param variant Вариант постера
+     * @return Объект типа Poster или пустой Optional
+     */
+    @Override
+    public Optional<Poster> findBySessionId(int sessionId, PosterVariant variant) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(FIND_POSTER)
+        ) {
+            ps.setInt(1, sessionId);
+            ps.setString(2, variant.name());
+            try (ResultSet rs = ps.executeQuery()) {
+                return POSTER.first(rs);
+            }
+        } catch (Exception e) {
+            LOG.error("Exception in method .findBySessionId(int sessionId, PosterVariant variant)", e);
+        }
+        return Optional.empty();
+    }
+}
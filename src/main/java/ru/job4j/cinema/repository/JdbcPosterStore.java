@@ -0,0 +1,190 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.utility.BoundedInputStream;
+import ru.job4j.cinema.utility.ContentHash;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * JdbcPosterStore - хранение изображений постеров в столбцах photo таблиц sessions и posters
+ *
+ * Хранилище используется по умолчанию и выключается свойством cinema.poster.storage=file.
+ *
+ * При чтении изображение копируется в память, пока открыты соединение и ResultSet, и передается получателю
+ * после возврата соединения в пул. Драйвер PostgreSQL все равно загружает значение bytea в память целиком,
+ * а передача клиенту идет со скоростью клиента, и медленный клиент не должен удерживать соединение с базой данных.
+ * Изображение больше cinema.poster.max-size-mb не читается.
+ *
+ * @author Ilya Kaltygin
+ */
+@Repository
+@ThreadSafe
+@ConditionalOnProperty(name = "cinema.poster.storage", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcPosterStore implements PosterStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcPosterStore.class.getName());
+
+    private static final String SAVE_SESSION_PHOTO = """
+            UPDATE sessions SET photo = ?
+            WHERE id = ?
+            """;
+
+    private static final String SAVE_VARIANT_PHOTO = """
+            UPDATE posters SET photo = ?
+            WHERE session_id = ? AND variant = ?
+            """;
+
+    private static final String FIND_SESSION_PHOTO = """
+            SELECT OCTET_LENGTH(photo) AS size, photo FROM sessions
+            WHERE id = ?
+            """;
+
+    private static final String FIND_VARIANT_PHOTO = """
+            SELECT OCTET_LENGTH(photo) AS size, photo FROM posters
+            WHERE session_id = ? AND variant = ?
+            """;
+
+    /**
+     * Наибольший размер постера по умолчанию в мегабайтах
+     */
+    private static final long DEFAULT_MAX_SIZE_MB = 10;
+
+    private final DataSource dataSource;
+
+    /**
+     * Наибольший размер читаемого изображения в байтах
+     */
+    private final long maxSize;
+
+    @Autowired
+    public JdbcPosterStore(DataSource dataSource, @Value("${cinema.poster.max-size-mb:10}") long maxSizeMb) {
+        this.dataSource = dataSource;
+        this.maxSize = maxSizeMb * 1024 * 1024;
+    }
+
+    public JdbcPosterStore(DataSource dataSource) {
+        this(dataSource, DEFAULT_MAX_SIZE_MB);
+    }
+
+    /**
+     * Запись изображения в строку сеанса или копии постера
+     * @param poster Объект типа Poster с изображением
+     * @return true, если строка найдена и изображение записано
+     */
+    @Override
+    public boolean save(Poster poster) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(
+                     poster.getVariant() == null ? SAVE_SESSION_PHOTO : SAVE_VARIANT_PHOTO)
+        ) {
+            ps.setBytes(1, poster.getPhoto());
+            ps.setInt(2, poster.getSessionId());
+            if (poster.getVariant() != null) {
+                ps.setString(3, poster.getVariant().name());
+            }
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            LOG.error("Exception in method .save(Poster poster)", e);
+        }
+        return false;
+    }
+
+    /**
+     * Запись изображения из потока в строку сеанса или копии постера. Драйвер получает поток
+     * вместе с размером и передает его в базу данных, не загружая изображение в память
+     * @param poster Объект типа Poster без изображения и хеша
+     * @param size Размер изображения в байтах
+     * @param in Поток с изображением
+     * @return Хеш SHA-256 записанного изображения
+     */
+    @Override
+    public String save(Poster poster, long size, InputStream in) throws IOException {
+        MessageDigest digest = ContentHash.digest();
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(
+                     poster.getVariant() == null ? SAVE_SESSION_PHOTO : SAVE_VARIANT_PHOTO)
+        ) {
+            ps.setBinaryStream(1, new DigestInputStream(in, digest), size);
+            ps.setInt(2, poster.getSessionId());
+            if (poster.getVariant() != null) {
+                ps.setString(3, poster.getVariant().name());
+            }
+            if (ps.executeUpdate() == 0) {
+                throw new IOException("Poster row of session " + poster.getSessionId() + " is not found");
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return ContentHash.hex(digest.digest());
+    }
+
+    /**
+     * Передача изображения получателю. Изображение читается в память до закрытия соединения,
+     * а получатель вызывается после его возврата в пул
+     * @param poster Объект типа Poster без изображения
+     * @param sink Получатель постера
+     * @return true, если изображение найдено и передано
+     */
+    @Override
+    public boolean stream(Poster poster, PosterSink sink) {
+        byte[] photo = null;
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(
+                     poster.getVariant() == null ? FIND_SESSION_PHOTO : FIND_VARIANT_PHOTO)
+        ) {
+            ps.setInt(1, poster.getSessionId());
+            if (poster.getVariant() != null) {
+                ps.setString(2, poster.getVariant().name());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    photo = read(poster, rs);
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Exception in method .stream(Poster poster, PosterSink sink)", e);
+        }
+        if (photo == null) {
+            return false;
+        }
+        try {
+            sink.accept(photo.length, new ByteArrayInputStream(photo));
+        } catch (IOException e) {
+            LOG.debug("Poster of session {} is not delivered: {}", poster.getSessionId(), e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Чтение изображения из текущей строки с ограничением размера
+     * @param poster Объект типа Poster без изображения
+     * @param rs Строка с размером и изображением
+     * @return Изображение или null, если его нет или оно больше допустимого размера
+     */
+    private byte[] read(Poster poster, ResultSet rs) throws SQLException, IOException {
+        long size = rs.getLong("size");
+        if (size > maxSize) {
+            LOG.warn("Poster of session {} is {} bytes, more than {} bytes allowed", poster.getSessionId(), size, maxSize);
+            return null;
+        }
+        try (InputStream in = rs.getBinaryStream("photo")) {
+            return in == null ? null : new BoundedInputStream(in, maxSize).readAllBytes();
+        }
+    }
+}
@@ -17,6 +17,9 @@ import javax.sql.DataSource;
 /**
  * PostgresSessionRepository - логика работы с базой данных
  *
+ * Репозиторий хранит только описание сеанса и хеш и тип постера. Изображение постера
+ * хранится в PosterStore, поэтому страницы не загружают постеры в память.
+ *
  * @author Ilya Kaltygin
  */
 @Repository
@@ -27,19 +30,36 @@ public class JdbcSessionRepository implements SessionRepository {
 
     private static final Logger LOG = LoggerFactory.getLogger(JdbcSessionRepository.class.getName());
 
+    /**
+     * Сеанс без постера, но с его хешем и типом
+     */
+    private static final Projection<Session> SESSION = Projection.of((rs, c) -> {
+        Session session = new Session(rs.getInt(c[0]), rs.getString(c[1]), rs.getString(c[2]), null);
+        session.setPhotoHash(rs.getString(c[3]));
+        session.setPhotoType(rs.getString(c[4]));
+        return session;
+    }, "id", "title", "description", "photo_hash", "photo_type");
+
     private static final String FIND_ALL = """
-            SELECT * FROM sessions
-            """;
+            SELECT %s FROM sessions
+            """.formatted(SESSION.columns());
+
+    private static final String FIND_PAGE = """
+            SELECT %s FROM sessions
+            WHERE id > ?
+            ORDER BY id
+            LIMIT ?
+            """.formatted(SESSION.columns());
 
     private static final String ADD_SESSION = """
-            INSERT INTO sessions(title, description, photo)
-            VALUES(?, ?, ?)
+            INSERT INTO sessions(title, description, photo_hash, photo_type)
+            VALUES(?, ?, ?, ?)
             """;
 
     private static final String FIND_SESSION_BY_ID = """
-            SELECT * FROM sessions
+            SELECT %s FROM sessions
             WHERE id = ?
-            """;
+            """.formatted(SESSION.columns());
 
     private static final String UPDATE_SESSION = """
             UPDATE sessions
@@ -47,6 +67,17 @@ public class JdbcSessionRepository implements SessionRepository {
             WHERE id = ?
             """;
 
+    private static final String UPDATE_POSTER_HASH = """
+            UPDATE sessions
+            SET photo_hash = ?
+            WHERE id = ?
+            """;
+
+    private static final String DELETE_SESSION = """
+            DELETE FROM sessions
+            WHERE id = ?
+            """;
+
     public JdbcSessionRepository(DataSource dataSource) {
         this.dataSource = dataSource;
     }
@@ -62,9 +93,7 @@ public class JdbcSessionRepository implements SessionRepository {
              PreparedStatement ps = cn.prepareStatement(FIND_ALL)
         ) {
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    sessions.add(createSession(rs));
-                }
+                sessions = SESSION.list(rs);
             }
         } catch (Exception e) {
             LOG.error("Exception in method .findAll()", e);
@@ -73,7 +102,32 @@ public class JdbcSessionRepository implements SessionRepository {
     }
 
     /**
-     * Добавление сеанса в базе данных
+     * Поиск страницы сеансов по ключу: WHERE id > ? ORDER BY id LIMIT ? читает индекс первичного ключа
+     * с позиции afterId и останавливается после limit строк
+     * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * Из страниц собирается каталог сеансов, поэтому ошибка чтения не заменяется пустой страницей:
+     * пустая страница выглядела бы как конец каталога
+     * @return Список объектов типа Session
+     * @throws IllegalStateException если страницу не удалось прочитать
+     */
+    @Override
+    public List<Session> findPage(int afterId, int limit) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(FIND_PAGE)
+        ) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return SESSION.list(rs);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Sessions could not be read from the database", e);
+        }
+    }
+
+    /**
+     * Добавление сеанса в базе данных. Постер сохраняется отдельно в PosterStore
      * @param session Объект типа Session
      */
     @Override
@@ -83,7 +137,8 @@ public class JdbcSessionRepository implements SessionRepository {
         ) {
             ps.setString(1, session.getTitle());
             ps.setString(2, session.getDesc());
-            ps.setBytes(3, session.getPhoto());
+            ps.setString(3, session.getPhotoHash());
+            ps.setString(4, session.getPhotoType());
             ps.execute();
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
@@ -107,9 +162,7 @@ public class JdbcSessionRepository implements SessionRepository {
         ) {
             ps.setInt(1, id);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return createSession(rs);
-                }
+                return SESSION.first(rs).orElse(null);
             }
         } catch (Exception e) {
             LOG.error("Exception in method .findById(int id)", e);
@@ -117,6 +170,24 @@ public class JdbcSessionRepository implements SessionRepository {
         return null;
     }
 
+    /**
+     * Запись хеша постера, сохраненного после добавления сеанса
+     * @param id id сеанса
+     * @param hash Хеш постера
+     */
+    @Override
+    public void updatePosterHash(int id, String hash) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(UPDATE_POSTER_HASH)
+        ) {
+            ps.setString(1, hash);
+            ps.setInt(2, id);
+            ps.execute();
+        } catch (Exception e) {
+            LOG.error("Exception in method .updatePosterHash(int id, String hash)", e);
+        }
+    }
+
     /**
      * Обновление сеанса в базе данных
      * @param session Обновленный объект типа Session
@@ -136,17 +207,18 @@ public class JdbcSessionRepository implements SessionRepository {
     }
 
     /**
-     * Создание объекта типа Session
-     * @param rs Объект типа ResultSet из которого получаем данные
-     * @return Объект типа Session
-     * @throws SQLException
+     * Удаление сеанса из базы данных вместе с его постером
+     * @param id id сеанса
      */
-    private Session createSession(ResultSet rs) throws SQLException {
-        return new Session(
-                rs.getInt("id"),
-                rs.getString("title"),
-                rs.getString("description"),
-                rs.getBytes("photo")
-        );
+    @Override
+    public void delete(int id) {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(DELETE_SESSION)
+        ) {
+            ps.setInt(1, id);
+            ps.execute();
+        } catch (Exception e) {
+            LOG.error("Exception in method .delete(int id)", e);
+        }
     }
 }
@@ -9,6 +9,9 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -19,6 +22,9 @@ import java.util.Optional;
  * выполнят запрос с одинаковым id сеанса, рядом и местом, то та что будет быстрее выполнится,
  * а вторая вернется с ошибкой ConstrainsViolationException
  *
+ * В приложении конкурирующие покупки одного места упорядочиваются раньше, в BookingCoordinator,
+ * поэтому нарушение ограничения здесь - редкий случай. Оно записывается в лог одной строкой без стека вызовов.
+ *
  * @author Ilya Kaltygin
  */
 @Repository
@@ -29,11 +35,24 @@ public class JdbcTicketRepository implements TicketRepository {
 
     private static final Logger LOG = LoggerFactory.getLogger(JdbcTicketRepository.class.getName());
 
+    /**
+     * SQLSTATE нарушения ограничения уникальности
+     */
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private static final String ADD_TICKET = """
             INSERT INTO tickets(session_id, pos_row, cell, user_id)
             VALUES(?, ?, ?, ?)
             """;
 
+    private static final Projection<Ticket> TICKET = Projection.of(
+            (rs, c) -> new Ticket(rs.getInt(c[0]), rs.getInt(c[1]), rs.getInt(c[2]), rs.getInt(c[3]), rs.getInt(c[4])),
+            "id", "session_id", "pos_row", "cell", "user_id");
+
+    private static final String FIND_ALL = """
+            SELECT %s FROM tickets
+            """.formatted(TICKET.columns());
+
     public JdbcTicketRepository(DataSource dataSource) {
         this.dataSource = dataSource;
     }
@@ -60,9 +79,121 @@ public class JdbcTicketRepository implements TicketRepository {
                 }
                 result = Optional.of(ticket);
             }
+        } catch (SQLException e) {
+            logFailure("Exception in method .add(Ticket ticket)", e);
         } catch (Exception e) {
             LOG.error("Exception in method .add(Ticket ticket)", e);
         }
         return result;
     }
+
+    /**
+     * Добавление нескольких билетов в базе данных одной транзакцией.
+     * Все запросы INSERT отправляются одним пакетом. Если хотя бы один билет добавить не удалось,
+     * то транзакция откатывается и ни один билет не сохраняется
+     * @param tickets Список объектов типа Ticket
+     * @return Список добавленных билетов или пустой список, если добавить билеты не удалось
+     */
+    @Override
+    public List<Ticket> addAll(List<Ticket> tickets) {
+        List<Ticket> result = List.of();
+        try {
+            insert(tickets);
+            result = tickets;
+        } catch (SQLException e) {
+            logFailure("Exception in method .addAll(List<Ticket> tickets)", e);
+        } catch (Exception e) {
+            LOG.error("Exception in method .addAll(List<Ticket> tickets)", e);
+        }
+        return result;
+    }
+
+    /**
+     * Добавление нескольких билетов в базе данных одной транзакцией с передачей ошибки вызывающему.
+     * Используется журналом TicketJournal, которому нужно отличать отказ базы данных от ее недоступности
+     * @param tickets Список объектов типа Ticket
+     * @throws SQLException если билеты не добавлены, транзакция при этом откатывается
+     */
+    public void insert(List<Ticket> tickets) throws SQLException {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        try (Connection cn = dataSource.getConnection()) {
+            boolean autoCommit = cn.getAutoCommit();
+            cn.setAutoCommit(false);
+            try (PreparedStatement ps = cn.prepareStatement(ADD_TICKET, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                for (Ticket ticket : tickets) {
+                    ps.setInt(1, ticket.getSessionId());
+                    ps.setInt(2, ticket.getRow());
+                    ps.setInt(3, ticket.getPlace());
+                    ps.setInt(4, ticket.getUserId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                int[] ids = new int[tickets.size()];
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    for (int i = 0; i < ids.length && rs.next(); i++) {
+                        ids[i] = rs.getInt(1);
+                    }
+                }
+                cn.commit();
+                for (int i = 0; i < ids.length; i++) {
+                    tickets.get(i).setId(ids[i]);
+                }
+            } catch (SQLException | RuntimeException e) {
+                cn.rollback();
+                throw e;
+            } finally {
+                cn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Поиск всех билетов в базе данных.
+     * По списку билетов заполняется карта занятости мест, поэтому ошибка чтения не заменяется пустым списком:
+     * пустой список показал бы все места свободными
+     * @return Список объектов типа Ticket
+     * @throws IllegalStateException если билеты не удалось прочитать
+     */
+    @Override
+    public Collection<Ticket> findAll() {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(FIND_ALL)
+        ) {
+            try (ResultSet rs = ps.executeQuery()) {
+                return TICKET.list(rs);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Tickets could not be read from the database", e);
+        }
+    }
+
+    /**
+     * Запись ошибки в лог. Нарушение уникальности места - ожидаемый отказ, поэтому для него стек вызовов не пишется
+     * @param message Сообщение
+     * @param e Исключение
+     */
+    private void logFailure(String message, SQLException e) {
+        if (isUniqueViolation(e)) {
+            LOG.warn("{}: seat is already taken ({})", message, e.getMessage());
+        } else {
+            LOG.error(message, e);
+        }
+    }
+
+    /**
+     * Проверка, вызвана ли ошибка нарушением уникальности места (SQLSTATE 23505).
+     * Драйвер может передать SQLSTATE пакета в цепочке getNextException(), поэтому проверяется вся цепочка
+     * @param e Исключение
+     * @return true, если место уже занято
+     */
+    static boolean isUniqueViolation(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            if (UNIQUE_VIOLATION.equals(cause.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
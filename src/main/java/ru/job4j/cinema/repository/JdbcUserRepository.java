@@ -9,7 +9,6 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Optional;
 
 /**
@@ -34,11 +33,22 @@ public class JdbcUserRepository implements UserRepository {
             VALUES(?, ?, ?, ?)
             """;
 
+    /**
+     * Пользователь без пароля: найденный пользователь хранится в сессии, и пароль там не нужен
+     */
+    private static final Projection<User> USER = Projection.of(
+            (rs, c) -> {
+                User user = new User(rs.getInt(c[0]), rs.getString(c[1]), null, rs.getString(c[2]), rs.getString(c[3]));
+                user.setAdmin(rs.getBoolean(c[4]));
+                return user;
+            },
+            "id", "username", "email", "phone", "admin");
+
     private static final String FIND_USER_BY_EMAIL_AND_PASSWORD = """
-            SELECT * FROM users
+            SELECT %s FROM users
             WHERE email = ?
             AND password = ?
-            """;
+            """.formatted(USER.columns());
 
     public JdbcUserRepository(DataSource dataSource) {
         this.dataSource = dataSource;
@@ -74,7 +84,7 @@ public class JdbcUserRepository implements UserRepository {
     }
 
     /**
-     * Поиск пользователя в базе данных по email и номеру телефона
+     * Поиск пользователя в базе данных по email и номеру телефона. Пароль не загружается
      * @param email Email пользователя
      * @param password Номер телефона пользователя
      * @return найденный Объект типа Optional<User>
@@ -88,29 +98,11 @@ public class JdbcUserRepository implements UserRepository {
             ps.setString(1, email);
             ps.setString(2, password);
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    result = Optional.of(createUser(rs));
-                }
+                result = USER.first(rs);
             }
         } catch (Exception e) {
             LOG.error("Exception in method .findUserByEmailAndPassword(String email, String password", e);
         }
         return result;
     }
-
-    /**
-     * Создание объекта типа User
-     * @param rs Объект типа ResultSet из которого получаем данные
-     * @return Объект типа User
-     * @throws SQLException
-     */
-    private User createUser(ResultSet rs) throws SQLException {
-        return new User(
-                rs.getInt("id"),
-                rs.getString("username"),
-                rs.getString("password"),
-                rs.getString("email"),
-                rs.getString("phone")
-        );
-    }
 }
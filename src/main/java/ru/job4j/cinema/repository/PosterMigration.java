@@ -0,0 +1,165 @@
+package ru.job4j.cinema.repository;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+import ru.job4j.cinema.Main;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PosterMigration - перенос постеров и их копий из столбцов photo таблиц sessions и posters в FilePosterStore
+ *
+ * Постеры переносятся по одному: изображение записывается в файл, и только после этого столбец photo
+ * очищается, а хеш в описании постера заменяется хешем записанного файла. Поэтому перенос можно прервать
+ * и запустить повторно: уже перенесенные постеры пропускаются, а постер не теряется ни на каком шаге.
+ * Размер постеров при переносе не ограничивается cinema.poster.max-size-mb. Если какой-то постер перенести
+ * не удалось, то остальные все равно переносятся, а перенос завершается ошибкой со списком пропущенных постеров
+ * и ненулевым кодом выхода.
+ *
+ * Запуск: mvn -Pmigrate-posters process-classes -Dposters.dir=posters.
+ * Настройки подключения берутся из db.properties и переопределяются системными свойствами -Djdbc.url=...
+ *
+ * @author Ilya Kaltygin
+ */
+public class PosterMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PosterMigration.class.getName());
+
+    private static final String FIND_SESSION_POSTERS = """
+            SELECT id FROM sessions
+            WHERE photo IS NOT NULL
+            """;
+
+    private static final String FIND_VARIANT_POSTERS = """
+            SELECT session_id, variant FROM posters
+            WHERE photo IS NOT NULL
+            """;
+
+    private static final String CLEAR_SESSION_PHOTO = """
+            UPDATE sessions SET photo = NULL, photo_hash = ?
+            WHERE id = ?
+            """;
+
+    private static final String CLEAR_VARIANT_PHOTO = """
+            UPDATE posters SET photo = NULL, photo_hash = ?
+            WHERE session_id = ? AND variant = ?
+            """;
+
+    /**
+     * Размер постера в мегабайтах, при котором размер в байтах не переполняет long, то есть без ограничения
+     */
+    private static final long UNLIMITED_SIZE_MB = Long.MAX_VALUE / (1024 * 1024);
+
+    private final DataSource dataSource;
+
+    private final JdbcPosterStore source;
+
+    private final FilePosterStore target;
+
+    public PosterMigration(DataSource dataSource, FilePosterStore target) {
+        this(dataSource, target, UNLIMITED_SIZE_MB);
+    }
+
+    PosterMigration(DataSource dataSource, FilePosterStore target, long maxSizeMb) {
+        this.dataSource = dataSource;
+        this.source = new JdbcPosterStore(dataSource, maxSizeMb);
+        this.target = target;
+    }
+
+    /**
+     * Перенос всех постеров, которые еще хранятся в базе данных
+     * @return Количество перенесенных постеров и копий
+     * @throws IOException Если хотя бы один постер не перенесен; остальные постеры к этому моменту перенесены
+     */
+    public int migrate() throws SQLException, IOException {
+        int count = 0;
+        List<String> skipped = new ArrayList<>();
+        for (Poster poster : findStoredPosters()) {
+            AtomicReference<String> hash = new AtomicReference<>();
+            if (source.stream(poster, (size, in) -> hash.set(target.write(in))) && hash.get() != null) {
+                clear(poster, hash.get());
+                count++;
+            } else {
+                skipped.add(poster.getVariant() == null
+                        ? "session " + poster.getSessionId()
+                        : "session " + poster.getSessionId() + " " + poster.getVariant());
+            }
+        }
+        if (!skipped.isEmpty()) {
+            throw new IOException(String.format("%d posters are moved, %d posters are not moved: %s",
+                    count, skipped.size(), String.join(", ", skipped)));
+        }
+        return count;
+    }
+
+    /**
+     * Поиск постеров и копий, изображения которых хранятся в базе данных
+     * @return Список объектов типа Poster без изображения и хеша
+     */
+    private List<Poster> findStoredPosters() throws SQLException {
+        List<Poster> posters = new ArrayList<>();
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement sessions = cn.prepareStatement(FIND_SESSION_POSTERS);
+             PreparedStatement variants = cn.prepareStatement(FIND_VARIANT_POSTERS)
+        ) {
+            try (ResultSet rs = sessions.executeQuery()) {
+                while (rs.next()) {
+                    posters.add(new Poster(rs.getInt("id"), null, null, null, null));
+                }
+            }
+            try (ResultSet rs = variants.executeQuery()) {
+                while (rs.next()) {
+                    posters.add(new Poster(rs.getInt("session_id"),
+                            PosterVariant.valueOf(rs.getString("variant")), null, null, null));
+                }
+            }
+        }
+        return posters;
+    }
+
+    /**
+     * Очищение столбца photo перенесенного постера
+     * @param poster Объект типа Poster
+     * @param hash Хеш файла, в который перенесен постер
+     */
+    private void clear(Poster poster, String hash) throws SQLException {
+        try (Connection cn = dataSource.getConnection();
+             PreparedStatement ps = cn.prepareStatement(
+                     poster.getVariant() == null ? CLEAR_SESSION_PHOTO : CLEAR_VARIANT_PHOTO)
+        ) {
+            ps.setString(1, hash);
+            ps.setInt(2, poster.getSessionId());
+            if (poster.getVariant() != null) {
+                ps.setString(3, poster.getVariant().name());
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Запуск переноса
+     * @param args Каталог FilePosterStore, по умолчанию posters
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(args.length > 0 ? args[0] : "posters");
+        BasicDataSource pool = new Main().loadPool(new StandardEnvironment());
+        try {
+            int count = new PosterMigration(pool, new FilePosterStore(dir)).migrate();
+            LOG.info("{} posters are moved to {}", count, dir.toAbsolutePath());
+        } finally {
+            pool.close();
+        }
+    }
+}
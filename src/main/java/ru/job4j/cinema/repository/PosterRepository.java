@@ -0,0 +1,28 @@
+package ru.job4j.cinema.repository;
+
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import java.util.Optional;
+
+/**
+ * PosterRepository - интерфейс, описывающий поведения для работы с уменьшенными копиями постеров
+ *
+ * @author Ilya Kaltygin
+ */
+public interface PosterRepository {
+
+    /**
+     * Добавление описания копии постера в базу данных. Изображение сохраняется в PosterStore
+     * @param poster Объект типа Poster
+     * @return true, если копия добавлена
+     */
+    public boolean add(Poster poster);
+
+    /**
+     * Поиск копии постера сеанса. Изображение не загружается
+     * @param sessionId id сеанса
+     * @param variant Вариант постера
+     * @return Объект типа Poster с хешем и типом изображения или пустой Optional
+     */
+    public Optional<Poster> findBySessionId(int sessionId, PosterVariant variant);
+}
@@ -0,0 +1,21 @@
+package ru.job4j.cinema.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * PosterSink - получатель постера сеанса, читаемого из базы данных потоком
+ *
+ * @author Ilya Kaltygin
+ */
+@FunctionalInterface
+public interface PosterSink {
+
+    /**
+     * Получение постера. Поток действителен только во время вызова
+     * @param size Размер постера в байтах
+     * @param in Поток байтов постера
+     * @throws IOException если постер не удалось передать дальше
+     */
+    void accept(long size, InputStream in) throws IOException;
+}
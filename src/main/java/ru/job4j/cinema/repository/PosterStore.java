@@ -0,0 +1,53 @@
+package ru.job4j.cinema.repository;
+
+import ru.job4j.cinema.model.Poster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * PosterStore - интерфейс, описывающий хранилище изображений постеров и их копий
+ *
+ * Описание постера (хеш и тип) хранится в таблицах sessions и posters, а хранилище отвечает только
+ * за изображение. Постер задается объектом типа Poster: id сеанса, вариант (null для исходного постера) и хеш.
+ * Изображение сохраняется после записи описания постера в базу данных.
+ *
+ * @author Ilya Kaltygin
+ */
+public interface PosterStore {
+
+    /**
+     * Сохранение изображения постера
+     * @param poster Объект типа Poster с изображением
+     * @return true, если изображение сохранено
+     */
+    public boolean save(Poster poster);
+
+    /**
+     * Сохранение изображения постера из потока с вычислением его хеша. Изображение копируется
+     * буфером постоянного размера и не загружается в память целиком
+     * @param poster Объект типа Poster без изображения и хеша
+     * @param size Размер изображения в байтах
+     * @param in Поток с изображением
+     * @return Хеш SHA-256 сохраненного изображения
+     */
+    public String save(Poster poster, long size, InputStream in) throws IOException;
+
+    /**
+     * Передача изображения постера получателю потоком
+     * @param poster Объект типа Poster без изображения
+     * @param sink Получатель постера
+     * @return true, если изображение найдено
+     */
+    public boolean stream(Poster poster, PosterSink sink);
+
+    /**
+     * Файл с изображением постера, который можно передать в сокет без копирования
+     * @param poster Объект типа Poster без изображения
+     * @return Путь к файлу или пустой Optional, если хранилище не файловое или файла нет
+     */
+    public default Optional<Path> file(Poster poster) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.Immutable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Projection - набор столбцов, который читает запрос, и способ создать из них объект
+ *
+ * Запрос объявляет ровно те столбцы, которые нужны вызывающему коду: список столбцов для SELECT
+ * берется из проекции (метод columns()), поэтому запрос и код чтения не расходятся.
+ * Номера столбцов определяются один раз на запрос (метод bind()), а строки читаются по номерам.
+ * Чтение по имени, напротив, ищет столбец по имени для каждого значения каждой строки.
+ *
+ * @author Ilya Kaltygin
+ * @param <T> Тип объекта
+ */
+@Immutable
+public final class Projection<T> {
+
+    /**
+     * Создание объекта из строки по номерам столбцов
+     * @param <T> Тип объекта
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+
+        /**
+         * Создание объекта из текущей строки
+         * @param rs Объект типа ResultSet, установленный на строку
+         * @param columns Номера столбцов в порядке их объявления в проекции
+         * @return Созданный объект
+         */
+        public T read(ResultSet rs, int[] columns) throws SQLException;
+    }
+
+    private final String[] names;
+
+    private final Reader<T> reader;
+
+    private Projection(Reader<T> reader, String[] names) {
+        this.reader = reader;
+        this.names = names;
+    }
+
+    /**
+     * Создание проекции
+     * @param reader Создание объекта из строки; columns[i] - номер i-го столбца проекции
+     * @param names Имена столбцов
+     * @param <T> Тип объекта
+     * @return Объект типа Projection
+     */
+    public static <T> Projection<T> of(Reader<T> reader, String... names) {
+        return new Projection<>(reader, names.clone());
+    }
+
+    /**
+     * Список столбцов для SELECT
+     * @return Имена столбцов через запятую
+     */
+    public String columns() {
+        return String.join(", ", names);
+    }
+
+    /**
+     * Определение номеров столбцов в результате запроса
+     * @param rs Объект типа ResultSet
+     * @return Объект типа RowMapper, читающий строки этого результата по номерам столбцов
+     */
+    public RowMapper<T> bind(ResultSet rs) throws SQLException {
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = rs.findColumn(names[i]);
+        }
+        return row -> reader.read(row, columns);
+    }
+
+    /**
+     * Чтение всех строк результата
+     * @param rs Объект типа ResultSet
+     * @return Список объектов
+     */
+    public List<T> list(ResultSet rs) throws SQLException {
+        RowMapper<T> mapper = bind(rs);
+        List<T> result = new ArrayList<>();
+        while (rs.next()) {
+            result.add(mapper.map(rs));
+        }
+        return result;
+    }
+
+    /**
+     * Чтение первой строки результата
+     * @param rs Объект типа ResultSet
+     * @return Объект или пустой Optional, если строк нет
+     */
+    public Optional<T> first(ResultSet rs) throws SQLException {
+        return rs.next() ? Optional.of(bind(rs).map(rs)) : Optional.empty();
+    }
+}
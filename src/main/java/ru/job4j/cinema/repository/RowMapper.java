@@ -0,0 +1,21 @@
+package ru.job4j.cinema.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * RowMapper - интерфейс, описывающий создание объекта из текущей строки результата запроса
+ *
+ * @author Ilya Kaltygin
+ * @param <T> Тип объекта
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Создание объекта из текущей строки
+     * @param rs Объект типа ResultSet, установленный на строку
+     * @return Созданный объект
+     */
+    public T map(ResultSet rs) throws SQLException;
+}
@@ -2,6 +2,7 @@ package ru.job4j.cinema.repository;
 
 import ru.job4j.cinema.model.Session;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * SessionRepository - интерфейс, описывающий поведения для работы с базой данных
@@ -11,11 +12,22 @@ import java.util.Collection;
 public interface SessionRepository {
 
     /**
-     * Поиск всех сеансов в базе данных
+     * Поиск всех сеансов в базе данных. Постеры не загружаются
      * @return Список объектов типа Session
      */
     public Collection<Session> findAll();
 
+    /**
+     * Поиск страницы сеансов по ключу (keyset): сеансы с id больше заданного в порядке возрастания id.
+     * Запрос переходит к началу страницы по первичному ключу, поэтому стоимость страницы не зависит
+     * от ее номера и размера таблицы. Постеры не загружаются
+     * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @return Список объектов типа Session
+     * @throws IllegalStateException если страницу не удалось прочитать
+     */
+    public List<Session> findPage(int afterId, int limit);
+
     /**
      * Добавление сеанса в базе данных
      * @param session Объект типа Session
@@ -23,15 +35,29 @@ public interface SessionRepository {
     public void add(Session session);
 
     /**
-     * Поиск сеанса в базе данных по id
+     * Поиск сеанса в базе данных по id. Постер не загружается
      * @param id id по которому будет производиться поиск
      * @return Найденный объект типа Session
      */
     public Session findById(int id);
 
+    /**
+     * Запись хеша постера, сохраненного после добавления сеанса
+     * @param id id сеанса
+     * @param hash Хеш постера
+     */
+    public void updatePosterHash(int id, String hash);
+
     /**
      * Обновление сеанса в базе данных
      * @param session Обновленный объект типа Session
      */
     public void update(Session session);
+
+    /**
+     * Удаление сеанса, на который нет билетов и уменьшенных копий постера.
+     * Используется для отмены добавления сеанса, постер которого не удалось сохранить
+     * @param id id сеанса
+     */
+    public void delete(int id);
 }
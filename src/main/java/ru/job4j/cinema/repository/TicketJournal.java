@@ -0,0 +1,503 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.job4j.cinema.model.Ticket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * TicketJournal - журнал подтвержденных билетов в файле, отображенном в память
+ *
+ * Билет считается проданным, как только его запись попала в журнал и журнал сброшен на диск.
+ * Сброс на диск выполняется групповой фиксацией: поток, первым дождавшийся своей очереди, вызывает force()
+ * для всех записей, добавленных к этому моменту, а остальные потоки ждут его результата.
+ * Поэтому один fsync подтверждает сразу много билетов.
+ *
+ * Записи переносятся в базу данных методом flush() большими пакетами. Позиция, до которой записи
+ * перенесены, хранится в заголовке файла, поэтому после перезапуска непереданные записи переносятся повторно.
+ * Запись, которую база данных отклонила нарушением уникальности места (SQLSTATE 23505), не теряется:
+ * она дописывается в файл отклоненных записей рядом с журналом (имя журнала с суффиксом .rejected)
+ * и сбрасывается на диск раньше, чем позиция перенесенных записей сдвигается за нее. Число таких записей
+ * возвращает метод rejected().
+ * При любой другой ошибке, например недоступности базы данных, записи остаются в журнале, а ошибка
+ * передается вызывающему, который повторяет перенос позже.
+ * Когда все записи перенесены и журнал заполнен больше чем наполовину, журнал очищается и запись
+ * начинается с начала файла.
+ *
+ * Если сброс на диск не удался, то ни одно добавление, ожидающее этого сброса, не подтверждается:
+ * записи после последнего успешного сброса стираются, ожидающие потоки получают IllegalStateException,
+ * а журнал отказывается от новых записей (append() возвращает false) до перезапуска приложения.
+ * Повторять force() после ошибки нельзя: ядро может уже отбросить несохраненные страницы и отчитаться об успехе.
+ *
+ * Позиции записей считаются в байтах от создания объекта и только растут (логические позиции),
+ * смещение в файле вычисляется относительно логической позиции начала файла.
+ *
+ * Формат файла: заголовок из 16 байт (сигнатура, версия, смещение перенесенных записей)
+ * и записи по 24 байта (id сеанса, ряд, место, id пользователя, CRC32, маркер записи).
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class TicketJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TicketJournal.class.getName());
+
+    private static final int MAGIC = 0x544A524E;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 16;
+
+    private static final int CHECKPOINT_OFFSET = 8;
+
+    private static final int RECORD = 24;
+
+    private static final int RECORD_MARKER = 0x5245434B;
+
+    private static final String REJECTED_SUFFIX = ".rejected";
+
+    private final FileChannel channel;
+
+    private final FileChannel rejectedChannel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private final Object appendLock = new Object();
+
+    private final Object commitLock = new Object();
+
+    private final Object flushLock = new Object();
+
+    /**
+     * Логическая позиция, соответствующая началу записей в файле
+     */
+    @GuardedBy("appendLock")
+    private long base;
+
+    /**
+     * Логическая позиция конца добавленных записей
+     */
+    private volatile long appended;
+
+    /**
+     * Логическая позиция, до которой записи сброшены на диск
+     */
+    @GuardedBy("commitLock")
+    private long durable;
+
+    /**
+     * Выполняется ли сейчас сброс на диск
+     */
+    @GuardedBy("commitLock")
+    private boolean forcing;
+
+    /**
+     * Не удался ли сброс на диск. После ошибки журнал не принимает новые записи
+     */
+    private volatile boolean failed;
+
+    /**
+     * Логическая позиция, до которой записи перенесены в базу данных
+     */
+    private volatile long flushed;
+
+    /**
+     * Количество выполненных сбросов на диск
+     */
+    private volatile long forces;
+
+    /**
+     * Количество записей в файле отклоненных записей. Изменяется только под flushLock
+     */
+    private volatile long rejected;
+
+    /**
+     * Открытие журнала. Если файл уже существует, то восстанавливаются записи, не перенесенные в базу данных.
+     * Рядом с журналом открывается файл отклоненных записей
+     * @param path Путь к файлу журнала
+     * @param capacity Размер файла в байтах
+     * @throws IOException Если файл не удалось открыть или отобразить в память
+     */
+    public TicketJournal(Path path, int capacity) throws IOException {
+        if (capacity < HEADER + RECORD) {
+            throw new IllegalArgumentException("Journal capacity is too small: " + capacity);
+        }
+        this.capacity = capacity;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        Path rejectedPath = path.resolveSibling(path.getFileName() + REJECTED_SUFFIX);
+        this.rejectedChannel = FileChannel.open(rejectedPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try (Stream<String> lines = Files.lines(rejectedPath, StandardCharsets.UTF_8)) {
+            this.rejected = lines.count();
+        }
+        recover();
+    }
+
+    /**
+     * Добавление билетов в журнал. Метод возвращает управление после сброса записей на диск
+     * @param tickets Список билетов
+     * @return true, если билеты записаны, false если в журнале нет места или журнал не удалось сбросить на диск
+     * @throws IllegalStateException если сброс на диск, подтверждающий эти билеты, не удался.
+     * Записи билетов в этом случае стерты из журнала
+     */
+    public boolean append(List<Ticket> tickets) {
+        long end;
+        synchronized (appendLock) {
+            long offset = HEADER + appended - base;
+            if (failed || offset + (long) tickets.size() * RECORD > capacity) {
+                return false;
+            }
+            for (Ticket ticket : tickets) {
+                writeRecord((int) offset, ticket);
+                offset += RECORD;
+            }
+            appended += (long) tickets.size() * RECORD;
+            end = appended;
+        }
+        awaitDurable(end);
+        return true;
+    }
+
+    /**
+     * Билеты, записанные в журнал, но еще не перенесенные в базу данных
+     * @return Список билетов
+     */
+    public List<Ticket> pending() {
+        synchronized (flushLock) {
+            long end;
+            synchronized (commitLock) {
+                end = durable;
+            }
+            return readRecords(flushed, end, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Перенос записей журнала в базу данных пакетами
+     * @param target Получатель, в который переносятся билеты
+     * @param batchSize Максимальный размер пакета
+     * @return Количество перенесенных записей
+     * @throws SQLException если перенос прерван ошибкой, отличной от нарушения уникальности места.
+     * Записи, перенесенные до ошибки, отмечаются перенесенными, остальные остаются в журнале
+     * @throws IOException если отклоненную запись не удалось сохранить в файл отклоненных записей.
+     * Эта запись и следующие за ней остаются в журнале
+     */
+    public int flush(TicketSink target, int batchSize) throws SQLException, IOException {
+        synchronized (flushLock) {
+            long end;
+            synchronized (commitLock) {
+                end = durable;
+            }
+            int count = 0;
+            while (flushed < end) {
+                List<Ticket> batch = readRecords(flushed, end, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                count += save(target, batch);
+            }
+            resetIfDrained();
+            return count;
+        }
+    }
+
+    /**
+     * Количество выполненных сбросов журнала на диск
+     * @return Количество вызовов force()
+     */
+    public long forces() {
+        return forces;
+    }
+
+    /**
+     * Количество записей, отклоненных базой данных и сохраненных в файл отклоненных записей
+     * @return Количество записей
+     */
+    public long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Не удался ли сброс журнала на диск
+     * @return true, если журнал больше не принимает записи
+     */
+    public boolean failed() {
+        return failed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            try {
+                if (!failed) {
+                    buffer.force();
+                }
+            } finally {
+                channel.close();
+                rejectedChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Сброс на диск участка файла
+     * @param offset Смещение участка
+     * @param length Длина участка
+     */
+    void force(int offset, int length) {
+        buffer.force(offset, length);
+    }
+
+    /**
+     * Ожидание сброса на диск всех записей до указанной позиции (групповая фиксация)
+     * @param end Логическая позиция конца записей потока
+     */
+    private void awaitDurable(long end) {
+        while (true) {
+            long from;
+            synchronized (commitLock) {
+                while (durable < end && forcing) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for journal commit", e);
+                    }
+                }
+                if (durable >= end) {
+                    return;
+                }
+                if (failed) {
+                    throw new IllegalStateException("Ticket journal could not be forced to disk, tickets are not saved");
+                }
+                forcing = true;
+                from = durable;
+            }
+            long target = appended;
+            boolean forced = false;
+            try {
+                long start = HEADER + from - base;
+                force((int) start, (int) (target - from));
+                forces++;
+                forced = true;
+            } finally {
+                if (forced) {
+                    synchronized (commitLock) {
+                        durable = Math.max(durable, target);
+                        forcing = false;
+                        commitLock.notifyAll();
+                    }
+                } else {
+                    discardNotDurable();
+                }
+            }
+        }
+    }
+
+    /**
+     * Обработка неудачного сброса на диск: журнал отмечается неисправным, записи после последнего
+     * успешного сброса стираются, чтобы не быть перенесенными ни сейчас, ни после перезапуска,
+     * а ожидающие потоки будятся и получают отказ
+     */
+    private void discardNotDurable() {
+        synchronized (appendLock) {
+            synchronized (commitLock) {
+                failed = true;
+                for (long offset = HEADER + durable - base; offset < HEADER + appended - base; offset += RECORD) {
+                    buffer.putInt((int) offset + 20, 0);
+                }
+                LOG.error("Ticket journal could not be forced to disk, {} not confirmed records are discarded "
+                        + "and new tickets are written to the database directly", (appended - durable) / RECORD);
+                appended = durable;
+                forcing = false;
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Сохранение пакета. Если пакет отклонен нарушением уникальности, то билеты сохраняются по одному,
+     * а билеты на уже занятые места переносятся в файл отклоненных записей. Позиция перенесенных записей
+     * сохраняется после каждого сохраненного или отклоненного билета
+     * @param target Получатель билетов
+     * @param batch Пакет билетов
+     * @return Количество записей, сохраненных в базе данных
+     * @throws SQLException если билет не сохранен по другой причине
+     * @throws IOException если отклоненный билет не удалось записать в файл отклоненных записей
+     */
+    private int save(TicketSink target, List<Ticket> batch) throws SQLException, IOException {
+        try {
+            target.save(batch);
+            writeCheckpoint(flushed + (long) batch.size() * RECORD);
+            return batch.size();
+        } catch (SQLException e) {
+            if (!JdbcTicketRepository.isUniqueViolation(e)) {
+                throw e;
+            }
+        }
+        int saved = 0;
+        for (Ticket ticket : batch) {
+            try {
+                target.save(List.of(ticket));
+                saved++;
+            } catch (SQLException e) {
+                if (!JdbcTicketRepository.isUniqueViolation(e)) {
+                    throw e;
+                }
+                reject(ticket);
+            }
+            writeCheckpoint(flushed + RECORD);
+        }
+        return saved;
+    }
+
+    /**
+     * Запись билета, отклоненного базой данных, в файл отклоненных записей со сбросом на диск.
+     * Строка файла: id сеанса, ряд, место и id пользователя через запятую
+     * @param ticket Отклоненный билет
+     * @throws IOException если запись не удалась
+     */
+    private void reject(Ticket ticket) throws IOException {
+        String line = ticket.getSessionId() + "," + ticket.getRow() + "," + ticket.getPlace() + ","
+                + ticket.getUserId() + System.lineSeparator();
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            rejectedChannel.write(bytes);
+        }
+        rejectedChannel.force(false);
+        rejected++;
+        LOG.error("Ticket for session {}, row {}, place {}, user {} was rejected by the database "
+                        + "and moved to the rejected records file",
+                ticket.getSessionId(), ticket.getRow(), ticket.getPlace(), ticket.getUserId());
+    }
+
+    /**
+     * Очистка журнала, если все записи перенесены в базу данных и журнал заполнен больше чем наполовину
+     */
+    private void resetIfDrained() {
+        synchronized (appendLock) {
+            synchronized (commitLock) {
+                long used = appended - base;
+                if (forcing || flushed != appended || HEADER + used <= capacity / 2) {
+                    return;
+                }
+                for (int i = HEADER; i < HEADER + used; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                base = appended;
+                buffer.putLong(CHECKPOINT_OFFSET, HEADER);
+                buffer.force();
+                forces++;
+            }
+        }
+    }
+
+    /**
+     * Сохранение позиции перенесенных записей в заголовке файла
+     * @param position Логическая позиция
+     */
+    private void writeCheckpoint(long position) {
+        synchronized (appendLock) {
+            flushed = position;
+            buffer.putLong(CHECKPOINT_OFFSET, HEADER + position - base);
+            buffer.force(CHECKPOINT_OFFSET, Long.BYTES);
+        }
+    }
+
+    /**
+     * Чтение заголовка и поиск конца записей после перезапуска
+     */
+    private void recover() {
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(CHECKPOINT_OFFSET, HEADER);
+            buffer.force();
+        }
+        long checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+        if (checkpoint < HEADER || checkpoint > capacity) {
+            throw new IllegalStateException("Corrupted journal checkpoint: " + checkpoint);
+        }
+        long offset = checkpoint;
+        while (offset + RECORD <= capacity && readRecord((int) offset) != null) {
+            offset += RECORD;
+        }
+        base = 0;
+        flushed = checkpoint - HEADER;
+        appended = offset - HEADER;
+        durable = appended;
+        if (appended > flushed) {
+            LOG.info("Ticket journal contains {} records to replay", (appended - flushed) / RECORD);
+        }
+    }
+
+    /**
+     * Чтение записей между логическими позициями
+     * @param from Начальная позиция
+     * @param to Конечная позиция
+     * @param limit Максимальное количество записей
+     * @return Список билетов
+     */
+    private List<Ticket> readRecords(long from, long to, int limit) {
+        List<Ticket> result = new ArrayList<>();
+        long offset;
+        synchronized (appendLock) {
+            offset = HEADER + from - base;
+        }
+        for (long pos = from; pos < to && result.size() < limit; pos += RECORD, offset += RECORD) {
+            Ticket ticket = readRecord((int) offset);
+            if (ticket == null) {
+                break;
+            }
+            result.add(ticket);
+        }
+        return result;
+    }
+
+    private void writeRecord(int offset, Ticket ticket) {
+        buffer.putInt(offset, ticket.getSessionId());
+        buffer.putInt(offset + 4, ticket.getRow());
+        buffer.putInt(offset + 8, ticket.getPlace());
+        buffer.putInt(offset + 12, ticket.getUserId());
+        buffer.putInt(offset + 16, checksum(offset));
+        buffer.putInt(offset + 20, RECORD_MARKER);
+    }
+
+    /**
+     * Чтение записи
+     * @param offset Смещение записи в файле
+     * @return Билет или null, если по смещению нет целой записи
+     */
+    private Ticket readRecord(int offset) {
+        if (buffer.getInt(offset + 20) != RECORD_MARKER || buffer.getInt(offset + 16) != checksum(offset)) {
+            return null;
+        }
+        return new Ticket(0, buffer.getInt(offset), buffer.getInt(offset + 4),
+                buffer.getInt(offset + 8), buffer.getInt(offset + 12));
+    }
+
+    private int checksum(int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, 16));
+        return (int) crc.getValue();
+    }
+}
@@ -1,6 +1,9 @@
 package ru.job4j.cinema.repository;
 
 import ru.job4j.cinema.model.Ticket;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -16,4 +19,27 @@ public interface TicketRepository {
      * @return Объект типа Optional<Ticket>
      */
     Optional<Ticket> add(Ticket ticket);
+
+    /**
+     * Добавление нескольких билетов в базе данных одной транзакцией.
+     * Либо добавляются все билеты, либо ни одного
+     * @param tickets Список объектов типа Ticket
+     * @return Список добавленных билетов или пустой список, если добавить билеты не удалось
+     */
+    List<Ticket> addAll(List<Ticket> tickets);
+
+    /**
+     * Поиск всех билетов в базе данных
+     * @return Список объектов типа Ticket
+     * @throws IllegalStateException если билеты не удалось прочитать
+     */
+    Collection<Ticket> findAll();
+
+    /**
+     * Метрики хранилища билетов. По умолчанию хранилище не собирает метрик
+     * @return Упорядоченный набор показателей
+     */
+    default Map<String, Object> stats() {
+        return Map.of();
+    }
 }
@@ -0,0 +1,22 @@
+package ru.job4j.cinema.repository;
+
+import ru.job4j.cinema.model.Ticket;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * TicketSink - получатель билетов, переносимых из журнала TicketJournal в базу данных
+ *
+ * @author Ilya Kaltygin
+ */
+@FunctionalInterface
+public interface TicketSink {
+
+    /**
+     * Сохранение билетов одной транзакцией: либо сохраняются все билеты, либо ни одного
+     * @param tickets Список билетов
+     * @throws SQLException если билеты не сохранены. По SQLSTATE отличается отказ базы данных
+     * (нарушение уникальности места) от ее недоступности
+     */
+    void save(List<Ticket> tickets) throws SQLException;
+}
@@ -0,0 +1,228 @@
+package ru.job4j.cinema.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.job4j.cinema.model.Ticket;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WriteBehindTicketRepository - репозиторий билетов с отложенной записью в базу данных
+ *
+ * Включается настройкой cinema.tickets.write-behind.enabled=true и заменяет JdbcTicketRepository.
+ * Покупка подтверждается после записи билетов в журнал TicketJournal и сброса журнала на диск,
+ * а фоновый поток переносит журнал в таблицу tickets большими пакетами. При создании репозитория
+ * записи, не перенесенные до остановки приложения, переносятся в базу данных.
+ *
+ * Если база данных недоступна, записи остаются в журнале, а перенос повторяется с экспоненциально растущей
+ * паузой, начиная с интервала переноса и до cinema.tickets.write-behind.max-backoff-millis, пока не удастся.
+ *
+ * В этом режиме билет получает id только после переноса в базу данных, а уникальность мест
+ * обеспечивается картой занятости мест в ImplTicketService. Если в журнале нет места
+ * или журнал не удалось сбросить на диск, билеты записываются в базу данных сразу.
+ * Билеты, которые база данных отклонила при переносе, сохраняются в файл отклоненных записей журнала,
+ * их число доступно по адресу /metrics/booking в разделе journal.
+ *
+ * Журнал и карта занятости мест принадлежат одному узлу, поэтому отложенная запись допустима только
+ * на единственном узле. Режим cinema.auth.mode=token предназначен для нескольких узлов за балансировщиком,
+ * и вместе с ним репозиторий не создается: два узла подтвердили бы продажу одного места, а конфликт
+ * обнаружился бы только при переносе журнала в базу данных.
+ *
+ * Размер журнала cinema.tickets.write-behind.capacity-mb ограничен одним отображением файла в память,
+ * то есть 2047 МБ.
+ *
+ * @author Ilya Kaltygin
+ */
+@Repository
+@Primary
+@ThreadSafe
+@ConditionalOnProperty(name = "cinema.tickets.write-behind.enabled", havingValue = "true")
+public class WriteBehindTicketRepository implements TicketRepository, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindTicketRepository.class.getName());
+
+    private static final long MB = 1024L * 1024L;
+
+    private final JdbcTicketRepository delegate;
+
+    private final TicketJournal journal;
+
+    private final int batchSize;
+
+    private final long flushIntervalMillis;
+
+    private final long maxBackoffMillis;
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Количество неудачных переносов подряд. Изменяется только потоком переноса
+     */
+    private volatile int failures;
+
+    /**
+     * Время следующей попытки переноса после неудачи, по System.nanoTime()
+     */
+    private long retryAt;
+
+    public WriteBehindTicketRepository(JdbcTicketRepository delegate,
+                                       @Value("${cinema.tickets.write-behind.journal:tickets.journal}") String path,
+                                       @Value("${cinema.tickets.write-behind.capacity-mb:64}") int capacityMb,
+                                       @Value("${cinema.tickets.write-behind.flush-interval-millis:200}") long flushIntervalMillis,
+                                       @Value("${cinema.tickets.write-behind.max-backoff-millis:30000}") long maxBackoffMillis,
+                                       @Value("${cinema.tickets.write-behind.batch-size:1000}") int batchSize,
+                                       @Value("${cinema.auth.mode:session}") String authMode) throws IOException {
+        if ("token".equals(authMode)) {
+            throw new IllegalStateException("cinema.tickets.write-behind.enabled=true cannot be combined with "
+                    + "cinema.auth.mode=token: the ticket journal and seat maps are local to one node");
+        }
+        this.delegate = delegate;
+        this.journal = new TicketJournal(Path.of(path), capacity(capacityMb));
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, flushIntervalMillis);
+        int replayed = flush();
+        if (replayed > 0) {
+            LOG.info("Replayed {} tickets from journal {}", replayed, path);
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushWithBackoff, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Добавление билета в журнал
+     * @param ticket Объект типа Ticket
+     * @return Объект типа Optional<Ticket>
+     */
+    @Override
+    public Optional<Ticket> add(Ticket ticket) {
+        if (journal.append(List.of(ticket))) {
+            return Optional.of(ticket);
+        }
+        return delegate.add(ticket);
+    }
+
+    /**
+     * Добавление нескольких билетов в журнал одной записью
+     * @param tickets Список объектов типа Ticket
+     * @return Список добавленных билетов или пустой список, если добавить билеты не удалось
+     */
+    @Override
+    public List<Ticket> addAll(List<Ticket> tickets) {
+        if (journal.append(tickets)) {
+            return tickets;
+        }
+        return delegate.addAll(tickets);
+    }
+
+    /**
+     * Поиск всех билетов: билеты из базы данных и билеты, еще не перенесенные из журнала
+     * @return Список объектов типа Ticket
+     */
+    @Override
+    public Collection<Ticket> findAll() {
+        List<Ticket> tickets = new ArrayList<>(journal.pending());
+        tickets.addAll(delegate.findAll());
+        return tickets;
+    }
+
+    /**
+     * Метрики журнала: число сбросов на диск, число отклоненных базой данных билетов
+     * и признак неудачного сброса на диск
+     * @return Упорядоченный набор показателей
+     */
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("forces", journal.forces());
+        result.put("rejected", journal.rejected());
+        result.put("failed", journal.failed());
+        result.put("flushFailures", failures);
+        return result;
+    }
+
+    /**
+     * Остановка фонового потока, перенос оставшихся записей и закрытие журнала
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        journal.close();
+    }
+
+    /**
+     * Перенос журнала в базу данных по расписанию. После неудачного переноса следующая попытка
+     * откладывается на удвоенную паузу
+     */
+    private void flushWithBackoff() {
+        if (failures > 0 && System.nanoTime() - retryAt < 0) {
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * Перенос журнала в базу данных
+     * @return Количество перенесенных записей
+     */
+    private int flush() {
+        int result = 0;
+        try {
+            result = journal.flush(delegate::insert, batchSize);
+            if (failures > 0) {
+                LOG.info("Ticket journal is flushed again after {} failed attempts", failures);
+            }
+            failures = 0;
+        } catch (SQLException | IOException e) {
+            failures++;
+            long delay = Math.min(maxBackoffMillis, flushIntervalMillis << Math.min(failures, 20));
+            retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            LOG.warn("Ticket journal flush failed {} times in a row, records are kept, next attempt in {} ms: {}",
+                    failures, delay, e.getMessage());
+        } catch (Exception e) {
+            LOG.error("Exception in method .flush()", e);
+        }
+        return result;
+    }
+
+    /**
+     * Размер журнала в байтах
+     * @param capacityMb Размер журнала в мегабайтах
+     * @return Размер в байтах
+     * @throws IllegalArgumentException если размер не помещается в одно отображение файла в память
+     */
+    static int capacity(int capacityMb) {
+        long bytes = capacityMb * MB;
+        if (capacityMb <= 0 || bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("cinema.tickets.write-behind.capacity-mb must be between 1 and "
+                    + Integer.MAX_VALUE / MB + " (one memory mapping is limited to 2 GB), got " + capacityMb);
+        }
+        return (int) bytes;
+    }
+}
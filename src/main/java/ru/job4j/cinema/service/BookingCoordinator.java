@@ -0,0 +1,180 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.utility.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * BookingCoordinator - координатор покупки мест на основе полос блокировок
+ *
+ * Каждое место (id сеанса, ряд, место) отображается на одну из полос - блокировок ReentrantLock.
+ * Конкурирующие покупки одного и того же места выполняются последовательно внутри процесса,
+ * поэтому в базу данных попадает только победитель, а проигравшие получают отказ по карте занятости мест
+ * без запроса в базу данных. Покупки разных мест попадают в разные полосы и выполняются параллельно.
+ *
+ * Если заказ содержит несколько мест, полосы захватываются в порядке возрастания номера,
+ * что исключает взаимную блокировку двух заказов.
+ *
+ * Координатор собирает метрики: количество захватов полос, количество захватов с ожиданием,
+ * гистограмму времени ожидания и количество ожиданий по каждой полосе.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class BookingCoordinator {
+
+    /**
+     * Количество полос, выводимых в метриках как самые загруженные
+     */
+    private static final int HOTTEST_STRIPES = 5;
+
+    /**
+     * Полосы блокировок
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Маска для вычисления номера полосы. Количество полос - степень двойки
+     */
+    private final int mask;
+
+    /**
+     * Количество захватов полос
+     */
+    private final LongAdder acquisitions = new LongAdder();
+
+    /**
+     * Количество захватов полос, при которых полоса была занята
+     */
+    private final LongAdder contended = new LongAdder();
+
+    /**
+     * Количество захватов с ожиданием по каждой полосе
+     */
+    private final AtomicLongArray contendedByStripe;
+
+    /**
+     * Время ожидания занятой полосы
+     */
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    public BookingCoordinator(@Value("${cinema.booking.stripes:256}") int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be positive");
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.contendedByStripe = new AtomicLongArray(size);
+    }
+
+    /**
+     * Выполнение действия под блокировками всех указанных мест
+     * @param seatKeys Ключи мест, вычисленные методом SeatMap.key()
+     * @param action Действие: проверка доступности мест и сохранение билетов
+     * @param <T> Тип результата действия
+     * @return Результат действия
+     */
+    public <T> T execute(Collection<Long> seatKeys, Supplier<T> action) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (long key : seatKeys) {
+            indexes.add(stripe(key));
+        }
+        List<ReentrantLock> locked = new ArrayList<>(indexes.size());
+        try {
+            for (int index : indexes) {
+                lock(index);
+                locked.add(stripes[index]);
+            }
+            return action.get();
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                locked.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Метрики конкуренции за полосы
+     * @return Упорядоченный набор показателей
+     */
+    public Map<String, Object> stats() {
+        long total = acquisitions.sum();
+        long waited = contended.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stripes", stripes.length);
+        result.put("acquisitions", total);
+        result.put("contended", waited);
+        result.put("contentionRatio", total == 0 ? 0.0 : (double) waited / total);
+        result.put("waitTime", waitTime.summary(TimeUnit.MICROSECONDS));
+        result.put("hottestStripes", hottestStripes());
+        return result;
+    }
+
+    /**
+     * Захват полосы с учетом ожидания
+     * @param index Номер полосы
+     */
+    private void lock(int index) {
+        ReentrantLock lock = stripes[index];
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        contendedByStripe.incrementAndGet(index);
+        long start = System.nanoTime();
+        lock.lock();
+        waitTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Номер полосы для места. Биты ключа перемешиваются, чтобы соседние места попадали в разные полосы
+     * @param key Ключ места
+     * @return Номер полосы
+     */
+    private int stripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Полосы с наибольшим количеством ожиданий
+     * @return Номер полосы и количество ожиданий
+     */
+    private Map<Integer, Long> hottestStripes() {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            if (contendedByStripe.get(i) > 0) {
+                indexes.add(i);
+            }
+        }
+        indexes.sort(Comparator.<Integer>comparingLong(contendedByStripe::get).reversed());
+        Map<Integer, Long> result = new LinkedHashMap<>();
+        for (int index : indexes.subList(0, Math.min(HOTTEST_STRIPES, indexes.size()))) {
+            result.put(index, contendedByStripe.get(index));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.utility.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * BookingQueue - ограниченная очередь покупок билетов, которую обслуживает фиксированное число потоков
+ *
+ * Покупка выполняется не в потоке Tomcat, а в одном из потоков очереди, поэтому при медленной базе данных
+ * потоки Tomcat не ждут INSERT и продолжают обслуживать просмотр афиши, а покупки одновременно занимают
+ * не больше workers соединений пула. Если все потоки заняты и очередь заполнена, то покупка не принимается:
+ * submit завершается RejectedExecutionException сразу, без ожидания, и клиенту можно ответить 503.
+ *
+ * Покупку, которая еще ждет в очереди, можно отменить методом cancel ее результата: поток очереди ее пропустит.
+ * Начатая покупка не отменяется, cancel для нее возвращает false, и результат покупки будет получен.
+ *
+ * Очередь собирает метрики: время ожидания в очереди, время выполнения покупки, число отказов и отмен.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class BookingQueue implements AutoCloseable {
+
+    /**
+     * Результат покупки, который можно отменить только до ее начала
+     */
+    private static final class Purchase<T> extends CompletableFuture<T> {
+
+        /**
+         * Покупка начата потоком очереди или отменена
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claimed.compareAndSet(false, true) && super.cancel(false);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueSize;
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    public BookingQueue(@Value("${cinema.booking.workers:4}") int workers,
+                        @Value("${cinema.booking.queue-size:64}") int queueSize) {
+        if (workers < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Number of booking workers and queue size must be positive");
+        }
+        AtomicInteger number = new AtomicInteger();
+        this.queueSize = queueSize;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                task -> {
+                    Thread thread = new Thread(task, "booking-worker-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Постановка покупки в очередь
+     * @param task Покупка
+     * @param <T> Тип результата покупки
+     * @return Результат, который завершится в потоке очереди. Его cancel отменяет покупку, пока она в очереди
+     * @throws RejectedExecutionException если очередь заполнена или закрыта
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        Purchase<T> result = new Purchase<>();
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                queueWait.record(start - enqueued);
+                if (!result.claimed.compareAndSet(false, true)) {
+                    cancelled.increment();
+                    return;
+                }
+                try {
+                    result.complete(task.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    serviceTime.record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Показатели очереди: потоки, занятые потоки, покупки в очереди, выполненные покупки, отказы,
+     * отмененные в очереди покупки, время ожидания в очереди и время выполнения
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("workers", executor.getMaximumPoolSize());
+        result.put("active", executor.getActiveCount());
+        result.put("queueSize", queueSize);
+        result.put("queued", executor.getQueue().size());
+        result.put("completed", executor.getCompletedTaskCount());
+        result.put("rejected", rejected.sum());
+        result.put("cancelled", cancelled.sum());
+        result.put("queueWait", queueWait.summary(TimeUnit.MICROSECONDS));
+        result.put("serviceTime", serviceTime.summary(TimeUnit.MICROSECONDS));
+        return result;
+    }
+
+    /**
+     * Остановка очереди: новые покупки не принимаются, принятые выполняются
+     */
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -2,10 +2,22 @@ package ru.job4j.cinema.service;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.job4j.cinema.model.Page;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
 import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.PosterRepository;
+import ru.job4j.cinema.repository.PosterSink;
+import ru.job4j.cinema.repository.PosterStore;
 import ru.job4j.cinema.repository.SessionRepository;
+import ru.job4j.cinema.utility.BoundedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Optional;
 
 /**
  * ImplSessionService - класс, описывающий бизнес логику приложения
@@ -19,40 +31,138 @@ public class ImplSessionService implements SessionService {
     @GuardedBy("this")
     private final SessionRepository sessionRepository;
 
-    public ImplSessionService(SessionRepository sessionRepository) {
+    private final PosterRepository posterRepository;
+
+    private final PosterStore posterStore;
+
+    private final PosterProcessor posterProcessor;
+
+    private final PosterCache posterCache;
+
+    private final SessionCatalog sessionCatalog;
+
+    /**
+     * Максимальный размер постера в байтах
+     */
+    private final long maxPosterSize;
+
+    public ImplSessionService(SessionRepository sessionRepository,
+                              PosterRepository posterRepository,
+                              PosterStore posterStore,
+                              PosterProcessor posterProcessor,
+                              PosterCache posterCache,
+                              SessionCatalog sessionCatalog,
+                              @Value("${cinema.poster.max-size-mb:10}") long maxPosterSizeMb) {
         this.sessionRepository = sessionRepository;
+        this.posterRepository = posterRepository;
+        this.posterStore = posterStore;
+        this.posterProcessor = posterProcessor;
+        this.posterCache = posterCache;
+        this.sessionCatalog = sessionCatalog;
+        this.maxPosterSize = maxPosterSizeMb * 1024 * 1024;
     }
 
     /**
-     * Добавление объекта в базу данных
-     * @param session Добавляемый объект типа Session
+     * Добавление сеанса в базу данных. Постер передается из потока загрузки в PosterStore
+     * буфером постоянного размера, а хеш SHA-256, который служит его ETag, вычисляется по ходу передачи,
+     * поэтому постер не загружается в память целиком. Размер постера проверяется до записи сеанса
+     * по заявленному размеру и во время передачи по фактическому.
+     * Уменьшенные копии постера создаются в фоне, а постеры сеанса с тем же id удаляются из кеша.
+     * Если постер сохранить не удалось, то записанный сеанс удаляется, а ошибка передается вызывающему.
+     * В каталоге SessionCatalog сеанс публикуется, только когда он записан вместе с постером
+     * @param session Добавляемый объект типа Session с типом постера
+     * @param photoSize Размер постера в байтах или 0, если постер не загружен
+     * @param photo Поток с постером
      */
-    public void add(Session session) {
+    public void add(Session session, long photoSize, InputStream photo) throws IOException {
+        if (photoSize > maxPosterSize) {
+            throw new IOException("Poster of " + photoSize + " bytes is larger than " + maxPosterSize + " bytes");
+        }
         sessionRepository.add(session);
+        if (session.getId() == 0) {
+            return;
+        }
+        posterCache.invalidate(session.getId());
+        if (photoSize == 0) {
+            sessionCatalog.added(session);
+            return;
+        }
+        String hash;
+        try {
+            hash = posterStore.save(new Poster(session.getId(), null, null, null, session.getPhotoType()),
+                    photoSize, new BoundedInputStream(photo, maxPosterSize));
+        } catch (IOException | RuntimeException e) {
+            sessionRepository.delete(session.getId());
+            throw e;
+        }
+        sessionRepository.updatePosterHash(session.getId(), hash);
+        session.setPhotoHash(hash);
+        sessionCatalog.added(session);
+        posterProcessor.process(new Poster(session.getId(), null, null, hash, session.getPhotoType()));
     }
 
     /**
-     * Поиск всех объектов в базе данных
-     * @return Список всех объектов типа Session из базы данных
+     * Поиск всех сеансов в каталоге SessionCatalog, без запроса в базу данных
+     * @return Неизменяемый список объектов типа Session
      */
     public Collection<Session> findAll() {
-        return sessionRepository.findAll();
+        return sessionCatalog.findAll();
+    }
+
+    /**
+     * Поиск страницы сеансов в каталоге SessionCatalog, без запроса в базу данных
+     * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @return Страница сеансов в порядке возрастания id
+     */
+    public Page<Session> findPage(int afterId, int limit) {
+        return sessionCatalog.findPage(afterId, limit);
     }
 
     /**
-     * Поиск объекта в базе данных по id
+     * Поиск сеанса в каталоге SessionCatalog по id, без запроса в базу данных
      * @param id id искомого объекта
-     * @return Объект типа Session
+     * @return Объект типа Session, который нельзя изменять, или null
      */
     public Session findById(int id) {
-        return sessionRepository.findById(id);
+        return sessionCatalog.findById(id);
     }
 
     /**
-     * Обновление старого объекта типа Session в базе данных
+     * Обновление старого объекта типа Session в базе данных и в каталоге SessionCatalog
      * @param session Новый объект типа Session
      */
     public void update(Session session) {
         sessionRepository.update(session);
+        sessionCatalog.updated(session);
+    }
+
+    /**
+     * Поиск уменьшенной копии постера сеанса
+     * @param id id сеанса
+     * @param variant Вариант постера
+     * @return Объект типа Poster без изображения или пустой Optional, если копия еще не создана
+     */
+    public Optional<Poster> findPoster(int id, PosterVariant variant) {
+        return posterRepository.findBySessionId(id, variant);
+    }
+
+    /**
+     * Передача постера или его копии получателю потоком из PosterStore
+     * @param poster Объект типа Poster без изображения; вариант null означает исходный постер
+     * @param sink Получатель постера
+     * @return true, если изображение найдено
+     */
+    public boolean streamPoster(Poster poster, PosterSink sink) {
+        return posterStore.stream(poster, sink);
+    }
+
+    /**
+     * Файл с изображением постера, если PosterStore хранит постеры в файлах
+     * @param poster Объект типа Poster без изображения; вариант null означает исходный постер
+     * @return Путь к файлу или пустой Optional
+     */
+    public Optional<Path> posterFile(Poster poster) {
+        return posterStore.file(poster);
     }
 }
@@ -2,19 +2,44 @@ package ru.job4j.cinema.service;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.SeatState;
 import ru.job4j.cinema.model.Ticket;
 import ru.job4j.cinema.repository.TicketRepository;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * ImplTicketService - класс, описывающий бизнес логику приложения
  *
- * Класс является потокобезопасным. Проблема, возникающая при добавлении одинаковых билетов в методе add()
- * решена на уровне базы данных с помощью ограничений. Поля sessionId, row и place должны быть уникальынми. Eсли две параллельные транзакции
- * выполнят запрос с одинаковым id сеанса, рядом и местом, то та что будет быстрее выполнится,
- * а вторая вернется с ошибкой ConstrainsViolationException
+ * Класс является потокобезопасным. Параллельные покупки одного и того же места упорядочиваются
+ * координатором BookingCoordinator: покупка выполняется под блокировкой полосы места, поэтому
+ * в базу данных попадает только первый покупатель, а остальные получают отказ по карте занятости мест.
+ * Ограничение уникальности полей sessionId, row и place в базе данных остается последней линией защиты.
+ *
+ * Для каждого сеанса в памяти хранится карта занятости мест SeatMap. Карты загружаются из базы данных
+ * при создании сервиса и обновляются после каждой успешной покупки билета. Поэтому чтение свободных мест
+ * не обращается к базе данных, а покупка заведомо занятого места отклоняется без запроса в базу данных.
+ * Если билеты не удалось загрузить, то сервис не создается: пустые карты показали бы все места свободными.
+ * Карта создается только для сеанса из каталога SessionCatalog, поэтому запросы с id несуществующих
+ * сеансов не занимают память, а для такого сеанса нет ни свободных мест, ни покупок.
+ *
+ * На время оформления заказа места бронируются в SeatHolds. Место, забронированное другим пользователем,
+ * не показывается свободным и не может быть куплено, пока бронь не истечет или не будет снята.
+ *
+ * Заказ хранит выбранные места битовой маской BookingState, поэтому в ряду не больше BookingState.MAX_PLACE мест:
+ * при большем значении cinema.hall.places сервис не создается.
+ *
+ * О продаже мест сообщается слушателям SeatListener, о бронировании и снятии брони - через SeatHolds.
  * @author Ilya Kaltygin
  */
 @Service
@@ -24,8 +49,58 @@ public class ImplTicketService implements TicketService {
     @GuardedBy("this")
     private final TicketRepository ticketRepository;
 
-    public ImplTicketService(TicketRepository ticketRepository) {
+    /**
+     * Карты занятости мест по id сеанса
+     */
+    private final Map<Integer, SeatMap> seatMaps = new ConcurrentHashMap<>();
+
+    /**
+     * Временные брони мест
+     */
+    private final SeatHolds seatHolds;
+
+    /**
+     * Координатор конкурирующих покупок
+     */
+    private final BookingCoordinator coordinator;
+
+    /**
+     * Каталог сеансов
+     */
+    private final SessionCatalog sessionCatalog;
+
+    /**
+     * Слушатели продажи мест
+     */
+    private final List<SeatListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Количество рядов в зале
+     */
+    private final int rows;
+
+    /**
+     * Количество мест в ряду
+     */
+    private final int places;
+
+    public ImplTicketService(TicketRepository ticketRepository,
+                             SeatHolds seatHolds,
+                             BookingCoordinator coordinator,
+                             SessionCatalog sessionCatalog,
+                             @Value("${cinema.hall.rows:5}") int rows,
+                             @Value("${cinema.hall.places:5}") int places) {
+        if (places > BookingState.MAX_PLACE) {
+            throw new IllegalArgumentException("cinema.hall.places must not exceed " + BookingState.MAX_PLACE
+                    + ": selected places are stored in a bit mask, got " + places);
+        }
         this.ticketRepository = ticketRepository;
+        this.seatHolds = seatHolds;
+        this.coordinator = coordinator;
+        this.sessionCatalog = sessionCatalog;
+        this.rows = rows;
+        this.places = places;
+        loadSeatMaps();
     }
 
     /**
@@ -35,6 +110,220 @@ public class ImplTicketService implements TicketService {
      */
     @Override
     public Optional<Ticket> add(Ticket ticket) {
-        return ticketRepository.add(ticket);
+        long key = SeatMap.key(ticket.getSessionId(), ticket.getRow(), ticket.getPlace());
+        return coordinator.execute(List.of(key), () -> {
+            if (!isAvailable(ticket.getSessionId(), ticket.getRow(), ticket.getPlace(), ticket.getUserId())) {
+                return Optional.empty();
+            }
+            Optional<Ticket> result = ticketRepository.add(ticket);
+            result.ifPresent(this::markSold);
+            return result;
+        });
+    }
+
+    /**
+     * Добавление нескольких билетов в базу данных одной транзакцией.
+     * Если хотя бы одно место занято, забронировано другим пользователем, не существует или указано в списке дважды,
+     * то список отклоняется целиком без обращения к базе данных
+     * @param tickets Список объектов типа Ticket
+     * @return Список добавленных билетов или пустой список, если хотя бы одно место занято
+     */
+    @Override
+    public List<Ticket> addAll(List<Ticket> tickets) {
+        Set<Long> requested = new HashSet<>();
+        for (Ticket ticket : tickets) {
+            if (!requested.add(SeatMap.key(ticket.getSessionId(), ticket.getRow(), ticket.getPlace()))) {
+                return List.of();
+            }
+        }
+        return coordinator.execute(requested, () -> {
+            for (Ticket ticket : tickets) {
+                if (!isAvailable(ticket.getSessionId(), ticket.getRow(), ticket.getPlace(), ticket.getUserId())) {
+                    return List.of();
+                }
+            }
+            List<Ticket> result = ticketRepository.addAll(tickets);
+            result.forEach(this::markSold);
+            return result;
+        });
+    }
+
+    /**
+     * Поиск рядов сеанса, в которых есть свободные места
+     * @param sessionId id сеанса
+     * @return Список номеров рядов
+     */
+    @Override
+    public List<Integer> findFreeRows(int sessionId) {
+        List<Integer> result = new ArrayList<>();
+        SeatMap seats = seatMap(sessionId);
+        if (seats == null) {
+            return result;
+        }
+        for (int row : seats.findFreeRows()) {
+            if (!findFreePlaces(sessionId, row).isEmpty()) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Поиск свободных мест в ряду сеанса
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @return Список номеров свободных мест
+     */
+    @Override
+    public List<Integer> findFreePlaces(int sessionId, int row) {
+        SeatMap seats = seatMap(sessionId);
+        if (seats == null) {
+            return new ArrayList<>();
+        }
+        List<Integer> result = seats.findFreePlaces(row);
+        result.removeIf(place -> seatHolds.isHeld(sessionId, row, place));
+        return result;
+    }
+
+    /**
+     * Бронирование мест в ряду на время оформления заказа.
+     * Если хотя бы одно место занято или забронировано другим пользователем, то не бронируется ни одно место.
+     * Проверка и бронирование выполняются под блокировками полос мест, как и покупка, поэтому место,
+     * проданное параллельной покупкой, не может быть забронировано после проверки
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param places Список мест
+     * @param userId id пользователя
+     * @return true, если все места забронированы пользователем
+     */
+    @Override
+    public boolean hold(int sessionId, int row, List<Integer> places, int userId) {
+        Set<Long> keys = new HashSet<>();
+        for (int place : places) {
+            keys.add(SeatMap.key(sessionId, row, place));
+        }
+        return coordinator.execute(keys, () -> {
+            List<Integer> held = new ArrayList<>();
+            for (int place : places) {
+                if (!isAvailable(sessionId, row, place, userId)
+                        || !seatHolds.hold(sessionId, row, place, userId)) {
+                    release(sessionId, row, held, userId);
+                    return false;
+                }
+                held.add(place);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Снятие броней пользователя с мест в ряду
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param places Список мест
+     * @param userId id пользователя
+     */
+    @Override
+    public void release(int sessionId, int row, List<Integer> places, int userId) {
+        for (int place : places) {
+            seatHolds.release(sessionId, row, place, userId);
+        }
+    }
+
+    /**
+     * Список номеров всех мест ряда зала
+     * @return Список номеров мест
+     */
+    @Override
+    public List<Integer> findAllPlaces() {
+        List<Integer> result = new ArrayList<>(places);
+        for (int place = 1; place <= places; place++) {
+            result.add(place);
+        }
+        return result;
+    }
+
+    /**
+     * Регистрация слушателя изменений состояния мест. Слушатель вызывается в потоке,
+     * изменившем состояние места, поэтому он не должен блокироваться
+     * @param listener Слушатель
+     */
+    @Override
+    public void addListener(SeatListener listener) {
+        listeners.add(listener);
+        seatHolds.addListener(listener);
+    }
+
+    /**
+     * Метрики конкуренции за полосы блокировок мест. Если хранилище билетов собирает метрики,
+     * например журнал отложенной записи, то они добавляются в раздел journal
+     * @return Упорядоченный набор показателей
+     */
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = coordinator.stats();
+        Map<String, Object> repository = ticketRepository.stats();
+        if (!repository.isEmpty()) {
+            result.put("journal", repository);
+        }
+        return result;
+    }
+
+    /**
+     * Проверка, может ли пользователь купить место: место существует, не продано
+     * и не забронировано другим пользователем
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param userId id пользователя
+     * @return true, если место доступно пользователю
+     */
+    private boolean isAvailable(int sessionId, int row, int place, int userId) {
+        SeatMap seats = seatMap(sessionId);
+        return seats != null
+                && seats.contains(row, place)
+                && !seats.isBusy(row, place)
+                && !seatHolds.isHeldByOther(sessionId, row, place, userId);
+    }
+
+    /**
+     * Отметка места проданным и снятие с него брони покупателя.
+     * Слушатели получают BOOKED раньше, чем RELEASED снятой брони покупателя
+     * @param ticket Проданный билет
+     */
+    private void markSold(Ticket ticket) {
+        seatMaps.get(ticket.getSessionId()).occupy(ticket.getRow(), ticket.getPlace());
+        for (SeatListener listener : listeners) {
+            listener.onSeatChange(ticket.getSessionId(), ticket.getRow(), ticket.getPlace(), SeatState.BOOKED);
+        }
+        seatHolds.release(ticket.getSessionId(), ticket.getRow(), ticket.getPlace(), ticket.getUserId());
+    }
+
+    /**
+     * Получение карты занятости мест сеанса. Если карты еще нет, а сеанс есть в каталоге,
+     * то карта создается пустой
+     * @param sessionId id сеанса
+     * @return Объект типа SeatMap или null, если сеанса нет
+     */
+    private SeatMap seatMap(int sessionId) {
+        SeatMap result = seatMaps.get(sessionId);
+        if (result == null && sessionCatalog.findById(sessionId) != null) {
+            result = seatMaps.computeIfAbsent(sessionId, id -> new SeatMap(rows, places));
+        }
+        return result;
+    }
+
+    /**
+     * Заполнение карт занятости мест проданными билетами из базы данных.
+     * Билет ссылается на существующий сеанс, поэтому карта создается без проверки по каталогу
+     * @throws IllegalStateException если билеты не удалось прочитать
+     */
+    private void loadSeatMaps() {
+        for (Ticket ticket : ticketRepository.findAll()) {
+            SeatMap seats = seatMaps.computeIfAbsent(ticket.getSessionId(), id -> new SeatMap(rows, places));
+            if (seats.contains(ticket.getRow(), ticket.getPlace())) {
+                seats.occupy(ticket.getRow(), ticket.getPlace());
+            }
+        }
     }
 }
@@ -0,0 +1,215 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.PosterVariant;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PosterCache - кеш постеров и их копий вне кучи Java
+ *
+ * Изображения хранятся в прямых буферах ByteBuffer, поэтому горячий постер передается в сокет
+ * одним копированием из буфера, без запроса в базу данных и без создания массивов в куче.
+ * Кеш ограничен суммарным размером изображений; при переполнении вытесняются давно не запрашиваемые
+ * постеры (LRU). Слишком большие постеры, например исходные файлы, не кешируются.
+ *
+ * Вместе с изображением хранятся его хеш и тип, поэтому и ответ 304 на попадание в кеш
+ * не требует запроса в базу данных.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class PosterCache {
+
+    /**
+     * Постер в кеше
+     */
+    public static final class Entry {
+
+        /**
+         * Изображение только для чтения
+         */
+        private final ByteBuffer data;
+
+        private final String hash;
+
+        private final String type;
+
+        private Entry(ByteBuffer data, String hash, String type) {
+            this.data = data;
+            this.hash = hash;
+            this.type = type;
+        }
+
+        /**
+         * Изображение. Каждый вызов возвращает новый буфер с собственной позицией над общими данными
+         * @return Буфер только для чтения
+         */
+        public ByteBuffer data() {
+            return data.duplicate();
+        }
+
+        public int size() {
+            return data.capacity();
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Постеры по ключу сеанса и варианта в порядке обращения
+     */
+    @GuardedBy("this")
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Суммарный размер изображений в кеше
+     */
+    @GuardedBy("this")
+    private long resident;
+
+    @GuardedBy("this")
+    private long evictions;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Максимальный суммарный размер изображений в байтах
+     */
+    private final long capacity;
+
+    /**
+     * Максимальный размер одного изображения в байтах
+     */
+    private final long maxEntrySize;
+
+    public PosterCache(@Value("${cinema.poster.cache.capacity-mb:64}") long capacityMb,
+                       @Value("${cinema.poster.cache.max-entry-kb:2048}") long maxEntryKb) {
+        this.capacity = capacityMb * 1024 * 1024;
+        this.maxEntrySize = Math.min(maxEntryKb * 1024, capacity);
+    }
+
+    /**
+     * Поиск постера в кеше
+     * @param sessionId id сеанса
+     * @param variant Вариант постера или null для исходного постера
+     * @return Постер или null, если его нет в кеше
+     */
+    public Entry get(int sessionId, PosterVariant variant) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(sessionId, variant));
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Проверка, поместится ли в кеш постер такого размера
+     * @param size Размер постера в байтах
+     * @return true, если постер будет сохранен в кеше
+     */
+    public boolean accepts(long size) {
+        return size <= maxEntrySize;
+    }
+
+    /**
+     * Сохранение постера в кеше. Изображение копируется в прямой буфер
+     * @param sessionId id сеанса
+     * @param variant Вариант постера или null для исходного постера
+     * @param hash Хеш изображения
+     * @param type MIME-тип изображения
+     * @param photo Изображение, размер которого принимает метод accepts
+     * @return Сохраненный постер
+     */
+    public Entry put(int sessionId, PosterVariant variant, String hash, String type, byte[] photo) {
+        if (!accepts(photo.length)) {
+            throw new IllegalArgumentException("Poster of " + photo.length + " bytes does not fit the cache");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(photo.length).put(photo).flip().asReadOnlyBuffer();
+        Entry entry = new Entry(buffer, hash, type);
+        synchronized (this) {
+            Entry old = entries.put(key(sessionId, variant), entry);
+            if (old != null) {
+                resident -= old.size();
+            }
+            resident += entry.size();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (resident > capacity && eldest.hasNext()) {
+                resident -= eldest.next().size();
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Удаление из кеша постера сеанса и всех его копий
+     * @param sessionId id сеанса
+     */
+    public synchronized void invalidate(int sessionId) {
+        remove(key(sessionId, null));
+        for (PosterVariant variant : PosterVariant.values()) {
+            remove(key(sessionId, variant));
+        }
+    }
+
+    /**
+     * Показатели кеша
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (this) {
+            result.put("entries", entries.size());
+            result.put("residentBytes", resident);
+            result.put("evictions", evictions);
+        }
+        result.put("capacityBytes", capacity);
+        result.put("hits", hitCount);
+        result.put("misses", total - hitCount);
+        result.put("hitRatio", total == 0 ? 0.0 : Math.round(hitCount * 10000.0 / total) / 10000.0);
+        return result;
+    }
+
+    @GuardedBy("this")
+    private void remove(long key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            resident -= entry.size();
+        }
+    }
+
+    /**
+     * Ключ постера
+     * @param sessionId id сеанса
+     * @param variant Вариант постера или null для исходного постера
+     * @return Ключ
+     */
+    private static long key(int sessionId, PosterVariant variant) {
+        return (long) sessionId << 8 | (variant == null ? 0 : variant.ordinal() + 1);
+    }
+}
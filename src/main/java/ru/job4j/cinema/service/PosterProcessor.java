@@ -0,0 +1,266 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import ru.job4j.cinema.repository.PosterRepository;
+import ru.job4j.cinema.repository.PosterStore;
+import ru.job4j.cinema.utility.ContentHash;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PosterProcessor - создание уменьшенных копий постера после его загрузки
+ *
+ * Для каждого варианта PosterVariant постер уменьшается с сохранением пропорций так, чтобы поместиться
+ * в размеры варианта, и сжимается в JPEG. Постер меньше варианта не увеличивается.
+ * Уменьшение выполняется несколькими шагами в два раза, что дает качество, близкое к бикубической
+ * интерполяции, при стоимости билинейной.
+ *
+ * Перед декодированием размеры изображения читаются из заголовка, и изображение больше cinema.poster.max-pixels
+ * пикселей не декодируется: небольшой файл может описывать огромное изображение, которое заняло бы всю память.
+ *
+ * Обработка выполняется в ограниченном пуле потоков с ограниченной очередью. Если очередь заполнена,
+ * постер не обрабатывается, а сеанс показывается с исходным постером: декодирование изображения
+ * не переносится в поток загрузки, и поток загрузок не может занять всю память очередью.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class PosterProcessor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PosterProcessor.class.getName());
+
+    /**
+     * MIME-тип копий постера
+     */
+    private static final String TYPE = "image/jpeg";
+
+    private final PosterRepository posterRepository;
+
+    private final PosterStore posterStore;
+
+    private final Executor executor;
+
+    /**
+     * Качество сжатия JPEG от 0 до 1
+     */
+    private final float quality;
+
+    /**
+     * Наибольшее число пикселей декодируемого изображения
+     */
+    private final long maxPixels;
+
+    @Autowired
+    public PosterProcessor(PosterRepository posterRepository,
+                           PosterStore posterStore,
+                           @Value("${cinema.poster.workers:2}") int workers,
+                           @Value("${cinema.poster.queue-size:32}") int queueSize,
+                           @Value("${cinema.poster.jpeg-quality:0.85}") float quality,
+                           @Value("${cinema.poster.max-pixels:16000000}") long maxPixels) {
+        this(posterRepository, posterStore, newExecutor(workers, queueSize), quality, maxPixels);
+    }
+
+    PosterProcessor(PosterRepository posterRepository, PosterStore posterStore, Executor executor,
+                    float quality, long maxPixels) {
+        this.posterRepository = posterRepository;
+        this.posterStore = posterStore;
+        this.executor = executor;
+        this.quality = quality;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Постановка постера в очередь на создание копий. Если очередь заполнена, то копии не создаются
+     * @param original Исходный постер без изображения: id сеанса и хеш
+     */
+    public void process(Poster original) {
+        try {
+            executor.execute(() -> createVariants(original));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Poster queue is full, variants of session {} are not created", original.getSessionId());
+        }
+    }
+
+    /**
+     * Создание и сохранение всех копий постера: описание копии записывается в PosterRepository,
+     * а изображение - в PosterStore. Исходный постер читается из PosterStore потоком.
+     * Если постер не является изображением или слишком велик, то копии не создаются и сеанс показывается
+     * с исходным постером
+     * @param original Исходный постер без изображения
+     */
+    void createVariants(Poster original) {
+        int sessionId = original.getSessionId();
+        AtomicReference<BufferedImage> decoded = new AtomicReference<>();
+        if (!posterStore.stream(original, (size, in) -> decoded.set(decode(sessionId, in)))) {
+            LOG.warn("Poster of session {} is not found, variants are not created", sessionId);
+            return;
+        }
+        BufferedImage source = decoded.get();
+        if (source == null) {
+            LOG.warn("Poster of session {} is not a supported image or is too large, variants are not created", sessionId);
+            return;
+        }
+        try {
+            for (PosterVariant variant : PosterVariant.values()) {
+                byte[] data = encode(resize(source, variant.getWidth(), variant.getHeight()));
+                Poster poster = new Poster(sessionId, variant, data, ContentHash.sha256(data), TYPE);
+                if (posterRepository.add(poster)) {
+                    posterStore.save(poster);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Exception in method .createVariants(Poster original)", e);
+        }
+    }
+
+    /**
+     * Декодирование изображения. Размеры читаются из заголовка до декодирования,
+     * и изображение больше maxPixels пикселей не декодируется
+     * @param sessionId id сеанса
+     * @param in Поток с изображением
+     * @return Изображение или null, если формат не поддерживается или изображение слишком велико
+     */
+    private BufferedImage decode(int sessionId, InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    LOG.warn("Poster of session {} has {} pixels, more than {} allowed",
+                            sessionId, pixels, maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Уменьшение изображения до размеров рамки с сохранением пропорций
+     * @param source Исходное изображение
+     * @param maxWidth Ширина рамки
+     * @param maxHeight Высота рамки
+     * @return Изображение без прозрачности
+     */
+    static BufferedImage resize(BufferedImage source, int maxWidth, int maxHeight) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / source.getWidth(),
+                (double) maxHeight / source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage result = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            result = draw(result, currentWidth, currentHeight);
+        } while (currentWidth != width || currentHeight != height);
+        return result;
+    }
+
+    /**
+     * Отрисовка изображения в новом размере на белом фоне
+     * @param source Изображение
+     * @param width Ширина
+     * @param height Высота
+     * @return Новое изображение
+     */
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Сжатие изображения в JPEG
+     * @param image Изображение
+     * @return Байты JPEG
+     */
+    private byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Создание пула потоков обработки постеров
+     * @param workers Количество потоков
+     * @param queueSize Размер очереди
+     * @return Объект типа ExecutorService
+     */
+    private static ExecutorService newExecutor(int workers, int queueSize) {
+        AtomicInteger number = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                task -> {
+                    Thread thread = new Thread(task, "poster-worker-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Остановка пула потоков. Постеры, уже поставленные в очередь, обрабатываются
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (executor instanceof ExecutorService service) {
+            service.shutdown();
+            service.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.SeatState;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * SeatHolds - временные брони мест на время оформления заказа
+ *
+ * Бронь живет ttl миллисекунд и хранится только в памяти. Истечение броней обслуживается
+ * хешированным колесом таймеров: колесо состоит из корзин, каждая корзина соответствует одному тику,
+ * бронь кладется в корзину тика, на котором она истекает. Один служебный поток раз в тик забирает
+ * очередную корзину и удаляет из нее истекшие брони, поэтому постановка и истечение брони стоят O(1)
+ * и не требуют отдельной задачи на каждую бронь.
+ *
+ * Брони, снятые раньше срока (покупка, отмена) или замененные продлением, отмечаются снятыми,
+ * и при обработке корзины такие записи выбрасываются без обращения к таблице броней. У каждой корзины
+ * своя блокировка, которая удерживается только на время добавления записи или изъятия всех записей корзины,
+ * поэтому брони разных тиков не конкурируют ни между собой, ни с продвижением колеса. Корзина помнит тик,
+ * для которого ее записи уже изъяты, и бронь, опоздавшая в такую корзину, ставится на следующий тик,
+ * а не ждет лишний оборот колеса.
+ *
+ * Количество действующих броней одного пользователя ограничено maxPerUser, продление брони
+ * в ограничение не засчитывается.
+ *
+ * О постановке, снятии и истечении броней сообщается слушателям SeatListener.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class SeatHolds implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SeatHolds.class.getName());
+
+    /**
+     * Длительность одного тика колеса в миллисекундах
+     */
+    private final long tickMillis;
+
+    /**
+     * Время жизни брони в тиках
+     */
+    private final long ttlTicks;
+
+    /**
+     * Источник текущего времени в миллисекундах
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Время, от которого отсчитываются тики
+     */
+    private final long startMillis;
+
+    /**
+     * Корзины колеса. Количество корзин - степень двойки, превышающая число тиков в ttl
+     */
+    private final Bucket[] wheel;
+
+    /**
+     * Маска для вычисления номера корзины по номеру тика
+     */
+    private final int mask;
+
+    /**
+     * Действующие брони по ключу места
+     */
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+
+    /**
+     * Наибольшее количество броней одного пользователя, 0 - без ограничения
+     */
+    private final int maxPerUser;
+
+    /**
+     * Количество действующих броней по id пользователя. Ведется, только если количество ограничено
+     */
+    private final Map<Integer, Integer> userHolds = new ConcurrentHashMap<>();
+
+    /**
+     * Слушатели изменений броней
+     */
+    private final List<SeatListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Поток, продвигающий колесо. Равен null, если колесо продвигается вручную
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Последний обработанный тик. Изменяется только в методе advance()
+     */
+    private volatile long processedTick;
+
+    @Autowired
+    public SeatHolds(@Value("${cinema.hold.ttl-seconds:300}") long ttlSeconds,
+                     @Value("${cinema.hold.tick-millis:1000}") long tickMillis,
+                     @Value("${cinema.hold.max-per-user:16}") int maxPerUser) {
+        this(TimeUnit.SECONDS.toMillis(ttlSeconds), tickMillis, maxPerUser, System::currentTimeMillis, true);
+    }
+
+    /**
+     * Создание колеса без служебного потока и без ограничения броней пользователя.
+     * Колесо продвигается вызовами метода advance()
+     * @param ttlMillis Время жизни брони в миллисекундах
+     * @param tickMillis Длительность тика в миллисекундах
+     * @param clock Источник текущего времени
+     */
+    SeatHolds(long ttlMillis, long tickMillis, LongSupplier clock) {
+        this(ttlMillis, tickMillis, 0, clock, false);
+    }
+
+    /**
+     * Создание колеса без служебного потока. Колесо продвигается вызовами метода advance()
+     * @param ttlMillis Время жизни брони в миллисекундах
+     * @param tickMillis Длительность тика в миллисекундах
+     * @param maxPerUser Наибольшее количество броней одного пользователя, 0 - без ограничения
+     * @param clock Источник текущего времени
+     */
+    SeatHolds(long ttlMillis, long tickMillis, int maxPerUser, LongSupplier clock) {
+        this(ttlMillis, tickMillis, maxPerUser, clock, false);
+    }
+
+    private SeatHolds(long ttlMillis, long tickMillis, int maxPerUser, LongSupplier clock, boolean startTimer) {
+        if (ttlMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("Hold ttl and tick must be positive");
+        }
+        if (maxPerUser < 0) {
+            throw new IllegalArgumentException("cinema.hold.max-per-user must not be negative, got " + maxPerUser);
+        }
+        this.maxPerUser = maxPerUser;
+        this.tickMillis = tickMillis;
+        this.ttlTicks = (ttlMillis + tickMillis - 1) / tickMillis;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+        int size = Integer.highestOneBit((int) Math.min(ttlTicks + 1, 1 << 29)) << 1;
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        if (startTimer) {
+            this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "seat-holds-wheel");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.timer.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Бронирование места пользователем. Повторная бронь того же места тем же пользователем продлевает бронь
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param userId id пользователя
+     * @return true, если место забронировано пользователем, false если место забронировано другим пользователем
+     * или у пользователя уже maxPerUser броней
+     */
+    public boolean hold(int sessionId, int row, int place, int userId) {
+        long key = SeatMap.key(sessionId, row, place);
+        Hold hold = new Hold(key, userId, currentTick() + ttlTicks);
+        boolean counted = false;
+        while (true) {
+            Hold current = holds.get(key);
+            if (current == null) {
+                if (!counted && !acquire(userId)) {
+                    return false;
+                }
+                counted = true;
+                if (holds.putIfAbsent(key, hold) == null) {
+                    notifyListeners(key, SeatState.HELD);
+                    break;
+                }
+                continue;
+            }
+            if (current.userId != userId) {
+                if (counted) {
+                    free(userId);
+                }
+                return false;
+            }
+            if (holds.replace(key, current, hold)) {
+                current.cancelled = true;
+                if (counted) {
+                    free(userId);
+                }
+                break;
+            }
+        }
+        schedule(hold);
+        return true;
+    }
+
+    /**
+     * Снятие брони места. Бронь снимается, только если она принадлежит пользователю
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param userId id пользователя
+     */
+    public void release(int sessionId, int row, int place, int userId) {
+        long key = SeatMap.key(sessionId, row, place);
+        Hold current = holds.get(key);
+        if (current != null && current.userId == userId && holds.remove(key, current)) {
+            current.cancelled = true;
+            free(userId);
+            notifyListeners(key, SeatState.RELEASED);
+        }
+    }
+
+    /**
+     * Регистрация слушателя изменений броней
+     * @param listener Слушатель
+     */
+    public void addListener(SeatListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Проверка, забронировано ли место
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @return true, если на место есть действующая бронь
+     */
+    public boolean isHeld(int sessionId, int row, int place) {
+        return holds.containsKey(SeatMap.key(sessionId, row, place));
+    }
+
+    /**
+     * Проверка, забронировано ли место другим пользователем
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param userId id пользователя
+     * @return true, если на место есть действующая бронь другого пользователя
+     */
+    public boolean isHeldByOther(int sessionId, int row, int place, int userId) {
+        Hold current = holds.get(SeatMap.key(sessionId, row, place));
+        return current != null && current.userId != userId;
+    }
+
+    /**
+     * Количество действующих броней
+     * @return Количество броней
+     */
+    public int size() {
+        return holds.size();
+    }
+
+    /**
+     * Количество действующих броней пользователя. Ведется, только если количество броней ограничено
+     * @param userId id пользователя
+     * @return Количество броней
+     */
+    int heldBy(int userId) {
+        return userHolds.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Количество записей в корзинах колеса, включая снятые брони, которые еще не выброшены
+     * @return Количество записей
+     */
+    int scheduled() {
+        int result = 0;
+        for (Bucket bucket : wheel) {
+            result += bucket.size();
+        }
+        return result;
+    }
+
+    /**
+     * Продвижение колеса до текущего времени и снятие истекших броней.
+     * Вызывается служебным потоком раз в тик. Монитор объекта защищает только от одновременного
+     * продвижения колеса, постановка броней его не захватывает
+     */
+    synchronized void advance() {
+        try {
+            long target = currentTick();
+            while (processedTick < target) {
+                long tick = processedTick + 1;
+                for (Hold hold : wheel[(int) (tick & mask)].drain(tick)) {
+                    if (hold.cancelled) {
+                        continue;
+                    }
+                    if (hold.deadlineTick > tick) {
+                        schedule(hold);
+                    } else if (holds.remove(hold.key, hold)) {
+                        free(hold.userId);
+                        notifyListeners(hold.key, SeatState.RELEASED);
+                    }
+                }
+                processedTick = tick;
+            }
+        } catch (Exception e) {
+            LOG.error("Exception in method .advance()", e);
+        }
+    }
+
+    /**
+     * Остановка служебного потока колеса
+     */
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Помещение брони в корзину тика, на котором она истекает. Если колесо уже изъяло записи корзины
+     * для этого тика, то бронь ставится на следующий тик, иначе она пролежала бы в корзине до следующего
+     * оборота колеса
+     * @param hold Бронь
+     */
+    private void schedule(Hold hold) {
+        long tick = Math.max(hold.deadlineTick, processedTick + 1);
+        while (!wheel[(int) (tick & mask)].add(hold, tick)) {
+            tick = Math.max(tick + 1, processedTick + 1);
+        }
+    }
+
+    /**
+     * Учет новой брони пользователя
+     * @param userId id пользователя
+     * @return false, если у пользователя уже maxPerUser броней
+     */
+    private boolean acquire(int userId) {
+        if (maxPerUser == 0) {
+            return true;
+        }
+        if (userHolds.merge(userId, 1, Integer::sum) > maxPerUser) {
+            free(userId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Учет снятой брони пользователя
+     * @param userId id пользователя
+     */
+    private void free(int userId) {
+        if (maxPerUser != 0) {
+            userHolds.computeIfPresent(userId, (id, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Оповещение слушателей об изменении брони
+     * @param key Ключ места
+     * @param state Новое состояние места
+     */
+    private void notifyListeners(long key, SeatState state) {
+        for (SeatListener listener : listeners) {
+            listener.onSeatChange(SeatMap.sessionId(key), SeatMap.row(key), SeatMap.place(key), state);
+        }
+    }
+
+    /**
+     * Номер текущего тика
+     * @return Количество тиков, прошедших с создания колеса
+     */
+    private long currentTick() {
+        return (clock.getAsLong() - startMillis) / tickMillis;
+    }
+
+    /**
+     * Hold - бронь одного места
+     */
+    private static final class Hold {
+
+        /**
+         * Ключ места
+         */
+        private final long key;
+
+        /**
+         * id пользователя, которому принадлежит бронь
+         */
+        private final int userId;
+
+        /**
+         * Тик, на котором бронь истекает
+         */
+        private final long deadlineTick;
+
+        /**
+         * Бронь снята или заменена продлением, запись в корзине больше не нужна
+         */
+        private volatile boolean cancelled;
+
+        private Hold(long key, int userId, long deadlineTick) {
+            this.key = key;
+            this.userId = userId;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    /**
+     * Bucket - корзина колеса со своей блокировкой
+     */
+    @ThreadSafe
+    private static final class Bucket {
+
+        /**
+         * Брони, поставленные в корзину
+         */
+        @GuardedBy("this")
+        private List<Hold> holds = new ArrayList<>();
+
+        /**
+         * Последний тик, для которого записи корзины изъяты колесом
+         */
+        @GuardedBy("this")
+        private long drainedTick;
+
+        /**
+         * Добавление брони, которая должна быть обработана на тике tick
+         * @param hold Бронь
+         * @param tick Тик
+         * @return false, если записи корзины для этого тика уже изъяты и бронь не добавлена
+         */
+        private synchronized boolean add(Hold hold, long tick) {
+            if (drainedTick >= tick) {
+                return false;
+            }
+            holds.add(hold);
+            return true;
+        }
+
+        /**
+         * Изъятие всех записей корзины при обработке тика
+         * @param tick Обрабатываемый тик
+         * @return Изъятые записи
+         */
+        private synchronized List<Hold> drain(long tick) {
+            List<Hold> result = holds;
+            holds = new ArrayList<>();
+            drainedTick = tick;
+            return result;
+        }
+
+        private synchronized int size() {
+            return holds.size();
+        }
+    }
+}
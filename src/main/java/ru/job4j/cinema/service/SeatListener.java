@@ -0,0 +1,20 @@
+package ru.job4j.cinema.service;
+
+import ru.job4j.cinema.model.SeatState;
+
+/**
+ * SeatListener - интерфейс слушателя изменений состояния мест
+ *
+ * @author Ilya Kaltygin
+ */
+public interface SeatListener {
+
+    /**
+     * Вызывается при изменении состояния места
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @param state Новое состояние места
+     */
+    void onSeatChange(int sessionId, int row, int place, SeatState state);
+}
@@ -0,0 +1,181 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SeatMap - карта занятости мест зала для одного сеанса
+ *
+ * Занятость мест хранится в виде битовой карты: каждому месту соответствует один бит массива long,
+ * номер бита вычисляется по ряду и месту. Биты изменяются через CAS, поэтому класс является
+ * потокобезопасным и не использует блокировок. Ряды и места нумеруются с единицы.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class SeatMap {
+
+    /**
+     * Количество рядов в зале
+     */
+    private final int rows;
+
+    /**
+     * Количество мест в ряду
+     */
+    private final int places;
+
+    /**
+     * Битовая карта занятых мест
+     */
+    private final AtomicLongArray busy;
+
+    public SeatMap(int rows, int places) {
+        if (rows < 1 || places < 1) {
+            throw new IllegalArgumentException("Hall must have at least one row and one place");
+        }
+        this.rows = rows;
+        this.places = places;
+        this.busy = new AtomicLongArray((rows * places + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * Вычисление ключа места, однозначно определяющего сеанс, ряд и место
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param place Место
+     * @return Ключ места
+     */
+    public static long key(int sessionId, int row, int place) {
+        return ((long) sessionId << 32) | ((long) (row & 0xFFFF) << 16) | (place & 0xFFFF);
+    }
+
+    /**
+     * Получение id сеанса из ключа места
+     * @param key Ключ места
+     * @return id сеанса
+     */
+    public static int sessionId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * Получение ряда из ключа места
+     * @param key Ключ места
+     * @return Ряд
+     */
+    public static int row(long key) {
+        return (int) (key >>> 16) & 0xFFFF;
+    }
+
+    /**
+     * Получение места из ключа места
+     * @param key Ключ места
+     * @return Место
+     */
+    public static int place(long key) {
+        return (int) key & 0xFFFF;
+    }
+
+    /**
+     * Проверка, существует ли в зале место с указанными рядом и номером
+     * @param row Ряд
+     * @param place Место
+     * @return true, если место существует
+     */
+    public boolean contains(int row, int place) {
+        return row >= 1 && row <= rows && place >= 1 && place <= places;
+    }
+
+    /**
+     * Проверка занятости места
+     * @param row Ряд
+     * @param place Место
+     * @return true, если место занято
+     */
+    public boolean isBusy(int row, int place) {
+        int bit = index(row, place);
+        return (busy.get(bit / Long.SIZE) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Пометить место как занятое
+     * @param row Ряд
+     * @param place Место
+     * @return true, если место было свободно и теперь занято, false если место уже было занято
+     */
+    public boolean occupy(int row, int place) {
+        int bit = index(row, place);
+        int word = bit / Long.SIZE;
+        long mask = 1L << bit;
+        long prev;
+        do {
+            prev = busy.get(word);
+            if ((prev & mask) != 0) {
+                return false;
+            }
+        } while (!busy.compareAndSet(word, prev, prev | mask));
+        return true;
+    }
+
+    /**
+     * Пометить место как свободное
+     * @param row Ряд
+     * @param place Место
+     */
+    public void release(int row, int place) {
+        int bit = index(row, place);
+        long mask = 1L << bit;
+        busy.getAndUpdate(bit / Long.SIZE, value -> value & ~mask);
+    }
+
+    /**
+     * Поиск свободных мест в ряду
+     * @param row Ряд
+     * @return Список номеров свободных мест, пустой список если ряда не существует
+     */
+    public List<Integer> findFreePlaces(int row) {
+        List<Integer> result = new ArrayList<>();
+        if (row < 1 || row > rows) {
+            return result;
+        }
+        for (int place = 1; place <= places; place++) {
+            if (!isBusy(row, place)) {
+                result.add(place);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Поиск рядов, в которых есть хотя бы одно свободное место
+     * @return Список номеров рядов
+     */
+    public List<Integer> findFreeRows() {
+        List<Integer> result = new ArrayList<>();
+        for (int row = 1; row <= rows; row++) {
+            for (int place = 1; place <= places; place++) {
+                if (!isBusy(row, place)) {
+                    result.add(row);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Вычисление номера бита для места
+     * @param row Ряд
+     * @param place Место
+     * @return Номер бита в битовой карте
+     */
+    private int index(int row, int place) {
+        if (!contains(row, place)) {
+            throw new IllegalArgumentException(String.format("No such seat: row %d, place %d", row, place));
+        }
+        return (row - 1) * places + (place - 1);
+    }
+}
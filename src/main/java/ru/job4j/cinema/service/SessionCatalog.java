@@ -0,0 +1,368 @@
+package ru.job4j.cinema.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.Page;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.SessionRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * SessionCatalog - каталог сеансов в памяти с чтением через кеш
+ *
+ * Каталог хранит неизменяемый снимок: список сеансов в порядке возрастания id и таблицу сеансов по id.
+ * Чтение каталога - это одно чтение volatile поля без блокировок и без запроса в базу данных.
+ * Снимок загружается из SessionRepository страницами по ключу при первом чтении, а добавление и изменение
+ * сеанса публикуют новый снимок, собранный из копии старого (copy-on-write). Писатели упорядочены
+ * блокировкой, читатели ее не берут. Страница каталога находится двоичным поиском по id, а общее
+ * количество сеансов - размер снимка, поэтому ни страница, ни счетчик не требуют просмотра всего каталога.
+ *
+ * Каждый снимок получает следующий номер версии, поэтому по версии можно проверить, изменился ли каталог.
+ * Если задано время жизни снимка (cinema.catalog.ttl-seconds), то устаревший снимок перезагружается
+ * из базы данных: это подхватывает изменения, сделанные в обход приложения. Перезагрузку выполняет один
+ * читатель, остальные в это время получают прежний снимок.
+ *
+ * Снимок публикуется только после того, как прочитаны все страницы. Если перезагрузка не удалась,
+ * каталог продолжает отдавать прежний снимок и повторяет попытку через время жизни снимка. Если не удалась
+ * первая загрузка, то снимка нет: ошибка передается читателю, а следующее чтение снова загружает каталог.
+ *
+ * Сеансы в снимке общие для всех читателей и не должны изменяться.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class SessionCatalog {
+
+    /**
+     * Неизменяемый снимок каталога
+     */
+    public static final class Snapshot {
+
+        private final long version;
+
+        private final List<Session> sessions;
+
+        private final Map<Integer, Session> byId;
+
+        /**
+         * id сеансов в порядке возрастания
+         */
+        private final int[] ids;
+
+        /**
+         * Время создания снимка в миллисекундах
+         */
+        private final long createdAt;
+
+        private Snapshot(long version, List<Session> sessions, long createdAt) {
+            sessions.sort(Comparator.comparingInt(Session::getId));
+            Map<Integer, Session> index = new HashMap<>();
+            int[] keys = new int[sessions.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Session session = sessions.get(i);
+                index.put(session.getId(), session);
+                keys[i] = session.getId();
+            }
+            this.version = version;
+            this.sessions = Collections.unmodifiableList(sessions);
+            this.byId = Collections.unmodifiableMap(index);
+            this.ids = keys;
+            this.createdAt = createdAt;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Session> getSessions() {
+            return sessions;
+        }
+
+        /**
+         * Поиск сеанса в снимке
+         * @param id id сеанса
+         * @return Объект типа Session или null, если сеанса нет
+         */
+        public Session findById(int id) {
+            return byId.get(id);
+        }
+
+        /**
+         * Страница сеансов по ключу. Начало страницы находится двоичным поиском по id,
+         * поэтому стоимость страницы не зависит от ее номера
+         * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+         * @param limit Размер страницы
+         * @return Страница сеансов в порядке возрастания id
+         */
+        public Page<Session> page(int afterId, int limit) {
+            int found = Arrays.binarySearch(ids, afterId);
+            int start = found >= 0 ? found + 1 : -found - 1;
+            int end = (int) Math.min((long) start + limit, ids.length);
+            Integer previous = null;
+            if (start > 0) {
+                previous = start <= limit ? 0 : ids[start - limit - 1];
+            }
+            Integer next = end < ids.length ? ids[end - 1] : null;
+            return new Page<>(sessions.subList(start, end), ids.length, previous, next);
+        }
+    }
+
+    /**
+     * Количество сеансов, загружаемых из базы данных одним запросом
+     */
+    private static final int LOAD_BATCH = 500;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionCatalog.class.getName());
+
+    private final SessionRepository sessionRepository;
+
+    /**
+     * Время жизни снимка в миллисекундах; 0 - снимок не устаревает
+     */
+    private final long ttlMillis;
+
+    /**
+     * Источник текущего времени в миллисекундах
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Упорядочивает загрузку и публикацию снимков
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Текущий снимок или null, если каталог еще не загружен
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Время, раньше которого устаревший снимок не перезагружается после неудачной перезагрузки
+     */
+    private volatile long retryAt;
+
+    private final LongAdder reads = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    @Autowired
+    public SessionCatalog(SessionRepository sessionRepository,
+                          @Value("${cinema.catalog.ttl-seconds:0}") long ttlSeconds) {
+        this(sessionRepository, TimeUnit.SECONDS.toMillis(ttlSeconds), System::currentTimeMillis);
+    }
+
+    /**
+     * Создание каталога с заданным источником времени
+     * @param sessionRepository Хранилище сеансов
+     * @param ttlMillis Время жизни снимка в миллисекундах; 0 - снимок не устаревает
+     * @param clock Источник текущего времени
+     */
+    SessionCatalog(SessionRepository sessionRepository, long ttlMillis, LongSupplier clock) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Catalog ttl must not be negative");
+        }
+        this.sessionRepository = sessionRepository;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Текущий снимок каталога. Загружает каталог при первом обращении и по истечении времени жизни
+     * @return Снимок каталога
+     */
+    public Snapshot snapshot() {
+        reads.increment();
+        Snapshot current = snapshot;
+        if (current == null) {
+            writeLock.lock();
+            try {
+                current = snapshot;
+                if (current == null) {
+                    current = reload(null);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } else if (stale(current) && writeLock.tryLock()) {
+            try {
+                current = snapshot;
+                if (stale(current)) {
+                    current = reload(current);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Все сеансы каталога
+     * @return Неизменяемый список сеансов
+     */
+    public Collection<Session> findAll() {
+        return snapshot().getSessions();
+    }
+
+    /**
+     * Страница сеансов каталога
+     * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @return Страница сеансов в порядке возрастания id
+     */
+    public Page<Session> findPage(int afterId, int limit) {
+        return snapshot().page(afterId, limit);
+    }
+
+    /**
+     * Поиск сеанса в каталоге
+     * @param id id сеанса
+     * @return Объект типа Session или null, если сеанса нет
+     */
+    public Session findById(int id) {
+        return snapshot().findById(id);
+    }
+
+    /**
+     * Публикация снимка с добавленным сеансом. Если каталог еще не загружен, то сеанс попадет в него
+     * при загрузке из базы данных
+     * @param session Сеанс, сохраненный в базе данных
+     */
+    public void added(Session session) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (current != null) {
+                List<Session> sessions = new ArrayList<>(current.sessions.size() + 1);
+                for (Session s : current.sessions) {
+                    if (s.getId() != session.getId()) {
+                        sessions.add(s);
+                    }
+                }
+                sessions.add(copy(session, session));
+                publish(current.version, sessions, current.createdAt);
+                writes.increment();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Публикация снимка с измененными названием и описанием сеанса
+     * @param session Сеанс с новыми названием и описанием
+     */
+    public void updated(Session session) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            Session old = current == null ? null : current.findById(session.getId());
+            if (old != null) {
+                List<Session> sessions = new ArrayList<>(current.sessions);
+                sessions.set(sessions.indexOf(old), copy(session, old));
+                publish(current.version, sessions, current.createdAt);
+                writes.increment();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Показатели каталога
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Snapshot current = snapshot;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", current == null ? 0 : current.version);
+        result.put("sessions", current == null ? 0 : current.sessions.size());
+        result.put("ageMillis", current == null ? 0 : clock.getAsLong() - current.createdAt);
+        result.put("ttlMillis", ttlMillis);
+        result.put("reads", reads.sum());
+        result.put("loads", loads.sum());
+        result.put("writes", writes.sum());
+        result.put("failures", failures.sum());
+        return result;
+    }
+
+    /**
+     * Проверка, что снимок устарел и его можно перезагрузить
+     * @param current Текущий снимок
+     * @return true, если время жизни снимка истекло и не идет пауза после неудачной перезагрузки
+     */
+    private boolean stale(Snapshot current) {
+        long now = clock.getAsLong();
+        return ttlMillis > 0 && now - current.createdAt >= ttlMillis && now >= retryAt;
+    }
+
+    /**
+     * Загрузка каталога из базы данных страницами по LOAD_BATCH сеансов. Частично прочитанный каталог
+     * не публикуется
+     * @param current Текущий снимок или null, если каталог еще не загружен
+     * @return Новый снимок или прежний, если перезагрузка не удалась
+     * @throws IllegalStateException если не удалась первая загрузка каталога
+     */
+    private Snapshot reload(Snapshot current) {
+        loads.increment();
+        List<Session> sessions = new ArrayList<>();
+        try {
+            List<Session> batch;
+            do {
+                batch = sessionRepository.findPage(
+                        sessions.isEmpty() ? 0 : sessions.get(sessions.size() - 1).getId(), LOAD_BATCH);
+                sessions.addAll(batch);
+            } while (batch.size() == LOAD_BATCH);
+        } catch (IllegalStateException e) {
+            failures.increment();
+            if (current == null) {
+                throw e;
+            }
+            retryAt = clock.getAsLong() + ttlMillis;
+            LOG.error("Catalog could not be reloaded, keeping snapshot version " + current.version, e);
+            return current;
+        }
+        return publish(current == null ? 0 : current.version, sessions, clock.getAsLong());
+    }
+
+    private Snapshot publish(long version, List<Session> sessions, long createdAt) {
+        Snapshot next = new Snapshot(version + 1, sessions, createdAt);
+        snapshot = next;
+        return next;
+    }
+
+    /**
+     * Копия сеанса без изображения постера
+     * @param text Сеанс, из которого берутся название и описание
+     * @param poster Сеанс, из которого берется описание постера
+     * @return Новый объект типа Session
+     */
+    private static Session copy(Session text, Session poster) {
+        Session result = new Session(text.getId(), text.getTitle(), text.getDesc(), null);
+        result.setPhotoHash(poster.getPhotoHash());
+        result.setPhotoType(poster.getPhotoType());
+        return result;
+    }
+}
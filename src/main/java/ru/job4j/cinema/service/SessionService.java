@@ -1,7 +1,15 @@
 package ru.job4j.cinema.service;
 
+import ru.job4j.cinema.model.Page;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
 import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.PosterSink;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Optional;
 
 /**
  * SessionService - интерфейс, описывающий поведения для бизнес логики приложения
@@ -11,10 +19,12 @@ import java.util.Collection;
 public interface SessionService {
 
     /**
-     * Добавление сеанса в базу данных
-     * @param session Добавляемый объект типа Session
+     * Добавление сеанса в базу данных вместе с постером из потока
+     * @param session Добавляемый объект типа Session с типом постера
+     * @param photoSize Размер постера в байтах или 0, если постер не загружен
+     * @param photo Поток с постером
      */
-    public void add(Session session);
+    public void add(Session session, long photoSize, InputStream photo) throws IOException;
 
     /**
      * Поиск всех сеансов в базе данных
@@ -22,6 +32,14 @@ public interface SessionService {
      */
     public Collection<Session> findAll();
 
+    /**
+     * Поиск страницы сеансов по ключу
+     * @param afterId id последнего сеанса предыдущей страницы или 0 для первой страницы
+     * @param limit Размер страницы
+     * @return Страница сеансов в порядке возрастания id
+     */
+    public Page<Session> findPage(int afterId, int limit);
+
     /**
      * Поиск сеанса в базе данных по id
      * @param id id искомого объекта
@@ -34,4 +52,27 @@ public interface SessionService {
      * @param session Новый объект типа Session
      */
     public void update(Session session);
-    }
+
+    /**
+     * Поиск уменьшенной копии постера сеанса
+     * @param id id сеанса
+     * @param variant Вариант постера
+     * @return Объект типа Poster без изображения или пустой Optional, если копия еще не создана
+     */
+    public Optional<Poster> findPoster(int id, PosterVariant variant);
+
+    /**
+     * Передача постера или его копии получателю потоком
+     * @param poster Объект типа Poster без изображения; вариант null означает исходный постер
+     * @param sink Получатель постера
+     * @return true, если изображение найдено
+     */
+    public boolean streamPoster(Poster poster, PosterSink sink);
+
+    /**
+     * Файл с изображением постера для передачи в сокет без копирования
+     * @param poster Объект типа Poster без изображения; вариант null означает исходный постер
+     * @return Путь к файлу или пустой Optional, если постер хранится не в файле
+     */
+    public Optional<Path> posterFile(Poster poster);
+}
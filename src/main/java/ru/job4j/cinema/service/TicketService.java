@@ -1,6 +1,8 @@
 package ru.job4j.cinema.service;
 
 import ru.job4j.cinema.model.Ticket;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -16,4 +18,63 @@ public interface TicketService {
      * @return Объект типа User, если такого объекта в базе данных нет
      */
     public Optional<Ticket> add(Ticket ticket);
+
+    /**
+     * Добавление нескольких билетов в базу данных. Либо добавляются все билеты, либо ни одного
+     * @param tickets Список объектов типа Ticket
+     * @return Список добавленных билетов или пустой список, если хотя бы одно место занято
+     */
+    public List<Ticket> addAll(List<Ticket> tickets);
+
+    /**
+     * Поиск рядов сеанса, в которых есть свободные места
+     * @param sessionId id сеанса
+     * @return Список номеров рядов
+     */
+    public List<Integer> findFreeRows(int sessionId);
+
+    /**
+     * Поиск свободных мест в ряду сеанса
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @return Список номеров свободных мест
+     */
+    public List<Integer> findFreePlaces(int sessionId, int row);
+
+    /**
+     * Бронирование мест в ряду на время оформления заказа
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param places Список мест
+     * @param userId id пользователя
+     * @return true, если все места забронированы пользователем
+     */
+    public boolean hold(int sessionId, int row, List<Integer> places, int userId);
+
+    /**
+     * Снятие броней пользователя с мест в ряду
+     * @param sessionId id сеанса
+     * @param row Ряд
+     * @param places Список мест
+     * @param userId id пользователя
+     */
+    public void release(int sessionId, int row, List<Integer> places, int userId);
+
+    /**
+     * Список номеров всех мест ряда зала
+     * @return Список номеров мест
+     */
+    public List<Integer> findAllPlaces();
+
+    /**
+     * Регистрация слушателя изменений состояния мест: продажи, бронирования и снятия брони
+     * @param listener Слушатель
+     */
+    public void addListener(SeatListener listener);
+
+    /**
+     * Метрики покупки билетов: конкуренция за полосы блокировок мест и метрики хранилища билетов
+     * @return Упорядоченный набор показателей
+     */
+    public Map<String, Object> stats();
 }
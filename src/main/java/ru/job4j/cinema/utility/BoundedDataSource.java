@@ -0,0 +1,213 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BoundedDataSource - источник соединений, ограничивающий число одновременно занятых соединений семафором
+ *
+ * Когда запросы обслуживаются виртуальными потоками, число потоков не ограничено, и ограничением нагрузки
+ * на базу данных служит семафор: поток получает разрешение до обращения к пулу и возвращает его при
+ * закрытии соединения. Число разрешений не больше размера пула, поэтому потоки ждут не внутри пула,
+ * а на семафоре, который паркует виртуальный поток и освобождает поток-носитель. Если разрешение
+ * не получено за maxWaitMillis, то getConnection завершается SQLTransientConnectionException.
+ *
+ * Перед возвратом соединения в пул незавершенная транзакция откатывается и включается autoCommit.
+ * Пул DBCP делает то же самое в синхронизированном методе PoolableConnection.close, и обращение
+ * к базе данных внутри монитора закрепило бы виртуальный поток за потоком-носителем.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class BoundedDataSource implements DataSource {
+
+    private final DataSource delegate;
+
+    private final int permits;
+
+    private final long maxWaitMillis;
+
+    private final Semaphore semaphore;
+
+    private final LatencyHistogram acquireWait = new LatencyHistogram();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Создание источника с ограничением
+     * @param delegate Пул соединений
+     * @param permits Наибольшее число одновременно занятых соединений
+     * @param maxWaitMillis Наибольшее время ожидания разрешения в миллисекундах; отрицательное - без ограничения
+     */
+    public BoundedDataSource(DataSource delegate, int permits, long maxWaitMillis) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        this.delegate = delegate;
+        this.permits = permits;
+        this.maxWaitMillis = maxWaitMillis;
+        this.semaphore = new Semaphore(permits, true);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return wrap(delegate.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return wrap(delegate.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Показатели семафора: число разрешений, свободные разрешения, ожидающие потоки, время ожидания и отказы
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("permits", permits);
+        result.put("available", semaphore.availablePermits());
+        result.put("waiting", semaphore.getQueueLength());
+        result.put("timeouts", timeouts.sum());
+        result.put("acquireWait", acquireWait.summary(TimeUnit.MICROSECONDS));
+        return result;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(delegate) ? iface.cast(delegate) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            if (maxWaitMillis < 0) {
+                semaphore.acquire();
+                acquired = true;
+            } else {
+                acquired = semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection permit", e);
+        } finally {
+            acquireWait.record(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("Timeout waiting for a connection permit, permits: " + permits);
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new PermitHandler(connection));
+    }
+
+    /**
+     * Соединение, возвращающее разрешение при первом закрытии
+     */
+    private final class PermitHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private boolean closed;
+
+        private PermitHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                close();
+                return null;
+            }
+            if ("isClosed".equals(method.getName()) && closed) {
+                return true;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!connection.isClosed() && !connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                try {
+                    connection.close();
+                } finally {
+                    semaphore.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.job4j.cinema.utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BoundedInputStream - поток, который прерывает чтение, как только прочитано больше допустимого числа байт
+ *
+ * Размер проверяется по мере чтения, поэтому поток не нужно загружать в память, чтобы узнать его размер.
+ *
+ * @author Ilya Kaltygin
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+    /**
+     * Допустимое число байт
+     */
+    private final long limit;
+
+    /**
+     * Прочитанное число байт
+     */
+    private long count;
+
+    public BoundedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws IOException {
+        count += n;
+        if (count > limit) {
+            throw new IOException("Stream is larger than " + limit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.job4j.cinema.utility;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * ContentHash - утилитный класс для вычисления хеша содержимого файлов
+ *
+ * @author Ilya Kaltygin
+ */
+public class ContentHash {
+
+    private ContentHash() {
+
+    }
+
+    /**
+     * Вычисление хеша SHA-256
+     * @param data Содержимое
+     * @return Хеш в шестнадцатеричном виде
+     */
+    public static String sha256(byte[] data) {
+        return hex(digest().digest(data));
+    }
+
+    /**
+     * Создание объекта для вычисления хеша SHA-256 по частям, например при чтении потока
+     * @return Объект типа MessageDigest
+     */
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Хеш в шестнадцатеричном виде
+     * @param digest Вычисленный хеш
+     * @return Строка из шестнадцатеричных цифр
+     */
+    public static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+}
@@ -0,0 +1,207 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.User;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HttpSessionMetrics - слушатель HttpSession, оценивающий память, которую занимают атрибуты сессий
+ *
+ * При каждом изменении атрибутов сессии (вход, шаги заказа) размер всех ее атрибутов в куче оценивается
+ * заново по типам значений (строки, массивы, коллекции, модели приложения). Оценка пересчитывается целиком,
+ * а не по разнице, потому что значение атрибута может измениться на месте и быть записано повторно.
+ * Общие показатели меняются на разницу между новой и прежней оценкой сессии. При завершении сессии
+ * ее объем записывается в гистограмму, поэтому видно, сколько памяти держит одна сессия до истечения таймаута.
+ * Оценка приблизительная: она учитывает заголовки объектов и их поля, но не выравнивание.
+ *
+ * Spring Boot регистрирует компонент как слушатель контейнера сервлетов.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class HttpSessionMetrics implements HttpSessionListener, HttpSessionAttributeListener {
+
+    /**
+     * Заголовок объекта или массива в байтах
+     */
+    private static final int HEADER = 16;
+
+    /**
+     * Размер ссылки в байтах
+     */
+    private static final int REFERENCE = 4;
+
+    /**
+     * Оценка атрибутов одной сессии
+     */
+    private static final class Usage {
+
+        private static final Usage EMPTY = new Usage(0, 0, 0);
+
+        private final long bytes;
+
+        private final int attributes;
+
+        private final int bookings;
+
+        private Usage(long bytes, int attributes, int bookings) {
+            this.bytes = bytes;
+            this.attributes = attributes;
+            this.bookings = bookings;
+        }
+    }
+
+    /**
+     * Оценки живых сессий по id сессии
+     */
+    private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<>();
+
+    private final LongAdder attributes = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder bookings = new LongAdder();
+
+    private final LatencyHistogram sessionBytes = new LatencyHistogram();
+
+    @Override
+    public void sessionCreated(HttpSessionEvent event) {
+        usages.put(event.getSession().getId(), Usage.EMPTY);
+        update(event.getSession());
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        Usage last = usages.remove(event.getSession().getId());
+        if (last != null) {
+            add(last, -1);
+            sessionBytes.record(last.bytes);
+        }
+    }
+
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        update(event.getSession());
+    }
+
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        update(event.getSession());
+    }
+
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        update(event.getSession());
+    }
+
+    /**
+     * Показатели сессий: количество, объем атрибутов и распределение объема по завершенным сессиям
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        long live = usages.size();
+        long total = bytes.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", live);
+        result.put("attributes", attributes.sum());
+        result.put("bookings", bookings.sum());
+        result.put("attributeBytes", total);
+        result.put("bytesPerSession", live == 0 ? 0 : total / live);
+        result.put("destroyedSessionBytes", sessionBytes.summary());
+        return result;
+    }
+
+    /**
+     * Пересчет оценки живой сессии. Атрибуты, удаляемые после завершения сессии, не учитываются
+     */
+    private void update(HttpSession session) {
+        usages.computeIfPresent(session.getId(), (id, previous) -> {
+            Usage current = measure(session);
+            add(previous, -1);
+            add(current, 1);
+            return current;
+        });
+    }
+
+    private void add(Usage usage, int sign) {
+        bytes.add(sign * usage.bytes);
+        attributes.add(sign * usage.attributes);
+        bookings.add(sign * usage.bookings);
+    }
+
+    private static Usage measure(HttpSession session) {
+        long total = 0;
+        int count = 0;
+        int booking = 0;
+        try {
+            Enumeration<String> names = session.getAttributeNames();
+            while (names.hasMoreElements()) {
+                Object value = session.getAttribute(names.nextElement());
+                total += estimate(value);
+                count++;
+                if (value instanceof BookingState) {
+                    booking++;
+                }
+            }
+        } catch (IllegalStateException e) {
+            return Usage.EMPTY;
+        }
+        return new Usage(total, count, booking);
+    }
+
+    /**
+     * Оценка размера значения в куче
+     * @param value Значение атрибута
+     * @return Размер в байтах
+     */
+    static long estimate(Object value) {
+        long result;
+        if (value == null) {
+            result = 0;
+        } else if (value instanceof BookingState) {
+            result = BookingState.BYTES;
+        } else if (value instanceof String) {
+            result = HEADER + 8 + HEADER + ((String) value).length();
+        } else if (value instanceof byte[]) {
+            result = HEADER + ((byte[]) value).length;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            result = HEADER + 8;
+        } else if (value instanceof User) {
+            User user = (User) value;
+            result = HEADER + 4 * REFERENCE + estimate(user.getName()) + estimate(user.getPassword())
+                    + estimate(user.getEmail()) + estimate(user.getPhone());
+        } else if (value instanceof Session) {
+            Session session = (Session) value;
+            result = HEADER + 5 * REFERENCE + estimate(session.getTitle()) + estimate(session.getDesc())
+                    + estimate(session.getPhoto()) + estimate(session.getPhotoHash()) + estimate(session.getPhotoType());
+        } else if (value instanceof Collection) {
+            result = HEADER * 2;
+            for (Object element : (Collection<?>) value) {
+                result += REFERENCE + estimate(element);
+            }
+        } else if (value instanceof Map) {
+            result = HEADER * 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                result += HEADER * 2 + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+        } else {
+            result = HEADER;
+        }
+        return result;
+    }
+}
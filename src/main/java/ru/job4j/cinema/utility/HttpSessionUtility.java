@@ -1,5 +1,6 @@
 package ru.job4j.cinema.utility;
 
+import ru.job4j.cinema.model.BookingState;
 import ru.job4j.cinema.model.User;
 import javax.servlet.http.HttpSession;
 
@@ -17,15 +18,24 @@ public class HttpSessionUtility {
     /**
      * Метод проверяет данные в объекте HttpSession.
      * Если в сессии по ключу "user" лежит объект, то возвращаем его, иначе создаем новый объект типа User и возвращаем его
-     * @param session Объект типа HttpSession
+     * @param session Объект типа HttpSession или null, если сессии нет
      * @return Объект типа User
      */
     public static User checkSession(HttpSession session) {
-        User user = (User) session.getAttribute("user");
+        User user = session == null ? null : (User) session.getAttribute("user");
         if (user == null) {
             user = new User();
             user.setName("Гость");
         }
         return user;
     }
+
+    /**
+     * Метод возвращает незавершенный заказ пользователя
+     * @param session Объект типа HttpSession
+     * @return Объект типа BookingState или null, если заказа нет
+     */
+    public static BookingState booking(HttpSession session) {
+        return (BookingState) session.getAttribute(BookingState.ATTRIBUTE);
+    }
 }
@@ -0,0 +1,426 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InstrumentedDataSource - источник соединений, измеряющий время выполнения каждого SQL запроса
+ *
+ * Соединения, подготовленные запросы и результаты запросов оборачиваются в динамические прокси,
+ * которые измеряют подготовку запроса (prepareStatement), выполнение (execute*) и чтение результата
+ * (время вызовов ResultSet.next). Измерения записываются в гистограммы запроса вместе с количеством строк:
+ * прочитанных для выборок и измененных для обновлений.
+ *
+ * Запрос называется по константе, в которой хранится его текст, например JdbcTicketRepository.ADD_TICKET.
+ * Имя определяется один раз для каждого текста запроса: по стеку вызова находится класс приложения,
+ * подготовивший запрос, и среди его статических строковых полей ищется поле с этим текстом.
+ * Если такого поля нет, то запрос называется по классу и методу.
+ *
+ * Запрос, который вместе с чтением результата выполнялся дольше порога, записывается в журнал.
+ * Если измерение выключено, то getConnection возвращает соединение пула без оберток.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class InstrumentedDataSource implements DataSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedDataSource.class.getName());
+
+    /**
+     * Наибольшее количество различных текстов запросов. Запросы сверх него учитываются под именем other
+     */
+    private static final int MAX_STATEMENTS = 512;
+
+    private static final String OTHER = "other";
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    /**
+     * Показатели одного запроса
+     */
+    private static final class StatementStats {
+
+        private final String name;
+
+        private final LatencyHistogram prepare = new LatencyHistogram();
+
+        private final LatencyHistogram execute = new LatencyHistogram();
+
+        private final LatencyHistogram fetch = new LatencyHistogram();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder slow = new LongAdder();
+
+        private StatementStats(String name) {
+            this.name = name;
+        }
+
+        private Map<String, Object> summary() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("executions", execute.count());
+            result.put("rows", rows.sum());
+            result.put("slow", slow.sum());
+            result.put("prepare", prepare.summary(TimeUnit.MICROSECONDS));
+            result.put("execute", execute.summary(TimeUnit.MICROSECONDS));
+            result.put("fetch", fetch.summary(TimeUnit.MICROSECONDS));
+            return result;
+        }
+    }
+
+    private final DataSource delegate;
+
+    private final boolean enabled;
+
+    private final long slowQueryNanos;
+
+    /**
+     * Показатели по тексту запроса. Разные тексты с одним именем разделяют показатели
+     */
+    private final ConcurrentMap<String, StatementStats> bySql = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, StatementStats> byName = new ConcurrentHashMap<>();
+
+    /**
+     * Создание источника соединений
+     * @param delegate Пул соединений
+     * @param enabled Измерять ли запросы
+     * @param slowQueryMillis Порог записи запроса в журнал в миллисекундах; 0 - журнал выключен
+     */
+    public InstrumentedDataSource(DataSource delegate, boolean enabled, long slowQueryMillis) {
+        if (slowQueryMillis < 0) {
+            throw new IllegalArgumentException("Slow query threshold must not be negative");
+        }
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.slowQueryNanos = slowQueryMillis == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return enabled ? wrap(delegate.getConnection()) : delegate.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Connection connection = delegate.getConnection(username, password);
+        return enabled ? wrap(connection) : connection;
+    }
+
+    /**
+     * Показатели запросов по имени
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> statements = new TreeMap<>();
+        byName.forEach((name, stats) -> statements.put(name, stats.summary()));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("slowQueryMillis", slowQueryNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(slowQueryNanos));
+        result.put("statements", statements);
+        return result;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(delegate) ? iface.cast(delegate) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * Показатели запроса по его тексту. Имя запроса определяется при первой подготовке текста
+     */
+    private StatementStats statsFor(String sql) {
+        StatementStats stats = bySql.get(sql);
+        if (stats == null) {
+            String name = bySql.size() < MAX_STATEMENTS ? nameOf(sql) : OTHER;
+            stats = byName.computeIfAbsent(name, StatementStats::new);
+            if (!OTHER.equals(name)) {
+                bySql.putIfAbsent(sql, stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Имя запроса: класс приложения, подготовивший запрос, и его константа с текстом запроса
+     * или, если такой константы нет, метод, подготовивший запрос
+     */
+    static String nameOf(String sql) {
+        Optional<StackWalker.StackFrame> caller = WALKER.walk(frames -> frames
+                .filter(frame -> isApplicationClass(frame.getDeclaringClass()))
+                .findFirst());
+        if (caller.isEmpty()) {
+            return OTHER;
+        }
+        Class<?> type = caller.get().getDeclaringClass();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    field.setAccessible(true);
+                    if (sql.equals(field.get(null))) {
+                        return type.getSimpleName() + "." + field.getName();
+                    }
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    LOG.debug("Field {} is not readable", field, e);
+                }
+            }
+        }
+        return type.getSimpleName() + "." + caller.get().getMethodName();
+    }
+
+    private static boolean isApplicationClass(Class<?> type) {
+        String name = type.getName();
+        return !Proxy.isProxyClass(type)
+                && type.getNestHost() != InstrumentedDataSource.class
+                && !name.startsWith("java.") && !name.startsWith("jdk.") && !name.startsWith("sun.")
+                && !name.startsWith("com.sun.") && !name.startsWith("org.apache.commons.");
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Обертка соединения: измеряет подготовку запросов и оборачивает подготовленные запросы
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!("prepareStatement".equals(name) || "prepareCall".equals(name))) {
+                return InstrumentedDataSource.invoke(connection, method, args);
+            }
+            long start = System.nanoTime();
+            Object statement = InstrumentedDataSource.invoke(connection, method, args);
+            long elapsed = System.nanoTime() - start;
+            StatementStats stats = statsFor((String) args[0]);
+            stats.prepare.record(elapsed);
+            StatementHandler handler = new StatementHandler((Statement) statement, (String) args[0], stats, elapsed);
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {method.getReturnType()}, handler);
+        }
+    }
+
+    /**
+     * Обертка подготовленного запроса: измеряет выполнение, считает строки и оборачивает результат выборки.
+     * Запрос используется одним потоком, поэтому поля не требуют синхронизации
+     */
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final String sql;
+
+        private final StatementStats stats;
+
+        /**
+         * Время подготовки, выполнения и чтения результатов этого запроса
+         */
+        private long elapsed;
+
+        private long rows;
+
+        private ResultSetHandler open;
+
+        private StatementHandler(Statement statement, String sql, StatementStats stats, long prepared) {
+            this.statement = statement;
+            this.sql = sql;
+            this.stats = stats;
+            this.elapsed = prepared;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                close();
+                return InstrumentedDataSource.invoke(statement, method, args);
+            }
+            if ("getResultSet".equals(name)) {
+                return wrap((ResultSet) InstrumentedDataSource.invoke(statement, method, args));
+            }
+            if (!name.startsWith("execute") || args != null && args.length > 0) {
+                return InstrumentedDataSource.invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            Object result = InstrumentedDataSource.invoke(statement, method, args);
+            long duration = System.nanoTime() - start;
+            stats.execute.record(duration);
+            elapsed += duration;
+            if (result instanceof ResultSet) {
+                return wrap((ResultSet) result);
+            }
+            updated(result);
+            return result;
+        }
+
+        private ResultSet wrap(ResultSet resultSet) {
+            if (resultSet == null) {
+                return null;
+            }
+            closeResultSet();
+            open = new ResultSetHandler(resultSet, this);
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] {ResultSet.class}, open);
+        }
+
+        private void updated(Object result) throws SQLException {
+            long count = 0;
+            if (Boolean.FALSE.equals(result)) {
+                count = Math.max(statement.getUpdateCount(), 0);
+            } else if (result instanceof Integer || result instanceof Long) {
+                count = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                for (int value : (int[]) result) {
+                    count += Math.max(value, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long value : (long[]) result) {
+                    count += Math.max(value, 0);
+                }
+            }
+            rows += count;
+            stats.rows.add(count);
+        }
+
+        private void fetched(long duration, long count) {
+            elapsed += duration;
+            rows += count;
+            stats.fetch.record(duration);
+            stats.rows.add(count);
+        }
+
+        private void closeResultSet() {
+            if (open != null) {
+                open.flush();
+                open = null;
+            }
+        }
+
+        private void close() {
+            closeResultSet();
+            if (elapsed >= slowQueryNanos) {
+                stats.slow.increment();
+                LOG.warn("Slow statement {}: {} ms, {} rows, sql: {}", stats.name, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        rows, sql.strip().replaceAll("\\s+", " "));
+            }
+            elapsed = 0;
+            rows = 0;
+        }
+    }
+
+    /**
+     * Обертка результата выборки: суммирует время вызовов next и считает прочитанные строки
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final StatementHandler statement;
+
+        private long nanos;
+
+        private long rows;
+
+        private boolean flushed;
+
+        private ResultSetHandler(ResultSet resultSet, StatementHandler statement) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                long start = System.nanoTime();
+                boolean next = resultSet.next();
+                nanos += System.nanoTime() - start;
+                if (next) {
+                    rows++;
+                }
+                return next;
+            }
+            if ("close".equals(name)) {
+                flush();
+            }
+            return InstrumentedDataSource.invoke(resultSet, method, args);
+        }
+
+        private void flush() {
+            if (!flushed) {
+                flushed = true;
+                statement.fetched(nanos, rows);
+            }
+        }
+    }
+}
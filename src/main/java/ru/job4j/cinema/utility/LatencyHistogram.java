@@ -0,0 +1,172 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - гистограмма длительностей с логарифмическими корзинами
+ *
+ * Каждая степень двойки делится на 8 корзин, поэтому относительная погрешность перцентилей
+ * не превышает 12.5%. Запись значения - один атомарный инкремент без блокировок и без выделения памяти,
+ * поэтому гистограмму можно использовать на горячих путях. Значения записываются в наносекундах;
+ * гистограмма подходит и для других неотрицательных величин, например количества соединений,
+ * тогда сводка строится методом summary() без единицы измерения.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    /**
+     * Количество бит, задающих корзину внутри степени двойки
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * Количество значений в каждой корзине
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Запись значения
+     * @param nanos Длительность в наносекундах. Отрицательные значения записываются как 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Количество записанных значений
+     * @return Количество значений
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Максимальное записанное значение
+     * @return Значение в наносекундах
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Среднее записанное значение
+     * @return Значение в наносекундах
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Вычисление перцентиля
+     * @param quantile Квантиль от 0 до 1, например 0.99
+     * @return Верхняя граница корзины, в которую попал перцентиль, в наносекундах
+     */
+    public long percentile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Сводка по гистограмме: количество, среднее, p50, p99, p999 и максимум
+     * @param unit Единица измерения значений в сводке
+     * @return Упорядоченный набор показателей
+     */
+    public Map<String, Object> summary(TimeUnit unit) {
+        double nanosInUnit = unit.toNanos(1);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count());
+        result.put("mean", round(mean() / nanosInUnit));
+        result.put("p50", round(percentile(0.5) / nanosInUnit));
+        result.put("p99", round(percentile(0.99) / nanosInUnit));
+        result.put("p999", round(percentile(0.999) / nanosInUnit));
+        result.put("max", round(max() / nanosInUnit));
+        result.put("unit", unit.name().toLowerCase());
+        return result;
+    }
+
+    /**
+     * Сводка по гистограмме величин, не являющихся длительностями: количество, среднее, p50, p99, p999 и максимум
+     * @return Упорядоченный набор показателей
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count());
+        result.put("mean", round(mean()));
+        result.put("p50", percentile(0.5));
+        result.put("p99", percentile(0.99));
+        result.put("p999", percentile(0.999));
+        result.put("max", max());
+        return result;
+    }
+
+    /**
+     * Номер корзины для значения
+     * @param value Неотрицательное значение
+     * @return Номер корзины
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Нижняя граница корзины
+     * @param index Номер корзины
+     * @return Наименьшее значение, попадающее в корзину
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,234 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MonitoredDataSource - пул соединений DBCP2 с телеметрией и адаптивным размером
+ *
+ * Каждое получение соединения измеряется: время ожидания соединения записывается в гистограмму,
+ * а количество занятых и свободных соединений в момент получения - в отдельные гистограммы.
+ * Отказы по истечении maxWaitMillis считаются отдельно. По этим показателям видно, из чего складывается
+ * задержка запроса: из работы базы данных или из ожидания свободного соединения.
+ *
+ * Адаптивный режим (startAdaptiveSizing) раз в заданный интервал сравнивает p99 ожидания за интервал
+ * с порогами: если ожидание выросло или были отказы, то maxTotal увеличивается на четверть, а если ожидание
+ * мало и пиковое число занятых соединений оставляет запас, то maxTotal уменьшается на четверть.
+ * Размер не выходит за заданные границы, а maxIdle не превышает maxTotal, поэтому лишние соединения
+ * закрываются при возврате в пул.
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class MonitoredDataSource extends BasicDataSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MonitoredDataSource.class.getName());
+
+    /**
+     * Показатели одного интервала адаптивного режима
+     */
+    private static final class Window {
+
+        private final LatencyHistogram waits = new LatencyHistogram();
+
+        private final LongAccumulator peakActive = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder timeouts = new LongAdder();
+    }
+
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+
+    private final LatencyHistogram activeAtBorrow = new LatencyHistogram();
+
+    private final LatencyHistogram idleAtBorrow = new LatencyHistogram();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile Window window = new Window();
+
+    /**
+     * Поток адаптивного режима или null, если режим не запущен. Записывается под блокировкой this
+     */
+    private volatile ScheduledExecutorService tuner;
+
+    /**
+     * Границы и пороги адаптивного режима; записываются до запуска tuner
+     */
+    private volatile int minTotalLimit;
+
+    private volatile int maxTotalLimit;
+
+    private volatile int configuredMaxIdle;
+
+    private volatile long growWaitNanos;
+
+    private volatile long shrinkWaitNanos;
+
+    private final LongAdder grows = new LongAdder();
+
+    private final LongAdder shrinks = new LongAdder();
+
+    /**
+     * Получение соединения из пула с измерением времени ожидания
+     * @return Объект типа Connection
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Window current = window;
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection();
+            long wait = System.nanoTime() - start;
+            borrowWait.record(wait);
+            current.waits.record(wait);
+            int active = getNumActive();
+            activeAtBorrow.record(active);
+            idleAtBorrow.record(getNumIdle());
+            current.peakActive.accumulate(active);
+            return connection;
+        } catch (SQLException e) {
+            long wait = System.nanoTime() - start;
+            borrowWait.record(wait);
+            current.waits.record(wait);
+            if (e.getCause() instanceof NoSuchElementException) {
+                timeouts.increment();
+                current.timeouts.increment();
+            } else {
+                failures.increment();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Запуск адаптивного режима
+     * @param minTotal Наименьшее значение maxTotal
+     * @param maxTotal Наибольшее значение maxTotal
+     * @param intervalMillis Интервал между пересчетами размера в миллисекундах
+     * @param growWaitMicros p99 ожидания за интервал, начиная с которого пул растет, в микросекундах
+     * @param shrinkWaitMicros p99 ожидания за интервал, не больше которого пул уменьшается, в микросекундах
+     */
+    public synchronized void startAdaptiveSizing(int minTotal, int maxTotal, long intervalMillis,
+                                                 long growWaitMicros, long shrinkWaitMicros) {
+        if (minTotal < 1 || maxTotal < minTotal || intervalMillis <= 0 || shrinkWaitMicros > growWaitMicros) {
+            throw new IllegalArgumentException("Invalid adaptive pool limits");
+        }
+        if (tuner != null) {
+            throw new IllegalStateException("Adaptive sizing is already started");
+        }
+        configureAdaptiveSizing(minTotal, maxTotal, growWaitMicros, shrinkWaitMicros);
+        tuner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tuner.scheduleWithFixedDelay(this::adjustSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Показатели пула: настройки, текущее состояние и гистограммы
+     * @return Набор показателей
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> adaptive = new LinkedHashMap<>();
+        adaptive.put("enabled", tuner != null);
+        adaptive.put("minTotal", minTotalLimit);
+        adaptive.put("maxTotal", maxTotalLimit);
+        adaptive.put("grows", grows.sum());
+        adaptive.put("shrinks", shrinks.sum());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxTotal", getMaxTotal());
+        result.put("maxIdle", getMaxIdle());
+        result.put("minIdle", getMinIdle());
+        result.put("maxWaitMillis", getMaxWaitMillis());
+        result.put("active", getNumActive());
+        result.put("idle", getNumIdle());
+        result.put("timeouts", timeouts.sum());
+        result.put("failures", failures.sum());
+        result.put("borrowWait", borrowWait.summary(TimeUnit.MICROSECONDS));
+        result.put("activeAtBorrow", activeAtBorrow.summary());
+        result.put("idleAtBorrow", idleAtBorrow.summary());
+        result.put("adaptive", adaptive);
+        return result;
+    }
+
+    /**
+     * Остановка адаптивного режима и закрытие пула
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        if (tuner != null) {
+            tuner.shutdownNow();
+        }
+        super.close();
+    }
+
+    /**
+     * Задание границ адаптивного режима без запуска фонового потока
+     */
+    synchronized void configureAdaptiveSizing(int minTotal, int maxTotal, long growWaitMicros, long shrinkWaitMicros) {
+        minTotalLimit = minTotal;
+        maxTotalLimit = maxTotal;
+        configuredMaxIdle = getMaxIdle();
+        growWaitNanos = TimeUnit.MICROSECONDS.toNanos(growWaitMicros);
+        shrinkWaitNanos = TimeUnit.MICROSECONDS.toNanos(shrinkWaitMicros);
+        resize(Math.max(minTotal, Math.min(maxTotal, getMaxTotal())));
+    }
+
+    /**
+     * Пересчет размера пула по показателям интервала, прошедшего с прошлого пересчета
+     * @return Новое значение maxTotal
+     */
+    int adjust() {
+        Window last = window;
+        window = new Window();
+        int total = getMaxTotal();
+        int step = Math.max(1, total / 4);
+        long p99 = last.waits.percentile(0.99);
+        int next = total;
+        if (p99 >= growWaitNanos || last.timeouts.sum() > 0) {
+            next = Math.min(maxTotalLimit, total + step);
+        } else if (p99 <= shrinkWaitNanos && last.peakActive.get() <= total - step) {
+            next = Math.max(minTotalLimit, total - step);
+        }
+        if (next > total) {
+            grows.increment();
+        } else if (next < total) {
+            shrinks.increment();
+        }
+        if (next != total) {
+            LOG.info("Connection pool resized from {} to {}, p99 wait {} us", total, next,
+                    TimeUnit.NANOSECONDS.toMicros(p99));
+            resize(next);
+        }
+        return next;
+    }
+
+    private void resize(int total) {
+        setMaxTotal(total);
+        setMaxIdle(Math.min(configuredMaxIdle, total));
+    }
+
+    private void adjustSafely() {
+        try {
+            adjust();
+        } catch (Exception e) {
+            LOG.error("Exception in method .adjust()", e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ru.job4j.cinema.utility;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.cinema.model.User;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * SessionTokens - подписанные токены для входа без HttpSession
+ *
+ * В режиме cinema.auth.mode=token состояние пользователя хранится не в памяти сервера, а в cookie
+ * с подписью HMAC-SHA256. Токен - это строка "данные.срок.подпись", где срок - время истечения в секундах,
+ * а подпись вычисляется по данным и сроку. Поэтому любой узел с тем же ключом (cinema.auth.token.secret)
+ * проверяет токен без обращения к хранилищу сессий, и вход пользователя не привязан к узлу.
+ *
+ * Токены переносят между узлами только вход и незавершенный заказ. Карта занятости мест SeatMap, брони
+ * SeatHolds, блокировки BookingCoordinator и рассылка событий мест остаются в памяти каждого узла:
+ * бронь, сделанная на одном узле, не видна другим, а о продаже на одном узле зрители других узлов не узнают.
+ * От двойной продажи места между узлами защищает только ограничение уникальности в таблице tickets,
+ * поэтому режим отложенной записи билетов вместе с этим режимом не запускается.
+ *
+ * Ключ инициализируется один раз: проверка токена копирует заранее инициализированный объект Mac.
+ * Если ключ не задан, то он создается случайно, и токены не переживают перезапуск и не принимаются
+ * другими узлами.
+ *
+ * @author Ilya Kaltygin
+ */
+@Component
+@ThreadSafe
+public class SessionTokens {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionTokens.class.getName());
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final String TOKEN_MODE = "token";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * Признак роли пользователя в токене
+     */
+    private static final String ADMIN = "a";
+
+    private static final String USER = "u";
+
+    private final boolean enabled;
+
+    private final long ttlSeconds;
+
+    /**
+     * Источник текущего времени в секундах
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Mac, инициализированный ключом. Не используется напрямую, только копируется
+     */
+    private final Mac prototype;
+
+    @Autowired
+    public SessionTokens(@Value("${cinema.auth.mode:session}") String mode,
+                         @Value("${cinema.auth.token.secret:}") String secret,
+                         @Value("${cinema.auth.token.ttl-minutes:60}") long ttlMinutes) {
+        this(TOKEN_MODE.equals(mode), secret, TimeUnit.MINUTES.toSeconds(ttlMinutes),
+                () -> TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        if (!TOKEN_MODE.equals(mode) && !"session".equals(mode)) {
+            throw new IllegalArgumentException("Unknown auth mode: " + mode);
+        }
+        if (enabled && secret.isEmpty()) {
+            LOG.warn("cinema.auth.token.secret is not set, tokens are signed with a random key of this node");
+        }
+    }
+
+    /**
+     * Создание токенов с заданным источником времени
+     * @param enabled Включен ли вход по токенам
+     * @param secret Ключ подписи; пустая строка - случайный ключ
+     * @param ttlSeconds Время жизни токена в секундах
+     * @param clock Источник текущего времени в секундах
+     */
+    SessionTokens(boolean enabled, String secret, long ttlSeconds, LongSupplier clock) {
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException("Token ttl must be positive");
+        }
+        byte[] key = secret.isEmpty() ? randomKey() : secret.getBytes(StandardCharsets.UTF_8);
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            this.prototype = mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        this.enabled = enabled;
+        this.ttlSeconds = ttlSeconds;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Подпись данных
+     * @param payload Данные без точек
+     * @return Токен со сроком и подписью
+     */
+    public String sign(String payload) {
+        String signed = payload + "." + (clock.getAsLong() + ttlSeconds);
+        return signed + "." + ENCODER.encodeToString(mac(signed));
+    }
+
+    /**
+     * Проверка подписи и срока токена
+     * @param token Токен
+     * @return Данные токена или пустой Optional, если подпись неверна или срок истек
+     */
+    public Optional<String> verify(String token) {
+        int sign = token.lastIndexOf('.');
+        int expiry = sign > 0 ? token.lastIndexOf('.', sign - 1) : -1;
+        if (expiry <= 0) {
+            return Optional.empty();
+        }
+        String signed = token.substring(0, sign);
+        byte[] signature;
+        long expiresAt;
+        try {
+            signature = DECODER.decode(token.substring(sign + 1));
+            expiresAt = Long.parseLong(token.substring(expiry + 1, sign));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(signature, mac(signed)) || expiresAt <= clock.getAsLong()) {
+            return Optional.empty();
+        }
+        return Optional.of(token.substring(0, expiry));
+    }
+
+    /**
+     * Токен пользователя: id, признак администратора (a или u) и имя. Пароль, email и телефон в токен не попадают
+     * @param user Пользователь
+     * @return Подписанный токен
+     */
+    public String issue(User user) {
+        return sign(user.getId() + "-" + (user.isAdmin() ? ADMIN : USER) + "-"
+                + ENCODER.encodeToString(user.getName().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Пользователь из токена
+     * @param token Токен, выданный методом issue
+     * @return Пользователь с id, именем и признаком администратора или пустой Optional, если токен неверный
+     */
+    public Optional<User> user(String token) {
+        return verify(token).flatMap(payload -> {
+            String[] parts = payload.split("-", 3);
+            if (parts.length != 3 || !(ADMIN.equals(parts[1]) || USER.equals(parts[1]))) {
+                return Optional.empty();
+            }
+            try {
+                User user = new User(Integer.parseInt(parts[0]),
+                        new String(DECODER.decode(parts[2]), StandardCharsets.UTF_8), null, null, null);
+                user.setAdmin(ADMIN.equals(parts[1]));
+                return Optional.of(user);
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    private byte[] mac(String data) {
+        Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.job4j.cinema.utility;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreads - создание исполнителя, запускающего каждую задачу в новом виртуальном потоке
+ *
+ * Виртуальные потоки появились в Java 21, а основная сборка проекта - Java 17, поэтому исполнитель
+ * создается через MethodHandle. На Java 17 метод executor завершается исключением.
+ *
+ * @author Ilya Kaltygin
+ */
+public class VirtualThreads {
+
+    private VirtualThreads() {
+
+    }
+
+    /**
+     * Проверка, что виртуальные потоки поддерживаются
+     * @return true, если приложение запущено на Java 21 или новее
+     */
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Исполнитель Executors.newVirtualThreadPerTaskExecutor()
+     * @return Исполнитель без ограничения числа потоков
+     * @throws IllegalStateException если виртуальные потоки не поддерживаются
+     */
+    public static ExecutorService executor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require Java 21, running on " + Runtime.version());
+        }
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Virtual thread executor is not available", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ru.job4j.cinema.utility;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ZeroCopy - утилитный класс для передачи файлов и буферов в ответ без лишнего копирования.
+ * Возможности контейнера сервлетов определяются во время выполнения, поэтому классы Tomcat
+ * не нужны на этапе компиляции, а в другом контейнере используются переносимые способы передачи
+ *
+ * @author Ilya Kaltygin
+ */
+public class ZeroCopy {
+
+    /**
+     * Атрибуты запроса, через которые коннектор Tomcat передает файл в сокет вызовом sendfile
+     */
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Метод write(ByteBuffer) класса потока ответа или null, если такого метода нет
+     */
+    private static final ClassValue<MethodHandle> BUFFER_WRITERS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().findVirtual(type, "write",
+                        MethodType.methodType(void.class, ByteBuffer.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+    };
+
+    private ZeroCopy() {
+
+    }
+
+    /**
+     * Передача файла. Если коннектор поддерживает sendfile, то файл передается в сокет ядром
+     * после выхода из метода, иначе - через FileChannel.transferTo
+     * @param file Файл
+     * @param contentType MIME-тип файла
+     * @param request Объект типа HttpServletRequest
+     * @param response Объект типа HttpServletResponse
+     */
+    public static void sendFile(Path file, String contentType,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = Files.size(file);
+        response.setContentType(contentType);
+        response.setContentLengthLong(size);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Запись буфера в ответ. Поток ответа с методом write(ByteBuffer), например поток Tomcat,
+     * копирует буфер вне кучи прямо в буфер сокета, другие потоки получают данные через канал
+     * @param buffer Буфер с данными
+     * @param out Поток ответа
+     */
+    public static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        MethodHandle writer = BUFFER_WRITERS.get(out.getClass());
+        if (writer != null) {
+            try {
+                writer.invoke(out, buffer);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
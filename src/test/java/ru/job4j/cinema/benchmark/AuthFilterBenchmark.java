@@ -0,0 +1,82 @@
+package ru.job4j.cinema.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.cinema.filter.AuthFilter;
+import ru.job4j.cinema.utility.SessionTokens;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthFilterBenchmark - бенчмарк проверки доступа к адресу анонимным запросом
+ *
+ * Сравниваются AuthFilter с таблицей правил RouteTable и прежняя проверка, которая искала каждое
+ * публичное имя в адресе через uri.contains и создавала HttpSession для каждого непубличного запроса.
+ * Запрос и ответ создаются заново на каждую операцию в обоих вариантах, как у контейнера сервлетов,
+ * поэтому разница во времени и объеме выделенной памяти - это стоимость проверки и созданной сессии.
+ *
+ * @author Ilya Kaltygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthFilterBenchmark {
+
+    private static final Set<String> URLS = Set.of("posterSession", "allSessions", "login", "loginPage", "fail", "formAddUser", "registration", "success");
+
+    private static final FilterChain CHAIN = (request, response) -> { };
+
+    /**
+     * Адрес запроса: публичный, публичный по префиксу, для вошедшего пользователя и для администратора
+     */
+    @Param({"/allSessions", "/posterSession/1", "/selectRow/1", "/editAllSessions"})
+    private String path;
+
+    private final AuthFilter filter = new AuthFilter(new SessionTokens("session", "", 60));
+
+    @Benchmark
+    public HttpServletResponse routeTable() throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(), response, CHAIN);
+        return response;
+    }
+
+    @Benchmark
+    public HttpServletResponse contains() throws ServletException, IOException {
+        MockHttpServletRequest req = request();
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        String uri = req.getRequestURI();
+        if (URLS.stream().anyMatch(uri::contains)) {
+            CHAIN.doFilter(req, res);
+        } else if (req.getSession().getAttribute("user") == null) {
+            res.sendRedirect(req.getContextPath() + "/loginPage");
+        } else {
+            CHAIN.doFilter(req, res);
+        }
+        return res;
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return request;
+    }
+}
@@ -0,0 +1,120 @@
+package ru.job4j.cinema.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BenchmarkDatabase - встроенная база данных H2 в режиме совместимости с PostgreSQL для бенчмарков
+ *
+ * База данных создается в памяти, схема загружается из скриптов db/scripts, которые применяет liquibase.
+ * Пул соединений настраивается так же, как в приложении, поэтому при большом числе потоков
+ * в измерения входит и ожидание свободного соединения.
+ * Журналирование отключается до уровня ERROR, чтобы вывод в консоль не искажал результаты измерений.
+ *
+ * @author Ilya Kaltygin
+ */
+public final class BenchmarkDatabase {
+
+    /**
+     * Каталог со скриптами схемы базы данных
+     */
+    private static final Path SCRIPTS = Path.of("db", "scripts");
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Создание пула соединений к новой базе данных в памяти со схемой приложения
+     * @param name Имя базы данных. Каждый бенчмарк использует свою базу данных
+     * @return Объект типа BasicDataSource
+     */
+    public static BasicDataSource create(String name) {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.ERROR);
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName("org.h2.Driver");
+        pool.setUrl(url(name));
+        pool.setMinIdle(5);
+        pool.setMaxIdle(10);
+        pool.setMaxOpenPreparedStatements(100);
+        try (Connection cn = pool.getConnection();
+             Statement st = cn.createStatement()) {
+            for (String sql : scripts()) {
+                st.execute(sql);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return pool;
+    }
+
+    /**
+     * Адрес базы данных в памяти. База данных живет, пока жива JVM,
+     * поэтому к ней может подключиться и приложение, запущенное в том же процессе
+     * @param name Имя базы данных
+     * @return Адрес JDBC
+     */
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=PostgreSQL;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * Выполнение запроса к базе данных
+     * @param pool Пул соединений
+     * @param sql Запрос
+     */
+    public static void execute(BasicDataSource pool, String sql) {
+        try (Connection cn = pool.getConnection();
+             Statement st = cn.createStatement()) {
+            st.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Закрытие пула соединений и удаление базы данных из памяти
+     * @param pool Пул соединений
+     */
+    public static void close(BasicDataSource pool) {
+        try {
+            execute(pool, "SHUTDOWN");
+            pool.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Чтение скриптов схемы базы данных в порядке их номеров
+     * @return Список запросов
+     */
+    private static List<String> scripts() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(SCRIPTS)) {
+            files = list.filter(file -> file.toString().endsWith(".sql")).sorted().collect(Collectors.toList());
+        }
+        List<String> result = new ArrayList<>();
+        for (Path file : files) {
+            for (String sql : Files.readString(file, StandardCharsets.UTF_8).split(";")) {
+                if (!sql.isBlank()) {
+                    result.add(sql);
+                }
+            }
+        }
+        return result;
+    }
+}
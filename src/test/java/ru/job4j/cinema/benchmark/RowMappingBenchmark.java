@@ -0,0 +1,122 @@
+package ru.job4j.cinema.benchmark;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.JdbcSessionRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RowMappingBenchmark - бенчмарк чтения большого результата запроса разными способами
+ *
+ * Сравниваются чтение SELECT * по именам столбцов (как репозитории читали строки раньше),
+ * чтение объявленных столбцов по именам и чтение объявленных столбцов по номерам через Projection,
+ * как в JdbcSessionRepository. Время и объем выделенной памяти в пересчете на строку - результат,
+ * деленный на количество строк; объем памяти выводит профилировщик gc.
+ *
+ * @author Ilya Kaltygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private static final String SELECT_ALL = """
+            SELECT * FROM sessions
+            """;
+
+    private static final String SELECT_COLUMNS = """
+            SELECT id, title, description, photo_hash, photo_type FROM sessions
+            """;
+
+    /**
+     * Количество строк в результате
+     */
+    @Param({"10000"})
+    private int rows;
+
+    private BasicDataSource pool;
+
+    private JdbcSessionRepository repository;
+
+    @Setup
+    public void setUp() {
+        pool = BenchmarkDatabase.create("rows");
+        repository = new JdbcSessionRepository(pool);
+        BenchmarkDatabase.execute(pool, """
+                INSERT INTO sessions(title, description, photo_hash, photo_type)
+                SELECT 'title ' || X, 'description of session ' || X, RAWTOHEX(HASH('SHA-256', CAST(X AS VARCHAR))),
+                'image/jpeg'
+                FROM SYSTEM_RANGE(1, %d)
+                """.formatted(rows));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkDatabase.close(pool);
+    }
+
+    /**
+     * SELECT * и поиск каждого столбца по имени в каждой строке
+     * @return Список сеансов
+     */
+    @Benchmark
+    public List<Session> selectAllByName() throws SQLException {
+        return byName(SELECT_ALL);
+    }
+
+    /**
+     * Объявленные столбцы и поиск каждого столбца по имени в каждой строке
+     * @return Список сеансов
+     */
+    @Benchmark
+    public List<Session> columnsByName() throws SQLException {
+        return byName(SELECT_COLUMNS);
+    }
+
+    /**
+     * Объявленные столбцы, номера которых определяются один раз на запрос
+     * @return Список сеансов
+     */
+    @Benchmark
+    public Collection<Session> projection() {
+        return repository.findAll();
+    }
+
+    private List<Session> byName(String sql) throws SQLException {
+        List<Session> sessions = new ArrayList<>();
+        try (Connection cn = pool.getConnection();
+             PreparedStatement ps = cn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Session session = new Session(rs.getInt("id"), rs.getString("title"), rs.getString("description"), null);
+                session.setPhotoHash(rs.getString("photo_hash"));
+                session.setPhotoType(rs.getString("photo_type"));
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.job4j.cinema.benchmark;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.JdbcPosterStore;
+import ru.job4j.cinema.repository.JdbcSessionRepository;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionRepositoryBenchmark - бенчмарк чтения сеансов вместе с постерами
+ *
+ * Постеры заполняются случайными байтами, поэтому база данных не может их сжать.
+ * Размеры соответствуют постеру в формате JPEG для карточки сеанса и для полноэкранного просмотра.
+ *
+ * @author Ilya Kaltygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionRepositoryBenchmark {
+
+    /**
+     * Количество сеансов в афише
+     */
+    @Param({"20"})
+    private int sessions;
+
+    /**
+     * Размер постера в байтах
+     */
+    @Param({"100000", "800000"})
+    private int posterSize;
+
+    private BasicDataSource pool;
+
+    private JdbcSessionRepository repository;
+
+    @Setup
+    public void setUp() {
+        pool = BenchmarkDatabase.create("sessions");
+        repository = new JdbcSessionRepository(pool);
+        JdbcPosterStore posterStore = new JdbcPosterStore(pool);
+        Random random = new Random(42);
+        for (int i = 1; i <= sessions; i++) {
+            byte[] photo = new byte[posterSize];
+            random.nextBytes(photo);
+            Session session = new Session(0, "title " + i, "description " + i, photo);
+            repository.add(session);
+            posterStore.save(new Poster(session.getId(), null, photo, null, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkDatabase.close(pool);
+    }
+
+    /**
+     * Чтение всей афиши, как на главной странице
+     * @return Список сеансов
+     */
+    @Benchmark
+    public Collection<Session> findAll() {
+        return repository.findAll();
+    }
+
+    /**
+     * Чтение случайного сеанса, как на страницах выбора ряда и места
+     * @return Сеанс
+     */
+    @Benchmark
+    public Session findById() {
+        return repository.findById(ThreadLocalRandom.current().nextInt(sessions) + 1);
+    }
+}
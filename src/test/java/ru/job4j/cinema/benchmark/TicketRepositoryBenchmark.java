@@ -0,0 +1,147 @@
+package ru.job4j.cinema.benchmark;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.Ticket;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.repository.JdbcSessionRepository;
+import ru.job4j.cinema.repository.JdbcTicketRepository;
+import ru.job4j.cinema.repository.JdbcUserRepository;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TicketRepositoryBenchmark - бенчмарк покупки билета при разном числе параллельных покупателей
+ *
+ * Методы sameSeat покупают одно и то же место: первая покупка в итерации успешна,
+ * остальные отклоняются ограничением уникальности, как при гонке за одно место в зале.
+ * Методы differentSeats покупают каждый раз новое место.
+ * Проданные билеты удаляются перед каждой итерацией.
+ *
+ * @author Ilya Kaltygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketRepositoryBenchmark {
+
+    /**
+     * Количество мест в условном ряду для методов differentSeats
+     */
+    private static final int PLACES = 1000;
+
+    private final AtomicInteger seq = new AtomicInteger();
+
+    private BasicDataSource pool;
+
+    private JdbcTicketRepository repository;
+
+    private int sessionId;
+
+    private int userId;
+
+    @Setup
+    public void setUp() {
+        pool = BenchmarkDatabase.create("tickets");
+        Session session = new Session(0, "title", "description", new byte[0]);
+        new JdbcSessionRepository(pool).add(session);
+        sessionId = session.getId();
+        userId = new JdbcUserRepository(pool).add(new User(0, "user", "password", "user@mail.ru", "+7"))
+                .orElseThrow().getId();
+        repository = new JdbcTicketRepository(pool);
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        BenchmarkDatabase.execute(pool, "DELETE FROM tickets");
+        seq.set(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkDatabase.close(pool);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Ticket> sameSeat01() {
+        return addSameSeat();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Ticket> sameSeat04() {
+        return addSameSeat();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Optional<Ticket> sameSeat16() {
+        return addSameSeat();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Optional<Ticket> sameSeat64() {
+        return addSameSeat();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Ticket> differentSeats01() {
+        return addDifferentSeat();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Ticket> differentSeats04() {
+        return addDifferentSeat();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Optional<Ticket> differentSeats16() {
+        return addDifferentSeat();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Optional<Ticket> differentSeats64() {
+        return addDifferentSeat();
+    }
+
+    /**
+     * Покупка первого места первого ряда
+     * @return Купленный билет или пустой Optional, если место уже продано
+     */
+    private Optional<Ticket> addSameSeat() {
+        return repository.add(new Ticket(0, sessionId, 1, 1, userId));
+    }
+
+    /**
+     * Покупка следующего свободного места
+     * @return Купленный билет
+     */
+    private Optional<Ticket> addDifferentSeat() {
+        int n = seq.getAndIncrement();
+        return repository.add(new Ticket(0, sessionId, n / PLACES + 1, n % PLACES + 1, userId));
+    }
+}
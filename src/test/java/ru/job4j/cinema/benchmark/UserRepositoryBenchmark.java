@@ -0,0 +1,79 @@
+package ru.job4j.cinema.benchmark;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.repository.JdbcUserRepository;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserRepositoryBenchmark - бенчмарк поиска пользователя при входе в приложение
+ *
+ * @author Ilya Kaltygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRepositoryBenchmark {
+
+    /**
+     * Количество зарегистрированных пользователей
+     */
+    @Param({"10000"})
+    private int users;
+
+    private BasicDataSource pool;
+
+    private JdbcUserRepository repository;
+
+    @Setup
+    public void setUp() {
+        pool = BenchmarkDatabase.create("users");
+        repository = new JdbcUserRepository(pool);
+        for (int i = 0; i < users; i++) {
+            repository.add(new User(0, "user" + i, "password" + i, "user" + i + "@mail.ru", "+7" + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkDatabase.close(pool);
+    }
+
+    /**
+     * Вход существующего пользователя
+     * @return Найденный пользователь
+     */
+    @Benchmark
+    public Optional<User> findExisting() {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return repository.findUserByEmailAndPassword("user" + i + "@mail.ru", "password" + i);
+    }
+
+    /**
+     * Вход с неверным паролем
+     * @return Пустой Optional
+     */
+    @Benchmark
+    public Optional<User> findWrongPassword() {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return repository.findUserByEmailAndPassword("user" + i + "@mail.ru", "wrong");
+    }
+}
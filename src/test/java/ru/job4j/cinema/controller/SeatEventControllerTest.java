@@ -0,0 +1,151 @@
+package ru.job4j.cinema.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.cinema.model.SeatState;
+import ru.job4j.cinema.service.TicketService;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для контроллера SeatEventController
+ *
+ * @author Ilya Kaltygin
+ */
+class SeatEventControllerTest {
+
+    /**
+     * Соединение клиента с неблокирующей записью, которое можно сделать недоступным для записи
+     */
+    private static final class Connection extends ServletOutputStream {
+
+        private final MockHttpServletRequest request = new MockHttpServletRequest();
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        private volatile boolean ready = true;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            try {
+                listener.onWritePossible();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            written.write(b);
+        }
+
+        private synchronized String text() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+
+        private boolean isOpen() {
+            return request.isAsyncStarted();
+        }
+    }
+
+    /**
+     * Подключение клиента к потоку событий мест
+     */
+    private static Connection subscribe(SeatEventController controller, int sessionId, int row) throws IOException {
+        Connection connection = new Connection();
+        connection.request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return connection;
+            }
+        };
+        controller.subscribe(sessionId, row, connection.request, response);
+        return connection;
+    }
+
+    /**
+     * Ожидание условия, которое выполняется потоками рассылки
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    /**
+     * Контроллер подписывается на изменения мест, учитывает подписчиков по сеансам
+     * и первым событием отправляет свободные места ряда
+     */
+    @Test
+    public void whenSubscribeThenSubscriberCounted() throws Exception {
+        TicketService ticketService = mock(TicketService.class);
+        when(ticketService.findFreePlaces(1, 2)).thenReturn(List.of(1, 3));
+        SeatEventController controller = new SeatEventController(ticketService, 60_000, 16, 2, 5_000);
+        verify(ticketService).addListener(controller);
+        Connection connection = subscribe(controller, 1, 2);
+        subscribe(controller, 1, 3);
+        assertThat(controller.subscribers(1)).isEqualTo(2);
+        assertThat(controller.subscribers(2)).isZero();
+        assertThat(connection.text()).isEqualTo("event:free\ndata:[1,3]\n\n");
+        controller.onSeatChange(1, 2, 4, SeatState.HELD);
+        await(() -> connection.text().endsWith("event:seat\ndata:{\"row\":2,\"place\":4,\"state\":\"HELD\"}\n\n"));
+        controller.destroy();
+        assertThat(controller.subscribers(1)).isZero();
+        assertThat(connection.isOpen()).isFalse();
+    }
+
+    /**
+     * Клиент, который не читает события, не задерживает остальных подписчиков и не занимает поток рассылки,
+     * а по истечении времени отправки отключается сторожевым потоком без новых событий
+     */
+    @Test
+    public void whenSubscriberStalledThenOthersReceiveAndStalledDisconnected() throws Exception {
+        TicketService ticketService = mock(TicketService.class);
+        SeatEventController controller = new SeatEventController(ticketService, 60_000, 16, 1, 100);
+        Connection stalled = subscribe(controller, 1, 1);
+        Connection reading = subscribe(controller, 1, 1);
+        stalled.ready = false;
+        for (int place = 1; place <= 3; place++) {
+            controller.onSeatChange(1, 1, place, SeatState.HELD);
+        }
+        await(() -> reading.text().contains("\"place\":3"));
+        assertThat(stalled.text()).doesNotContain("event:seat");
+        await(() -> controller.subscribers(1) == 1);
+        await(() -> !stalled.isOpen());
+        assertThat(reading.isOpen()).isTrue();
+        controller.destroy();
+    }
+
+    /**
+     * Подписчик, у которого накопилось больше событий, чем вмещает очередь, отключается сразу
+     */
+    @Test
+    public void whenQueueOverflowThenDisconnected() throws Exception {
+        TicketService ticketService = mock(TicketService.class);
+        SeatEventController controller = new SeatEventController(ticketService, 60_000, 4, 1, 60_000);
+        Connection stalled = subscribe(controller, 1, 1);
+        stalled.ready = false;
+        for (int place = 1; place <= 5; place++) {
+            controller.onSeatChange(1, 1, place, SeatState.HELD);
+        }
+        assertThat(controller.subscribers(1)).isZero();
+        assertThat(stalled.isOpen()).isFalse();
+        controller.destroy();
+    }
+}
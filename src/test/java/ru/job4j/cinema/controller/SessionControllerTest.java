@@ -1,14 +1,32 @@
 package ru.job4j.cinema.controller;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.ui.Model;
 import org.springframework.web.multipart.MultipartFile;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Page;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
 import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.repository.PosterSink;
+import ru.job4j.cinema.service.PosterCache;
 import ru.job4j.cinema.service.SessionService;
+import ru.job4j.cinema.service.TicketService;
 import ru.job4j.cinema.utility.HttpSessionUtility;
 import javax.servlet.http.HttpSession;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -20,24 +38,36 @@ import static org.mockito.Mockito.*;
 class SessionControllerTest {
 
     /**
-     * Метод возвращет представление со списком всех сеансов из базы данных
+     * Страница сеансов записывается в ответ из кеша SessionPageCache для пользователя из сессии
      */
     @Test
-    public void whenAllFilms() {
-        Collection<Session> sessionCollection = Arrays.asList(
-                new Session(1, "title 1", "desc 1", new byte[]{1, 2}),
-                new Session(2, "title 2", "desc 2", new byte[]{3, 4}),
-                new Session(3, "title 3", "desc 3", new byte[]{5, 6})
-        );
-        Model model = mock(Model.class);
-        HttpSession httpSession = mock(HttpSession.class);
-        SessionService sessionService = mock(SessionService.class);
-        when(sessionService.findAll()).thenReturn(sessionCollection);
-        SessionController sessionController = new SessionController(sessionService);
-        String page = sessionController.allFilms(model, httpSession);
-        verify(model).addAttribute("sessions", sessionCollection);
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
-        assertThat(page).isEqualTo("session/sessions");
+    public void whenAllFilms() throws Exception {
+        SessionPageCache sessionPageCache = mock(SessionPageCache.class);
+        SessionController sessionController = new SessionController(mock(SessionService.class), mock(TicketService.class),
+                new PosterCache(1, 1024), sessionPageCache);
+        User user = new User(1, "name", "password", "email", "phone");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.getSession().setAttribute("user", user);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.allFilms(1, 2, request, response);
+        verify(sessionPageCache).write(user, 1, 2, request, response);
+    }
+
+    /**
+     * Анонимный запрос страницы сеансов не создает HttpSession
+     */
+    @Test
+    public void whenAllFilmsAnonymousThenNoSession() throws Exception {
+        SessionPageCache sessionPageCache = mock(SessionPageCache.class);
+        SessionController sessionController = new SessionController(mock(SessionService.class), mock(TicketService.class),
+                new PosterCache(1, 1024), sessionPageCache);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.allFilms(0, 2, request, response);
+        ArgumentCaptor<User> captor = ArgumentCaptor.forClass(User.class);
+        verify(sessionPageCache).write(captor.capture(), eq(0), eq(2), eq(request), eq(response));
+        assertThat(captor.getValue().getName()).isEqualTo("Гость");
+        assertThat(request.getSession(false)).isNull();
     }
 
     /**
@@ -45,22 +75,36 @@ class SessionControllerTest {
      */
     @Test
     public void whenEditAllSessions() {
-        Collection<Session> sessionCollection = Arrays.asList(
-                new Session(1, "title 1", "desc 1", new byte[]{1, 2}),
-                new Session(2, "title 2", "desc 2", new byte[]{3, 4}),
-                new Session(3, "title 3", "desc 3", new byte[]{5, 6})
-        );
+        Page<Session> sessionPage = new Page<>(List.of(
+                new Session(2, "title 2", "desc 2", null),
+                new Session(3, "title 3", "desc 3", null)
+        ), 5, 0, 3);
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
         SessionService sessionService = mock(SessionService.class);
-        when(sessionService.findAll()).thenReturn(sessionCollection);
-        SessionController sessionController = new SessionController(sessionService);
-        String page = sessionController.editAllSessions(model, httpSession);
-        verify(model).addAttribute("sessions", sessionCollection);
+        when(sessionService.findPage(1, 2)).thenReturn(sessionPage);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        String page = sessionController.editAllSessions(model, httpSession, 1, 2);
+        verify(model).addAttribute("page", sessionPage);
+        verify(model).addAttribute("limit", 2);
         verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
         assertThat(page).isEqualTo("session/editAllSessions");
     }
 
+    /**
+     * Размер страницы ограничивается, а отрицательный ключ заменяется началом списка
+     */
+    @Test
+    public void whenPageSizeTooLargeThenLimited() {
+        Model model = mock(Model.class);
+        SessionService sessionService = mock(SessionService.class);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        sessionController.editAllSessions(model, mock(HttpSession.class), -5, 100_000);
+        sessionController.editAllSessions(model, mock(HttpSession.class), 0, 0);
+        verify(sessionService).findPage(0, 100);
+        verify(sessionService).findPage(0, 1);
+    }
+
     /**
      * Метод возвращает представление с формой добавления нового сеанса
      */
@@ -69,7 +113,7 @@ class SessionControllerTest {
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
         String page = sessionController.addSession(model, httpSession);
         verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
         assertThat(page).isEqualTo("session/addSession");
@@ -83,10 +127,14 @@ class SessionControllerTest {
     public void whenCreateSession() throws Exception {
         Session session = new Session(1, "title 1", "desc 1", new byte[]{1, 2});
         MultipartFile file = mock(MultipartFile.class);
+        InputStream photo = new ByteArrayInputStream(new byte[]{1, 2});
+        when(file.getSize()).thenReturn(2L);
+        when(file.getInputStream()).thenReturn(photo);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
         String page = sessionController.createSession(session, file);
-        verify(sessionService).add(session);
+        verify(sessionService).add(session, 2L, photo);
+        verify(file, never()).getBytes();
         assertThat(page).isEqualTo("redirect:/allSessions");
     }
 
@@ -100,7 +148,7 @@ class SessionControllerTest {
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
         when(sessionService.findById(id)).thenReturn(session);
         String page = sessionController.updateSession(model, id, httpSession);
         verify(model).addAttribute("ses", sessionService.findById(id));
@@ -115,7 +163,7 @@ class SessionControllerTest {
     public void whenUpdate() {
         Session session = new Session(1, "title 1", "desc 1", new byte[]{1, 2});
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
         String page = sessionController.updateSession(session);
         verify(sessionService).update(session);
         assertThat(page).isEqualTo("redirect:/allSessions");
@@ -131,15 +179,34 @@ class SessionControllerTest {
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        TicketService ticketService = mock(TicketService.class);
+        SessionController sessionController = new SessionController(sessionService, ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
         when(sessionService.findById(id)).thenReturn(session);
+        when(ticketService.findFreeRows(id)).thenReturn(List.of(1, 3));
         String page = sessionController.selectRow(model, id, httpSession);
         verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        verify(model).addAttribute("rows", List.of(1, 3));
         verify(model).addAttribute("ses", sessionService.findById(id));
-        verify(httpSession).setAttribute("ses", sessionService.findById(id));
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, BookingState.of(id));
         assertThat(page).isEqualTo("session/selectRow");
     }
 
+    /**
+     * Новый заказ снимает брони незавершенного заказа и заменяет его в сессии
+     */
+    @Test
+    public void whenSelectRowThenPreviousHoldsReleased() {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute("user")).thenReturn(new User(3, "name", "password", "email", "phone"));
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(BookingState.of(1).withRow(2).withPlaces(List.of(4, 5)));
+        TicketService ticketService = mock(TicketService.class);
+        SessionController sessionController = new SessionController(mock(SessionService.class), ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
+        sessionController.selectRow(mock(Model.class), 7, httpSession);
+        verify(ticketService).release(1, 2, List.of(4, 5), 3);
+        verify(httpSession).removeAttribute(BookingState.ATTRIBUTE);
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, BookingState.of(7));
+    }
+
     /**
      * Метод возвращает представление с информацией о сеансе и формой выбора места
      */
@@ -151,12 +218,18 @@ class SessionControllerTest {
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        TicketService ticketService = mock(TicketService.class);
+        SessionController sessionController = new SessionController(sessionService, ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
         when(sessionService.findById(id)).thenReturn(session);
+        when(ticketService.findFreePlaces(id, row)).thenReturn(List.of(2, 4, 5));
+        when(ticketService.findAllPlaces()).thenReturn(List.of(1, 2, 3, 4, 5));
         String page = sessionController.selectPlace(model, id, httpSession, row);
         verify(model).addAttribute("ses", sessionService.findById(id));
         verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
-        verify(httpSession).setAttribute("row", row);
+        verify(model).addAttribute("places", List.of(2, 4, 5));
+        verify(model).addAttribute("allPlaces", List.of(1, 2, 3, 4, 5));
+        verify(model).addAttribute("row", row);
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, BookingState.of(id).withRow(row));
         assertThat(page).isEqualTo("session/selectPlace");
     }
 
@@ -165,18 +238,279 @@ class SessionControllerTest {
      */
     @Test
     public void whenAboutSession() {
-        int place = 1;
+        List<Integer> place = List.of(1, 2);
+        Session session = new Session(1, "title 1", "desc 1", new byte[]{1, 2});
+        User user = new User(3, "name", "password", "email", "phone");
         Model model = mock(Model.class);
         HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(BookingState.of(1).withRow(2));
+        when(httpSession.getAttribute("user")).thenReturn(user);
         SessionService sessionService = mock(SessionService.class);
-        SessionController sessionController = new SessionController(sessionService);
+        when(sessionService.findById(1)).thenReturn(session);
+        TicketService ticketService = mock(TicketService.class);
+        when(ticketService.hold(1, 2, place, 3)).thenReturn(true);
+        SessionController sessionController = new SessionController(sessionService, ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
         String page = sessionController.aboutSession(model, httpSession, place);
-        verify(model).addAttribute("ses", httpSession.getAttribute("ses"));
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        verify(ticketService).hold(1, 2, place, 3);
+        verify(model).addAttribute("ses", session);
+        verify(model).addAttribute("user", user);
         verify(model).addAttribute("place", place);
-        verify(model).addAttribute("row", httpSession.getAttribute("row"));
-        verify(httpSession).setAttribute("place", place);
+        verify(model).addAttribute("row", 2);
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, BookingState.of(1).withRow(2).withPlaces(place));
         assertThat(page).isEqualTo("session/aboutSession");
     }
 
-}
\ No newline at end of file
+    /**
+     * Без выбранного ряда заказ не оформляется
+     */
+    @Test
+    public void whenAboutSessionWithoutRowThenRedirect() {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(BookingState.of(1));
+        TicketService ticketService = mock(TicketService.class);
+        SessionController sessionController = new SessionController(mock(SessionService.class), ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
+        assertThat(sessionController.aboutSession(mock(Model.class), httpSession, List.of(1)))
+                .isEqualTo("redirect:/allSessions");
+        verifyNoInteractions(ticketService);
+    }
+
+    /**
+     * Метод переадресует на страницу ошибки, если выбранные места уже забронированы другим пользователем
+     */
+    @Test
+    public void whenAboutSessionAndPlacesHeldThenFail() {
+        List<Integer> place = List.of(1, 2);
+        Model model = mock(Model.class);
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(BookingState.of(1).withRow(2));
+        when(httpSession.getAttribute("user")).thenReturn(new User(3, "name", "password", "email", "phone"));
+        TicketService ticketService = mock(TicketService.class);
+        when(ticketService.hold(1, 2, place, 3)).thenReturn(false);
+        SessionController sessionController = new SessionController(mock(SessionService.class), ticketService, new PosterCache(1, 1024), mock(SessionPageCache.class));
+        String page = sessionController.aboutSession(model, httpSession, place);
+        verify(httpSession, never()).setAttribute(eq(BookingState.ATTRIBUTE), any());
+        assertThat(page).isEqualTo("redirect:/ticketFail");
+    }
+
+    /**
+     * Метод передает постер сеанса в ответ потоком вместе с ETag, типом и Cache-Control
+     */
+    @Test
+    public void whenDownloadThenPosterStreamed() throws Exception {
+        byte[] photo = {1, 2, 3};
+        SessionService sessionService = posterService(photo);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader("ETag")).isEqualTo("\"abc\"");
+        assertThat(response.getHeader("Cache-Control")).contains("max-age=2592000");
+        assertThat(response.getContentLengthLong()).isEqualTo(photo.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(photo);
+    }
+
+    /**
+     * При совпадении If-None-Match возвращается 304 без чтения постера
+     */
+    @Test
+    public void whenDownloadWithMatchingEtagThenNotModified() throws Exception {
+        SessionService sessionService = posterService(new byte[]{1, 2, 3});
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/posterSession/1");
+        request.addHeader("If-None-Match", "\"abc\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, null, request, response);
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(sessionService, never()).streamPoster(any(), any());
+    }
+
+    /**
+     * Если сеанса нет, то возвращается статус 404
+     */
+    @Test
+    public void whenDownloadMissingPosterThenNotFound() throws Exception {
+        SessionService sessionService = mock(SessionService.class);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getStatus()).isEqualTo(404);
+        verify(sessionService, never()).streamPoster(any(), any());
+    }
+
+    /**
+     * Метод передает запрошенную уменьшенную копию постера
+     */
+    @Test
+    public void whenDownloadVariantThenVariantStreamed() throws Exception {
+        byte[] card = {7, 8};
+        SessionService sessionService = posterService(new byte[]{1, 2, 3});
+        when(sessionService.findPoster(1, PosterVariant.CARD))
+                .thenReturn(Optional.of(new Poster(1, PosterVariant.CARD, null, "card", "image/jpeg")));
+        when(sessionService.streamPoster(eq(new Poster(1, PosterVariant.CARD, null, null, null)), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<PosterSink>getArgument(1).accept(card.length, new ByteArrayInputStream(card));
+                    return true;
+                });
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, "card", new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getContentType()).isEqualTo("image/jpeg");
+        assertThat(response.getHeader("ETag")).isEqualTo("\"card\"");
+        assertThat(response.getContentAsByteArray()).isEqualTo(card);
+    }
+
+    /**
+     * Пока копия постера не создана, передается исходный постер, который нельзя хранить без проверки
+     */
+    @Test
+    public void whenVariantNotReadyThenOriginalNotCachedForLong() throws Exception {
+        byte[] photo = {1, 2, 3};
+        SessionService sessionService = posterService(photo);
+        when(sessionService.findPoster(1, PosterVariant.CARD)).thenReturn(Optional.empty());
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, "card", new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("no-cache");
+        assertThat(response.getContentAsByteArray()).isEqualTo(photo);
+    }
+
+    /**
+     * Повторный запрос постера обслуживается из кеша без обращения к базе данных
+     */
+    @Test
+    public void whenDownloadTwiceThenSecondServedFromCache() throws Exception {
+        byte[] photo = {1, 2, 3};
+        SessionService sessionService = posterService(photo);
+        PosterCache posterCache = new PosterCache(1, 1024);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), posterCache, mock(SessionPageCache.class));
+        sessionController.download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"),
+                new MockHttpServletResponse());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader("ETag")).isEqualTo("\"abc\"");
+        assertThat(response.getContentAsByteArray()).isEqualTo(photo);
+        verify(sessionService, times(1)).findById(1);
+        verify(sessionService, times(1)).streamPoster(any(), any());
+        assertThat(posterCache.stats()).containsEntry("hits", 1L).containsEntry("residentBytes", 3L);
+    }
+
+    /**
+     * Исходный постер из кеша не подменяет копию: копия, созданная позже, передается из базы данных
+     */
+    @Test
+    public void whenOriginalCachedThenVariantStillLoaded() throws Exception {
+        byte[] card = {7, 8};
+        SessionService sessionService = posterService(new byte[]{1, 2, 3});
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        sessionController.download(1, "card", new MockHttpServletRequest("GET", "/posterSession/1"),
+                new MockHttpServletResponse());
+        when(sessionService.findPoster(1, PosterVariant.CARD))
+                .thenReturn(Optional.of(new Poster(1, PosterVariant.CARD, null, "card", "image/jpeg")));
+        when(sessionService.streamPoster(eq(new Poster(1, PosterVariant.CARD, null, null, null)), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<PosterSink>getArgument(1).accept(card.length, new ByteArrayInputStream(card));
+                    return true;
+                });
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, "card", new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getHeader("ETag")).isEqualTo("\"card\"");
+        assertThat(response.getContentAsByteArray()).isEqualTo(card);
+    }
+
+    /**
+     * Постер из файлового хранилища передается из файла и не занимает кеш
+     */
+    @Test
+    public void whenPosterStoredInFileThenFileSent(@TempDir Path dir) throws Exception {
+        byte[] photo = {9, 8, 7, 6};
+        Path file = Files.write(dir.resolve("abc"), photo);
+        SessionService sessionService = posterService(new byte[]{1});
+        when(sessionService.posterFile(any())).thenReturn(Optional.of(file));
+        PosterCache posterCache = new PosterCache(1, 1024);
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), posterCache, mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getContentLengthLong()).isEqualTo(photo.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(photo);
+        verify(sessionService, never()).streamPoster(any(), any());
+        assertThat(posterCache.stats()).containsEntry("entries", 0);
+    }
+
+    /**
+     * Если описание копии уже записано, а изображение еще нет, то передается исходный постер
+     */
+    @Test
+    public void whenVariantImageMissingThenOriginalSent() throws Exception {
+        byte[] photo = {1, 2, 3};
+        SessionService sessionService = posterService(photo);
+        when(sessionService.findPoster(1, PosterVariant.CARD))
+                .thenReturn(Optional.of(new Poster(1, PosterVariant.CARD, null, "card", "image/jpeg")));
+        SessionController sessionController = new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionController.download(1, "card", new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("no-cache");
+        assertThat(response.getContentAsByteArray()).isEqualTo(photo);
+    }
+
+    /**
+     * Тип загруженного файла сохраняется как тип постера
+     */
+    @Test
+    public void whenCreateSessionThenPosterTypeSaved() throws Exception {
+        Session session = new Session(1, "title 1", "desc 1", null);
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2}));
+        when(file.getContentType()).thenReturn("image/jpeg");
+        SessionService sessionService = mock(SessionService.class);
+        new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class)).createSession(session, file);
+        assertThat(session.getPhotoType()).isEqualTo("image/jpeg");
+    }
+
+    /**
+     * SVG и другие не растровые типы сохраняются и отдаются как двоичные данные, даже если они уже
+     * сохранены с типом изображения. Браузеру запрещено угадывать тип постера по содержимому
+     */
+    @Test
+    public void whenPosterNotRasterThenServedAsBinary() throws Exception {
+        Session session = new Session(1, "title 1", "desc 1", null);
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2}));
+        when(file.getContentType()).thenReturn("image/svg+xml");
+        SessionController sessionController = new SessionController(mock(SessionService.class),
+                mock(TicketService.class), new PosterCache(1, 1024), mock(SessionPageCache.class));
+        sessionController.createSession(session, file);
+        assertThat(session.getPhotoType()).isEqualTo("application/octet-stream");
+        SessionService sessionService = posterService(new byte[]{1, 2, 3});
+        sessionService.findById(1).setPhotoType("image/svg+xml");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new SessionController(sessionService, mock(TicketService.class), new PosterCache(1, 1024),
+                mock(SessionPageCache.class)).download(1, null, new MockHttpServletRequest("GET", "/posterSession/1"), response);
+        assertThat(response.getContentType()).isEqualTo("application/octet-stream");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+    }
+
+    /**
+     * Сервис с одним сеансом, постер которого имеет хеш abc и тип image/png
+     * @param photo Постер
+     * @return Объект типа SessionService
+     */
+    private static SessionService posterService(byte[] photo) {
+        Session session = new Session(1, "title 1", "desc 1", null);
+        session.setPhotoHash("abc");
+        session.setPhotoType("image/png");
+        SessionService sessionService = mock(SessionService.class);
+        when(sessionService.findById(1)).thenReturn(session);
+        when(sessionService.streamPoster(eq(new Poster(1, null, null, null, null)), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<PosterSink>getArgument(1).accept(photo.length, new ByteArrayInputStream(photo));
+                    return true;
+                });
+        return sessionService;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.job4j.cinema.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.repository.SessionRepository;
+import ru.job4j.cinema.service.SessionCatalog;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты на класс SessionPageCache
+ *
+ * @author Ilya Kaltygin
+ */
+class SessionPageCacheTest {
+
+    private final SessionRepository repository = mock(SessionRepository.class);
+
+    private final SessionCatalog catalog = new SessionCatalog(repository, 0);
+
+    private final SessionPageCache cache = new SessionPageCache(templateEngine(), catalog);
+
+    private static SpringTemplateEngine templateEngine() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        return engine;
+    }
+
+    private static User user(String name) {
+        User user = new User();
+        user.setName(name);
+        return user;
+    }
+
+    private String write(User user, int after, int limit) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cache.write(user, after, limit, request, response);
+        assertThat(response.getContentType()).isEqualTo("text/html;charset=UTF-8");
+        assertThat(response.getContentLengthLong()).isEqualTo(response.getContentAsByteArray().length);
+        return response.getContentAsString();
+    }
+
+    /**
+     * Страница содержит каркас, панель с именем пользователя и сетку карточек.
+     * Панель администратора показывается по признаку пользователя, а не по имени
+     */
+    @Test
+    public void whenWriteThenWholePage() throws Exception {
+        when(repository.findPage(0, 500)).thenReturn(List.of(
+                new Session(1, "Film 1", "Desc 1", null), new Session(2, "Film 2", "Desc 2", null)));
+        String page = write(user("<b>Ivan</b>"), 0, 1);
+        assertThat(page).startsWith("<!doctype html>").endsWith("</html>")
+                .contains("<span>&lt;b&gt;Ivan&lt;/b&gt;</span>", "| Выйти", "/selectRow/1", "Film 1", "/allSessions?after=1&amp;limit=1")
+                .doesNotContain("<b>Ivan</b>", "Film 2", "Добавить сеанс", "cinema-user-name");
+        assertThat(write(user("admin"), 0, 1)).contains("admin").doesNotContain("Добавить сеанс");
+        User admin = user("Petr");
+        admin.setAdmin(true);
+        assertThat(write(admin, 0, 1)).contains("Добавить сеанс", "<span>Petr</span>", "| Выйти");
+        assertThat(write(user("Гость"), 1, 1)).contains("Гость", "| Войти", "Film 2").doesNotContain("Film 1");
+    }
+
+    /**
+     * Повторная страница берется из кеша, а после изменения каталога отрисовывается заново
+     */
+    @Test
+    public void whenCatalogChangedThenPageRendered() throws Exception {
+        when(repository.findPage(0, 500)).thenReturn(List.of(new Session(1, "Film 1", "Desc 1", null)));
+        write(user("Ivan"), 0, 12);
+        write(user("Petr"), 0, 12);
+        assertThat(cache.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+
+        catalog.updated(new Session(1, "Renamed", "Desc 1", null));
+        assertThat(write(user("Ivan"), 0, 12)).contains("Renamed").doesNotContain("Film 1");
+        assertThat(cache.stats()).containsEntry("misses", 2L).containsEntry("catalogVersion", 2L);
+        verify(repository, times(1)).findPage(0, 500);
+    }
+}
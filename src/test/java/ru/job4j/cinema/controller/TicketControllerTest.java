@@ -1,10 +1,36 @@
 package ru.job4j.cinema.controller;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.View;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.Ticket;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.service.BookingQueue;
+import ru.job4j.cinema.service.SessionService;
 import ru.job4j.cinema.service.TicketService;
-import ru.job4j.cinema.utility.HttpSessionUtility;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -13,53 +39,256 @@ import static org.mockito.Mockito.*;
  *
  * @author Ilya Kaltygin
  */
+@ExtendWith(MockitoExtension.class)
 class TicketControllerTest {
 
+    private final TicketService ticketService = mock(TicketService.class);
+
+    private final SessionService sessionService = mock(SessionService.class);
+
+    private final BookingQueue bookingQueue = mock(BookingQueue.class);
+
+    private final TicketController ticketController = new TicketController(ticketService, sessionService, bookingQueue, 2, 10_000);
+
+    private final User user = new User(3, "name", "password", "email", "phone");
+
+    private final BookingState booking = BookingState.of(1).withRow(2).withPlaces(List.of(4, 5));
+
+    @Captor
+    private ArgumentCaptor<List<Ticket>> tickets;
+
+    /**
+     * Метод сохраняет билеты на все выбранные места одним вызовом сервиса в очереди покупок,
+     * удаляет заказ из сессии и передает его странице успешной покупки. Заказ записывается в сессию
+     * при отрисовке результата в потоке запроса, а не в потоке очереди
+     */
+    @Test
+    public void whenCreateTicketThenSuccess() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        when(ticketService.addAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        runInPlace();
+        View view = (View) ticketController.createTicket(httpSession, new MockHttpServletResponse()).getResult();
+        verify(ticketService).addAll(tickets.capture());
+        assertThat(tickets.getValue())
+                .extracting(Ticket::getSessionId, Ticket::getRow, Ticket::getPlace, Ticket::getUserId)
+                .containsExactly(tuple(1, 2, 4, 3), tuple(1, 2, 5, 3));
+        verify(httpSession).removeAttribute(BookingState.ATTRIBUTE);
+        verify(httpSession, never()).setAttribute(BookingState.PURCHASED, booking);
+        assertThat(redirect(view)).isEqualTo("/ticketSuccess");
+        verify(httpSession).setAttribute(BookingState.PURCHASED, booking);
+    }
+
+    /**
+     * Метод переадресует на страницу ошибки, если хотя бы одно место уже занято, и снимает брони заказа
+     * при отрисовке результата в потоке запроса
+     */
+    @Test
+    public void whenCreateTicketThenFail() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        when(ticketService.addAll(anyList())).thenReturn(List.of());
+        runInPlace();
+        View view = (View) ticketController.createTicket(httpSession, new MockHttpServletResponse()).getResult();
+        verify(httpSession).removeAttribute(BookingState.ATTRIBUTE);
+        verify(ticketService, never()).release(1, 2, List.of(4, 5), 3);
+        assertThat(redirect(view)).isEqualTo("/ticketFail");
+        verify(ticketService).release(1, 2, List.of(4, 5), 3);
+    }
+
+    /**
+     * Без забронированных мест билеты не сохраняются
+     */
+    @Test
+    public void whenCreateTicketWithoutBookingThenRedirect() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(null);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        View view = (View) ticketController.createTicket(httpSession, new MockHttpServletResponse()).getResult();
+        assertThat(redirect(view)).isEqualTo("/allSessions");
+        verifyNoInteractions(ticketService, bookingQueue);
+    }
+
+    /**
+     * Если покупка не дождалась потока очереди за отведенное время, то она отменяется, заказ возвращается
+     * в сессию, и клиент получает 503 с Retry-After
+     */
+    @Test
+    public void whenTimeoutWhileQueuedThenCancelledAndOrderKept() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        CompletableFuture<List<Ticket>> purchase = new CompletableFuture<>();
+        doReturn(purchase).when(bookingQueue).submit(any());
+        Object result = timeout(ticketController.createTicket(httpSession, new MockHttpServletResponse()));
+        assertThat(purchase).isCancelled();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ((View) result).render(Map.of(), new MockHttpServletRequest(), response);
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("2");
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, booking);
+        verifyNoInteractions(ticketService);
+    }
+
+    /**
+     * Начатая покупка по истечении времени не отменяется, а запрос не завершается ошибкой таймаута:
+     * поток запроса дожидается покупки и переадресует на страницу успешной покупки
+     */
+    @Test
+    public void whenTimeoutWhileRunningThenAwaitPurchase() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        CompletableFuture<List<Ticket>> purchase = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+        };
+        doReturn(purchase).when(bookingQueue).submit(any());
+        Object result = timeout(ticketController.createTicket(httpSession, new MockHttpServletResponse()));
+        assertThat(result).isInstanceOf(View.class);
+        purchase.complete(List.of(new Ticket(1, 1, 2, 4, 3)));
+        assertThat(redirect((View) result)).isEqualTo("/ticketSuccess");
+        verify(httpSession).setAttribute(BookingState.PURCHASED, booking);
+        verify(httpSession, never()).setAttribute(BookingState.ATTRIBUTE, booking);
+    }
+
+    /**
+     * Если покупка завершилась ошибкой, то брони снимаются, заказ возвращается в сессию,
+     * а ошибка передается дальше при отрисовке результата
+     */
+    @Test
+    public void whenPurchaseFailsThenReleaseAndOrderKept() throws Exception {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        IllegalStateException error = new IllegalStateException("Database is unavailable");
+        doReturn(CompletableFuture.failedFuture(error)).when(bookingQueue).submit(any());
+        View view = (View) ticketController.createTicket(httpSession, new MockHttpServletResponse()).getResult();
+        verify(ticketService, never()).release(1, 2, List.of(4, 5), 3);
+        assertThatThrownBy(() -> redirect(view)).isSameAs(error);
+        verify(ticketService).release(1, 2, List.of(4, 5), 3);
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, booking);
+    }
+
+    /**
+     * Если очередь покупок заполнена, то клиент сразу получает 503 с Retry-After, а заказ остается в сессии
+     */
+    @Test
+    public void whenQueueFullThenServiceUnavailable() throws IOException {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        when(bookingQueue.submit(any())).thenThrow(new RejectedExecutionException());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(ticketController.createTicket(httpSession, response)).isNull();
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("2");
+        verify(httpSession).setAttribute(BookingState.ATTRIBUTE, booking);
+        verifyNoInteractions(ticketService);
+    }
+
     /**
      * Метод возвращает представление с информацией об успешной покупкой(добавлении в базу данных) билета
      */
     @Test
     public void whenSuccess() {
         HttpSession httpSession = mock(HttpSession.class);
-        Model model = mock(Model.class);
-        TicketService ticketService = mock(TicketService.class);
-        TicketController ticketController = new TicketController(ticketService);
+        Session session = new Session(1, "title 1", "desc 1", null);
+        when(sessionService.findById(1)).thenReturn(session);
+        when(httpSession.getAttribute(BookingState.PURCHASED)).thenReturn(booking);
+        Model model = new ExtendedModelMap();
         String page = ticketController.success(model, httpSession);
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
-        verify(model).addAttribute("row", httpSession.getAttribute("row"));
-        verify(model).addAttribute("place", httpSession.getAttribute("place"));
-        verify(model).addAttribute("ses", httpSession.getAttribute("ses"));
+        verify(httpSession).removeAttribute(BookingState.PURCHASED);
+        assertThat(model.asMap()).containsEntry("row", 2).containsEntry("place", List.of(4, 5))
+                .containsEntry("ses", session).containsKey("user");
         assertThat(page).isEqualTo("ticket/ticketSuccess");
     }
 
+    /**
+     * Повторное открытие страницы успешной покупки переадресует на список сеансов
+     */
+    @Test
+    public void whenSuccessWithoutBookingThenRedirect() {
+        assertThat(ticketController.success(new ExtendedModelMap(), mock(HttpSession.class)))
+                .isEqualTo("redirect:/allSessions");
+    }
+
     /**
      * Метод возвращает представление с информацией о том, что билет куплен куплен(не добавлен в базу данных)
      */
     @Test
     public void whenFail() {
-        HttpSession httpSession = mock(HttpSession.class);
-        Model model = mock(Model.class);
-        TicketService ticketService = mock(TicketService.class);
-        TicketController ticketController = new TicketController(ticketService);
-        String page = ticketController.fail(model, httpSession);
-        verify(model).addAttribute("message", "Билет с данными посадочными местами уже занят");
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        Model model = new ExtendedModelMap();
+        String page = ticketController.fail(model, request);
+        assertThat(model.getAttribute("message")).isEqualTo("Билет с данными посадочными местами уже занят");
+        assertThat(model.getAttribute("user")).extracting("name").isEqualTo("Гость");
+        assertThat(request.getSession(false)).isNull();
         assertThat(page).isEqualTo("error/ticketFail");
     }
 
     /**
-     * Метод удаляет из сессии данные о ряде, месте и id сеанса и
+     * Метод удаляет заказ из сессии
      */
     @Test
     public void whenCancelAnOrder() {
         HttpSession httpSession = mock(HttpSession.class);
-        TicketService ticketService = mock(TicketService.class);
-        TicketController ticketController = new TicketController(ticketService);
         String page = ticketController.cancelAnOrder(httpSession);
-        verify(httpSession).removeAttribute("sessionId");
-        verify(httpSession).removeAttribute("row");
-        verify(httpSession).removeAttribute("place");
+        verify(httpSession).removeAttribute(BookingState.ATTRIBUTE);
+        verifyNoInteractions(ticketService);
         assertThat(page).isEqualTo("redirect:/allSessions");
     }
 
-}
\ No newline at end of file
+    /**
+     * Метод снимает брони с выбранных мест при отмене заказа
+     */
+    @Test
+    public void whenCancelAnOrderThenReleaseHolds() {
+        HttpSession httpSession = mock(HttpSession.class);
+        when(httpSession.getAttribute(BookingState.ATTRIBUTE)).thenReturn(booking);
+        when(httpSession.getAttribute("user")).thenReturn(user);
+        ticketController.cancelAnOrder(httpSession);
+        verify(ticketService).release(1, 2, List.of(4, 5), 3);
+        verify(httpSession).removeAttribute(BookingState.ATTRIBUTE);
+    }
+
+    /**
+     * Адрес переадресации, в которую отрисовывается результат покупки
+     */
+    private static String redirect(View view) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        view.render(Map.of(), new MockHttpServletRequest(), response);
+        return response.getRedirectedUrl();
+    }
+
+    /**
+     * Асинхронная обработка результата, для которой контейнер сообщил об истечении времени
+     * @return Результат, переданный после таймаута в поток запроса
+     */
+    private static Object timeout(DeferredResult<View> deferred) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        WebAsyncManager manager = WebAsyncUtils.getAsyncManager(request);
+        manager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, new MockHttpServletResponse()));
+        manager.startDeferredResultProcessing(deferred);
+        MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+        return manager.getConcurrentResult();
+    }
+
+    /**
+     * Очередь покупок выполняет покупку в вызывающем потоке
+     */
+    private void runInPlace() {
+        when(bookingQueue.submit(any())).thenAnswer(invocation -> {
+            Supplier<?> task = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(task.get());
+        });
+    }
+}
@@ -1,10 +1,11 @@
 package ru.job4j.cinema.controller;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
 import ru.job4j.cinema.model.User;
 import ru.job4j.cinema.service.UserService;
-import ru.job4j.cinema.utility.HttpSessionUtility;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.util.Optional;
@@ -19,16 +20,17 @@ import static org.mockito.Mockito.*;
 class UserControllerTest {
 
     /**
-     * Метод возвращает представление с формой добавления нового пользователя
+     * Метод возвращает представление с формой добавления нового пользователя и не создает сессию для гостя
      */
     @Test
     public void whenRegistration() {
-        Model model = mock(Model.class);
-        HttpSession httpSession = mock(HttpSession.class);
+        Model model = new ExtendedModelMap();
+        MockHttpServletRequest request = new MockHttpServletRequest();
         UserService userService = mock(UserService.class);
         UserController userController = new UserController(userService);
-        String page = userController.registration(model, httpSession);
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        String page = userController.registration(model, request);
+        assertThat(model.getAttribute("user")).extracting("name").isEqualTo("Гость");
+        assertThat(request.getSession(false)).isNull();
         assertThat(page).isEqualTo("registration/addUser");
     }
 
@@ -66,15 +68,18 @@ class UserControllerTest {
 
     /**
      * Метод возвращает представление с информацией об успешной регистрации пользователя
+     * и берет пользователя из существующей сессии
      */
     @Test
     public void whenSuccess() {
-        Model model = mock(Model.class);
-        HttpSession httpSession = mock(HttpSession.class);
+        Model model = new ExtendedModelMap();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        User user = new User(1, "Name", null, "Email", "Phone");
+        request.getSession().setAttribute("user", user);
         UserService userService = mock(UserService.class);
         UserController userController = new UserController(userService);
-        String page = userController.success(model, httpSession);
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        String page = userController.success(model, request);
+        assertThat(model.getAttribute("user")).isSameAs(user);
         assertThat(page).isEqualTo("registration/success");
     }
 
@@ -83,13 +88,14 @@ class UserControllerTest {
      */
     @Test
     public void whenFail() {
-        Model model = mock(Model.class);
-        HttpSession httpSession = mock(HttpSession.class);
+        Model model = new ExtendedModelMap();
+        MockHttpServletRequest request = new MockHttpServletRequest();
         UserService userService = mock(UserService.class);
         UserController userController = new UserController(userService);
-        String page = userController.fail(model, httpSession);
-        verify(model).addAttribute("message", "Пользователь с такой почтой или номером телефона уже существует");
-        verify(model).addAttribute("user", HttpSessionUtility.checkSession(httpSession));
+        String page = userController.fail(model, request);
+        assertThat(model.getAttribute("message")).isEqualTo("Пользователь с такой почтой или номером телефона уже существует");
+        assertThat(model.getAttribute("user")).extracting("name").isEqualTo("Гость");
+        assertThat(request.getSession(false)).isNull();
         assertThat(page).isEqualTo("error/fail");
     }
 
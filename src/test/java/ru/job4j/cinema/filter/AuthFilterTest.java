@@ -0,0 +1,183 @@
+package ru.job4j.cinema.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.utility.SessionTokens;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на фильтр AuthFilter
+ *
+ * @author Ilya Kaltygin
+ */
+class AuthFilterTest {
+
+    private final SessionTokens tokens = new SessionTokens("token", "secret", 60);
+
+    private final AuthFilter filter = new AuthFilter(tokens);
+
+    private final User user = new User(3, "name", "password", "email", "phone");
+
+    /**
+     * Публичный адрес пропускается без создания HttpSession, а адрес, только содержащий публичный, - нет
+     */
+    @Test
+    public void whenPublicPathThenNoSessionCreated() throws ServletException, IOException {
+        AuthFilter sessionFilter = new AuthFilter(new SessionTokens("session", "", 60));
+        MockHttpServletRequest request = request("GET", "/allSessions");
+        MockFilterChain chain = new MockFilterChain();
+        sessionFilter.doFilter(request, new MockHttpServletResponse(), chain);
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(request.getSession(false)).isNull();
+
+        MockHttpServletRequest lookalike = request("GET", "/allSessionsX/login");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionFilter.doFilter(lookalike, response, new MockFilterChain());
+        assertThat(response.getRedirectedUrl()).isEqualTo("/loginPage");
+        assertThat(lookalike.getSession(false)).isNull();
+    }
+
+    /**
+     * Адрес администратора недоступен другим пользователям, в том числе пользователю с именем admin
+     */
+    @Test
+    public void whenAdminPathThenForbiddenForUser() throws ServletException, IOException {
+        AuthFilter sessionFilter = new AuthFilter(new SessionTokens("session", "", 60));
+        MockHttpServletRequest request = request("GET", "/formUpdateSession/1");
+        request.getSession().setAttribute("user", user);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        sessionFilter.doFilter(request, response, new MockFilterChain());
+        assertThat(response.getStatus()).isEqualTo(403);
+
+        MockHttpServletRequest namesake = request("GET", "/metrics/pool");
+        namesake.getSession().setAttribute("user", new User(2, "admin", null, null, null));
+        MockHttpServletResponse forbidden = new MockHttpServletResponse();
+        sessionFilter.doFilter(namesake, forbidden, new MockFilterChain());
+        assertThat(forbidden.getStatus()).isEqualTo(403);
+
+        MockHttpServletRequest admin = request("GET", "/metrics/pool");
+        User administrator = new User(1, "Ivan", null, null, null);
+        administrator.setAdmin(true);
+        admin.getSession().setAttribute("user", administrator);
+        MockFilterChain chain = new MockFilterChain();
+        sessionFilter.doFilter(admin, new MockHttpServletResponse(), chain);
+        assertThat(chain.getRequest()).isSameAs(admin);
+    }
+
+    /**
+     * Без токена защищенный адрес переадресует на страницу авторизации
+     */
+    @Test
+    public void whenNoTokenThenRedirectToLogin() throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("GET", "/selectRow"), response, chain);
+        assertThat(response.getRedirectedUrl()).isEqualTo("/loginPage");
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    /**
+     * Вход выдает cookie с токеном, по которой следующий запрос получает пользователя без хранилища сессий
+     */
+    @Test
+    public void whenLoginThenTokenCookieRestoresUser() throws ServletException, IOException {
+        MockHttpServletResponse login = new MockHttpServletResponse();
+        filter(request("POST", "/login"), login, request -> request.getSession().setAttribute("user", user));
+        Cookie token = login.getCookie(TokenSession.TOKEN_COOKIE);
+        assertThat(token).isNotNull();
+        assertThat(token.isHttpOnly()).isTrue();
+        assertThat(token.getMaxAge()).isEqualTo(3600);
+
+        MockHttpServletRequest next = request("GET", "/selectRow");
+        next.setCookies(token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        User[] restored = new User[1];
+        filter(next, response, request -> restored[0] = (User) request.getSession(false).getAttribute("user"));
+        assertThat(response.getRedirectedUrl()).isNull();
+        assertThat(restored[0].getId()).isEqualTo(3);
+        assertThat(restored[0].getName()).isEqualTo("name");
+        assertThat(restored[0].getPassword()).isNull();
+        assertThat(next.getSession(false)).isNull();
+    }
+
+    /**
+     * Заказ хранится в подписанной cookie и принимается только для пользователя, которому он выдан
+     */
+    @Test
+    public void whenBookingCookieThenRestoredForSameUser() throws ServletException, IOException {
+        BookingState booking = BookingState.of(1).withRow(2).withPlaces(List.of(4, 64));
+        Cookie token = new Cookie(TokenSession.TOKEN_COOKIE, tokens.issue(user));
+        MockHttpServletRequest select = request("GET", "/aboutSession");
+        select.setCookies(token);
+        MockHttpServletResponse selected = new MockHttpServletResponse();
+        filter(select, selected, request -> request.getSession().setAttribute(BookingState.ATTRIBUTE, booking));
+        Cookie bookingCookie = selected.getCookie(TokenSession.COOKIE_PREFIX + BookingState.ATTRIBUTE);
+        assertThat(bookingCookie).isNotNull();
+
+        MockHttpServletRequest buy = request("GET", "/createTicket");
+        buy.setCookies(token, bookingCookie);
+        BookingState[] restored = new BookingState[1];
+        filter(buy, new MockHttpServletResponse(),
+                request -> restored[0] = (BookingState) request.getSession().getAttribute(BookingState.ATTRIBUTE));
+        assertThat(restored[0]).isEqualTo(booking);
+
+        MockHttpServletRequest other = request("GET", "/createTicket");
+        other.setCookies(new Cookie(TokenSession.TOKEN_COOKIE,
+                tokens.issue(new User(4, "other", null, null, null))), bookingCookie);
+        filter(other, new MockHttpServletResponse(),
+                request -> restored[0] = (BookingState) request.getSession().getAttribute(BookingState.ATTRIBUTE));
+        assertThat(restored[0]).isNull();
+    }
+
+    /**
+     * Выход удаляет cookie пользователя и заказа, а поддельный токен не принимается
+     */
+    @Test
+    public void whenInvalidateThenCookiesExpired() throws ServletException, IOException {
+        MockHttpServletRequest logout = request("GET", "/logout");
+        logout.setCookies(new Cookie(TokenSession.TOKEN_COOKIE, tokens.issue(user)),
+                new Cookie(TokenSession.COOKIE_PREFIX + BookingState.ATTRIBUTE,
+                        tokens.sign(TokenSession.payload(BookingState.of(1), 3))));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter(logout, response, request -> request.getSession().invalidate());
+        assertThat(response.getCookie(TokenSession.TOKEN_COOKIE).getMaxAge()).isZero();
+        assertThat(response.getCookie(TokenSession.COOKIE_PREFIX + BookingState.ATTRIBUTE).getMaxAge()).isZero();
+
+        MockHttpServletRequest forged = request("GET", "/selectRow");
+        forged.setCookies(new Cookie(TokenSession.TOKEN_COOKIE,
+                new SessionTokens("token", "other", 60).issue(user)));
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(forged, rejected, new MockFilterChain());
+        assertThat(rejected.getRedirectedUrl()).isEqualTo("/loginPage");
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        return request;
+    }
+
+    private void filter(MockHttpServletRequest request, MockHttpServletResponse response, Handler handler)
+            throws ServletException, IOException {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        HttpServletRequest wrapped = (HttpServletRequest) chain.getRequest();
+        if (wrapped != null) {
+            assertThat(wrapped).isInstanceOf(TokenRequest.class);
+            handler.handle(wrapped);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpServletRequest request);
+    }
+}
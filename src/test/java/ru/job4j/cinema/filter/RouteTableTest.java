@@ -0,0 +1,58 @@
+package ru.job4j.cinema.filter;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.filter.RouteTable.Access;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс RouteTable
+ *
+ * @author Ilya Kaltygin
+ */
+class RouteTableTest {
+
+    private final RouteTable routes = new RouteTable(Access.AUTHENTICATED)
+            .exact("/login", Access.PUBLIC)
+            .exact("/loginPage", Access.PUBLIC)
+            .prefix("/posterSession/", Access.PUBLIC)
+            .prefix("/metrics/", Access.ADMIN)
+            .exact("/metrics/public", Access.PUBLIC);
+
+    /**
+     * Точное правило действует на путь целиком и на путь с завершающим "/"
+     */
+    @Test
+    public void whenExactThenWholePathOnly() {
+        assertThat(routes.resolve("/login")).isEqualTo(Access.PUBLIC);
+        assertThat(routes.resolve("/login/")).isEqualTo(Access.PUBLIC);
+        assertThat(routes.resolve("/loginPage")).isEqualTo(Access.PUBLIC);
+        assertThat(routes.resolve("/log")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/loginX")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/x/login")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/login/x")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/")).isEqualTo(Access.AUTHENTICATED);
+    }
+
+    /**
+     * Префиксное правило действует на сегменты пути, а точное правило важнее префиксного
+     */
+    @Test
+    public void whenPrefixThenSegments() {
+        assertThat(routes.resolve("/posterSession/1")).isEqualTo(Access.PUBLIC);
+        assertThat(routes.resolve("/posterSession")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/posterSessionX/1")).isEqualTo(Access.AUTHENTICATED);
+        assertThat(routes.resolve("/metrics/pool")).isEqualTo(Access.ADMIN);
+        assertThat(routes.resolve("/metrics/public")).isEqualTo(Access.PUBLIC);
+        assertThat(routes.resolve("/metrics/publicX")).isEqualTo(Access.ADMIN);
+    }
+
+    /**
+     * Префикс должен заканчиваться "/", а путь - начинаться с "/"
+     */
+    @Test
+    public void whenInvalidRuleThenException() {
+        assertThatThrownBy(() -> routes.prefix("/metrics", Access.ADMIN)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> routes.exact("login", Access.PUBLIC)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
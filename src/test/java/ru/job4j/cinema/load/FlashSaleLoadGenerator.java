@@ -0,0 +1,197 @@
+package ru.job4j.cinema.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.job4j.cinema.Main;
+import ru.job4j.cinema.benchmark.BenchmarkDatabase;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.User;
+import ru.job4j.cinema.repository.JdbcPosterRepository;
+import ru.job4j.cinema.repository.JdbcPosterStore;
+import ru.job4j.cinema.repository.JdbcSessionRepository;
+import ru.job4j.cinema.repository.JdbcUserRepository;
+import ru.job4j.cinema.service.PosterProcessor;
+import ru.job4j.cinema.utility.ContentHash;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FlashSaleLoadGenerator - нагрузочный тест продажи билетов на премьеру
+ *
+ * Генератор запускает приложение на встроенной базе данных H2 в режиме PostgreSQL, создает один сеанс
+ * и заданное число пользователей, после чего все пользователи одновременно проходят путь покупки билета.
+ * Число одновременно работающих пользователей ограничено числом потоков генератора.
+ *
+ * Результат печатается в консоль и сохраняется в target/loadtest-result.json: пропускная способность,
+ * задержки p50/p99/p999 по адресам, доля отказов /ticketFail среди попыток покупки
+ * и проверка того, что ни одно место не продано дважды.
+ *
+ * Параметры: --users=1000 --threads=200 --attempts=3 --rows=10 --places=20 --poster=1500 (ширина постера в пикселях).
+ * Остальные параметры вида --name=value передаются приложению, например --cinema.booking.stripes=64.
+ *
+ * @author Ilya Kaltygin
+ */
+public class FlashSaleLoadGenerator {
+
+    private static final String DB_NAME = "loadtest";
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Map<String, String> options = new HashMap<>();
+        options.put("users", "1000");
+        options.put("threads", "200");
+        options.put("attempts", "3");
+        options.put("rows", "10");
+        options.put("places", "20");
+        options.put("poster", "1500");
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            if (options.containsKey(pair[0])) {
+                options.put(pair[0], pair.length > 1 ? pair[1] : "");
+            } else {
+                appArgs.add(arg);
+            }
+        }
+        int users = Integer.parseInt(options.get("users"));
+        int threads = Integer.parseInt(options.get("threads"));
+        int attempts = Integer.parseInt(options.get("attempts"));
+
+        BasicDataSource pool = BenchmarkDatabase.create(DB_NAME);
+        int sessionId = prepare(pool, users, Integer.parseInt(options.get("poster")));
+        appArgs.addAll(0, List.of(
+                "--server.port=0",
+                "--jdbc.url=" + BenchmarkDatabase.url(DB_NAME),
+                "--jdbc.driver=org.h2.Driver",
+                "--jdbc.username=",
+                "--jdbc.password=",
+                "--cinema.hall.rows=" + options.get("rows"),
+                "--cinema.hall.places=" + options.get("places"),
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        ConfigurableApplicationContext app = SpringApplication.run(Main.class, appArgs.toArray(new String[0]));
+        URI base = URI.create("http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        LoadReport report = new LoadReport();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            executor.execute(new VirtualUser(client, base, email(i), password(i), sessionId, attempts, report));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, Object> summary = report.summary(elapsed);
+        summary.put("users", users);
+        summary.put("threads", threads);
+        summary.putAll(verify(pool, report.seats()));
+        ObjectMapper mapper = new ObjectMapper();
+        File result = new File("target", "loadtest-result.json");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(result, summary);
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(summary));
+        System.out.println("Result is saved to " + result.getAbsolutePath());
+
+        app.close();
+        BenchmarkDatabase.close(pool);
+    }
+
+    /**
+     * Создание сеанса премьеры и пользователей
+     * @param pool Пул соединений
+     * @param users Количество пользователей
+     * @param posterWidth Ширина постера в пикселях
+     * @return id сеанса
+     */
+    private static int prepare(BasicDataSource pool, int users, int posterWidth) throws Exception {
+        byte[] photo = poster(posterWidth, posterWidth * 3 / 2);
+        Session premiere = new Session(0, "Премьера", "Нагрузочный тест", photo);
+        premiere.setPhotoType("image/jpeg");
+        premiere.setPhotoHash(ContentHash.sha256(photo));
+        new JdbcSessionRepository(pool).add(premiere);
+        JdbcPosterStore posterStore = new JdbcPosterStore(pool);
+        posterStore.save(new Poster(premiere.getId(), null, photo, premiere.getPhotoHash(), premiere.getPhotoType()));
+        try (PosterProcessor processor = new PosterProcessor(new JdbcPosterRepository(pool), posterStore, 1, 1, 0.85f, 16_000_000)) {
+            processor.process(new Poster(premiere.getId(), null, null, premiere.getPhotoHash(), premiere.getPhotoType()));
+        }
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
+        for (int i = 0; i < users; i++) {
+            userRepository.add(new User(0, "user" + i, password(i), email(i), "+7" + i));
+        }
+        return premiere.getId();
+    }
+
+    /**
+     * Проверка проданных билетов в базе данных
+     * @param pool Пул соединений
+     * @param reported Количество мест, купленных по данным пользователей
+     * @return Количество билетов, количество различных мест и признак совпадения с данными пользователей
+     */
+    private static Map<String, Object> verify(BasicDataSource pool, long reported) throws Exception {
+        Map<String, Object> result = new HashMap<>();
+        try (Connection cn = pool.getConnection();
+             Statement st = cn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT COUNT(*), COUNT(DISTINCT (session_id, pos_row, cell)) FROM tickets")) {
+            rs.next();
+            long tickets = rs.getLong(1);
+            long distinct = rs.getLong(2);
+            result.put("ticketsInDb", tickets);
+            result.put("consistent", tickets == distinct && tickets == reported);
+        }
+        return result;
+    }
+
+    /**
+     * Создание постера в формате JPEG с шумом, который плохо сжимается, как фотография
+     * @param width Ширина
+     * @param height Высота
+     * @return Байты JPEG
+     */
+    private static byte[] poster(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(64);
+                image.setRGB(x, y, (x * 191 / width + noise) << 16 | (y * 191 / height + noise) << 8 | noise * 2);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static String email(int i) {
+        return "user" + i + "@mail.ru";
+    }
+
+    private static String password(int i) {
+        return "password" + i;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.job4j.cinema.load;
+
+import net.jcip.annotations.ThreadSafe;
+import ru.job4j.cinema.utility.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadReport - результаты нагрузочного теста: задержки по адресам и итоги покупок
+ *
+ * @author Ilya Kaltygin
+ */
+@ThreadSafe
+public class LoadReport {
+
+    /**
+     * Задержки запросов по шаблону адреса
+     */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Ответы с неожиданным статусом и ошибки ввода-вывода
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Попытки покупки: отправленные формы выбора мест
+     */
+    private final LongAdder attempts = new LongAdder();
+
+    /**
+     * Переадресации на /ticketFail
+     */
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * Успешные покупки
+     */
+    private final LongAdder purchases = new LongAdder();
+
+    /**
+     * Купленные места
+     */
+    private final LongAdder seats = new LongAdder();
+
+    /**
+     * Пользователи, которые не нашли свободных мест
+     */
+    private final LongAdder soldOut = new LongAdder();
+
+    /**
+     * Учет задержки запроса
+     * @param endpoint Шаблон адреса, например /selectPlace/{id}
+     * @param nanos Задержка в наносекундах
+     */
+    public void record(String endpoint, long nanos) {
+        latencies.computeIfAbsent(endpoint, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public void attempt() {
+        attempts.increment();
+    }
+
+    public void conflict() {
+        conflicts.increment();
+    }
+
+    /**
+     * Учет успешной покупки
+     * @param count Количество купленных мест
+     */
+    public void purchase(int count) {
+        purchases.increment();
+        seats.add(count);
+    }
+
+    public void soldOut() {
+        soldOut.increment();
+    }
+
+    public long seats() {
+        return seats.sum();
+    }
+
+    /**
+     * Итоги теста
+     * @param elapsedNanos Длительность этапа покупок в наносекундах
+     * @return Набор показателей
+     */
+    public Map<String, Object> summary(long elapsedNanos) {
+        long requests = 0;
+        Map<String, Object> endpoints = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            requests += entry.getValue().count();
+            endpoints.put(entry.getKey(), entry.getValue().summary(TimeUnit.MILLISECONDS));
+        }
+        double seconds = elapsedNanos / 1e9;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("elapsedSeconds", Math.round(seconds * 1000) / 1000.0);
+        result.put("requests", requests);
+        result.put("throughput", Math.round(requests / seconds));
+        result.put("errors", errors.sum());
+        result.put("attempts", attempts.sum());
+        result.put("conflicts", conflicts.sum());
+        result.put("conflictRate", attempts.sum() == 0 ? 0.0
+                : Math.round(conflicts.sum() * 10000.0 / attempts.sum()) / 10000.0);
+        result.put("purchases", purchases.sum());
+        result.put("seats", seats.sum());
+        result.put("soldOut", soldOut.sum());
+        result.put("endpoints", endpoints);
+        return result;
+    }
+}
@@ -0,0 +1,255 @@
+package ru.job4j.cinema.load;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * VirtualUser - пользователь нагрузочного теста
+ *
+ * Пользователь входит в приложение и проходит тот же путь, что и в браузере:
+ * афиша, выбор ряда, выбор места, бронирование и покупка. Вместе с каждой страницей сеанса загружается постер,
+ * который, как и в браузере, хранится согласно заголовкам Cache-Control и ETag.
+ * Переадресации не выполняются клиентом автоматически, чтобы отличать /ticketSuccess от /ticketFail.
+ * Cookie пользователя хранятся в нем самом, поэтому один HttpClient обслуживает всех пользователей.
+ *
+ * @author Ilya Kaltygin
+ */
+public class VirtualUser implements Runnable {
+
+    private static final Pattern INPUT = Pattern.compile("<input[^>]*>");
+
+    private static final Pattern VALUE = Pattern.compile("value=\"(\\d+)\"");
+
+    private final HttpClient client;
+
+    private final URI base;
+
+    private final String email;
+
+    private final String password;
+
+    private final int sessionId;
+
+    /**
+     * Количество попыток купить билет после отказа
+     */
+    private final int attempts;
+
+    private final LoadReport report;
+
+    /**
+     * Cookie пользователя по имени
+     */
+    private final Map<String, String> cookies = new HashMap<>();
+
+    /**
+     * ETag загруженных постеров по адресу
+     */
+    private final Map<String, String> posterTags = new HashMap<>();
+
+    /**
+     * Адреса постеров, которые браузер хранит без перепроверки
+     */
+    private final Set<String> freshPosters = new HashSet<>();
+
+    public VirtualUser(HttpClient client, URI base, String email, String password,
+                       int sessionId, int attempts, LoadReport report) {
+        this.client = client;
+        this.base = base;
+        this.email = email;
+        this.password = password;
+        this.sessionId = sessionId;
+        this.attempts = attempts;
+        this.report = report;
+    }
+
+    @Override
+    public void run() {
+        try {
+            HttpResponse<String> login = post("/login", "/login",
+                    "email=" + encode(email) + "&password=" + encode(password));
+            if (!location(login).contains("/allSessions")) {
+                report.error();
+                return;
+            }
+            for (int i = 0; i < attempts; i++) {
+                if (book()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            report.error();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Одна попытка покупки
+     * @return true, если попыток больше не нужно: билеты куплены или свободных мест нет
+     */
+    private boolean book() throws IOException, InterruptedException {
+        get("/allSessions", "/allSessions");
+        poster();
+        List<Integer> rows = inputs(get("/selectRow/{id}", "/selectRow/" + sessionId).body(), "row");
+        poster();
+        if (rows.isEmpty()) {
+            report.soldOut();
+            return true;
+        }
+        int row = rows.get(ThreadLocalRandom.current().nextInt(rows.size()));
+        List<Integer> places = inputs(get("/selectPlace/{id}", "/selectPlace/" + sessionId + "?row=" + row).body(),
+                "place");
+        poster();
+        if (places.isEmpty()) {
+            return false;
+        }
+        Collections.shuffle(places, ThreadLocalRandom.current());
+        List<Integer> chosen = places.subList(0, Math.min(places.size(), 1 + ThreadLocalRandom.current().nextInt(2)));
+        report.attempt();
+        String query = chosen.stream().map(place -> "place=" + place).collect(Collectors.joining("&"));
+        HttpResponse<String> about = get("/aboutSession", "/aboutSession?" + query);
+        if (failed(about)) {
+            return false;
+        }
+        HttpResponse<String> ticket = get("/createTicket", "/createTicket");
+        if (failed(ticket)) {
+            return false;
+        }
+        if (location(ticket).contains("/ticketSuccess")) {
+            get("/ticketSuccess", "/ticketSuccess");
+            report.purchase(chosen.size());
+            return true;
+        }
+        report.error();
+        return true;
+    }
+
+    /**
+     * Проверка переадресации на /ticketFail. Страница отказа загружается, как это сделал бы браузер
+     * @param response Ответ сервера
+     * @return true, если места заняты
+     */
+    private boolean failed(HttpResponse<String> response) throws IOException, InterruptedException {
+        if (location(response).contains("/ticketFail")) {
+            report.conflict();
+            get("/ticketFail", "/ticketFail");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Загрузка карточки постера сеанса так, как это делает браузер: постер, который можно хранить,
+     * больше не запрашивается, а постер, который нужно перепроверять, запрашивается с If-None-Match
+     */
+    private void poster() throws IOException, InterruptedException {
+        String path = "/posterSession/" + sessionId + "?size=card";
+        if (freshPosters.contains(path)) {
+            return;
+        }
+        HttpRequest.Builder builder = request(path).GET();
+        String etag = posterTags.get(path);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        HttpResponse<byte[]> response = send("/posterSession/{id}", builder.build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        response.headers().firstValue("ETag").ifPresent(tag -> posterTags.put(path, tag));
+        String cacheControl = response.headers().firstValue("Cache-Control").orElse("");
+        if (cacheControl.contains("max-age") && !cacheControl.contains("no-cache")) {
+            freshPosters.add(path);
+        }
+    }
+
+    private HttpResponse<String> get(String endpoint, String path) throws IOException, InterruptedException {
+        return send(endpoint, request(path).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String endpoint, String path, String form)
+            throws IOException, InterruptedException {
+        return send(endpoint, request(path)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Отправка запроса с учетом задержки и сохранением cookie из ответа
+     * @param endpoint Шаблон адреса для отчета
+     * @param request Запрос
+     * @param handler Обработчик тела ответа
+     * @return Ответ сервера
+     */
+    private <T> HttpResponse<T> send(String endpoint, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<T> response = client.send(request, handler);
+        report.record(endpoint, System.nanoTime() - start);
+        if (response.statusCode() >= 400) {
+            report.error();
+        }
+        for (String header : response.headers().allValues("Set-Cookie")) {
+            for (HttpCookie cookie : HttpCookie.parse(header)) {
+                cookies.put(cookie.getName(), cookie.getValue());
+            }
+        }
+        return response;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(path));
+        if (!cookies.isEmpty()) {
+            builder.header("Cookie", cookies.entrySet().stream()
+                    .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        return builder;
+    }
+
+    /**
+     * Номера доступных для выбора полей формы
+     * @param html Страница
+     * @param name Имя поля
+     * @return Список значений полей, которые не отключены
+     */
+    private static List<Integer> inputs(String html, String name) {
+        List<Integer> result = new ArrayList<>();
+        Matcher input = INPUT.matcher(html);
+        while (input.find()) {
+            String tag = input.group();
+            if (tag.contains("name=\"" + name + "\"") && !tag.contains("disabled")) {
+                Matcher value = VALUE.matcher(tag);
+                if (value.find()) {
+                    result.add(Integer.parseInt(value.group(1)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String location(HttpResponse<?> response) {
+        return response.headers().firstValue("Location").orElse("");
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
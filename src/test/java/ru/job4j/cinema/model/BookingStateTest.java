@@ -0,0 +1,38 @@
+package ru.job4j.cinema.model;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс BookingState
+ *
+ * @author Ilya Kaltygin
+ */
+class BookingStateTest {
+
+    /**
+     * Места хранятся в маске и возвращаются в порядке возрастания, а выбор ряда сбрасывает места
+     */
+    @Test
+    public void whenWithPlacesThenPlacesSorted() {
+        BookingState booking = BookingState.of(7).withRow(3).withPlaces(List.of(64, 5, 1, 5));
+        assertThat(booking.getSessionId()).isEqualTo(7);
+        assertThat(booking.getRow()).isEqualTo(3);
+        assertThat(booking.getPlaces()).containsExactly(1, 5, 64);
+        assertThat(booking.hasPlaces()).isTrue();
+        assertThat(booking.withRow(4).hasPlaces()).isFalse();
+        assertThat(booking).isEqualTo(BookingState.of(7).withRow(3).withPlaces(List.of(1, 5, 64)));
+    }
+
+    /**
+     * Номер места вне маски отклоняется
+     */
+    @Test
+    public void whenPlaceOutOfRangeThenException() {
+        assertThat(BookingState.fits(List.of(0))).isFalse();
+        assertThat(BookingState.fits(List.of(BookingState.MAX_PLACE + 1))).isFalse();
+        assertThatThrownBy(() -> BookingState.of(1).withRow(1).withPlaces(List.of(65)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,68 @@
+package ru.job4j.cinema.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.utility.ContentHash;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс FilePosterStore
+ *
+ * @author Ilya Kaltygin
+ */
+class FilePosterStoreTest {
+
+    /**
+     * Изображение хранится в файле, имя которого - его хеш, и передается потоком
+     */
+    @Test
+    public void whenSaveThenFileNamedByHash(@TempDir Path dir) throws Exception {
+        FilePosterStore store = new FilePosterStore(dir);
+        byte[] photo = {1, 2, 3};
+        String hash = ContentHash.sha256(photo);
+        Poster poster = new Poster(1, null, photo, hash, "image/png");
+        assertThat(store.file(poster)).isEmpty();
+        assertThat(store.save(poster)).isTrue();
+
+        Path file = store.file(poster).orElseThrow();
+        assertThat(file).isEqualTo(dir.resolve(hash.substring(0, 2)).resolve(hash));
+        assertThat(Files.readAllBytes(file)).isEqualTo(photo);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.stream(poster, (length, in) -> in.transferTo(out))).isTrue();
+        assertThat(out.toByteArray()).isEqualTo(photo);
+    }
+
+    /**
+     * Одинаковые изображения хранятся в одном файле, а временные файлы не остаются
+     */
+    @Test
+    public void whenSameContentThenStoredOnce(@TempDir Path dir) throws Exception {
+        FilePosterStore store = new FilePosterStore(dir);
+        byte[] photo = {4, 5, 6};
+        String hash = store.write(new ByteArrayInputStream(photo));
+        assertThat(store.write(new ByteArrayInputStream(photo))).isEqualTo(hash);
+        assertThat(hash).isEqualTo(ContentHash.sha256(photo));
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertThat(files.filter(Files::isRegularFile)).containsExactly(dir.resolve(hash.substring(0, 2)).resolve(hash));
+        }
+    }
+
+    /**
+     * Изображение, хеш которого не совпадает с описанием, не считается сохраненным,
+     * а некорректный хеш не выводит за пределы каталога
+     */
+    @Test
+    public void whenHashMismatchOrInvalidThenNotFound(@TempDir Path dir) {
+        FilePosterStore store = new FilePosterStore(dir);
+        assertThat(store.save(new Poster(1, null, new byte[]{1}, "0".repeat(64), "image/png"))).isFalse();
+        assertThat(store.file(new Poster(1, null, null, "0".repeat(64), null))).isEmpty();
+        assertThat(store.file(new Poster(1, null, null, "../../etc/passwd", null))).isEmpty();
+        assertThat(store.stream(new Poster(1, null, null, null, null), (length, in) -> fail("No poster"))).isFalse();
+    }
+}
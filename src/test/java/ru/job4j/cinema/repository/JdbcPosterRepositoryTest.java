@@ -0,0 +1,59 @@
+package ru.job4j.cinema.repository;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import ru.job4j.cinema.model.Session;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import static org.assertj.core.api.Assertions.*;
+import static ru.job4j.cinema.repository.JdbcSessionRepositoryTest.loadPool;
+
+/**
+ * Тесты на класс JdbcPosterRepository
+ *
+ * @author Ilya Kaltygin
+ */
+class JdbcPosterRepositoryTest {
+
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
+    /**
+     * Очищение таблиц posters и sessions после внесенных изменений
+     */
+    @AfterEach
+    public void clearTable() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement preparedStatement1 = connection.prepareStatement("DELETE FROM posters");
+             PreparedStatement preparedStatement2 = connection.prepareStatement("DELETE FROM sessions")) {
+            preparedStatement1.execute();
+            preparedStatement2.execute();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Описание копии постера находится по сеансу и варианту
+     */
+    @Test
+    public void whenAddPosterThenFind() {
+        Session session = new Session(0, "Film №1", "Desc №1", new byte[]{1});
+        new JdbcSessionRepository(pool).add(session);
+        JdbcPosterRepository repository = new JdbcPosterRepository(pool);
+        byte[] card = {4, 5, 6};
+        assertThat(repository.add(new Poster(session.getId(), PosterVariant.CARD, card, "hash", "image/jpeg"))).isTrue();
+
+        Poster poster = repository.findBySessionId(session.getId(), PosterVariant.CARD).orElseThrow();
+        assertThat(poster.getPhoto()).isNull();
+        assertThat(poster.getPhotoHash()).isEqualTo("hash");
+        assertThat(poster.getPhotoType()).isEqualTo("image/jpeg");
+        assertThat(repository.findBySessionId(session.getId(), PosterVariant.THUMB)).isEmpty();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.job4j.cinema.repository;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.utility.ContentHash;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.Assertions.*;
+import static ru.job4j.cinema.repository.JdbcSessionRepositoryTest.loadPool;
+
+/**
+ * Тесты на класс JdbcPosterStore
+ *
+ * @author Ilya Kaltygin
+ */
+class JdbcPosterStoreTest {
+
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
+    /**
+     * Очищение таблиц posters и sessions после внесенных изменений
+     */
+    @AfterEach
+    public void clearTable() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement preparedStatement1 = connection.prepareStatement("DELETE FROM posters");
+             PreparedStatement preparedStatement2 = connection.prepareStatement("DELETE FROM sessions")) {
+            preparedStatement1.execute();
+            preparedStatement2.execute();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Исходный постер записывается в строку сеанса и передается потоком
+     */
+    @Test
+    public void whenSaveSessionPosterThenStreamed() {
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        new JdbcSessionRepository(pool).add(session);
+        JdbcPosterStore store = new JdbcPosterStore(pool);
+        Poster poster = new Poster(session.getId(), null, null, "hash", "image/png");
+        assertThat(store.stream(poster, (length, in) -> fail("Poster is not saved"))).isFalse();
+
+        byte[] photo = {1, 2, 3, 4, 5};
+        assertThat(store.save(new Poster(session.getId(), null, photo, "hash", "image/png"))).isTrue();
+        AtomicLong size = new AtomicLong();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.stream(poster, (length, in) -> {
+            size.set(length);
+            in.transferTo(out);
+        })).isTrue();
+        assertThat(size.get()).isEqualTo(photo.length);
+        assertThat(out.toByteArray()).isEqualTo(photo);
+        assertThat(store.file(poster)).isEmpty();
+    }
+
+    /**
+     * Копия постера записывается в строку копии, а изображение сеанса, которого нет, не записывается
+     */
+    @Test
+    public void whenSaveVariantThenStreamed() {
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        new JdbcSessionRepository(pool).add(session);
+        Poster card = new Poster(session.getId(), PosterVariant.CARD, new byte[]{4, 5, 6}, "card", "image/jpeg");
+        new JdbcPosterRepository(pool).add(card);
+        JdbcPosterStore store = new JdbcPosterStore(pool);
+        assertThat(store.save(card)).isTrue();
+        assertThat(store.save(new Poster(-1, null, new byte[]{1}, "hash", "image/png"))).isFalse();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.stream(card, (length, in) -> in.transferTo(out))).isTrue();
+        assertThat(out.toByteArray()).isEqualTo(card.getPhoto());
+        assertThat(store.stream(new Poster(session.getId(), PosterVariant.FULL, null, null, null),
+                (length, in) -> fail("No FULL variant"))).isFalse();
+    }
+
+    /**
+     * Постер из потока записывается без загрузки в память, а хеш вычисляется по ходу записи
+     */
+    @Test
+    public void whenSaveFromStreamThenHashReturned() throws Exception {
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        new JdbcSessionRepository(pool).add(session);
+        JdbcPosterStore store = new JdbcPosterStore(pool);
+        byte[] photo = new byte[100_000];
+        new Random(1).nextBytes(photo);
+        Poster poster = new Poster(session.getId(), null, null, null, "image/png");
+        assertThat(store.save(poster, photo.length, new ByteArrayInputStream(photo)))
+                .isEqualTo(ContentHash.sha256(photo));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(store.stream(poster, (length, in) -> in.transferTo(out))).isTrue();
+        assertThat(out.toByteArray()).isEqualTo(photo);
+        assertThatThrownBy(() -> store.save(new Poster(-1, null, null, null, null), 1, new ByteArrayInputStream(photo)))
+                .isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Получатель вызывается после возврата соединения в пул, а постер больше допустимого размера не читается
+     */
+    @Test
+    public void whenStreamThenConnectionReleasedBeforeSink() throws Exception {
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        new JdbcSessionRepository(pool).add(session);
+        byte[] photo = new byte[2 * 1024 * 1024];
+        Poster poster = new Poster(session.getId(), null, photo, "hash", "image/png");
+        assertThat(new JdbcPosterStore(pool).save(poster)).isTrue();
+        try (BasicDataSource single = loadPool()) {
+            single.setMaxTotal(1);
+            single.setMaxWaitMillis(100);
+            AtomicLong size = new AtomicLong();
+            assertThat(new JdbcPosterStore(single, 2).stream(poster, (length, in) -> {
+                try (Connection cn = single.getConnection()) {
+                    size.set(in.readAllBytes().length);
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            })).isTrue();
+            assertThat(size.get()).isEqualTo(photo.length);
+            assertThat(new JdbcPosterStore(single, 1).stream(poster, (length, in) -> fail("Poster is too large"))).isFalse();
+        }
+    }
+}
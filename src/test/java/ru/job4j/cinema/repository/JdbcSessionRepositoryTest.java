@@ -9,7 +9,9 @@ import java.io.InputStreamReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import static org.assertj.core.api.Assertions.*;
 
@@ -20,6 +22,11 @@ import static org.assertj.core.api.Assertions.*;
  */
 class JdbcSessionRepositoryTest {
 
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
     /**
      * Загрузка настроек
      * @return Файл с настройками для подключения к базе данных
@@ -46,7 +53,8 @@ class JdbcSessionRepositoryTest {
 
     /**
      * Создание объекта типа BasicDataSource
-     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди
+     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди.
+     * Пул закрывает вызывающий код, иначе его соединения остаются открытыми до сборки мусора
      */
     public static BasicDataSource loadPool() {
         Properties cfg = loadDbProperties();
@@ -67,9 +75,11 @@ class JdbcSessionRepositoryTest {
      */
     @AfterEach
     public void clearTable() throws SQLException {
-        try (Connection connection = loadPool().getConnection();
+        try (Connection connection = pool.getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement("DELETE FROM sessions")) {
             preparedStatement.execute();
+        } finally {
+            pool.close();
         }
     }
 
@@ -78,7 +88,7 @@ class JdbcSessionRepositoryTest {
      */
     @Test
     void whenAddAndThenFindAll() {
-        JdbcSessionRepository repository = new JdbcSessionRepository(loadPool());
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
 
         Session session1 = new Session();
         session1.setTitle("Film №1");
@@ -110,7 +120,7 @@ class JdbcSessionRepositoryTest {
      */
     @Test
     void whenAddThenFindSession() {
-        JdbcSessionRepository repository = new JdbcSessionRepository(loadPool());
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
 
         Session session = new Session();
         session.setTitle("Film №1");
@@ -126,7 +136,7 @@ class JdbcSessionRepositoryTest {
      */
     @Test
     void whenUpdateSession() {
-        JdbcSessionRepository repository = new JdbcSessionRepository(loadPool());
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
 
         Session session1 = new Session();
 
@@ -144,4 +154,64 @@ class JdbcSessionRepositoryTest {
         assertThat(sessionInDb.getTitle()).isEqualTo(session2.getTitle());
         assertThat(sessionInDb.getDesc()).isEqualTo(session2.getDesc());
     }
-}
\ No newline at end of file
+
+    /**
+     * Сеанс загружается без постера, но с его хешем и типом
+     */
+    @Test
+    void whenFindByIdThenPosterNotLoaded() {
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
+        Session session = new Session(0, "Film №1", "Desc №1", new byte[]{1, 2, 3, 4, 5});
+        session.setPhotoHash("hash");
+        session.setPhotoType("image/png");
+        repository.add(session);
+
+        Session sessionInDb = repository.findById(session.getId());
+        assertThat(sessionInDb.getPhoto()).isNull();
+        assertThat(sessionInDb.getPhotoHash()).isEqualTo("hash");
+        assertThat(sessionInDb.getPhotoType()).isEqualTo("image/png");
+        assertThat(repository.findAll()).allMatch(ses -> ses.getPhoto() == null);
+    }
+
+    /**
+     * Хеш постера, сохраненного после добавления сеанса, записывается в сеанс
+     */
+    @Test
+    void whenUpdatePosterHash() {
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        repository.add(session);
+        repository.updatePosterHash(session.getId(), "hash");
+        assertThat(repository.findById(session.getId()).getPhotoHash()).isEqualTo("hash");
+    }
+
+    /**
+     * Удаленный сеанс больше не находится
+     */
+    @Test
+    void whenDeleteThenNotFound() {
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        repository.add(session);
+        repository.delete(session.getId());
+        assertThat(repository.findById(session.getId())).isNull();
+    }
+
+    /**
+     * Страница начинается после заданного id и упорядочена по id
+     */
+    @Test
+    void whenFindPage() {
+        JdbcSessionRepository repository = new JdbcSessionRepository(pool);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Session session = new Session(0, "Film " + i, "Desc", null);
+            repository.add(session);
+            ids.add(session.getId());
+        }
+        assertThat(repository.findPage(0, 2)).extracting(Session::getId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(repository.findPage(ids.get(1), 2)).extracting(Session::getId).containsExactly(ids.get(2), ids.get(3));
+        assertThat(repository.findPage(ids.get(3), 2)).extracting(Session::getId).containsExactly(ids.get(4));
+        assertThat(repository.findPage(ids.get(4), 2)).isEmpty();
+    }
+}
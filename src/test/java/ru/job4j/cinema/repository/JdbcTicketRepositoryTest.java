@@ -11,6 +11,8 @@ import java.io.InputStreamReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import static org.assertj.core.api.Assertions.*;
 
@@ -21,6 +23,11 @@ import static org.assertj.core.api.Assertions.*;
  */
 class JdbcTicketRepositoryTest {
 
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
     /**
      * Загрузка настроек
      * @return Файл с настройками для подключения к базе данных
@@ -47,7 +54,8 @@ class JdbcTicketRepositoryTest {
 
     /**
      * Создание объекта типа BasicDataSource
-     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди
+     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди.
+     * Пул закрывает вызывающий код, иначе его соединения остаются открытыми до сборки мусора
      */
     public static BasicDataSource loadPool() {
         Properties cfg = loadDbProperties();
@@ -68,13 +76,15 @@ class JdbcTicketRepositoryTest {
      */
     @AfterEach
     public void clearTable() throws SQLException {
-        try (Connection connection = loadPool().getConnection();
+        try (Connection connection = pool.getConnection();
              PreparedStatement preparedStatement1 = connection.prepareStatement("DELETE FROM tickets");
              PreparedStatement preparedStatement2 = connection.prepareStatement("DELETE FROM sessions");
              PreparedStatement preparedStatement3 = connection.prepareStatement("DELETE FROM users")) {
             preparedStatement1.execute();
             preparedStatement2.execute();
             preparedStatement3.execute();
+        } finally {
+            pool.close();
         }
     }
 
@@ -83,13 +93,13 @@ class JdbcTicketRepositoryTest {
      */
     @Test
     public void whenAddTicket() {
-        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(loadPool());
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
         Session session = new Session();
         session.setTitle("Film №1");
         session.setDesc("Desc №1");
         sessionRepository.add(session);
 
-        JdbcUserRepository userRepository = new JdbcUserRepository(loadPool());
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
 
         User user = new User();
         user.setName("First user name");
@@ -98,7 +108,7 @@ class JdbcTicketRepositoryTest {
         user.setPhone("First user phone");
         userRepository.add(user);
 
-        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(loadPool());
+        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(pool);
         Ticket ticket = new Ticket();
         ticket.setRow(1);
         ticket.setPlace(1);
@@ -114,13 +124,13 @@ class JdbcTicketRepositoryTest {
      */
     @Test
     public void whenAdded1TicketAndNotAdded2Ticket() {
-        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(loadPool());
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
         Session session = new Session();
         session.setTitle("Film №1");
         session.setDesc("Desc №1");
         sessionRepository.add(session);
 
-        JdbcUserRepository userRepository = new JdbcUserRepository(loadPool());
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
 
         User user = new User();
         user.setName("First user name");
@@ -129,7 +139,7 @@ class JdbcTicketRepositoryTest {
         user.setPhone("First user phone");
         userRepository.add(user);
 
-        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(loadPool());
+        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(pool);
         Ticket ticket1 = new Ticket();
         ticket1.setRow(1);
         ticket1.setPlace(1);
@@ -148,4 +158,94 @@ class JdbcTicketRepositoryTest {
         assertThat(ticketRepository.add(ticket2).isPresent()).isFalse();
     }
 
+    /**
+     * Поиск всех билетов в базе данных
+     */
+    @Test
+    public void whenAddTicketsThenFindAll() {
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
+        Session session = new Session();
+        session.setTitle("Film №1");
+        session.setDesc("Desc №1");
+        sessionRepository.add(session);
+
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
+        User user = new User();
+        user.setName("First user name");
+        user.setPassword("First user password");
+        user.setEmail("First user email");
+        user.setPhone("First user phone");
+        userRepository.add(user);
+
+        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(pool);
+        Ticket ticket1 = new Ticket(0, session.getId(), 1, 1, user.getId());
+        Ticket ticket2 = new Ticket(0, session.getId(), 2, 3, user.getId());
+        ticketRepository.add(ticket1);
+        ticketRepository.add(ticket2);
+
+        Collection<Ticket> tickets = ticketRepository.findAll();
+        assertThat(tickets).containsExactlyInAnyOrder(ticket1, ticket2);
+        assertThat(tickets).extracting(Ticket::getRow, Ticket::getPlace)
+                .containsExactlyInAnyOrder(tuple(1, 1), tuple(2, 3));
+    }
+
+    /**
+     * Добавление нескольких билетов в базу данных одной транзакцией
+     */
+    @Test
+    public void whenAddAllTickets() {
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
+        Session session = new Session();
+        session.setTitle("Film №1");
+        session.setDesc("Desc №1");
+        sessionRepository.add(session);
+
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
+        User user = new User();
+        user.setName("First user name");
+        user.setPassword("First user password");
+        user.setEmail("First user email");
+        user.setPhone("First user phone");
+        userRepository.add(user);
+
+        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(pool);
+        List<Ticket> tickets = List.of(
+                new Ticket(0, session.getId(), 1, 1, user.getId()),
+                new Ticket(0, session.getId(), 1, 2, user.getId()),
+                new Ticket(0, session.getId(), 1, 3, user.getId())
+        );
+        assertThat(ticketRepository.addAll(tickets)).hasSize(3);
+        assertThat(tickets).allMatch(ticket -> ticket.getId() != 0);
+        assertThat(ticketRepository.findAll()).hasSize(3);
+    }
+
+    /**
+     * Если хотя бы одно место занято, то не добавляется ни один билет
+     */
+    @Test
+    public void whenAddAllWithBusySeatThenNothingAdded() {
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
+        Session session = new Session();
+        session.setTitle("Film №1");
+        session.setDesc("Desc №1");
+        sessionRepository.add(session);
+
+        JdbcUserRepository userRepository = new JdbcUserRepository(pool);
+        User user = new User();
+        user.setName("First user name");
+        user.setPassword("First user password");
+        user.setEmail("First user email");
+        user.setPhone("First user phone");
+        userRepository.add(user);
+
+        JdbcTicketRepository ticketRepository = new JdbcTicketRepository(pool);
+        ticketRepository.add(new Ticket(0, session.getId(), 1, 3, user.getId()));
+        List<Ticket> tickets = List.of(
+                new Ticket(0, session.getId(), 1, 1, user.getId()),
+                new Ticket(0, session.getId(), 1, 2, user.getId()),
+                new Ticket(0, session.getId(), 1, 3, user.getId())
+        );
+        assertThat(ticketRepository.addAll(tickets)).isEmpty();
+        assertThat(ticketRepository.findAll()).hasSize(1);
+    }
 }
\ No newline at end of file
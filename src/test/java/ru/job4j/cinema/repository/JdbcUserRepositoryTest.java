@@ -20,6 +20,11 @@ import static org.assertj.core.api.Assertions.*;
  */
 class JdbcUserRepositoryTest {
 
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
     /**
      * Загрузка настроек
      * @return Файл с настройками для подключения к базе данных
@@ -46,7 +51,8 @@ class JdbcUserRepositoryTest {
 
     /**
      * Создание объекта типа BasicDataSource
-     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди
+     * Внутри объекта создаются коннекты к базе данных, которые находятся в многопоточной очереди.
+     * Пул закрывает вызывающий код, иначе его соединения остаются открытыми до сборки мусора
      */
     public static BasicDataSource loadPool() {
         Properties cfg = loadDbProperties();
@@ -67,9 +73,11 @@ class JdbcUserRepositoryTest {
      */
     @AfterEach
     public void clearTable() throws SQLException {
-        try (Connection connection = loadPool().getConnection();
+        try (Connection connection = pool.getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement("DELETE FROM users")) {
             preparedStatement.execute();
+        } finally {
+            pool.close();
         }
     }
 
@@ -78,7 +86,7 @@ class JdbcUserRepositoryTest {
      */
     @Test
     void whenAddUser() {
-        JdbcUserRepository repository = new JdbcUserRepository(loadPool());
+        JdbcUserRepository repository = new JdbcUserRepository(pool);
 
         User user = new User();
         user.setName("name");
@@ -99,7 +107,7 @@ class JdbcUserRepositoryTest {
      */
     @Test
     void findUserByEmailAndPassword() {
-        JdbcUserRepository repository = new JdbcUserRepository(loadPool());
+        JdbcUserRepository repository = new JdbcUserRepository(pool);
 
         User user1 = new User();
         user1.setName("First user name");
@@ -134,13 +142,34 @@ class JdbcUserRepositoryTest {
         User user2FromOptional = user2InDb.get();
 
         assertThat(user1FromOptional.getName()).isEqualTo(user1.getName());
-        assertThat(user1FromOptional.getPassword()).isEqualTo(user1.getPassword());
+        assertThat(user1FromOptional.getPassword()).isNull();
         assertThat(user1FromOptional.getEmail()).isEqualTo(user1.getEmail());
         assertThat(user1FromOptional.getPhone()).isEqualTo(user1.getPhone());
 
         assertThat(user2FromOptional.getName()).isEqualTo(user2.getName());
-        assertThat(user2FromOptional.getPassword()).isEqualTo(user2.getPassword());
+        assertThat(user2FromOptional.getPassword()).isNull();
         assertThat(user2FromOptional.getEmail()).isEqualTo(user2.getEmail());
         assertThat(user2FromOptional.getPhone()).isEqualTo(user2.getPhone());
     }
-}
\ No newline at end of file
+
+    /**
+     * Зарегистрированный пользователь не является администратором, пока в колонке admin не установлен признак,
+     * даже если его зовут admin
+     */
+    @Test
+    void whenAdminColumnSetThenUserIsAdmin() throws SQLException {
+        JdbcUserRepository repository = new JdbcUserRepository(pool);
+        User user = new User(0, "admin", "pass", "admin email", "admin phone");
+        repository.add(user);
+        assertThat(repository.findUserByEmailAndPassword("admin email", "pass")).get()
+                .extracting(User::isAdmin).isEqualTo(false);
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement("UPDATE users SET admin = TRUE WHERE id = ?")) {
+            preparedStatement.setInt(1, user.getId());
+            preparedStatement.execute();
+        }
+        assertThat(repository.findUserByEmailAndPassword("admin email", "pass")).get()
+                .extracting(User::isAdmin).isEqualTo(true);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.job4j.cinema.repository;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.utility.ContentHash;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import static org.assertj.core.api.Assertions.*;
+import static ru.job4j.cinema.repository.JdbcSessionRepositoryTest.loadPool;
+
+/**
+ * Тесты на класс PosterMigration
+ *
+ * @author Ilya Kaltygin
+ */
+class PosterMigrationTest {
+
+    /**
+     * Пул соединений теста. Закрывается после теста вместе со всеми соединениями
+     */
+    private final BasicDataSource pool = loadPool();
+
+    /**
+     * Очищение таблиц posters и sessions после внесенных изменений
+     */
+    @AfterEach
+    public void clearTable() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement preparedStatement1 = connection.prepareStatement("DELETE FROM posters");
+             PreparedStatement preparedStatement2 = connection.prepareStatement("DELETE FROM sessions")) {
+            preparedStatement1.execute();
+            preparedStatement2.execute();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Постер и копия переносятся в файлы, столбцы photo очищаются, а хеш сеанса без хеша заполняется.
+     * Повторный перенос ничего не делает
+     */
+    @Test
+    public void whenMigrateThenPostersMovedToFiles(@TempDir Path dir) throws Exception {
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
+        JdbcPosterStore jdbcStore = new JdbcPosterStore(pool);
+        Session session = new Session(0, "Film №1", "Desc №1", null);
+        sessionRepository.add(session);
+        byte[] photo = {1, 2, 3};
+        jdbcStore.save(new Poster(session.getId(), null, photo, null, null));
+        byte[] thumb = {4, 5};
+        Poster variant = new Poster(session.getId(), PosterVariant.THUMB, thumb, ContentHash.sha256(thumb), "image/jpeg");
+        new JdbcPosterRepository(pool).add(variant);
+        jdbcStore.save(variant);
+
+        FilePosterStore fileStore = new FilePosterStore(dir);
+        PosterMigration migration = new PosterMigration(pool, fileStore);
+        assertThat(migration.migrate()).isEqualTo(2);
+
+        String hash = sessionRepository.findById(session.getId()).getPhotoHash();
+        assertThat(hash).isEqualTo(ContentHash.sha256(photo));
+        Poster original = new Poster(session.getId(), null, null, hash, null);
+        assertThat(Files.readAllBytes(fileStore.file(original).orElseThrow())).isEqualTo(photo);
+        assertThat(Files.readAllBytes(fileStore.file(variant).orElseThrow())).isEqualTo(thumb);
+        assertThat(jdbcStore.stream(original, (length, in) -> fail("Photo column is not cleared"))).isFalse();
+        assertThat(jdbcStore.stream(variant, (length, in) -> fail("Photo column is not cleared"))).isFalse();
+        assertThat(migration.migrate()).isZero();
+    }
+
+    /**
+     * Постер, который не удалось перенести, не мешает переносу остальных,
+     * а перенос завершается ошибкой со списком пропущенных постеров
+     */
+    @Test
+    public void whenPosterNotMovedThenOthersMovedAndMigrationFails(@TempDir Path dir) throws Exception {
+        JdbcSessionRepository sessionRepository = new JdbcSessionRepository(pool);
+        JdbcPosterStore jdbcStore = new JdbcPosterStore(pool);
+        Session large = new Session(0, "Film №1", "Desc №1", null);
+        sessionRepository.add(large);
+        jdbcStore.save(new Poster(large.getId(), null, new byte[1024 * 1024 + 1], null, null));
+        Session small = new Session(0, "Film №2", "Desc №2", null);
+        sessionRepository.add(small);
+        jdbcStore.save(new Poster(small.getId(), null, new byte[] {1, 2, 3}, null, null));
+
+        FilePosterStore fileStore = new FilePosterStore(dir);
+        PosterMigration migration = new PosterMigration(pool, fileStore, 1);
+        assertThatThrownBy(migration::migrate)
+                .isInstanceOf(IOException.class)
+                .hasMessage("1 posters are moved, 1 posters are not moved: session " + large.getId());
+        assertThat(sessionRepository.findById(small.getId()).getPhotoHash()).isNotNull();
+        assertThat(sessionRepository.findById(large.getId()).getPhotoHash()).isNull();
+        assertThat(new PosterMigration(pool, fileStore).migrate()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,76 @@
+package ru.job4j.cinema.repository;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.Test;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+import static ru.job4j.cinema.repository.JdbcSessionRepositoryTest.loadPool;
+
+/**
+ * Тесты на класс Projection
+ *
+ * @author Ilya Kaltygin
+ */
+class ProjectionTest {
+
+    private static final Projection<String> PAIR = Projection.of(
+            (rs, c) -> rs.getInt(c[0]) + ":" + rs.getString(c[1]), "x", "label");
+
+    /**
+     * Список столбцов для SELECT собирается из проекции
+     */
+    @Test
+    public void whenColumnsThenJoined() {
+        assertThat(PAIR.columns()).isEqualTo("x, label");
+    }
+
+    /**
+     * Номера столбцов определяются по именам, поэтому порядок столбцов в запросе не важен
+     */
+    @Test
+    public void whenColumnsReorderedThenBoundByName() throws Exception {
+        try (BasicDataSource pool = loadPool();
+             Connection cn = pool.getConnection();
+             PreparedStatement ps = cn.prepareStatement(
+                     "SELECT 'extra' AS other, 'row ' || X AS label, X AS x FROM SYSTEM_RANGE(1, 3) ORDER BY X");
+             ResultSet rs = ps.executeQuery()) {
+            assertThat(PAIR.list(rs)).isEqualTo(List.of("1:row 1", "2:row 2", "3:row 3"));
+        }
+    }
+
+    /**
+     * Первая строка читается, а пустой результат дает пустой Optional
+     */
+    @Test
+    public void whenFirstThenOptional() throws Exception {
+        try (BasicDataSource pool = loadPool();
+             Connection cn = pool.getConnection();
+             PreparedStatement ps = cn.prepareStatement("SELECT X AS x, 'a' AS label FROM SYSTEM_RANGE(1, ?)")) {
+            ps.setInt(1, 2);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertThat(PAIR.first(rs)).contains("1:a");
+            }
+            ps.setInt(1, 0);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertThat(PAIR.first(rs)).isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Столбец, которого нет в результате, обнаруживается при привязке, а не при чтении строки
+     */
+    @Test
+    public void whenColumnMissingThenBindFails() throws Exception {
+        try (BasicDataSource pool = loadPool();
+             Connection cn = pool.getConnection();
+             PreparedStatement ps = cn.prepareStatement("SELECT 1 AS x");
+             ResultSet rs = ps.executeQuery()) {
+            assertThatThrownBy(() -> PAIR.bind(rs)).isInstanceOf(SQLException.class);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ru.job4j.cinema.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.cinema.model.Ticket;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс TicketJournal
+ *
+ * @author Ilya Kaltygin
+ */
+class TicketJournalTest {
+
+    /**
+     * Получатель, запоминающий сохраненные билеты
+     * @param saved Список, в который попадают сохраненные билеты
+     * @return Объект типа TicketSink
+     */
+    private static TicketSink collecting(List<Ticket> saved) {
+        return saved::addAll;
+    }
+
+    /**
+     * Записанные билеты переносятся в репозиторий пакетами
+     */
+    @Test
+    public void whenAppendThenFlushToRepository(@TempDir Path dir) throws Exception {
+        List<Ticket> saved = new ArrayList<>();
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096)) {
+            assertThat(journal.append(List.of(new Ticket(0, 1, 2, 3, 4), new Ticket(0, 1, 2, 4, 4)))).isTrue();
+            assertThat(journal.append(List.of(new Ticket(0, 1, 3, 1, 5)))).isTrue();
+            assertThat(journal.pending()).hasSize(3);
+            assertThat(journal.flush(collecting(saved), 2)).isEqualTo(3);
+            assertThat(journal.pending()).isEmpty();
+        }
+        assertThat(saved).extracting(Ticket::getSessionId, Ticket::getRow, Ticket::getPlace, Ticket::getUserId)
+                .containsExactly(tuple(1, 2, 3, 4), tuple(1, 2, 4, 4), tuple(1, 3, 1, 5));
+    }
+
+    /**
+     * После перезапуска переносятся только записи, не перенесенные до остановки
+     */
+    @Test
+    public void whenReopenThenReplayOnlyNotFlushed(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("tickets.journal");
+        try (TicketJournal journal = new TicketJournal(path, 4096)) {
+            journal.append(List.of(new Ticket(0, 1, 1, 1, 1)));
+            journal.flush(collecting(new ArrayList<>()), 10);
+            journal.append(List.of(new Ticket(0, 1, 1, 2, 1)));
+        }
+        List<Ticket> saved = new ArrayList<>();
+        try (TicketJournal journal = new TicketJournal(path, 4096)) {
+            assertThat(journal.pending()).hasSize(1);
+            journal.flush(collecting(saved), 10);
+        }
+        assertThat(saved).extracting(Ticket::getPlace).containsExactly(2);
+    }
+
+    /**
+     * Если база данных недоступна, то ошибка передается вызывающему, а записи остаются в журнале
+     * сколько угодно попыток подряд
+     */
+    @Test
+    public void whenDatabaseUnavailableThenRecordsKept(@TempDir Path dir) throws Exception {
+        TicketSink failing = tickets -> {
+            throw new SQLException("Connection refused", "08001");
+        };
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096)) {
+            journal.append(List.of(new Ticket(0, 1, 1, 1, 1), new Ticket(0, 1, 1, 2, 1)));
+            for (int i = 0; i < 10; i++) {
+                assertThatThrownBy(() -> journal.flush(failing, 10)).isInstanceOf(SQLException.class);
+                assertThat(journal.pending()).hasSize(2);
+            }
+            List<Ticket> saved = new ArrayList<>();
+            assertThat(journal.flush(collecting(saved), 10)).isEqualTo(2);
+            assertThat(saved).hasSize(2);
+        }
+    }
+
+    /**
+     * Билет, отклоненный нарушением уникальности места, переносится в файл отклоненных записей,
+     * остальные билеты пакета сохраняются
+     */
+    @Test
+    public void whenUniqueViolationThenOnlyDuplicateSkipped(@TempDir Path dir) throws Exception {
+        List<Ticket> saved = new ArrayList<>();
+        TicketSink rejectingSecond = tickets -> {
+            if (tickets.stream().anyMatch(ticket -> ticket.getPlace() == 2)) {
+                throw new SQLException("duplicate key value violates unique constraint", "23505");
+            }
+            saved.addAll(tickets);
+        };
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096)) {
+            journal.append(List.of(new Ticket(0, 1, 1, 1, 1), new Ticket(0, 1, 1, 2, 1), new Ticket(0, 1, 1, 3, 1)));
+            assertThat(journal.flush(rejectingSecond, 10)).isEqualTo(2);
+            assertThat(journal.pending()).isEmpty();
+            assertThat(journal.rejected()).isEqualTo(1);
+        }
+        assertThat(saved).extracting(Ticket::getPlace).containsExactly(1, 3);
+        assertThat(Files.readAllLines(dir.resolve("tickets.journal.rejected"))).containsExactly("1,1,2,1");
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096)) {
+            assertThat(journal.rejected()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Если после нарушения уникальности база данных стала недоступна, то несохраненные билеты остаются в журнале
+     */
+    @Test
+    public void whenFailureAfterUniqueViolationThenRestKept(@TempDir Path dir) throws Exception {
+        TicketSink failing = tickets -> {
+            if (tickets.size() > 1 || tickets.get(0).getPlace() == 1) {
+                throw new SQLException("duplicate key value violates unique constraint", "23505");
+            }
+            throw new SQLException("Connection refused", "08001");
+        };
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096)) {
+            journal.append(List.of(new Ticket(0, 1, 1, 1, 1), new Ticket(0, 1, 1, 2, 1), new Ticket(0, 1, 1, 3, 1)));
+            assertThatThrownBy(() -> journal.flush(failing, 10)).isInstanceOf(SQLException.class);
+            assertThat(journal.pending()).extracting(Ticket::getPlace).containsExactly(2, 3);
+        }
+    }
+
+    /**
+     * Если сброс на диск не удался, то добавление не подтверждается, запись не переносится ни сейчас,
+     * ни после перезапуска, а новые записи журнал отклоняет
+     */
+    @Test
+    public void whenForceFailsThenAppendNotConfirmed(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("tickets.journal");
+        try (TicketJournal journal = new TicketJournal(path, 4096) {
+            @Override
+            void force(int offset, int length) {
+                throw new UncheckedIOException(new IOException("Input/output error"));
+            }
+        }) {
+            assertThatThrownBy(() -> journal.append(List.of(new Ticket(0, 1, 1, 1, 1))))
+                    .isInstanceOf(UncheckedIOException.class);
+            assertThat(journal.failed()).isTrue();
+            assertThat(journal.append(List.of(new Ticket(0, 1, 1, 2, 1)))).isFalse();
+            assertThat(journal.pending()).isEmpty();
+            assertThat(journal.flush(collecting(new ArrayList<>()), 10)).isZero();
+        }
+        try (TicketJournal journal = new TicketJournal(path, 4096)) {
+            assertThat(journal.pending()).isEmpty();
+        }
+    }
+
+    /**
+     * Потоки, ожидавшие неудачного сброса на диск, получают отказ, а не подтверждение
+     */
+    @Test
+    public void whenForceFailsThenWaitersRejected(@TempDir Path dir) throws Exception {
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch appended = new CountDownLatch(1);
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 4096) {
+            @Override
+            void force(int offset, int length) {
+                forcing.countDown();
+                try {
+                    appended.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new UncheckedIOException(new IOException("Input/output error"));
+            }
+        }) {
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            Future<Boolean> first = pool.submit(() -> journal.append(List.of(new Ticket(0, 1, 1, 1, 1))));
+            forcing.await();
+            AtomicReference<Object> outcome = new AtomicReference<>();
+            Thread waiter = new Thread(() -> {
+                try {
+                    outcome.set(journal.append(List.of(new Ticket(0, 1, 1, 2, 1))));
+                } catch (IllegalStateException e) {
+                    outcome.set(e);
+                }
+            });
+            waiter.start();
+            while (waiter.getState() != Thread.State.WAITING && waiter.isAlive()) {
+                Thread.onSpinWait();
+            }
+            appended.countDown();
+            waiter.join();
+            assertThat(outcome.get()).isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(first::get).hasCauseInstanceOf(UncheckedIOException.class);
+            pool.shutdown();
+            assertThat(journal.pending()).isEmpty();
+        }
+    }
+
+    /**
+     * Когда в журнале нет места, запись отклоняется, а после переноса журнал очищается
+     */
+    @Test
+    public void whenFullThenRejectAndResetAfterFlush(@TempDir Path dir) throws Exception {
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 16 + 24 * 4)) {
+            for (int place = 1; place <= 4; place++) {
+                assertThat(journal.append(List.of(new Ticket(0, 1, 1, place, 1)))).isTrue();
+            }
+            assertThat(journal.append(List.of(new Ticket(0, 1, 1, 5, 1)))).isFalse();
+            journal.flush(collecting(new ArrayList<>()), 10);
+            assertThat(journal.append(List.of(new Ticket(0, 1, 1, 5, 1)))).isTrue();
+            assertThat(journal.pending()).extracting(Ticket::getPlace).containsExactly(5);
+        }
+    }
+
+    /**
+     * Параллельные добавления подтверждаются общими сбросами на диск
+     */
+    @Test
+    public void whenConcurrentAppendsThenAllDurable(@TempDir Path dir) throws Exception {
+        int tickets = 400;
+        try (TicketJournal journal = new TicketJournal(dir.resolve("tickets.journal"), 64 * 1024)) {
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < tickets; i++) {
+                int place = i;
+                pool.execute(() -> journal.append(List.of(new Ticket(0, 1, 1, place, 1))));
+            }
+            pool.shutdown();
+            assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+            assertThat(journal.pending()).hasSize(tickets);
+            assertThat(journal.forces()).isLessThanOrEqualTo(tickets);
+        }
+    }
+}
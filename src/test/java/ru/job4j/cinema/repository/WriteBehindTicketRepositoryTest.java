@@ -0,0 +1,47 @@
+package ru.job4j.cinema.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс WriteBehindTicketRepository
+ *
+ * @author Ilya Kaltygin
+ */
+class WriteBehindTicketRepositoryTest {
+
+    /**
+     * Размер журнала в мегабайтах переводится в байты без переполнения int
+     */
+    @Test
+    public void whenCapacityFitsOneMappingThenBytes() {
+        assertThat(WriteBehindTicketRepository.capacity(64)).isEqualTo(64 * 1024 * 1024);
+        assertThat(WriteBehindTicketRepository.capacity(2047)).isEqualTo(2047 * 1024 * 1024);
+    }
+
+    /**
+     * Размер, не помещающийся в одно отображение файла в память, отклоняется с понятным сообщением
+     */
+    @Test
+    public void whenCapacityAboveOneMappingThenRejected() {
+        assertThatThrownBy(() -> WriteBehindTicketRepository.capacity(2048))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("capacity-mb must be between 1 and 2047");
+        assertThatThrownBy(() -> WriteBehindTicketRepository.capacity(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Журнал принадлежит одному узлу, поэтому вместе с режимом входа для нескольких узлов репозиторий не создается
+     */
+    @Test
+    public void whenTokenAuthModeThenRefuseToStart(@TempDir Path dir) {
+        assertThatThrownBy(() -> new WriteBehindTicketRepository(null, dir.resolve("tickets.journal").toString(),
+                1, 200, 30000, 1000, "token"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("cinema.auth.mode=token");
+        assertThat(dir.resolve("tickets.journal")).doesNotExist();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс BookingCoordinator
+ *
+ * @author Ilya Kaltygin
+ */
+class BookingCoordinatorTest {
+
+    /**
+     * Конкурирующие покупки одного места выполняются последовательно,
+     * поэтому только одна из них проходит проверку занятости и доходит до сохранения
+     */
+    @Test
+    public void whenSameSeatThenOnlyOneWinner() throws InterruptedException {
+        BookingCoordinator coordinator = new BookingCoordinator(16);
+        SeatMap seats = new SeatMap(5, 5);
+        AtomicInteger saved = new AtomicInteger();
+        long key = SeatMap.key(1, 2, 3);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                coordinator.execute(List.of(key), () -> {
+                    if (seats.isBusy(2, 3)) {
+                        return false;
+                    }
+                    saved.incrementAndGet();
+                    seats.occupy(2, 3);
+                    return true;
+                });
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(saved.get()).isEqualTo(1);
+        assertThat(coordinator.stats().get("acquisitions")).isEqualTo((long) threads);
+    }
+
+    /**
+     * Заказ из нескольких мест захватывает полосы и отпускает их после выполнения действия
+     */
+    @Test
+    public void whenSeveralSeatsThenAllStripesReleased() {
+        BookingCoordinator coordinator = new BookingCoordinator(4);
+        List<Long> keys = List.of(SeatMap.key(1, 1, 1), SeatMap.key(1, 1, 2), SeatMap.key(1, 1, 3));
+        assertThat(coordinator.execute(keys, () -> "done")).isEqualTo("done");
+        assertThat(coordinator.execute(keys, () -> "again")).isEqualTo("again");
+        Map<String, Object> stats = coordinator.stats();
+        assertThat(stats.get("stripes")).isEqualTo(4);
+        assertThat(stats.get("contended")).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,100 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс BookingQueue
+ *
+ * @author Ilya Kaltygin
+ */
+class BookingQueueTest {
+
+    private final BookingQueue queue = new BookingQueue(1, 1);
+
+    @AfterEach
+    public void close() throws InterruptedException {
+        queue.close();
+    }
+
+    /**
+     * Покупка выполняется в потоке очереди, а ее исключение завершает результат
+     */
+    @Test
+    public void whenSubmitThenCompletedByWorker() throws Exception {
+        assertThat(queue.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS))
+                .startsWith("booking-worker-");
+        CompletableFuture<Object> failed = queue.submit(() -> {
+            throw new IllegalStateException("db is down");
+        });
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Покупка сверх занятых потоков и заполненной очереди отклоняется сразу
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenQueueFullThenRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = queue.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Integer> queued = queue.submit(() -> 1);
+        assertThatThrownBy(() -> queue.submit(() -> 2)).isInstanceOf(RejectedExecutionException.class);
+        Map<String, Object> stats = queue.stats();
+        assertThat(stats).containsEntry("active", 1).containsEntry("queued", 1).containsEntry("rejected", 1L);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat((Map<String, Object>) queue.stats().get("serviceTime")).containsEntry("count", 2L);
+    }
+
+    /**
+     * Покупка, отмененная в очереди, не выполняется, а начатую покупку отменить нельзя
+     */
+    @Test
+    public void whenCancelledWhileQueuedThenSkipped() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = queue.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        AtomicBoolean executed = new AtomicBoolean();
+        CompletableFuture<Boolean> queued = queue.submit(() -> executed.getAndSet(true));
+        assertThat(queued.cancel(false)).isTrue();
+        assertThat(running.cancel(false)).isFalse();
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queue.submit(() -> 1).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(executed).isFalse();
+        assertThat(queue.stats()).containsEntry("cancelled", 1L);
+    }
+}
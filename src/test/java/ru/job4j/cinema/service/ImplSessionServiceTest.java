@@ -0,0 +1,129 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.PosterRepository;
+import ru.job4j.cinema.repository.PosterStore;
+import ru.job4j.cinema.repository.SessionRepository;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты на класс ImplSessionService
+ *
+ * @author Ilya Kaltygin
+ */
+class ImplSessionServiceTest {
+
+    private final SessionRepository sessionRepository = mock(SessionRepository.class);
+
+    private final PosterStore posterStore = mock(PosterStore.class);
+
+    private final PosterProcessor posterProcessor = mock(PosterProcessor.class);
+
+    private final SessionCatalog sessionCatalog = new SessionCatalog(sessionRepository, 0, System::currentTimeMillis);
+
+    private final ImplSessionService service = new ImplSessionService(sessionRepository,
+            mock(PosterRepository.class), posterStore, posterProcessor, new PosterCache(1, 1024), sessionCatalog, 1);
+
+    /**
+     * Постер передается в хранилище потоком, а его хеш записывается в сеанс и передается на создание копий
+     */
+    @Test
+    public void whenAddWithPosterThenStreamedAndHashSaved() throws Exception {
+        Session session = new Session(0, "title", "desc", null);
+        session.setPhotoType("image/png");
+        doAnswer(invocation -> {
+            invocation.<Session>getArgument(0).setId(5);
+            return null;
+        }).when(sessionRepository).add(session);
+        when(posterStore.save(any(), anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(2).transferTo(OutputStream.nullOutputStream());
+            return "hash";
+        });
+        service.add(session, 3, new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        verify(posterStore).save(eq(new Poster(5, null, null, null, null)), eq(3L), any());
+        verify(sessionRepository).updatePosterHash(5, "hash");
+        verify(posterProcessor).process(argThat(poster -> poster.getSessionId() == 5
+                && poster.getVariant() == null && "hash".equals(poster.getPhotoHash())));
+        assertThat(session.getPhotoHash()).isEqualTo("hash");
+    }
+
+    /**
+     * Сеанс без постера добавляется без обращения к хранилищу
+     */
+    @Test
+    public void whenAddWithoutPosterThenStoreNotUsed() throws Exception {
+        Session session = new Session(0, "title", "desc", null);
+        doAnswer(invocation -> {
+            invocation.<Session>getArgument(0).setId(5);
+            return null;
+        }).when(sessionRepository).add(session);
+        service.add(session, 0, new ByteArrayInputStream(new byte[0]));
+        verify(sessionRepository).add(session);
+        verifyNoInteractions(posterStore, posterProcessor);
+    }
+
+    /**
+     * Постер больше допустимого размера отклоняется до записи сеанса
+     */
+    @Test
+    public void whenDeclaredSizeTooLargeThenRejectedBeforeInsert() {
+        Session session = new Session(0, "title", "desc", null);
+        assertThatThrownBy(() -> service.add(session, 1024 * 1024 + 1, InputStream.nullInputStream()))
+                .isInstanceOf(IOException.class);
+        verifyNoInteractions(sessionRepository, posterStore, posterProcessor);
+    }
+
+    /**
+     * Постер, размер которого занижен, прерывается во время передачи в хранилище,
+     * а записанный сеанс удаляется и не попадает в каталог
+     */
+    @Test
+    public void whenActualSizeTooLargeThenStreamInterrupted() throws Exception {
+        Session session = new Session(0, "title", "desc", null);
+        doAnswer(invocation -> {
+            invocation.<Session>getArgument(0).setId(5);
+            return null;
+        }).when(sessionRepository).add(session);
+        when(posterStore.save(any(), anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<InputStream>getArgument(2).transferTo(OutputStream.nullOutputStream());
+            return "hash";
+        });
+        assertThatThrownBy(() -> service.add(session, 10, new ByteArrayInputStream(new byte[1024 * 1024 + 1])))
+                .isInstanceOf(IOException.class);
+        verify(sessionRepository, never()).updatePosterHash(anyInt(), any());
+        verify(sessionRepository).delete(5);
+        verifyNoInteractions(posterProcessor);
+        assertThat(service.findById(5)).isNull();
+    }
+
+    /**
+     * Каталог читается из базы данных один раз, а добавленный и измененный сеансы попадают в него без запросов
+     */
+    @Test
+    public void whenFindThenCatalogReadOnce() throws Exception {
+        when(sessionRepository.findPage(0, 500)).thenReturn(List.of(new Session(1, "title", "desc", null)));
+        assertThat(service.findAll()).extracting(Session::getId).containsExactly(1);
+        Session added = new Session(0, "new", "desc", null);
+        doAnswer(invocation -> {
+            invocation.<Session>getArgument(0).setId(2);
+            return null;
+        }).when(sessionRepository).add(added);
+        service.add(added, 0, InputStream.nullInputStream());
+        service.update(new Session(1, "changed", "desc", null));
+
+        assertThat(service.findAll()).extracting(Session::getTitle).containsExactly("changed", "new");
+        assertThat(service.findById(2).getTitle()).isEqualTo("new");
+        verify(sessionRepository, times(1)).findPage(0, 500);
+        verify(sessionRepository, never()).findAll();
+        verify(sessionRepository, never()).findById(anyInt());
+    }
+}
@@ -0,0 +1,102 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.model.Ticket;
+import ru.job4j.cinema.repository.TicketRepository;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты на класс ImplTicketService
+ *
+ * @author Ilya Kaltygin
+ */
+class ImplTicketServiceTest {
+
+    private final TicketRepository ticketRepository = mock(TicketRepository.class);
+
+    private final SessionCatalog sessionCatalog = mock(SessionCatalog.class);
+
+    private final SeatHolds seatHolds = new SeatHolds(10_000, 1_000, () -> 0L);
+
+    private final BookingCoordinator coordinator = new BookingCoordinator(16);
+
+    private ImplTicketService service() {
+        return new ImplTicketService(ticketRepository, seatHolds, coordinator, sessionCatalog, 2, 2);
+    }
+
+    /**
+     * Зал, в ряду которого мест больше, чем помещается в маску заказа, отклоняется при создании сервиса
+     */
+    @Test
+    public void whenMorePlacesThanBookingMaskThenServiceNotCreated() {
+        assertThatThrownBy(() -> new ImplTicketService(ticketRepository, seatHolds, coordinator, sessionCatalog,
+                2, BookingState.MAX_PLACE + 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("cinema.hall.places");
+        verifyNoInteractions(ticketRepository);
+    }
+
+    /**
+     * Места, проданные до запуска, загружаются из базы данных и не показываются свободными
+     */
+    @Test
+    public void whenTicketsLoadedThenSoldPlacesBusy() {
+        when(ticketRepository.findAll()).thenReturn(List.of(new Ticket(1, 1, 1, 2, 100)));
+        when(sessionCatalog.findById(1)).thenReturn(new Session(1, "title", "desc", null));
+        ImplTicketService service = service();
+        assertThat(service.findFreePlaces(1, 1)).containsExactly(1);
+        assertThat(service.hold(1, 1, List.of(2), 200)).isFalse();
+        assertThat(service.hold(1, 1, List.of(1), 200)).isTrue();
+    }
+
+    /**
+     * Для несуществующего сеанса нет свободных мест, бронирования и покупки
+     */
+    @Test
+    public void whenUnknownSessionThenNothingAvailable() {
+        ImplTicketService service = service();
+        assertThat(service.findFreeRows(42)).isEmpty();
+        assertThat(service.findFreePlaces(42, 1)).isEmpty();
+        assertThat(service.hold(42, 1, List.of(1), 100)).isFalse();
+        assertThat(service.addAll(List.of(new Ticket(0, 42, 1, 1, 100)))).isEmpty();
+        verify(ticketRepository, never()).addAll(anyList());
+        assertThat(seatHolds.size()).isZero();
+    }
+
+    /**
+     * Если билеты не удалось загрузить, то сервис не создается и не показывает все места свободными
+     */
+    @Test
+    public void whenTicketsNotLoadedThenServiceNotCreated() {
+        when(ticketRepository.findAll()).thenThrow(new IllegalStateException("Tickets could not be read from the database"));
+        assertThatThrownBy(this::service).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Бронирование ждет блокировку полосы места, поэтому место, проданное под этой блокировкой,
+     * не бронируется после продажи
+     */
+    @Test
+    public void whenSeatSoldUnderLockThenHoldFails() throws Exception {
+        when(sessionCatalog.findById(1)).thenReturn(new Session(1, "title", "desc", null));
+        when(ticketRepository.addAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        ImplTicketService service = service();
+        CompletableFuture<Boolean> hold = coordinator.execute(Set.of(SeatMap.key(1, 1, 1)), () -> {
+            CompletableFuture<Boolean> result = CompletableFuture.supplyAsync(() -> service.hold(1, 1, List.of(1), 200));
+            assertThatThrownBy(() -> result.get(200, TimeUnit.MILLISECONDS))
+                    .isInstanceOf(TimeoutException.class);
+            assertThat(service.addAll(List.of(new Ticket(0, 1, 1, 1, 100)))).hasSize(1);
+            return result;
+        });
+        assertThat(hold.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(seatHolds.isHeld(1, 1, 1)).isFalse();
+    }
+}
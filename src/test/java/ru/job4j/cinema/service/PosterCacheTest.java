@@ -0,0 +1,100 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.PosterVariant;
+import java.nio.ByteBuffer;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс PosterCache
+ *
+ * @author Ilya Kaltygin
+ */
+class PosterCacheTest {
+
+    private static final int KB = 1024;
+
+    /**
+     * Постер хранится в прямом буфере вместе с хешем и типом
+     */
+    @Test
+    public void whenPutThenGetFromDirectBuffer() {
+        PosterCache cache = new PosterCache(1, 512);
+        cache.put(1, PosterVariant.CARD, "hash", "image/jpeg", new byte[]{1, 2, 3});
+        PosterCache.Entry entry = cache.get(1, PosterVariant.CARD);
+        ByteBuffer data = entry.data();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        assertThat(data.isDirect()).isTrue();
+        assertThat(bytes).containsExactly(1, 2, 3);
+        assertThat(entry.data().remaining()).isEqualTo(3);
+        assertThat(entry.getHash()).isEqualTo("hash");
+        assertThat(entry.getType()).isEqualTo("image/jpeg");
+        assertThat(cache.get(1, null)).isNull();
+        assertThat(cache.get(1, PosterVariant.THUMB)).isNull();
+    }
+
+    /**
+     * При превышении объема вытесняется постер, к которому дольше всего не обращались
+     */
+    @Test
+    public void whenCapacityExceededThenLeastRecentlyUsedEvicted() {
+        PosterCache cache = new PosterCache(1, 512);
+        cache.put(1, null, "1", "image/png", new byte[400 * KB]);
+        cache.put(2, null, "2", "image/png", new byte[400 * KB]);
+        cache.get(1, null);
+        cache.put(3, null, "3", "image/png", new byte[400 * KB]);
+        assertThat(cache.get(1, null)).isNotNull();
+        assertThat(cache.get(2, null)).isNull();
+        assertThat(cache.get(3, null)).isNotNull();
+        assertThat(cache.stats())
+                .containsEntry("entries", 2)
+                .containsEntry("residentBytes", 800L * KB)
+                .containsEntry("evictions", 1L);
+    }
+
+    /**
+     * Постер больше допустимого размера не принимается кешем
+     */
+    @Test
+    public void whenPosterTooLargeThenNotAccepted() {
+        PosterCache cache = new PosterCache(1, 512);
+        assertThat(cache.accepts(512 * KB)).isTrue();
+        assertThat(cache.accepts(512 * KB + 1)).isFalse();
+        assertThatThrownBy(() -> cache.put(1, null, "1", "image/png", new byte[512 * KB + 1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Сброс удаляет постер сеанса и все его копии и освобождает занятый объем
+     */
+    @Test
+    public void whenInvalidateThenAllVariantsRemoved() {
+        PosterCache cache = new PosterCache(1, 512);
+        cache.put(1, null, "1", "image/png", new byte[10]);
+        cache.put(1, PosterVariant.THUMB, "t", "image/jpeg", new byte[5]);
+        cache.put(2, null, "2", "image/png", new byte[7]);
+        cache.invalidate(1);
+        assertThat(cache.get(1, null)).isNull();
+        assertThat(cache.get(1, PosterVariant.THUMB)).isNull();
+        assertThat(cache.get(2, null)).isNotNull();
+        assertThat(cache.stats()).containsEntry("entries", 1).containsEntry("residentBytes", 7L);
+    }
+
+    /**
+     * Доля попаданий считается по всем обращениям к кешу
+     */
+    @Test
+    public void whenGetThenHitRatioCounted() {
+        PosterCache cache = new PosterCache(1, 512);
+        cache.put(1, null, "1", "image/png", new byte[1]);
+        cache.get(1, null);
+        cache.get(1, null);
+        cache.get(1, null);
+        cache.get(2, null);
+        assertThat(cache.stats())
+                .containsEntry("hits", 3L)
+                .containsEntry("misses", 1L)
+                .containsEntry("hitRatio", 0.75);
+    }
+}
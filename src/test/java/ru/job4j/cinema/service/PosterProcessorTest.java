@@ -0,0 +1,140 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.job4j.cinema.model.Poster;
+import ru.job4j.cinema.model.PosterVariant;
+import ru.job4j.cinema.repository.PosterRepository;
+import ru.job4j.cinema.repository.PosterSink;
+import ru.job4j.cinema.repository.PosterStore;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты на класс PosterProcessor
+ *
+ * @author Ilya Kaltygin
+ */
+class PosterProcessorTest {
+
+    /**
+     * Для постера создаются все варианты, вписанные в свои размеры с сохранением пропорций
+     */
+    @Test
+    public void whenProcessThenVariantsFitTheirBoxes() throws Exception {
+        PosterRepository repository = mock(PosterRepository.class);
+        PosterStore store = mock(PosterStore.class);
+        when(repository.add(any())).thenReturn(true);
+        PosterProcessor processor = new PosterProcessor(repository, store, Runnable::run, 0.85f, 16_000_000);
+        byte[] photo = png(1200, 1800);
+        Poster original = original(store, photo);
+        processor.process(original);
+
+        ArgumentCaptor<Poster> captor = ArgumentCaptor.forClass(Poster.class);
+        verify(repository, times(PosterVariant.values().length)).add(captor.capture());
+        List<Poster> posters = captor.getAllValues();
+        for (Poster poster : posters) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(poster.getPhoto()));
+            PosterVariant variant = poster.getVariant();
+            assertThat(poster.getSessionId()).isEqualTo(7);
+            assertThat(poster.getPhotoType()).isEqualTo("image/jpeg");
+            assertThat(poster.getPhotoHash()).hasSize(64);
+            assertThat(image.getWidth()).isLessThanOrEqualTo(variant.getWidth());
+            assertThat(image.getHeight()).isLessThanOrEqualTo(variant.getHeight());
+            assertThat((double) image.getHeight() / image.getWidth()).isCloseTo(1.5, within(0.02));
+            assertThat(poster.getPhoto().length).isLessThan(photo.length);
+        }
+        assertThat(posters).extracting(Poster::getVariant).containsExactly(PosterVariant.values());
+        for (Poster poster : posters) {
+            verify(store).save(poster);
+        }
+    }
+
+    /**
+     * Постер меньше варианта не увеличивается
+     */
+    @Test
+    public void whenPosterSmallerThanVariantThenNotUpscaled() {
+        BufferedImage image = PosterProcessor.resize(new BufferedImage(80, 60, BufferedImage.TYPE_INT_ARGB), 250, 350);
+        assertThat(image.getWidth()).isEqualTo(80);
+        assertThat(image.getHeight()).isEqualTo(60);
+    }
+
+    /**
+     * Если постер не является изображением, то варианты не создаются
+     */
+    @Test
+    public void whenPosterIsNotImageThenNoVariants() {
+        PosterRepository repository = mock(PosterRepository.class);
+        PosterStore store = mock(PosterStore.class);
+        new PosterProcessor(repository, store, Runnable::run, 0.85f, 16_000_000).process(original(store, new byte[]{1, 2, 3}));
+        verifyNoInteractions(repository);
+        verify(store, never()).save(any());
+    }
+
+    /**
+     * Изображение больше допустимого числа пикселей не декодируется
+     */
+    @Test
+    public void whenPosterHasTooManyPixelsThenNoVariants() throws Exception {
+        PosterRepository repository = mock(PosterRepository.class);
+        PosterStore store = mock(PosterStore.class);
+        new PosterProcessor(repository, store, Runnable::run, 0.85f, 100 * 100)
+                .process(original(store, png(101, 100)));
+        verifyNoInteractions(repository);
+        verify(store, never()).save(any());
+    }
+
+    /**
+     * Если очередь обработки заполнена, то постер не обрабатывается в потоке загрузки
+     */
+    @Test
+    public void whenQueueFullThenNotProcessedByCaller() {
+        PosterRepository repository = mock(PosterRepository.class);
+        PosterStore store = mock(PosterStore.class);
+        PosterProcessor processor = new PosterProcessor(repository, store, task -> {
+            throw new RejectedExecutionException("Queue is full");
+        }, 0.85f, 16_000_000);
+        processor.process(new Poster(7, null, null, "hash", "image/png"));
+        verifyNoInteractions(repository, store);
+    }
+
+    /**
+     * Исходный постер сеанса 7, который хранилище передает потоком
+     * @param store Хранилище постеров
+     * @param photo Изображение
+     * @return Объект типа Poster без изображения
+     */
+    private static Poster original(PosterStore store, byte[] photo) {
+        Poster original = new Poster(7, null, null, "hash", "image/png");
+        when(store.stream(eq(original), any())).thenAnswer(invocation -> {
+            invocation.<PosterSink>getArgument(1).accept(photo.length, new ByteArrayInputStream(photo));
+            return true;
+        });
+        return original;
+    }
+
+    /**
+     * Создание изображения PNG с градиентом
+     * @param width Ширина
+     * @param height Высота
+     * @return Байты PNG
+     */
+    private static byte[] png(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x ^ y) & 0xFF);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.SeatState;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс SeatHolds
+ *
+ * @author Ilya Kaltygin
+ */
+class SeatHoldsTest {
+
+    /**
+     * Место, забронированное пользователем, не может забронировать другой пользователь
+     */
+    @Test
+    public void whenHeldThenOtherUserCannotHold() {
+        SeatHolds holds = new SeatHolds(10_000, 1_000, () -> 0L);
+        assertThat(holds.hold(1, 2, 3, 100)).isTrue();
+        assertThat(holds.hold(1, 2, 3, 200)).isFalse();
+        assertThat(holds.hold(1, 2, 3, 100)).isTrue();
+        assertThat(holds.isHeldByOther(1, 2, 3, 200)).isTrue();
+        assertThat(holds.isHeldByOther(1, 2, 3, 100)).isFalse();
+        assertThat(holds.isHeld(1, 2, 4)).isFalse();
+    }
+
+    /**
+     * Бронь истекает после ttl и место снова можно забронировать
+     */
+    @Test
+    public void whenTtlPassedThenHoldExpires() {
+        AtomicLong now = new AtomicLong();
+        SeatHolds holds = new SeatHolds(10_000, 1_000, now::get);
+        holds.hold(1, 2, 3, 100);
+        now.set(9_000);
+        holds.advance();
+        assertThat(holds.isHeld(1, 2, 3)).isTrue();
+        now.set(10_000);
+        holds.advance();
+        assertThat(holds.isHeld(1, 2, 3)).isFalse();
+        assertThat(holds.size()).isZero();
+        assertThat(holds.hold(1, 2, 3, 200)).isTrue();
+    }
+
+    /**
+     * Продленная бронь не снимается записью о прежней брони
+     */
+    @Test
+    public void whenHoldRenewedThenOldDeadlineIgnored() {
+        AtomicLong now = new AtomicLong();
+        SeatHolds holds = new SeatHolds(10_000, 1_000, now::get);
+        holds.hold(1, 2, 3, 100);
+        now.set(5_000);
+        holds.advance();
+        holds.hold(1, 2, 3, 100);
+        now.set(12_000);
+        holds.advance();
+        assertThat(holds.isHeld(1, 2, 3)).isTrue();
+        now.set(15_000);
+        holds.advance();
+        assertThat(holds.isHeld(1, 2, 3)).isFalse();
+    }
+
+    /**
+     * Бронь снимается только ее владельцем
+     */
+    @Test
+    public void whenReleaseThenOnlyOwnerCanRelease() {
+        SeatHolds holds = new SeatHolds(10_000, 1_000, () -> 0L);
+        holds.hold(1, 2, 3, 100);
+        holds.release(1, 2, 3, 200);
+        assertThat(holds.isHeld(1, 2, 3)).isTrue();
+        holds.release(1, 2, 3, 100);
+        assertThat(holds.isHeld(1, 2, 3)).isFalse();
+    }
+
+    /**
+     * Слушатель получает постановку брони, ее снятие и истечение, но не продление
+     */
+    @Test
+    public void whenHoldChangedThenListenerNotified() {
+        AtomicLong now = new AtomicLong();
+        SeatHolds holds = new SeatHolds(10_000, 1_000, now::get);
+        List<String> events = new ArrayList<>();
+        holds.addListener((sessionId, row, place, state) -> events.add(sessionId + ":" + row + ":" + place + ":" + state));
+        holds.hold(1, 2, 3, 100);
+        holds.hold(1, 2, 3, 100);
+        holds.hold(1, 2, 3, 200);
+        holds.release(1, 2, 3, 200);
+        holds.release(1, 2, 3, 100);
+        holds.hold(1, 2, 4, 100);
+        now.set(10_000);
+        holds.advance();
+        assertThat(events).containsExactly(
+                "1:2:3:" + SeatState.HELD, "1:2:3:" + SeatState.RELEASED,
+                "1:2:4:" + SeatState.HELD, "1:2:4:" + SeatState.RELEASED);
+    }
+
+    /**
+     * Записи снятых и продленных броней выбрасываются из колеса и не снимают новую бронь того же места
+     */
+    @Test
+    public void whenReleasedOrRenewedThenWheelEntriesDropped() {
+        AtomicLong now = new AtomicLong();
+        SeatHolds holds = new SeatHolds(10_000, 1_000, now::get);
+        holds.hold(1, 2, 3, 100);
+        holds.hold(1, 2, 3, 100);
+        holds.release(1, 2, 3, 100);
+        now.set(5_000);
+        holds.advance();
+        holds.hold(1, 2, 3, 200);
+        assertThat(holds.scheduled()).isEqualTo(3);
+        now.set(10_000);
+        holds.advance();
+        assertThat(holds.scheduled()).isEqualTo(1);
+        assertThat(holds.isHeldByOther(1, 2, 3, 100)).isTrue();
+        now.set(15_000);
+        holds.advance();
+        assertThat(holds.scheduled()).isZero();
+        assertThat(holds.isHeld(1, 2, 3)).isFalse();
+    }
+
+    /**
+     * Пользователь не может держать больше maxPerUser броней, продление в ограничение не засчитывается,
+     * а снятые и истекшие брони освобождают место под новые
+     */
+    @Test
+    public void whenUserHoldLimitReachedThenHoldRefused() {
+        AtomicLong now = new AtomicLong();
+        SeatHolds holds = new SeatHolds(10_000, 1_000, 2, now::get);
+        assertThat(holds.hold(1, 1, 1, 100)).isTrue();
+        assertThat(holds.hold(1, 1, 2, 100)).isTrue();
+        assertThat(holds.hold(1, 1, 1, 100)).isTrue();
+        assertThat(holds.hold(1, 1, 3, 100)).isFalse();
+        assertThat(holds.isHeld(1, 1, 3)).isFalse();
+        assertThat(holds.hold(1, 1, 3, 200)).isTrue();
+        assertThat(holds.hold(1, 1, 3, 100)).isFalse();
+        assertThat(holds.heldBy(100)).isEqualTo(2);
+        holds.release(1, 1, 2, 100);
+        assertThat(holds.hold(1, 1, 4, 100)).isTrue();
+        now.set(10_000);
+        holds.advance();
+        assertThat(holds.heldBy(100)).isZero();
+        assertThat(holds.hold(1, 2, 1, 100)).isTrue();
+        assertThat(holds.hold(1, 2, 2, 100)).isTrue();
+    }
+
+    /**
+     * Отрицательное ограничение броней пользователя не принимается
+     */
+    @Test
+    public void whenUserHoldLimitNegativeThenRefuseToStart() {
+        assertThatThrownBy(() -> new SeatHolds(10_000, 1_000, -1, () -> 0L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("cinema.hold.max-per-user");
+    }
+}
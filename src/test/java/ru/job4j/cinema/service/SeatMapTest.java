@@ -0,0 +1,75 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс SeatMap
+ *
+ * @author Ilya Kaltygin
+ */
+class SeatMapTest {
+
+    /**
+     * Занятие свободного места и повторная попытка занять то же место
+     */
+    @Test
+    public void whenOccupyThenBusyAndSecondOccupyFails() {
+        SeatMap seats = new SeatMap(5, 5);
+        assertThat(seats.isBusy(2, 3)).isFalse();
+        assertThat(seats.occupy(2, 3)).isTrue();
+        assertThat(seats.isBusy(2, 3)).isTrue();
+        assertThat(seats.occupy(2, 3)).isFalse();
+    }
+
+    /**
+     * Освобождение занятого места
+     */
+    @Test
+    public void whenReleaseThenFree() {
+        SeatMap seats = new SeatMap(5, 5);
+        seats.occupy(1, 1);
+        seats.release(1, 1);
+        assertThat(seats.isBusy(1, 1)).isFalse();
+    }
+
+    /**
+     * Поиск свободных мест и рядов
+     */
+    @Test
+    public void whenFindFreePlacesAndRows() {
+        SeatMap seats = new SeatMap(2, 3);
+        seats.occupy(1, 2);
+        seats.occupy(2, 1);
+        seats.occupy(2, 2);
+        seats.occupy(2, 3);
+        assertThat(seats.findFreePlaces(1)).isEqualTo(List.of(1, 3));
+        assertThat(seats.findFreePlaces(2)).isEmpty();
+        assertThat(seats.findFreePlaces(3)).isEmpty();
+        assertThat(seats.findFreeRows()).isEqualTo(List.of(1));
+    }
+
+    /**
+     * Карта зала, которая не помещается в одно значение long
+     */
+    @Test
+    public void whenHallIsLargerThanOneWord() {
+        SeatMap seats = new SeatMap(20, 30);
+        assertThat(seats.occupy(20, 30)).isTrue();
+        assertThat(seats.occupy(3, 5)).isTrue();
+        assertThat(seats.isBusy(20, 30)).isTrue();
+        assertThat(seats.isBusy(20, 29)).isFalse();
+        assertThat(seats.findFreePlaces(20)).hasSize(29);
+    }
+
+    /**
+     * Обращение к месту, которого нет в зале
+     */
+    @Test
+    public void whenSeatOutOfHallThenException() {
+        SeatMap seats = new SeatMap(5, 5);
+        assertThat(seats.contains(6, 1)).isFalse();
+        assertThatThrownBy(() -> seats.occupy(6, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
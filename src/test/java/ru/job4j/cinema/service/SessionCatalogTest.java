@@ -0,0 +1,191 @@
+package ru.job4j.cinema.service;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.Page;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.SessionRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты на класс SessionCatalog
+ *
+ * @author Ilya Kaltygin
+ */
+class SessionCatalogTest {
+
+    private final SessionRepository repository = mock(SessionRepository.class);
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    /**
+     * Сеанс с постером
+     */
+    private static Session session(int id, String title) {
+        Session session = new Session(id, title, "desc", null);
+        session.setPhotoHash("hash" + id);
+        session.setPhotoType("image/png");
+        return session;
+    }
+
+    /**
+     * Каталог загружается при первом чтении, после чего чтение не обращается к базе данных
+     */
+    @Test
+    public void whenReadTwiceThenLoadedOnce() {
+        when(repository.findPage(0, 500)).thenReturn(List.of(session(1, "first"), session(2, "second")));
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+        SessionCatalog.Snapshot snapshot = catalog.snapshot();
+        assertThat(snapshot.getVersion()).isEqualTo(1);
+        assertThat(catalog.findById(2).getTitle()).isEqualTo("second");
+        assertThat(catalog.findById(3)).isNull();
+        assertThat(catalog.snapshot()).isSameAs(snapshot);
+        assertThatThrownBy(() -> catalog.findAll().clear()).isInstanceOf(UnsupportedOperationException.class);
+        verify(repository, times(1)).findPage(0, 500);
+        assertThat(catalog.stats()).containsEntry("loads", 1L).containsEntry("sessions", 2);
+    }
+
+    /**
+     * Добавление и изменение сеанса публикуют новый снимок, а прежний снимок не меняется
+     */
+    @Test
+    public void whenAddedAndUpdatedThenNewSnapshot() {
+        when(repository.findPage(0, 500)).thenReturn(List.of(session(1, "first")));
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+        SessionCatalog.Snapshot before = catalog.snapshot();
+
+        catalog.added(session(2, "second"));
+        catalog.updated(new Session(1, "changed", "new desc", null));
+        catalog.updated(new Session(5, "unknown", "desc", null));
+
+        SessionCatalog.Snapshot after = catalog.snapshot();
+        assertThat(after.getVersion()).isEqualTo(3);
+        assertThat(after.getSessions()).extracting(Session::getTitle).containsExactly("changed", "second");
+        assertThat(after.findById(1).getPhotoHash()).isEqualTo("hash1");
+        assertThat(after.findById(1).getDesc()).isEqualTo("new desc");
+        assertThat(before.getSessions()).extracting(Session::getTitle).containsExactly("first");
+        assertThat(catalog.stats()).containsEntry("writes", 2L);
+        verify(repository, times(1)).findPage(0, 500);
+    }
+
+    /**
+     * Сеанс, добавленный до загрузки каталога, попадает в него из базы данных
+     */
+    @Test
+    public void whenAddedBeforeLoadThenTakenFromDatabase() {
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+        catalog.added(session(1, "first"));
+        when(repository.findPage(0, 500)).thenReturn(List.of(session(1, "first")));
+        assertThat(catalog.findAll()).extracting(Session::getId).containsExactly(1);
+    }
+
+    /**
+     * Устаревший снимок перезагружается из базы данных
+     */
+    @Test
+    public void whenTtlExpiredThenReloaded() {
+        when(repository.findPage(0, 500))
+                .thenReturn(List.of(session(1, "first")))
+                .thenReturn(List.of(session(1, "first"), session(2, "external")));
+        SessionCatalog catalog = new SessionCatalog(repository, 60_000, now::get);
+        assertThat(catalog.findAll()).hasSize(1);
+        now.addAndGet(59_999);
+        assertThat(catalog.findAll()).hasSize(1);
+        now.addAndGet(1);
+        assertThat(catalog.findAll()).hasSize(2);
+        assertThat(catalog.snapshot().getVersion()).isEqualTo(2);
+        verify(repository, times(2)).findPage(0, 500);
+    }
+
+    /**
+     * Каталог загружается из базы данных пачками по ключу, пока пачка не окажется неполной
+     */
+    @Test
+    public void whenCatalogLargerThanBatchThenLoadedByKeyset() {
+        List<Session> first = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            first.add(session(id, "film " + id));
+        }
+        when(repository.findPage(0, 500)).thenReturn(first);
+        when(repository.findPage(500, 500)).thenReturn(List.of(session(501, "last")));
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+        assertThat(catalog.findAll()).hasSize(501);
+        verify(repository).findPage(500, 500);
+        verify(repository, never()).findPage(501, 500);
+    }
+
+    /**
+     * Если первая загрузка не удалась, то снимок не публикуется и следующее чтение загружает каталог заново
+     */
+    @Test
+    public void whenFirstLoadFailsThenNothingPublished() {
+        when(repository.findPage(0, 500))
+                .thenThrow(new IllegalStateException("database is down"))
+                .thenReturn(List.of(session(1, "first")));
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+        assertThatThrownBy(catalog::findAll).isInstanceOf(IllegalStateException.class);
+        assertThat(catalog.stats()).containsEntry("version", 0L).containsEntry("failures", 1L);
+        assertThat(catalog.findAll()).extracting(Session::getId).containsExactly(1);
+        assertThat(catalog.snapshot().getVersion()).isEqualTo(1);
+    }
+
+    /**
+     * Если перезагрузка оборвалась на середине, то читатели получают прежний снимок,
+     * а следующая попытка выполняется через время жизни снимка
+     */
+    @Test
+    public void whenReloadFailsMidwayThenPreviousSnapshotKept() {
+        List<Session> first = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            first.add(session(id, "film " + id));
+        }
+        when(repository.findPage(0, 500)).thenReturn(List.of(session(1, "first"))).thenReturn(first);
+        when(repository.findPage(500, 500))
+                .thenThrow(new IllegalStateException("database is down"))
+                .thenReturn(List.of(session(501, "last")));
+        SessionCatalog catalog = new SessionCatalog(repository, 60_000, now::get);
+        assertThat(catalog.findAll()).hasSize(1);
+        now.addAndGet(60_000);
+        assertThat(catalog.findAll()).hasSize(1);
+        assertThat(catalog.snapshot().getVersion()).isEqualTo(1);
+        now.addAndGet(59_999);
+        assertThat(catalog.findAll()).hasSize(1);
+        verify(repository, times(2)).findPage(0, 500);
+        now.addAndGet(1);
+        assertThat(catalog.findAll()).hasSize(501);
+        assertThat(catalog.snapshot().getVersion()).isEqualTo(2);
+        assertThat(catalog.stats()).containsEntry("failures", 1L);
+    }
+
+    /**
+     * Страница начинается после заданного id и содержит ключи соседних страниц
+     */
+    @Test
+    public void whenFindPageThenNeighbourKeys() {
+        when(repository.findPage(0, 500)).thenReturn(List.of(
+                session(9, "9"), session(3, "3"), session(5, "5"), session(7, "7"), session(11, "11")));
+        SessionCatalog catalog = new SessionCatalog(repository, 0, now::get);
+
+        Page<Session> first = catalog.findPage(0, 2);
+        assertThat(first.getItems()).extracting(Session::getId).containsExactly(3, 5);
+        assertThat(first.getTotal()).isEqualTo(5);
+        assertThat(first.getPrevious()).isNull();
+        assertThat(first.getNext()).isEqualTo(5);
+
+        Page<Session> second = catalog.findPage(first.getNext(), 2);
+        assertThat(second.getItems()).extracting(Session::getId).containsExactly(7, 9);
+        assertThat(second.getPrevious()).isZero();
+        assertThat(second.getNext()).isEqualTo(9);
+
+        Page<Session> last = catalog.findPage(second.getNext(), 2);
+        assertThat(last.getItems()).extracting(Session::getId).containsExactly(11);
+        assertThat(last.getPrevious()).isEqualTo(5);
+        assertThat(last.getNext()).isNull();
+
+        assertThat(catalog.findPage(6, 2).getItems()).extracting(Session::getId).containsExactly(7, 9);
+        assertThat(catalog.findPage(11, 2).getItems()).isEmpty();
+    }
+}
@@ -0,0 +1,85 @@
+package ru.job4j.cinema.utility;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+import java.util.Properties;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс BoundedDataSource
+ *
+ * @author Ilya Kaltygin
+ */
+class BoundedDataSourceTest {
+
+    private final BasicDataSource pool = createPool();
+
+    @AfterEach
+    public void closePool() throws SQLException {
+        pool.close();
+    }
+
+    /**
+     * Соединение сверх числа разрешений не выдается, а закрытие соединения возвращает разрешение один раз
+     */
+    @Test
+    public void whenPermitsExhaustedThenTimeout() throws SQLException {
+        BoundedDataSource dataSource = new BoundedDataSource(pool, 1, 50);
+        Connection first = dataSource.getConnection();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        first.close();
+        first.close();
+        assertThat(first.isClosed()).isTrue();
+        try (Connection second = dataSource.getConnection()) {
+            assertThat(second.isValid(1)).isTrue();
+        }
+        Map<String, Object> stats = dataSource.stats();
+        assertThat(stats).containsEntry("permits", 1).containsEntry("available", 1).containsEntry("timeouts", 1L);
+        assertThat(pool.getNumActive()).isZero();
+    }
+
+    /**
+     * Незавершенная транзакция откатывается до возврата соединения в пул
+     */
+    @Test
+    public void whenClosedInTransactionThenRolledBack() throws SQLException {
+        BoundedDataSource dataSource = new BoundedDataSource(pool, 2, -1);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("INSERT INTO sessions(title, description) VALUES ('t', 'd')")) {
+            connection.setAutoCommit(false);
+            ps.executeUpdate();
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT count(*) FROM sessions");
+             ResultSet rs = ps.executeQuery()) {
+            assertThat(connection.getAutoCommit()).isTrue();
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isZero();
+        }
+        assertThat(dataSource.unwrap(BasicDataSource.class)).isSameAs(pool);
+    }
+
+    private static BasicDataSource createPool() {
+        Properties cfg = new Properties();
+        try (InputStream in = BoundedDataSourceTest.class.getClassLoader().getResourceAsStream("db.properties")) {
+            cfg.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName(cfg.getProperty("jdbc.driver"));
+        pool.setUrl(cfg.getProperty("jdbc.url"));
+        pool.setUsername(cfg.getProperty("jdbc.username"));
+        pool.setPassword(cfg.getProperty("jdbc.password"));
+        return pool;
+    }
+}
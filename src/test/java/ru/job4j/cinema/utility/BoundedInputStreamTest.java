@@ -0,0 +1,37 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс BoundedInputStream
+ *
+ * @author Ilya Kaltygin
+ */
+class BoundedInputStreamTest {
+
+    /**
+     * Поток, размер которого равен допустимому, читается полностью
+     */
+    @Test
+    public void whenWithinLimitThenReadFully() throws Exception {
+        InputStream in = new BoundedInputStream(new ByteArrayInputStream(new byte[100]), 100);
+        assertThat(in.readAllBytes()).hasSize(100);
+    }
+
+    /**
+     * Чтение прерывается, как только прочитано больше допустимого, в том числе по одному байту
+     */
+    @Test
+    public void whenOverLimitThenInterrupted() throws Exception {
+        InputStream bulk = new BoundedInputStream(new ByteArrayInputStream(new byte[101]), 100);
+        assertThatThrownBy(() -> bulk.transferTo(OutputStream.nullOutputStream())).isInstanceOf(IOException.class);
+        InputStream single = new BoundedInputStream(new ByteArrayInputStream(new byte[2]), 1);
+        assertThat(single.read()).isZero();
+        assertThatThrownBy(single::read).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import ru.job4j.cinema.model.BookingState;
+import ru.job4j.cinema.model.Session;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс HttpSessionMetrics
+ *
+ * @author Ilya Kaltygin
+ */
+class HttpSessionMetricsTest {
+
+    private final HttpSessionMetrics metrics = new HttpSessionMetrics();
+
+    private final MockHttpSession session = new MockHttpSession();
+
+    /**
+     * Объем сессии пересчитывается при изменении атрибутов и записывается в гистограмму при завершении сессии
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenAttributesChangedThenBytesTracked() {
+        metrics.sessionCreated(new HttpSessionEvent(session));
+        set(BookingState.ATTRIBUTE, BookingState.of(1));
+        assertThat(metrics.stats()).containsEntry("sessions", 1L).containsEntry("attributes", 1L)
+                .containsEntry("bookings", 1L).containsEntry("attributeBytes", (long) BookingState.BYTES);
+
+        set("poster", new Session(1, "title", "desc", new byte[10_000]));
+        assertThat((long) metrics.stats().get("attributeBytes")).isGreaterThan(10_000);
+        remove("poster");
+        remove(BookingState.ATTRIBUTE);
+        assertThat(metrics.stats()).containsEntry("attributes", 0L).containsEntry("bookings", 0L)
+                .containsEntry("attributeBytes", 0L);
+
+        set(BookingState.ATTRIBUTE, BookingState.of(1));
+        metrics.sessionDestroyed(new HttpSessionEvent(session));
+        remove(BookingState.ATTRIBUTE);
+        assertThat(metrics.stats()).containsEntry("sessions", 0L).containsEntry("attributeBytes", 0L);
+        assertThat((Map<String, Object>) metrics.stats().get("destroyedSessionBytes"))
+                .containsEntry("count", 1L).containsEntry("max", (long) BookingState.BYTES);
+    }
+
+    /**
+     * Значение, измененное на месте и записанное повторно, оценивается заново
+     */
+    @Test
+    public void whenValueChangedInPlaceThenReestimated() {
+        metrics.sessionCreated(new HttpSessionEvent(session));
+        List<String> values = new ArrayList<>();
+        set("values", values);
+        long empty = (long) metrics.stats().get("attributeBytes");
+        values.add("x".repeat(1000));
+        set("values", values);
+        assertThat((long) metrics.stats().get("attributeBytes")).isGreaterThan(empty + 1000);
+    }
+
+    private void set(String name, Object value) {
+        Object old = session.getAttribute(name);
+        session.setAttribute(name, value);
+        if (old == null) {
+            metrics.attributeAdded(new HttpSessionBindingEvent(session, name, value));
+        } else {
+            metrics.attributeReplaced(new HttpSessionBindingEvent(session, name, old));
+        }
+    }
+
+    private void remove(String name) {
+        Object old = session.getAttribute(name);
+        session.removeAttribute(name);
+        metrics.attributeRemoved(new HttpSessionBindingEvent(session, name, old));
+    }
+}
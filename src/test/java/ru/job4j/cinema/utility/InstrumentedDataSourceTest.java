@@ -0,0 +1,115 @@
+package ru.job4j.cinema.utility;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.Session;
+import ru.job4j.cinema.repository.JdbcSessionRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс InstrumentedDataSource
+ *
+ * @author Ilya Kaltygin
+ */
+class InstrumentedDataSourceTest {
+
+    private static final String COUNT_SESSIONS = "SELECT count(*) FROM sessions";
+
+    private final BasicDataSource pool = createPool();
+
+    @AfterEach
+    public void clearTable() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement("DELETE FROM sessions")) {
+            ps.execute();
+        }
+        pool.close();
+    }
+
+    /**
+     * Запросы хранилища называются по константам с их текстом, а строки считаются для обновлений и выборок
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenRepositoryQueriesThenStatsByConstantName() {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, true, 200);
+        JdbcSessionRepository repository = new JdbcSessionRepository(dataSource);
+        repository.add(new Session(0, "Film №1", "Desc №1", null));
+        repository.add(new Session(0, "Film №2", "Desc №2", null));
+        assertThat(repository.findAll()).hasSize(2);
+
+        Map<String, Object> statements = (Map<String, Object>) dataSource.stats().get("statements");
+        assertThat(statements).containsOnlyKeys("JdbcSessionRepository.ADD_SESSION", "JdbcSessionRepository.FIND_ALL");
+        Map<String, Object> add = (Map<String, Object>) statements.get("JdbcSessionRepository.ADD_SESSION");
+        assertThat(add).containsEntry("executions", 2L).containsEntry("rows", 2L).containsEntry("slow", 0L);
+        assertThat((Map<String, Object>) add.get("prepare")).containsEntry("count", 2L);
+        Map<String, Object> findAll = (Map<String, Object>) statements.get("JdbcSessionRepository.FIND_ALL");
+        assertThat(findAll).containsEntry("executions", 1L).containsEntry("rows", 2L);
+        assertThat((Map<String, Object>) findAll.get("fetch")).containsEntry("count", 1L);
+    }
+
+    /**
+     * Запрос из константы вызывающего класса называется по ней, а запрос без константы - по методу
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenNoConstantThenNamedByMethod() throws SQLException {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, true, 0);
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement(COUNT_SESSIONS);
+                 ResultSet rs = ps.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isZero();
+            }
+            try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM sessions")) {
+                ps.executeQuery().close();
+            }
+        }
+        Map<String, Object> statements = (Map<String, Object>) dataSource.stats().get("statements");
+        assertThat(statements).containsOnlyKeys("InstrumentedDataSourceTest.COUNT_SESSIONS",
+                "InstrumentedDataSourceTest.whenNoConstantThenNamedByMethod");
+        assertThat((Map<String, Object>) statements.get("InstrumentedDataSourceTest.COUNT_SESSIONS"))
+                .containsEntry("rows", 1L);
+    }
+
+    /**
+     * Без измерения соединения пула отдаются без оберток
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenDisabledThenConnectionNotWrapped() throws SQLException {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, false, 200);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(COUNT_SESSIONS)) {
+            assertThat(Proxy.isProxyClass(connection.getClass())).isFalse();
+            assertThat(Proxy.isProxyClass(ps.getClass())).isFalse();
+        }
+        assertThat((Map<String, Object>) dataSource.stats().get("statements")).isEmpty();
+        assertThat(dataSource.unwrap(BasicDataSource.class)).isSameAs(pool);
+    }
+
+    private static BasicDataSource createPool() {
+        Properties cfg = new Properties();
+        try (InputStream in = InstrumentedDataSourceTest.class.getClassLoader().getResourceAsStream("db.properties")) {
+            cfg.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName(cfg.getProperty("jdbc.driver"));
+        pool.setUrl(cfg.getProperty("jdbc.url"));
+        pool.setUsername(cfg.getProperty("jdbc.username"));
+        pool.setPassword(cfg.getProperty("jdbc.password"));
+        return pool;
+    }
+}
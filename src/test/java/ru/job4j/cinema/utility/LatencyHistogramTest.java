@@ -0,0 +1,54 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс LatencyHistogram
+ *
+ * @author Ilya Kaltygin
+ */
+class LatencyHistogramTest {
+
+    /**
+     * Перцентили вычисляются с погрешностью не более 12.5%
+     */
+    @Test
+    public void whenRecordThenPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(histogram.max()).isEqualTo(1_000_000);
+        assertThat(histogram.mean()).isEqualTo(500_500.0);
+        assertThat(histogram.percentile(0.5)).isBetween(500_000L, 562_500L);
+        assertThat(histogram.percentile(0.99)).isBetween(990_000L, 1_000_000L);
+        assertThat(histogram.percentile(1.0)).isEqualTo(1_000_000);
+    }
+
+    /**
+     * Каждое значение попадает в корзину, нижняя граница которой не больше значения
+     */
+    @Test
+    public void whenIndexThenLowerBoundNotGreater() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 31, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.lowerBound(index)).isLessThanOrEqualTo(value);
+            if (value < Long.MAX_VALUE) {
+                assertThat(LatencyHistogram.index(value + 1)).isGreaterThanOrEqualTo(index);
+            }
+        }
+    }
+
+    /**
+     * Пустая гистограмма возвращает нули
+     */
+    @Test
+    public void whenEmptyThenZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(0.99)).isZero();
+        assertThat(histogram.mean()).isZero();
+    }
+}
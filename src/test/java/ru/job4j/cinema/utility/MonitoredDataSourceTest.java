@@ -0,0 +1,94 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс MonitoredDataSource
+ *
+ * @author Ilya Kaltygin
+ */
+class MonitoredDataSourceTest {
+
+    private final MonitoredDataSource pool = createPool(1, 50);
+
+    @AfterEach
+    public void closePool() throws SQLException {
+        pool.close();
+    }
+
+    /**
+     * Получение соединения записывается в гистограммы, а отказ по таймауту считается отдельно
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenBorrowAndTimeoutThenRecorded() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            assertThatThrownBy(pool::getConnection).isInstanceOf(SQLException.class);
+        }
+        Map<String, Object> stats = pool.stats();
+        assertThat(stats).containsEntry("maxTotal", 1).containsEntry("timeouts", 1L).containsEntry("failures", 0L);
+        Map<String, Object> wait = (Map<String, Object>) stats.get("borrowWait");
+        assertThat(wait).containsEntry("count", 2L).containsEntry("unit", "microseconds");
+        assertThat((double) wait.get("max")).isGreaterThanOrEqualTo(40_000.0);
+        assertThat((Map<String, Object>) stats.get("activeAtBorrow"))
+                .containsEntry("count", 1L).containsEntry("max", 1L);
+    }
+
+    /**
+     * Пул растет, если были отказы, и уменьшается, если ожидания не было, не выходя за границы
+     */
+    @Test
+    public void whenAdjustThenResizedWithinLimits() throws SQLException {
+        pool.configureAdaptiveSizing(1, 2, 1000, 0);
+        try (Connection connection = pool.getConnection()) {
+            assertThatThrownBy(pool::getConnection).isInstanceOf(SQLException.class);
+            assertThat(pool.adjust()).isEqualTo(2);
+            try (Connection second = pool.getConnection()) {
+                assertThatThrownBy(pool::getConnection).isInstanceOf(SQLException.class);
+            }
+            assertThat(pool.adjust()).isEqualTo(2);
+        }
+        assertThat(pool.adjust()).isEqualTo(1);
+        assertThat(pool.adjust()).isEqualTo(1);
+        assertThat(pool.getMaxIdle()).isEqualTo(1);
+        assertThat(pool.stats().get("adaptive")).isEqualTo(Map.of(
+                "enabled", false, "minTotal", 1, "maxTotal", 2, "grows", 1L, "shrinks", 1L));
+    }
+
+    /**
+     * Границы адаптивного режима проверяются при запуске
+     */
+    @Test
+    public void whenInvalidLimitsThenException() {
+        assertThatThrownBy(() -> pool.startAdaptiveSizing(5, 2, 1000, 2000, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> pool.startAdaptiveSizing(1, 2, 1000, 100, 2000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static MonitoredDataSource createPool(int maxTotal, long maxWaitMillis) {
+        Properties cfg = new Properties();
+        try (InputStream in = MonitoredDataSourceTest.class.getClassLoader().getResourceAsStream("db.properties")) {
+            cfg.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        MonitoredDataSource pool = new MonitoredDataSource();
+        pool.setDriverClassName(cfg.getProperty("jdbc.driver"));
+        pool.setUrl(cfg.getProperty("jdbc.url"));
+        pool.setUsername(cfg.getProperty("jdbc.username"));
+        pool.setPassword(cfg.getProperty("jdbc.password"));
+        pool.setMaxTotal(maxTotal);
+        pool.setMaxIdle(10);
+        pool.setMaxWaitMillis(maxWaitMillis);
+        return pool;
+    }
+}
@@ -0,0 +1,90 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import ru.job4j.cinema.model.User;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс SessionTokens
+ *
+ * @author Ilya Kaltygin
+ */
+class SessionTokensTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private final SessionTokens tokens = new SessionTokens(true, "secret", 60, now::get);
+
+    /**
+     * Подписанные данные возвращаются без изменений
+     */
+    @Test
+    public void whenSignThenVerify() {
+        assertThat(tokens.verify(tokens.sign("1-2-3"))).contains("1-2-3");
+    }
+
+    /**
+     * Токен с измененными данными, сроком или подписью не принимается
+     */
+    @Test
+    public void whenTamperedThenRejected() {
+        String token = tokens.sign("1-2-3");
+        String[] parts = token.split("\\.");
+        assertThat(tokens.verify("9-2-3." + parts[1] + "." + parts[2])).isEmpty();
+        assertThat(tokens.verify(parts[0] + "." + (Long.parseLong(parts[1]) + 1000) + "." + parts[2])).isEmpty();
+        assertThat(tokens.verify(parts[0] + "." + parts[1] + ".AAAA")).isEmpty();
+        assertThat(tokens.verify("garbage")).isEmpty();
+        assertThat(new SessionTokens(true, "other", 60, now::get).verify(token)).isEmpty();
+    }
+
+    /**
+     * Токен не принимается после истечения срока
+     */
+    @Test
+    public void whenExpiredThenRejected() {
+        String token = tokens.sign("payload");
+        now.addAndGet(59);
+        assertThat(tokens.verify(token)).contains("payload");
+        now.incrementAndGet();
+        assertThat(tokens.verify(token)).isEmpty();
+    }
+
+    /**
+     * Из токена пользователя восстанавливаются id и имя, а пароль в токен не попадает
+     */
+    @Test
+    public void whenIssueThenUserRestored() {
+        String token = tokens.issue(new User(7, "Имя.Фамилия-1", "password", "email", "phone"));
+        assertThat(token).doesNotContain("password");
+        User user = tokens.user(token).orElseThrow();
+        assertThat(user.getId()).isEqualTo(7);
+        assertThat(user.getName()).isEqualTo("Имя.Фамилия-1");
+        assertThat(user.getPassword()).isNull();
+        assertThat(user.isAdmin()).isFalse();
+    }
+
+    /**
+     * Признак администратора переносится в токене и защищен подписью
+     */
+    @Test
+    public void whenIssueForAdminThenAdminRestored() {
+        User admin = new User(1, "Ivan", null, null, null);
+        admin.setAdmin(true);
+        String token = tokens.issue(admin);
+        assertThat(tokens.user(token)).get().extracting(User::isAdmin).isEqualTo(true);
+        String[] parts = tokens.issue(new User(2, "admin", null, null, null)).split("\\.");
+        assertThat(tokens.user(parts[0].replace("-u-", "-a-") + "." + parts[1] + "." + parts[2])).isEmpty();
+        assertThat(tokens.user(tokens.sign("2-" + parts[0].substring(4)))).isEmpty();
+    }
+
+    /**
+     * Неизвестный режим входа не принимается
+     */
+    @Test
+    public void whenUnknownModeThenException() {
+        assertThatThrownBy(() -> new SessionTokens("cookie", "secret", 60))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(new SessionTokens("session", "", 60).isEnabled()).isFalse();
+    }
+}
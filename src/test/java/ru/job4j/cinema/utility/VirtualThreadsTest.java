@@ -0,0 +1,29 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс VirtualThreads
+ *
+ * @author Ilya Kaltygin
+ */
+class VirtualThreadsTest {
+
+    /**
+     * На Java 21 задачи выполняются в виртуальных потоках, на более ранних версиях исполнитель не создается
+     */
+    @Test
+    public void whenExecutorThenVirtualThreadsOrException() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            assertThatThrownBy(VirtualThreads::executor).isInstanceOf(IllegalStateException.class);
+            return;
+        }
+        ExecutorService executor = VirtualThreads.executor();
+        Future<String> name = executor.submit(() -> Thread.currentThread().toString());
+        assertThat(name.get()).startsWith("VirtualThread");
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,77 @@
+package ru.job4j.cinema.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Тесты на класс ZeroCopy
+ *
+ * @author Ilya Kaltygin
+ */
+class ZeroCopyTest {
+
+    /**
+     * Поток ответа с методом write(ByteBuffer)
+     */
+    public static final class BufferStream extends ByteArrayOutputStream {
+
+        private int buffers;
+
+        public void write(ByteBuffer buffer) {
+            buffers++;
+            while (buffer.hasRemaining()) {
+                write(buffer.get());
+            }
+        }
+    }
+
+    /**
+     * Если коннектор поддерживает sendfile, то файл не копируется в ответ, а передается коннектору через атрибуты
+     */
+    @Test
+    public void whenSendfileSupportedThenFileHandedToConnector(@TempDir Path dir) throws Exception {
+        Path file = Files.write(dir.resolve("poster"), new byte[] {1, 2, 3});
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ZeroCopy.SENDFILE_SUPPORTED, true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ZeroCopy.sendFile(file, "image/png", request, response);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getContentLengthLong()).isEqualTo(3);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute(ZeroCopy.SENDFILE_FILENAME)).isEqualTo(file.toAbsolutePath().toString());
+        assertThat(request.getAttribute(ZeroCopy.SENDFILE_START)).isEqualTo(0L);
+        assertThat(request.getAttribute(ZeroCopy.SENDFILE_END)).isEqualTo(3L);
+    }
+
+    /**
+     * Без sendfile файл передается в поток ответа
+     */
+    @Test
+    public void whenSendfileNotSupportedThenFileWritten(@TempDir Path dir) throws Exception {
+        Path file = Files.write(dir.resolve("poster"), new byte[] {1, 2, 3});
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ZeroCopy.sendFile(file, "image/png", new MockHttpServletRequest(), response);
+        assertThat(response.getContentAsByteArray()).containsExactly(1, 2, 3);
+    }
+
+    /**
+     * Буфер передается методу write(ByteBuffer) потока, если он есть, иначе записывается через канал
+     */
+    @Test
+    public void whenStreamWritesBuffersThenBufferPassedDirectly() throws Exception {
+        BufferStream direct = new BufferStream();
+        ZeroCopy.write(ByteBuffer.allocateDirect(3).put(new byte[] {1, 2, 3}).flip(), direct);
+        assertThat(direct.toByteArray()).containsExactly(1, 2, 3);
+        assertThat(direct.buffers).isEqualTo(1);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ZeroCopy.write(ByteBuffer.wrap(new byte[] {4, 5}), plain);
+        assertThat(plain.toByteArray()).containsExactly(4, 5);
+    }
+}